@@ -0,0 +1,61 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr;
+
+import etomica.atom.IAtom;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.space3d.Space3D;
+import etomica.tests.TestLJMC3D;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the pair dispatch of PotentialMasterCell: the energy of the whole
+ * box and of a single atom with its neighbors.  Run with the GC profiler
+ * (-prof gc) to see the allocation rate; gc.alloc.rate.norm should be a
+ * small constant per operation, independent of the number of pairs.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class BenchPotentialMasterCell {
+
+    @Param({"4000", "32000"})
+    private int numAtoms;
+
+    private TestLJMC3D sim;
+    private MeterPotentialEnergy meter;
+    private IAtom atom;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Space3D space = Space3D.getInstance();
+        sim = new TestLJMC3D(numAtoms, 1, new ConfigurationLattice(new LatticeCubicFcc(space), space));
+        meter = new MeterPotentialEnergy(sim.integrator.getPotentialMaster(), sim.box);
+        atom = sim.box.getLeafList().get(numAtoms / 2);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(time = 1, iterations = 5)
+    @Measurement(time = 3, iterations = 5)
+    public double boxEnergy() {
+        meter.setTarget((IAtom) null);
+        return meter.getDataAsScalar();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(time = 1, iterations = 5)
+    @Measurement(time = 3, iterations = 5)
+    public double atomEnergy() {
+        meter.setTarget(atom);
+        return meter.getDataAsScalar();
+    }
+}
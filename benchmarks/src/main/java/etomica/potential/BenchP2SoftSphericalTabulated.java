@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.util.random.RandomMersenneTwister;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares direct evaluation of the helium ab initio potential with
+ * evaluation from a P2SoftSphericalTabulated table, over random separations
+ * between 1.5 and 10 Angstroms.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchP2SoftSphericalTabulated {
+
+    @Param({"3", "5"})
+    public int order;
+
+    private P2HePCKLJS pDirect;
+    private P2SoftSphericalTabulated pTabulated;
+    private double[] r2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Space space = Space3D.getInstance();
+        pDirect = new P2HePCKLJS(space);
+        pTabulated = new P2SoftSphericalTabulated(space, pDirect, 1.5, 10, 1e-8, order, false);
+        RandomMersenneTwister random = new RandomMersenneTwister(1);
+        r2 = new double[1024];
+        for (int i = 0; i < r2.length; i++) {
+            double r = 1.5 + 8.5 * random.nextDouble();
+            r2[i] = r * r;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void uDirect(Blackhole bh) {
+        for (double x : r2) {
+            bh.consume(pDirect.u(x));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void uTabulated(Blackhole bh) {
+        for (double x : r2) {
+            bh.consume(pTabulated.u(x));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void duDirect(Blackhole bh) {
+        for (double x : r2) {
+            bh.consume(pDirect.du(x));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void duTabulated(Blackhole bh) {
+        for (double x : r2) {
+            bh.consume(pTabulated.du(x));
+        }
+    }
+}
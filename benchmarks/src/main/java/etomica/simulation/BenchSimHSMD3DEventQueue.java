@@ -0,0 +1,65 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.simulation;
+
+import etomica.simulation.prototypes.HSMD3D;
+import etomica.util.EventHeap;
+import etomica.util.TreeList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares collision throughput of IntegratorHard using the tree and heap
+ * event queues, for hard spheres at several packing fractions.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class BenchSimHSMD3DEventQueue {
+
+    @Param({"4000"})
+    private int numAtoms;
+
+    @Param({"0.2", "0.35", "0.45", "0.5"})
+    private double eta;
+
+    @Param({"tree", "heap"})
+    private String queue;
+
+    private HSMD3D sim;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        HSMD3D.HSMD3DParam params = new HSMD3D.HSMD3DParam();
+        params.nAtoms = numAtoms;
+        params.eta = eta;
+        sim = new HSMD3D(params);
+        sim.integrator.setEventQueue(queue.equals("tree") ? new TreeList() : new EventHeap());
+        sim.integrator.reset();
+        // equilibrate away from the lattice
+        for (int i = 0; i < 100; i++) {
+            sim.integrator.doStep();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Collisions {
+        public long collisions;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(time = 1, iterations = 3)
+    @Measurement(time = 3, timeUnit = TimeUnit.SECONDS, iterations = 5)
+    public long integratorStep(Collisions counter) {
+        long before = sim.integrator.getCollisionCount();
+        sim.integrator.doStep();
+        long c = sim.integrator.getCollisionCount() - before;
+        counter.collisions += c;
+        return c;
+    }
+}
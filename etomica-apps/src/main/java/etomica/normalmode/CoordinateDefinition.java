@@ -4,6 +4,7 @@
 
 package etomica.normalmode;
 
+import Jama.Matrix;
 import etomica.action.MoleculeActionTranslateTo;
 import etomica.atom.AtomLeafAgentManager;
 import etomica.atom.IAtom;
@@ -13,6 +14,7 @@ import etomica.lattice.IndexIteratorRectangular;
 import etomica.lattice.crystal.Basis;
 import etomica.lattice.crystal.BasisMonatomic;
 import etomica.lattice.crystal.Primitive;
+import etomica.math.numerical.FastFourierTransform;
 import etomica.molecule.IMolecule;
 import etomica.molecule.IMoleculeList;
 import etomica.molecule.MoleculeArrayList;
@@ -220,6 +222,198 @@ public abstract class CoordinateDefinition {
 
     }
 
+    /**
+     * Calculates the T vectors for all of the given wave vectors at once,
+     * computing the generalized coordinates of each cell only once.  If the
+     * cells form a complete grid of primitive cells, T for the wave vectors of
+     * that grid's reciprocal lattice (such as those from WaveVectorFactorySimple)
+     * are taken from a multidimensional FFT of the coordinates over the
+     * grid.  T for any other wave vectors are summed directly, as in
+     * calcT(Vector, double[], double[]).
+     *
+     * @param k
+     *            the wave vectors
+     * @param realT
+     *            outputs the real components of the T vectors, realT[k][i]
+     * @param imaginaryT
+     *            outputs the imaginary components of the T vectors
+     */
+    public void calcT(Vector[] k, double[][] realT, double[][] imaginaryT) {
+        int nCells = cells.length;
+        if (uAll == null || uAll.length != nCells*coordinateDim) {
+            uAll = new double[nCells*coordinateDim];
+        }
+        for (int iCell = 0; iCell<nCells; iCell++) {
+            double[] u = calcU(cells[iCell].molecules);
+            System.arraycopy(u, 0, uAll, iCell*coordinateDim, coordinateDim);
+        }
+        if (gridCells != cells) {
+            makeCellGrid();
+        }
+        double sqrtCells = Math.sqrt(nCells);
+
+        // find the grid index of each wave vector, or -1 if it has none
+        int[] kIndex = new int[k.length];
+        int[] kIndexNeg = new int[k.length];
+        boolean anyGrid = false;
+        for (int iVector = 0; iVector<k.length; iVector++) {
+            kIndex[iVector] = gridDims == null ? -1 : gridIndex(k[iVector], kIndexNeg, iVector);
+            anyGrid = anyGrid || kIndex[iVector] > -1;
+        }
+
+        if (anyGrid) {
+            // the coordinates are real, so transform two at a time as the
+            // real and imaginary parts of the grid and separate them afterwards
+            if (gridReal == null || gridReal.length != nCells) {
+                gridReal = new double[nCells];
+                gridImaginary = new double[nCells];
+            }
+            for (int i = 0; i < coordinateDim; i+=2) {
+                boolean pair = i+1 < coordinateDim;
+                for (int iCell = 0; iCell<nCells; iCell++) {
+                    int g = gridIndex[iCell];
+                    gridReal[g] = uAll[iCell*coordinateDim+i];
+                    gridImaginary[g] = pair ? uAll[iCell*coordinateDim+i+1] : 0;
+                }
+                FastFourierTransform.transform(gridReal, gridImaginary, gridDims);
+                for (int iVector = 0; iVector<k.length; iVector++) {
+                    int p = kIndex[iVector];
+                    if (p < 0) continue;
+                    int q = kIndexNeg[iVector];
+                    if (pair) {
+                        realT[iVector][i] = 0.5*(gridReal[p] + gridReal[q]);
+                        imaginaryT[iVector][i] = 0.5*(gridImaginary[p] - gridImaginary[q]);
+                        realT[iVector][i+1] = 0.5*(gridImaginary[p] + gridImaginary[q]);
+                        imaginaryT[iVector][i+1] = -0.5*(gridReal[p] - gridReal[q]);
+                    }
+                    else {
+                        realT[iVector][i] = gridReal[p];
+                        imaginaryT[iVector][i] = gridImaginary[p];
+                    }
+                }
+            }
+        }
+
+        for (int iVector = 0; iVector<k.length; iVector++) {
+            double[] rT = realT[iVector];
+            double[] iT = imaginaryT[iVector];
+            if (kIndex[iVector] > -1) {
+                // shift the phase from the grid origin to the origin of the box
+                double kR = k[iVector].dot(gridOrigin);
+                double coskR = Math.cos(kR) / sqrtCells;
+                double sinkR = Math.sin(kR) / sqrtCells;
+                for (int i = 0; i < coordinateDim; i++) {
+                    double re = rT[i];
+                    rT[i] = coskR * re + sinkR * iT[i];
+                    iT[i] = coskR * iT[i] - sinkR * re;
+                }
+                continue;
+            }
+            for (int i = 0; i < coordinateDim; i++) {
+                rT[i] = 0;
+                iT[i] = 0;
+            }
+            for (int iCell = 0; iCell<nCells; iCell++) {
+                double kR = k[iVector].dot(cells[iCell].cellPosition);
+                double coskR = Math.cos(kR);
+                double sinkR = Math.sin(kR);
+                for (int i = 0; i < coordinateDim; i++) {
+                    rT[i] += coskR * uAll[iCell*coordinateDim+i];
+                    iT[i] -= sinkR * uAll[iCell*coordinateDim+i];
+                }
+            }
+            for (int i = 0; i < coordinateDim; i++) {
+                rT[i] /= sqrtCells;
+                iT[i] /= sqrtCells;
+            }
+        }
+    }
+
+    /**
+     * Determines whether the cells form a complete grid of primitive cells,
+     * and if so, the grid index of each cell.  Leaves gridDims null if not.
+     */
+    protected void makeCellGrid() {
+        gridCells = cells;
+        gridDims = null;
+        int D = space.D();
+        Vector[] primitiveVectors = primitive.vectors();
+        if (primitiveVectors.length != D) return;
+        Matrix a = new Matrix(D, D);
+        for (int i=0; i<D; i++) {
+            for (int j=0; j<D; j++) {
+                a.set(j, i, primitiveVectors[i].getX(j));
+            }
+        }
+        if (Math.abs(a.det()) < 1e-12) return;
+        Matrix aInv = a.inverse();
+
+        // lattice coordinates of each cell relative to the first
+        int nCells = cells.length;
+        int[][] idx = new int[nCells][D];
+        int[] min = new int[D], max = new int[D];
+        Vector dr = space.makeVector();
+        for (int iCell = 0; iCell<nCells; iCell++) {
+            dr.Ev1Mv2(cells[iCell].cellPosition, cells[0].cellPosition);
+            for (int i=0; i<D; i++) {
+                double s = 0;
+                for (int j=0; j<D; j++) {
+                    s += aInv.get(i, j) * dr.getX(j);
+                }
+                idx[iCell][i] = (int)Math.round(s);
+                if (Math.abs(s - idx[iCell][i]) > 1e-6) return;
+                min[i] = Math.min(min[i], idx[iCell][i]);
+                max[i] = Math.max(max[i], idx[iCell][i]);
+            }
+        }
+        int[] dims = new int[D];
+        int total = 1;
+        for (int i=0; i<D; i++) {
+            dims[i] = max[i] - min[i] + 1;
+            total *= dims[i];
+        }
+        if (total != nCells) return;
+        gridIndex = new int[nCells];
+        boolean[] taken = new boolean[nCells];
+        for (int iCell = 0; iCell<nCells; iCell++) {
+            int g = 0;
+            for (int i=0; i<D; i++) {
+                g = g*dims[i] + idx[iCell][i] - min[i];
+            }
+            if (taken[g]) return;
+            taken[g] = true;
+            gridIndex[iCell] = g;
+        }
+        gridOrigin = space.makeVector();
+        gridOrigin.E(cells[0].cellPosition);
+        gridVectors = new Vector[D];
+        for (int i=0; i<D; i++) {
+            gridOrigin.PEa1Tv1(min[i], primitiveVectors[i]);
+            gridVectors[i] = space.makeVector();
+            gridVectors[i].E(primitiveVectors[i]);
+        }
+        gridDims = dims;
+    }
+
+    /**
+     * Returns the grid index of the FFT component corresponding to the wave
+     * vector k, or -1 if k is not on the reciprocal lattice of the grid.  The
+     * index of the component for -k is stored in kIndexNeg[iVector].
+     */
+    protected int gridIndex(Vector k, int[] kIndexNeg, int iVector) {
+        int p = 0, q = 0;
+        for (int i=0; i<gridDims.length; i++) {
+            double m = k.dot(gridVectors[i]) * gridDims[i] / (2*Math.PI);
+            long mi = Math.round(m);
+            if (Math.abs(m - mi) > 1e-6) return -1;
+            int mp = (int)Math.floorMod(mi, (long)gridDims[i]);
+            p = p*gridDims[i] + mp;
+            q = q*gridDims[i] + (gridDims[i] - mp) % gridDims[i];
+        }
+        kIndexNeg[iVector] = q;
+        return p;
+    }
+
     public Box getBox() {
         return box;
     }
@@ -255,6 +449,11 @@ public abstract class CoordinateDefinition {
     protected final MoleculeActionTranslateTo atomActionTranslateTo;
     protected BasisCell[] cells;
     protected final Space space;
+    protected double[] uAll, gridReal, gridImaginary;
+    protected BasisCell[] gridCells;
+    protected int[] gridDims, gridIndex;
+    protected Vector gridOrigin;
+    protected Vector[] gridVectors;
     
     protected static class SiteSource implements AtomLeafAgentManager.AgentSource<Vector> {
         
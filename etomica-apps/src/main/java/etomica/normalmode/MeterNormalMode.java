@@ -58,6 +58,20 @@ public class MeterNormalMode implements IDataSource, IAction, Serializable {
     public WaveVectorFactory getWaveVectorFactory() {
         return waveVectorFactory;
     }
+
+    /**
+     * Sets whether T(k) for all wave vectors should be computed together
+     * (from an FFT over the grid of cells when the wave vectors allow it)
+     * rather than one wave vector at a time.  The results are the same, but
+     * sampling costs O(N log N) rather than O(N^2) for a large crystal.
+     */
+    public void setUseFFT(boolean newUseFFT) {
+        useFFT = newUseFFT;
+    }
+
+    public boolean getUseFFT() {
+        return useFFT;
+    }
     
     /**
      * Sets the box, and should be called while the Atoms are in 
@@ -105,17 +119,32 @@ public class MeterNormalMode implements IDataSource, IAction, Serializable {
         callCount++;
         int coordinateDim = coordinateDefinition.getCoordinateDim();
 
+        if (useFFT) {
+            if (allRealT == null || allRealT.length != numWaveVectors || (numWaveVectors > 0 && allRealT[0].length != coordinateDim)) {
+                allRealT = new double[numWaveVectors][coordinateDim];
+                allImaginaryT = new double[numWaveVectors][coordinateDim];
+            }
+            coordinateDefinition.calcT(waveVectors, allRealT, allImaginaryT);
+        }
+
         // |data.E(0)| here to calculate the current value rather than the sum
         // loop over wave vectors
         for (int iVector = 0; iVector < numWaveVectors; iVector++) {
 
-            coordinateDefinition.calcT(waveVectors[iVector], realT, imaginaryT);
+            double[] rT = realT, iT = imaginaryT;
+            if (useFFT) {
+                rT = allRealT[iVector];
+                iT = allImaginaryT[iVector];
+            }
+            else {
+                coordinateDefinition.calcT(waveVectors[iVector], realT, imaginaryT);
+            }
             
             // add to S(k).  imaginary part of S is 0
             double[] sValues = ((DataDoubleArray)data.getData(iVector)).getData();
             for (int i=0; i<coordinateDim; i++) {
                 for (int j=0; j<coordinateDim; j++) {
-                    sValues[i*coordinateDim+j] += realT[i]*realT[j] + imaginaryT[i]*imaginaryT[j];
+                    sValues[i*coordinateDim+j] += rT[i]*rT[j] + iT[i]*iT[j];
                 }
             }
         }
@@ -165,4 +194,6 @@ public class MeterNormalMode implements IDataSource, IAction, Serializable {
     private int callCount;
 
     protected double[] realT, imaginaryT;
+    protected double[][] allRealT, allImaginaryT;
+    protected boolean useFFT;
 }
@@ -24,6 +24,7 @@ public class ClusterWheatleyMultibody extends ClusterWheatleySoft {
     protected boolean doMulti, doTotal;
     protected double rCut2;
     protected ClusterWheatleyMultibodyBD clusterMultiBD;
+    protected ClusterWheatleyMultibodyDD clusterMultiDD;
     protected double multiTol;
     protected final double[] fQmulti;
 
@@ -89,11 +90,46 @@ public class ClusterWheatleyMultibody extends ClusterWheatleySoft {
         multiTol = newTol;
     }
 
+    /**
+     * Sets whether configurations with a non-additive contribution smaller
+     * than the tolerance are recomputed with double-double arithmetic
+     * (ClusterWheatleyMultibodyDD) rather than BigDecimal.  BigDecimal is
+     * still used for values that are too small for double-double.
+     */
+    public void setDoDoubleDouble(boolean newDoDoubleDouble) {
+        if (!newDoDoubleDouble) {
+            clusterMultiDD = null;
+            return;
+        }
+        clusterMultiDD = new ClusterWheatleyMultibodyDD(n, f, fNonAdditive, fMulti);
+        clusterMultiDD.setDoCaching(false);
+        clusterMultiDD.setDoTotal(doTotal);
+        clusterMultiDD.setRCut(Math.sqrt(rCut2));
+        if (beta != 0) {
+            clusterMultiDD.setTemperature(1/beta);
+        }
+    }
+
+    public boolean getDoDoubleDouble() {
+        return clusterMultiDD != null;
+    }
+
+    /**
+     * Incremental evaluation is not available with non-additive
+     * contributions, which require more than one recursion per configuration.
+     */
+    public void setDoIncremental(boolean newDoIncremental) {
+        if (newDoIncremental) {
+            throw new UnsupportedOperationException("incremental evaluation is not supported with non-additive contributions");
+        }
+    }
+
     public ClusterAbstract makeCopy() {
         ClusterWheatleyMultibody c = new ClusterWheatleyMultibody(n, f, fNonAdditive, fMulti, multiTol);
         c.setTemperature(1/beta);
         c.setDoCaching(doCaching);
         c.setDoTotal(doTotal);
+        c.setDoDoubleDouble(clusterMultiDD != null);
         return c;
     }
 
@@ -102,6 +138,9 @@ public class ClusterWheatleyMultibody extends ClusterWheatleySoft {
         if (clusterMultiBD != null) {
             clusterMultiBD.setTemperature(newT);
         }
+        if (clusterMultiDD != null) {
+            clusterMultiDD.setTemperature(newT);
+        }
     }
 
     public void setDoTotal(boolean newDoTotal) {
@@ -109,10 +148,16 @@ public class ClusterWheatleyMultibody extends ClusterWheatleySoft {
         if (clusterMultiBD != null) {
             clusterMultiBD.setDoTotal(newDoTotal);
         }
+        if (clusterMultiDD != null) {
+            clusterMultiDD.setDoTotal(newDoTotal);
+        }
     }
 
     public void setRCut(double newRCut) {
         rCut2 = newRCut * newRCut;
+        if (clusterMultiDD != null) {
+            clusterMultiDD.setRCut(newRCut);
+        }
     }
 
     public void calcValue(BoxCluster box) {
@@ -144,7 +189,10 @@ public class ClusterWheatleyMultibody extends ClusterWheatleySoft {
         // BD only gets triggered here
         double bfac = (1.0-n)/SpecialFunctions.factorial(n);
         if (Math.abs(value) > 0 && Math.abs(value/bfac) < multiTol) {
-            if (clusterMultiBD != null) {
+            if (clusterMultiDD != null) {
+                value = clusterMultiDD.value(box);
+            }
+            else if (clusterMultiBD != null) {
                 value = clusterMultiBD.value(box);
             }
             else {
@@ -0,0 +1,199 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.math.DoubleDouble;
+import etomica.math.SpecialFunctions;
+import etomica.molecule.IMoleculeList;
+import etomica.molecule.MoleculeArrayList;
+
+/**
+ * This class uses Wheatley's recursion approach to calculating all biconnected
+ * diagrams, but adds in non-additive contributions.  All computations are done
+ * with double-double arithmetic.  If the non-additive contribution is too
+ * small to be computed with double-double precision, the value is recomputed
+ * with ClusterWheatleyMultibodyBD.
+ */
+public class ClusterWheatleyMultibodyDD extends ClusterWheatleySoftDD {
+
+    protected final MayerFunctionNonAdditive[] fMulti;
+    protected final MayerFunctionNonAdditive fNonAdditive;
+    protected final int[] moleculeIndices;
+    protected final double[] r2;
+    protected final MoleculeArrayList molecules;
+    protected boolean doMulti, doTotal;
+    protected double rCut2;
+    protected final DoubleDouble[] fQmulti;
+    protected final DoubleDouble fBPair = new DoubleDouble();
+    protected ClusterWheatleyMultibodyBD clusterMultiBD;
+    protected int precisionLimit = 300;
+
+    /**
+     * @param nPoints number of points
+     * @param f pair Mayer function
+     * @param fNonAdditive Mayer function that returns non-additive value for
+     *          any number of molecules.  May be null.
+     * @param fMulti array of non-additive Mayer functions.  fMulti[3] is the
+     *          3-body Mayer function (exp(-beta*deltaU3)-1), fMulti[4] is the
+     *          4-body Mayer function, etc.  fMulti null entries will be
+     *          ignored and the array need to not be of size equal to nPoints.
+     */
+    public ClusterWheatleyMultibodyDD(int nPoints, MayerFunction f, MayerFunctionNonAdditive fNonAdditive, MayerFunctionNonAdditive[] fMulti) {
+        super(nPoints, f);
+        this.fMulti = fMulti;
+        this.fNonAdditive = fNonAdditive;
+        moleculeIndices = new int[nPoints];
+        r2 = new double[nPoints*(nPoints-1)/2];
+        molecules = new MoleculeArrayList(nPoints);
+        rCut2 = Double.POSITIVE_INFINITY;
+        fQmulti = new DoubleDouble[1<<n];
+        for (int i=0; i<fQmulti.length; i++) {
+            fQmulti[i] = new DoubleDouble(1);
+        }
+    }
+
+    /**
+     * Sets the largest precision (digits) used by the BigDecimal cluster that
+     * handles configurations beyond double-double precision.
+     */
+    public void setPrecisionLimit(int newLimit) {
+        if (newLimit > 300) newLimit = 300;
+        precisionLimit = newLimit;
+        clusterMultiBD = null;
+    }
+
+    public ClusterAbstract makeCopy() {
+        ClusterWheatleyMultibodyDD c = new ClusterWheatleyMultibodyDD(n, f, fNonAdditive, fMulti);
+        c.setTemperature(1/beta);
+        c.setDoCaching(doCaching);
+        c.setPrecisionLimit(precisionLimit);
+        c.setDoTotal(doTotal);
+        c.setRCut(Math.sqrt(rCut2));
+        return c;
+    }
+
+    public void setTemperature(double temperature) {
+        super.setTemperature(temperature);
+        if (clusterMultiBD != null) {
+            clusterMultiBD.setTemperature(temperature);
+        }
+    }
+
+    public void setDoTotal(boolean newDoTotal) {
+        doTotal = newDoTotal;
+        if (clusterMultiBD != null) {
+            clusterMultiBD.setDoTotal(newDoTotal);
+        }
+    }
+
+    public void setRCut(double newRCut) {
+        rCut2 = newRCut * newRCut;
+    }
+
+    public void calcValue(BoxCluster box) {
+        CoordinatePairSet cPairs = box.getCPairSet();
+        for(int i=0; i<n-1; i++) {
+            for(int j=i+1; j<n; j++) {
+                if (cPairs.getr2(i,j) > rCut2) {
+                    value = 0;
+                    return;
+                }
+            }
+        }
+
+        int nf = 1<<n;
+        if (doTotal) {
+            doMulti = true;
+            super.calcValue(box);
+            return;
+        }
+        // do (multi+pair) - pair here so that we avoid recomputing f bonds
+        doMulti = false;
+        super.calcValue(box);
+        fBPair.E(fB[nf-1]);
+        doMulti = true;
+        super.calcValue(box);
+        fB[nf-1].ME(fBPair);
+        double fBdiff = fB[nf-1].doubleValue();
+        if (Math.abs(fBdiff) < 1e5*DoubleDouble.EPSILON) {
+            // value is too small for us to compute it precisely
+            if (clusterMultiBD == null) {
+                clusterMultiBD = new ClusterWheatleyMultibodyBD(n, f, fNonAdditive, fMulti, Math.min(40, precisionLimit));
+                clusterMultiBD.setTemperature(1/beta);
+                clusterMultiBD.setDoCaching(false);
+                clusterMultiBD.setPrecisionLimit(precisionLimit);
+                clusterMultiBD.setDoTotal(doTotal);
+            }
+            value = clusterMultiBD.value(box);
+            return;
+        }
+        value = (1-n)*fBdiff/SpecialFunctions.factorial(n);
+    }
+
+    protected void calcFullFQ(BoxCluster box) {
+        super.calcFullFQ(box);
+        if (!doMulti) return;
+        for (int i=3; i<fMulti.length; i++) {
+            if (fMulti[i]!=null) fMulti[i].setBox(box);
+        }
+        if (fNonAdditive != null) {
+            fNonAdditive.setBox(box);
+        }
+        int nf = 1<<n;
+        IMoleculeList boxMolecules = box.getMoleculeList();
+        // FQ[i] now contains the exp(-bU2) where U2 is the pair-wise energy for set i.
+        // we need to go around and add the non-additive energy for each set.
+
+        for (int i=3; i<nf; i++) {
+            fQmulti[i].E(1);
+            int j = i & -i;//lowest bit in i
+            if (i==j) continue; // 1-point set
+            int k = i&~j; //strip j bit from i and set result to k
+            if (k == (k&-k)) continue; // 2-point set; these fQ's were filled when bonds were computed, so skip
+            if (fQ[i].isZero()) continue;
+
+            // we want to loop over subsets of i with at least 3 points
+            int iLowBit = (i & -i);//next lowest bit
+            for (int isub=iLowBit; isub<i; isub+=iLowBit) {//sum over partitions of i
+                while ((isub & ~i) != 0) {
+                    // loop until isub is an actual subset of i
+                    isub += iLowBit;
+                }
+                if (isub == i) break;
+                fQ[i].TE(fQmulti[isub]);
+                if (fQ[i].isZero()) break;
+            }
+            if (fQ[i].isZero()) continue;
+
+            int l = 0;
+            molecules.clear();
+            for (int a=0; a<n; a++) {
+                if ((i & (1<<a)) != 0) {
+                    moleculeIndices[l] = a;
+                    molecules.add(boxMolecules.get(a));
+                    l++;
+                }
+            }
+            if ((fMulti.length <= l || fMulti[l] == null) && fNonAdditive == null) continue;
+            int ll = 0;
+            for (int a=0; a<l-1; a++) {
+                for (int b=a+1; b<l; b++) {
+                    r2[ll] = box.getCPairSet().getr2(moleculeIndices[a],moleculeIndices[b]);
+                    ll++;
+                }
+            }
+            if (fMulti.length > l && fMulti[l] != null) {
+                fQmulti[i].E(fMulti[l].f(molecules, l, moleculeIndices, r2, beta));
+                fQmulti[i].PE(1);
+            }
+            fQ[i].TE(fQmulti[i]);
+            if (fNonAdditive != null) {
+                work.E(fNonAdditive.f(molecules, l, moleculeIndices, r2, beta));
+                work.PE(1);
+                fQ[i].TE(work);
+            }
+        }
+    }
+}
@@ -4,7 +4,12 @@
 
 package etomica.virial;
 
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.atom.IAtomOriented;
 import etomica.math.SpecialFunctions;
+import etomica.molecule.IMoleculeList;
+import etomica.space.Vector;
 
 
 /**
@@ -26,8 +31,15 @@ public class ClusterWheatleySoft implements ClusterAbstract {
     public static boolean pushme = false;
     protected double tol;
     protected ClusterWheatleySoftBD clusterBD;
+    protected ClusterWheatleySoftDD clusterDD;
     protected boolean debug = false;
     protected boolean doCaching = true;
+    protected boolean doIncremental;
+    // A and B values after each articulation-point stage, for incremental evaluation
+    protected double[][] fAStage, fBStage, fAStageLast, fBStageLast;
+    protected double[] fQLast, fCLast;
+    // coordinates (and orientations) of the configuration the stage arrays correspond to
+    protected double[] coords, coordsLast;
 
     public ClusterWheatleySoft(int nPoints, MayerFunction f, double tol) {
         this.n = nPoints;
@@ -49,12 +61,78 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         if (clusterBD != null) {
             clusterBD.setDoCaching(doCaching);
         }
+        if (clusterDD != null) {
+            clusterDD.setDoCaching(doCaching);
+        }
+    }
+
+    /**
+     * Sets whether configurations where the cluster value is smaller than
+     * tol (where double precision is insufficient) are recomputed with
+     * double-double arithmetic (ClusterWheatleySoftDD) instead of BigDecimal.
+     * Double-double carries about 32 digits, which is less than the
+     * BigDecimal precision used for tol below 1e-11, but is much faster.
+     */
+    public void setDoDoubleDouble(boolean newDoDoubleDouble) {
+        if (!newDoDoubleDouble || tol == 0) {
+            clusterDD = null;
+            return;
+        }
+        clusterDD = makeClusterDD();
+        clusterDD.setDoCaching(doCaching);
+        if (beta != 0) {
+            clusterDD.setTemperature(1/beta);
+        }
+    }
+
+    public boolean getDoDoubleDouble() {
+        return clusterDD != null;
+    }
+
+    /**
+     * Sets whether the cluster value is computed incrementally.  When only
+     * some points have moved since the last configuration (as with
+     * MCMoveClusterAtom or MCMoveClusterMolecule), only the bonds involving
+     * those points and the fQ, fC, fA and fB values of sets that contain them
+     * are recomputed; values for all other sets are reused.  This requires
+     * keeping fA and fB for every articulation-point stage (2 n 2^n doubles).
+     * Moves that displace every point (MCMoveClusterAtomMulti) gain nothing.
+     */
+    public void setDoIncremental(boolean newDoIncremental) {
+        doIncremental = newDoIncremental;
+        coords = coordsLast = null;
+        if (!doIncremental) {
+            fAStage = fBStage = fAStageLast = fBStageLast = null;
+            fQLast = fCLast = null;
+            return;
+        }
+        int nf = 1<<n;
+        fAStage = new double[n][nf];
+        fBStage = new double[n][nf];
+        fAStageLast = new double[n][nf];
+        fBStageLast = new double[n][nf];
+        fQLast = new double[nf];
+        fCLast = new double[nf];
+    }
+
+    public boolean getDoIncremental() {
+        return doIncremental;
+    }
+
+    /**
+     * Returns the double-double cluster used when the value is smaller than
+     * tol.  Subclasses that compute bonds differently should override this.
+     */
+    protected ClusterWheatleySoftDD makeClusterDD() {
+        return new ClusterWheatleySoftDD(n, f);
     }
 
     public ClusterAbstract makeCopy() {
         ClusterWheatleySoft c = new ClusterWheatleySoft(n, f, tol);
         c.setTemperature(1/beta);
         c.setDoCaching(doCaching);
+        c.setDoDoubleDouble(clusterDD != null);
+        c.setDoIncremental(doIncremental);
         return c;
     }
 
@@ -74,6 +152,7 @@ public class ClusterWheatleySoft implements ClusterAbstract {
                 // cluster was a trial that was rejected.  so drop the most recent value/ID
                 cPairID = lastCPairID;
                 value = lastValue;
+                if (doIncremental) restoreLastState();
                 return value;
             }
     
@@ -81,8 +160,20 @@ public class ClusterWheatleySoft implements ClusterAbstract {
             lastCPairID = cPairID;
             lastValue = value;
             cPairID = thisCPairID;
+            if (doIncremental) saveLastState();
         }
-      
+
+        if (doIncremental && !pushme) {
+            int movedPoints = findMovedPoints(box);
+            if (movedPoints == 0) return value;
+            updateF(box, movedPoints);
+            calcValueIncremental(box, movedPoints);
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new RuntimeException("oops "+value);
+            }
+            return value;
+        }
+
         updateF(box);
       
         calcValue(box);
@@ -267,7 +358,10 @@ public class ClusterWheatleySoft implements ClusterAbstract {
             }
         }
         if (Math.abs(fB[nf-1]) < tol) {
-            if (clusterBD != null) {
+            if (clusterDD != null) {
+                value = clusterDD.value(box);
+            }
+            else if (clusterBD != null) {
                 value = clusterBD.value(box);
             }
             else {
@@ -281,7 +375,251 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         }
     }
 
+    /**
+     * Recomputes fQ, fC and the fA and fB stage values for all sets
+     * containing any of the points in movedPoints (a bit mask) and then the
+     * cluster value.  Values for other sets are left from the previous
+     * configuration, so bonds involving the moved points must be updated
+     * first.  All sets are computed if movedPoints includes every point.
+     */
+    protected void calcValueIncremental(BoxCluster box, int movedPoints) {
+        int nf = 1<<n;
+        // fQ; sets are visited in increasing order so fQ[k] is current
+        for (int i=3; i<nf; i++) {
+            if ((i & movedPoints) == 0) continue;
+            int j = i & -i;//lowest bit in i
+            if (i==j) continue; // 1-point set
+            int k = i&~j;
+            if (k == (k&-k)) continue; // 2-point set, filled by updateF
+            fQ[i] = fQ[k];
+            if (fQ[i] == 0) continue;
+            for (int l=(j<<1); l<i; l=(l<<1)) {
+                if ((l&i)==0) continue;
+                fQ[i] *= fQ[l | j];
+            }
+        }
+
+        //Compute the fC's
+        for(int i=1; i<nf; i++) {
+            if ((i & movedPoints) == 0) continue;
+            fC[i] = fQ[i];
+            int iLowBit = i & -i;
+            int inc = iLowBit<<1;
+            for(int j=iLowBit; j<i; j+=inc) {
+                int jComp = i & ~j;
+                while ((j|jComp) != i && j<i) {
+                    int jHighBits = j^iLowBit;
+                    int jlow = jHighBits & -jHighBits;
+                    j += jlow;
+                    jComp = (i & ~j);
+                }
+                if (j==i) break;
+                fC[i] -= fC[j] * fQ[jComp];
+            }
+        }
+
+        // stage 0: fB0[i] has no articulation point at 0
+        double[] fB0 = fBStage[0];
+        fB0[1] = fC[1];
+        for (int i=3; i<nf; i+=2) {
+            if ((i & movedPoints) == 0) continue;
+            double a = 0;
+            int ii = i - 1;
+            int iLow2Bit = (ii & -ii);
+            int jBits = 1 | iLow2Bit;
+            if (jBits != i) {
+                int iii = ii ^ iLow2Bit;
+                int jInc = (iii & -iii);
+                for (int j=jBits; j<i; j+=jInc) {
+                    int jComp = (i & ~j);
+                    while ((j|jComp) != i && j<i) {
+                        int jHighBits = j^jBits;
+                        int jlow = jHighBits & -jHighBits;
+                        j += jlow;
+                        jComp = (i & ~j);
+                    }
+                    if (j==i) break;
+                    a += fB0[j] * fC[jComp|1];
+                }
+            }
+            fB0[i] = fC[i] - a;
+        }
+
+        // stage v: fBv[i] has no articulation point at v or below.  Stage v
+        // only involves sets containing v, so a set's value from the previous
+        // stage is found at the highest point it contains below v.
+        for (int v=1; v<n; v++) {
+            int vs1 = 1<<v;
+            double[] fAv = fAStage[v];
+            double[] fBv = fBStage[v];
+            for (int i=vs1; i<nf; i++) {
+                if ((i & vs1) == 0 || (i & movedPoints) == 0) continue;
+                int iBelow = i & (vs1-1);
+                double b = iBelow == 0 ? fC[i] : fBStage[31-Integer.numberOfLeadingZeros(iBelow)][i];
+                double a = 0;
+                int iLowBit = (i&-i);
+                if (iLowBit != i) {
+                    int ii = i ^ iLowBit;
+                    int iLow2Bit = (ii & -ii);
+                    if (iLowBit != vs1 && iLow2Bit != vs1) {
+                        int jBits = iLowBit | vs1;
+                        int jInc = iLow2Bit;
+                        for (int j=jBits; j<i; j+=jInc) {
+                            if ((j & jBits) != jBits) {
+                                j |= vs1;
+                                if (j==i) break;
+                            }
+                            int jComp = i & ~j;
+                            while ((j|jComp) != i && j<i) {
+                                int jHighBits = j^jBits;
+                                int jlow = jHighBits & -jHighBits;
+                                j += jlow;
+                                j |= vs1;
+                                jComp = (i & ~j);
+                            }
+                            if (j==i) break;
+                            a += fBv[j] * (fBv[jComp|vs1] + fAv[jComp|vs1]);
+                        }
+                    }
+                    else {
+                        int jBits = iLowBit | iLow2Bit;
+                        if (jBits != i) {
+                            int iii = ii ^ iLow2Bit;
+                            int jInc = (iii & -iii);
+                            for (int j=jBits; j<i; j+=jInc) {
+                                int jComp = i & ~j;
+                                while ((j|jComp) != i && j<i) {
+                                    int jHighBits = j^jBits;
+                                    int jlow = jHighBits & -jHighBits;
+                                    j += jlow;
+                                    jComp = (i & ~j);
+                                }
+                                if (j==i) break;
+                                a += fBv[j] * (fBv[jComp|vs1] + fAv[jComp|vs1]);
+                            }
+                        }
+                    }
+                }
+                fAv[i] = a;
+                fBv[i] = b - a;
+            }
+        }
+        fB[nf-1] = fBStage[n-1][nf-1];
+        if (Math.abs(fB[nf-1]) < tol) {
+            if (clusterDD != null) {
+                value = clusterDD.value(box);
+            }
+            else if (clusterBD != null) {
+                value = clusterBD.value(box);
+            }
+            else {
+                value = 0;
+            }
+            return;
+        }
+        value = (1-n)*fB[nf-1]/SpecialFunctions.factorial(n);
+    }
+
+    /**
+     * Compares the coordinates of each molecule with those of the last
+     * configuration computed incrementally and returns a bit mask of the
+     * points that have moved (all points if there is no previous
+     * configuration).  The stored coordinates are updated.
+     */
+    protected int findMovedPoints(BoxCluster box) {
+        IMoleculeList molecules = box.getMoleculeList();
+        boolean first = coords == null;
+        if (first) {
+            int nCoords = 0;
+            for (int i=0; i<n; i++) {
+                IAtomList atoms = molecules.get(i).getChildList();
+                for (int j=0; j<atoms.size(); j++) {
+                    IAtom atom = atoms.get(j);
+                    nCoords += atom.getPosition().getD();
+                    if (atom instanceof IAtomOriented) nCoords += atom.getPosition().getD();
+                }
+            }
+            coords = new double[nCoords];
+            coordsLast = new double[nCoords];
+        }
+        int moved = 0;
+        int k = 0;
+        for (int i=0; i<n; i++) {
+            IAtomList atoms = molecules.get(i).getChildList();
+            for (int j=0; j<atoms.size(); j++) {
+                IAtom atom = atoms.get(j);
+                Vector p = atom.getPosition();
+                for (int d=0; d<p.getD(); d++, k++) {
+                    if (coords[k] != p.getX(d)) {
+                        coords[k] = p.getX(d);
+                        moved |= 1<<i;
+                    }
+                }
+                if (atom instanceof IAtomOriented) {
+                    Vector o = ((IAtomOriented)atom).getOrientation().getDirection();
+                    for (int d=0; d<o.getD(); d++, k++) {
+                        if (coords[k] != o.getX(d)) {
+                            coords[k] = o.getX(d);
+                            moved |= 1<<i;
+                        }
+                    }
+                }
+            }
+        }
+        return first ? (1<<n)-1 : moved;
+    }
+
+    /**
+     * Saves the state used for incremental evaluation so that it can be
+     * restored if the new configuration is rejected.
+     */
+    protected void saveLastState() {
+        if (coords == null) {
+            coordsLast = null;
+            return;
+        }
+        if (coordsLast == null) coordsLast = new double[coords.length];
+        int nf = 1<<n;
+        System.arraycopy(coords, 0, coordsLast, 0, coords.length);
+        System.arraycopy(fQ, 0, fQLast, 0, nf);
+        System.arraycopy(fC, 0, fCLast, 0, nf);
+        for (int v=0; v<n; v++) {
+            System.arraycopy(fAStage[v], 0, fAStageLast[v], 0, nf);
+            System.arraycopy(fBStage[v], 0, fBStageLast[v], 0, nf);
+        }
+    }
+
+    /**
+     * Returns to the state saved for the previous configuration.
+     */
+    protected void restoreLastState() {
+        if (coordsLast == null) {
+            coords = null;
+            return;
+        }
+        int nf = 1<<n;
+        System.arraycopy(fQLast, 0, fQ, 0, nf);
+        System.arraycopy(fCLast, 0, fC, 0, nf);
+        double[] tmp = coords;
+        coords = coordsLast;
+        coordsLast = tmp;
+        double[][] tmpStage = fAStage;
+        fAStage = fAStageLast;
+        fAStageLast = tmpStage;
+        tmpStage = fBStage;
+        fBStage = fBStageLast;
+        fBStageLast = tmpStage;
+    }
+
     protected void updateF(BoxCluster box) {
+        updateF(box, (1<<n)-1);
+    }
+
+    /**
+     * Recalculates the f values for all pairs involving any of the points in
+     * the pointMask bit mask.
+     */
+    protected void updateF(BoxCluster box, int pointMask) {
         CoordinatePairSet cPairs = box.getCPairSet();
         AtomPairSet aPairs = box.getAPairSet();
 
@@ -289,6 +627,7 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         // recalculate all f values for all pairs
         for(int i=0; i<n-1; i++) {
             for(int j=i+1; j<n; j++) {
+                if ((((1<<i)|(1<<j)) & pointMask) == 0) continue;
                 double ff = f.f(aPairs.getAPair(i,j),cPairs.getr2(i,j), beta);
                 if (false && Double.isNaN(ff)) {
                     f.f(aPairs.getAPair(i,j),cPairs.getr2(i,j), beta);
@@ -302,8 +641,13 @@ public class ClusterWheatleySoft implements ClusterAbstract {
 
     public void setTemperature(double temperature) {
         beta = 1/temperature;
+        // bonds all change; the next incremental evaluation must start over
+        coords = coordsLast = null;
         if (clusterBD != null) {
             clusterBD.setTemperature(temperature);
         }
+        if (clusterDD != null) {
+            clusterDD.setTemperature(temperature);
+        }
     }
 }
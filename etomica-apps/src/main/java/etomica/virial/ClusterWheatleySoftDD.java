@@ -0,0 +1,332 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.math.DoubleDouble;
+import etomica.math.SpecialFunctions;
+
+
+/**
+ * This class calculates the sum of all biconnected clusters using Wheatley's
+ * recursive formulation, with double-double arithmetic.  It gives about 32
+ * digits of precision, which is enough for most configurations where
+ * ClusterWheatleySoft loses precision, and is much faster than
+ * ClusterWheatleySoftBD since no objects are created during the calculation.
+ * Configurations where even double-double precision is insufficient are
+ * recomputed with ClusterWheatleySoftBD.
+ */
+public class ClusterWheatleySoftDD implements ClusterAbstract {
+
+    protected final int n;
+    protected final MayerFunction f;
+
+    protected final DoubleDouble[] fQ, fC;
+    protected final DoubleDouble[] fA, fB;
+    protected long cPairID = -1, lastCPairID = -1;
+    protected double value, lastValue;
+    protected double beta;
+    public static boolean pushme = false;
+    protected double tol;
+    protected boolean doCaching;
+    protected final DoubleDouble work = new DoubleDouble();
+    protected ClusterWheatleySoftBD clusterBD;
+
+    public ClusterWheatleySoftDD(int nPoints, MayerFunction f) {
+        this.n = nPoints;
+        this.f = f;
+        int nf = 1<<n;  // 2^n
+        fQ = new DoubleDouble[nf];
+        fC = new DoubleDouble[nf];
+        fA = new DoubleDouble[nf];
+        fB = new DoubleDouble[nf];
+        for (int i=0; i<nf; i++) {
+            fQ[i] = new DoubleDouble();
+            fC[i] = new DoubleDouble();
+            fA[i] = new DoubleDouble();
+            fB[i] = new DoubleDouble();
+        }
+        for(int i=0; i<n; i++) {
+            fQ[1<<i].E(1);
+        }
+        // like ClusterWheatleySoftBD, allow for 3 digits of roundoff, but
+        // also require 10 significant digits in the result; smaller values
+        // are recomputed with BigDecimal
+        tol = 1000*DoubleDouble.EPSILON*1e10;
+    }
+
+    public void setDoCaching(boolean newDoCaching) {
+        doCaching = newDoCaching;
+        if (clusterBD != null) {
+            clusterBD.setDoCaching(doCaching);
+        }
+    }
+
+    /**
+     * Returns the BigDecimal cluster used for configurations where the
+     * double-double result is smaller than tol, and so has fewer than about
+     * 10 significant digits.  With 60 digits, BigDecimal gives 10 significant
+     * digits for values down to about 1e-47.
+     */
+    protected ClusterWheatleySoftBD makeClusterBD() {
+        return new ClusterWheatleySoftBD(n, f, 60);
+    }
+
+    public ClusterAbstract makeCopy() {
+        ClusterWheatleySoftDD c = new ClusterWheatleySoftDD(n, f);
+        c.setTemperature(1/beta);
+        c.setDoCaching(doCaching);
+        return c;
+    }
+
+    public int pointCount() {
+        return n;
+    }
+
+    public double value(BoxCluster box) {
+        if (doCaching) {
+            CoordinatePairSet cPairs = box.getCPairSet();
+            long thisCPairID = cPairs.getID();
+            if (thisCPairID == cPairID) {
+                return value;
+            }
+            if (thisCPairID == lastCPairID) {
+                // we went back to the previous cluster, presumably because the last
+                // cluster was a trial that was rejected.  so drop the most recent value/ID
+                cPairID = lastCPairID;
+                value = lastValue;
+                return value;
+            }
+    
+            // a new cluster
+            lastCPairID = cPairID;
+            lastValue = value;
+            cPairID = thisCPairID;
+        }
+      
+        updateF(box);
+      
+        calcValue(box);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            updateF(box);
+            calcValue(box);
+            throw new RuntimeException("oops");
+        }
+        return value;
+    }
+
+    /**
+     * This calculates all FQ values given that the entries for pairs have
+     * already been populated.
+     */
+    protected void calcFullFQ(BoxCluster box) {
+        int nf = 1<<n;
+        // generate all partitions and compute product of e-bonds for all pairs in partition
+        for (int i=3; i<nf; i++) {
+            int j = i & -i;//lowest bit in i
+            if (i==j) continue; // 1-point set
+            int k = i&~j; //strip j bit from i and set result to k
+            if (k == (k&-k)) continue; // 2-point set; these fQ's were filled when bonds were computed, so skip
+            fQ[i].E(fQ[k]); //initialize with previously-computed product of all pairs in partition, other than j
+            if (fQ[i].isZero()) continue;
+            //loop over pairs formed from j and each point in partition; multiply by bond for each pair
+            //all such pairs will be with bits higher than j, as j is the lowest bit in i
+            for (int l=(j<<1); l<i; l=(l<<1)) {
+                if ((l&i)==0) continue; //l is not in partition
+                fQ[i].TE(fQ[l | j]);
+            }
+        }
+    }
+
+    /**
+     * Returns the cluster value for the given configuration.  You must call
+     * doCheck(BoxCluster) before calling this method.
+     */
+    public void calcValue(BoxCluster box) {
+        double maxR2 = 0.1;
+        if (pushme) {
+            // force the system to hang out between minMaxR2 and maxMaxR2
+            for (int i=0; i<n-1; i++) {
+                for (int j=i+1; j<n; j++) {
+                    double r2 = box.getCPairSet().getr2(i,j);
+                    if (r2 > maxR2) maxR2 = r2;
+                }
+            }
+            double minMaxR2 = 5*5;
+            if (maxR2 < minMaxR2) {
+                value = 1e-200;
+                return;
+            }
+            double maxMaxR2 = 7*7;
+            if (maxR2 > maxMaxR2) {
+                value = 0;
+                return;
+            }
+        }
+        calcFullFQ(box);
+
+        int nf = 1<<n;
+        //Compute the fC's
+        for(int i=1; i<nf; i++) {
+            fC[i].E(fQ[i]);
+            int iLowBit = i & -i;
+            int inc = iLowBit<<1;
+            for(int j=iLowBit; j<i; j+=inc) {
+                int jComp = i & ~j;
+                while ((j|jComp) != i && j<i) {
+                    int jHighBits = j^iLowBit;
+                    int jlow = jHighBits & -jHighBits;
+                    j += jlow;
+                    jComp = (i & ~j);
+                }
+                if (j==i) break;
+                fC[i].MEv1Tv2(fC[j], fQ[jComp]);//for fQ, flip the bits on j; use only those appearing in i
+            }
+        }
+
+        // find fA1
+        for (int i=2; i<nf; i+=2) {
+            // all even sets don't contain 1
+            //fA[i] = 0;
+            fB[i].E(fC[i]);
+        }
+        fA[1].E(0);
+        fB[1].E(fC[1]);
+        for (int i=3; i<nf; i+=2) {
+            // every set will contain 1
+            fA[i].E(0);
+            fB[i].E(fC[i]);
+            int ii = i - 1;//all bits in i but lowest
+            int iLow2Bit = (ii & -ii);//next lowest bit
+            int jBits = 1 | iLow2Bit;
+            if (jBits==i) continue;
+            //jBits has 1 and next lowest bit in i
+            int iii = ii ^ iLow2Bit;//i with 2 lowest bits off
+            int jInc = (iii & -iii);//3rd lowest bit, also increment for j
+            for (int j=jBits; j<i; j+=jInc) {//sum over partitions of i containing jBits
+                int jComp = (i & ~j); //subset of i complementing j
+                while ((j|jComp) != i && j<i) {
+                    int jHighBits = j^jBits;
+                    int jlow = jHighBits & -jHighBits;
+                    j += jlow;
+                    jComp = (i & ~j);
+                }
+                if (j==i) break;
+                fA[i].PEv1Tv2(fB[j], fC[jComp|1]);
+            }
+            fB[i].ME(fA[i]);//remove from B graphs that contain articulation point at 0
+        }
+
+        for (int v=1; v<n; v++) {
+            int vs1 = 1<<v;
+            for (int i=vs1+1; i<nf; i++) {
+                fA[i].E(0);
+//                fB[v][i] = fB[v-1][i];//no a.p. at v or below, starts with those having no a.p. at v-1 or below
+                //rest of this is to generate A (diagrams having a.p. at v but not below), and subtract it from B
+                if ((i & vs1) == 0) continue;//if i doesn't contain v, fA and fB are done
+                int iLowBit = (i&-i);//lowest bit in i
+                if (iLowBit == i) { //lowest bit is only bit; fA and fB are done
+                    continue;
+                }
+                int jBits;
+                int ii = i ^ iLowBit;
+                int iLow2Bit = (ii & -ii);
+                if (iLowBit != vs1 && iLow2Bit != vs1) {
+                    //v is not in the lowest 2 bits
+                    // jBits is the lowest bit and v
+                    jBits = iLowBit | vs1;
+
+                    // we can only increment by the 2nd lowest
+                    int jInc = iLow2Bit;
+
+                    //at this point jBits has (lowest bit + v) or (v + next lowest bit)
+                    for (int j=jBits; j<i; j+=jInc) {//sum over partitions of i
+                        if ((j & jBits) != jBits) {
+                            //ensure jBits are in j
+                            j |= vs1;
+                            if (j==i) break;
+                        }
+                        int jComp = i & ~j;//subset of i complementing j
+                        while ((j|jComp) != i && j<i) {
+                            int jHighBits = j^jBits;
+                            int jlow = jHighBits & -jHighBits;
+                            j += jlow; // this might knock out the v bit
+                            j |= vs1;
+                            jComp = (i & ~j);
+                        }
+                        if (j==i) break;
+                        work.E(fB[jComp|vs1]);
+                        work.PE(fA[jComp|vs1]);
+                        fA[i].PEv1Tv2(fB[j], work);
+                    }
+                }
+                else {
+                    //lowest 2 bits contain v
+                    // jBits is the lowest 2 bits
+                    // we can start at jBits and increment by the 3rd lowest bit
+                    jBits = iLowBit | iLow2Bit;
+                    if (jBits == i) continue; // no bits left for jComp
+                    
+                    int iii = ii ^ iLow2Bit;
+                    int jInc = (iii & -iii);
+
+                    //at this point jBits has (lowest bit + v) or (v + next lowest bit)
+                    for (int j=jBits; j<i; j+=jInc) {//sum over partitions of i
+                        // start=jBits and jInc ensure that every set includes jBits
+                        int jComp = i & ~j;//subset of i complementing j
+                        while ((j|jComp) != i && j<i) {
+                            int jHighBits = j^jBits;
+                            int jlow = jHighBits & -jHighBits;
+                            j += jlow;
+                            jComp = (i & ~j);
+                        }
+                        if (j==i) break;
+                        work.E(fB[jComp|vs1]);
+                        work.PE(fA[jComp|vs1]);
+                        fA[i].PEv1Tv2(fB[j], work);
+                    }
+                }
+
+                fB[i].ME(fA[i]);//remove from B graphs that contain articulation point at v
+            }
+        }
+        if (Math.abs(fB[nf-1].doubleValue()) < tol) {
+            if (clusterBD == null) {
+                clusterBD = makeClusterBD();
+                clusterBD.setDoCaching(doCaching);
+                clusterBD.setTemperature(1/beta);
+            }
+            value = clusterBD.value(box);
+            return;
+        }
+        value = (1-n)*fB[nf-1].doubleValue()/SpecialFunctions.factorial(n);
+        if (pushme && maxR2 > 2*2) {
+//            value *= Math.pow(maxR2/4, 6);
+        }
+    }
+
+    protected void updateF(BoxCluster box) {
+        CoordinatePairSet cPairs = box.getCPairSet();
+        AtomPairSet aPairs = box.getAPairSet();
+
+        f.setBox(box);
+        // recalculate all f values for all pairs
+        for(int i=0; i<n-1; i++) {
+            for(int j=i+1; j<n; j++) {
+                double ff = f.f(aPairs.getAPair(i,j),cPairs.getr2(i,j), beta);
+//                if (Math.abs(ff) < 1e-14) ff = 0;
+                // ff+1 is computed exactly
+                fQ[(1<<i)|(1<<j)].E(ff);
+                fQ[(1<<i)|(1<<j)].PE(1);
+            }
+        }
+    }
+
+    public void setTemperature(double temperature) {
+        beta = 1/temperature;
+        if (clusterBD != null) {
+            clusterBD.setTemperature(temperature);
+        }
+    }
+}
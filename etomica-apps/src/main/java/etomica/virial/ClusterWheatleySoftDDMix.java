@@ -0,0 +1,71 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+/**
+ * Cluster class using Wheatley's recursion with double-double arithmetic to handle
+ * mixtures.
+ */
+public class ClusterWheatleySoftDDMix extends ClusterWheatleySoftDD {
+
+    protected final MayerFunction[][] mixF;
+    protected final int[] nTypes;
+    protected final MayerFunction[][] fMap;
+    
+    public ClusterWheatleySoftDDMix(int nPoints, int[] nTypes, MayerFunction[][] f) {
+        super(nPoints, null);
+        this.nTypes = nTypes;
+        mixF = f;
+        fMap = new MayerFunction[nPoints][nPoints];
+        int iType = 0, jType = 0;
+        int iSum = nTypes[0], jSum = 0;
+        for (int i=0; i<nPoints; i++) {
+            while (i>=iSum) {
+                iType++;
+                iSum += nTypes[iType];
+            }
+            jSum = iSum;
+            jType = iType;
+            for (int j=i+1; j<nPoints; j++) {
+                while (j>=jSum) {
+                    jType++;
+                    jSum += nTypes[jType];
+                }
+                fMap[i][j] = f[iType][jType];
+            }
+        }
+    }
+    
+    public ClusterAbstract makeCopy() {
+        ClusterWheatleySoftDDMix c = new ClusterWheatleySoftDDMix(n, nTypes, mixF);
+        c.setTemperature(1/beta);
+        c.setDoCaching(doCaching);
+        return c;
+    }
+
+    protected ClusterWheatleySoftBD makeClusterBD() {
+        return new ClusterWheatleySoftBDMix(n, nTypes, mixF, 60);
+    }
+
+    protected void updateF(BoxCluster box) {
+        CoordinatePairSet cPairs = box.getCPairSet();
+        AtomPairSet aPairs = box.getAPairSet();
+        for (int i=0; i<mixF.length; i++) {
+            for (int j=0; j<mixF[i].length; j++) {
+                mixF[i][j].setBox(box);
+            }
+        }
+
+        // recalculate all f values for all pairs
+        for(int i=0; i<n-1; i++) {
+            for(int j=i+1; j<n; j++) {
+                double ff = fMap[i][j].f(aPairs.getAPair(i,j),cPairs.getr2(i,j), beta);
+//                if (Math.abs(ff) < 1e-14) ff = 0;
+                fQ[(1<<i)|(1<<j)].E(ff);
+                fQ[(1<<i)|(1<<j)].PE(1);
+            }
+        }
+    }
+}
@@ -44,10 +44,16 @@ public class ClusterWheatleySoftMix extends ClusterWheatleySoft {
         ClusterWheatleySoftMix c = new ClusterWheatleySoftMix(n, nTypes, mixF, tol);
         c.setTemperature(1/beta);
         c.setDoCaching(doCaching);
+        c.setDoDoubleDouble(clusterDD != null);
+        c.setDoIncremental(doIncremental);
         return c;
     }
 
-    protected void updateF(BoxCluster box) {
+    protected ClusterWheatleySoftDD makeClusterDD() {
+        return new ClusterWheatleySoftDDMix(n, nTypes, mixF);
+    }
+
+    protected void updateF(BoxCluster box, int pointMask) {
         CoordinatePairSet cPairs = box.getCPairSet();
         AtomPairSet aPairs = box.getAPairSet();
         for (int i=0; i<mixF.length; i++) {
@@ -59,6 +65,7 @@ public class ClusterWheatleySoftMix extends ClusterWheatleySoft {
         // recalculate all f values for all pairs
         for(int i=0; i<n-1; i++) {
             for(int j=i+1; j<n; j++) {
+                if ((((1<<i)|(1<<j)) & pointMask) == 0) continue;
                 double ff = fMap[i][j].f(aPairs.getAPair(i,j),cPairs.getr2(i,j), beta);
                 if (debug && (Double.isNaN(ff) || Double.isInfinite(ff))) {
                     System.err.println("oops in updateF "+i+" "+j+" "+ff);
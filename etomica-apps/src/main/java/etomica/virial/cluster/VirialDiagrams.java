@@ -1158,7 +1158,7 @@ public class VirialDiagrams {
                 lnfXi.addAll(fXipow);
                 lnfXi = isoFree.apply(lnfXi, null);
                 msp = new MulScalarParameters(new CoefficientImpl(-i,(i+1)));
-                fXipow = isoFree.apply(mulScalar.apply(mulFlex.apply(fXipow, fXi, mfp), msp), null);
+                fXipow = mulScalar.apply(mulFlex.applyIsoFree(fXipow, fXi, mfp), msp);
             }
 
             if (doHB) {
@@ -1421,7 +1421,7 @@ public class VirialDiagrams {
                 zPow[1].addAll(z);
                 for (int j=2; j<i+1; j++) {
                     zPow[j] = new HashSet<Graph>();
-                    zPow[j] = isoFree.apply(mulFlex.apply(zPow[j-1], z, mfpnm1), null);
+                    zPow[j] = mulFlex.applyIsoFree(zPow[j-1], z, mfpnm1);
                 }
                 z = new HashSet<Graph>();
                 z.addAll(allRho[1]);
@@ -455,6 +455,24 @@ public class SimulationVirialOverlap2 extends Simulation {
         }
     }
 
+    /**
+     * Returns the block size used while searching for refPref and
+     * equilibrating for the given number of steps (aiming for 1000 blocks).
+     */
+    protected long equilibrationBlockSize(long initSteps) {
+        // 1000 blocks
+        long newBlockSize = initSteps*integratorOS.getNumSubSteps()/1000;
+        if (newBlockSize < 1000) {
+            // make block size at least 1000, even if it means fewer blocks
+            newBlockSize = 1000;
+        }
+        if (newBlockSize > 1000000) {
+            // needs to be an int.  1e6 steps/block is a bit crazy.
+            newBlockSize = 1000000;
+        }
+        return newBlockSize;
+    }
+
     public void initRefPref(String fileName, long initSteps) {
         // use the old refpref value as a starting point so that an initial
         // guess can be provided
@@ -485,17 +503,7 @@ public class SimulationVirialOverlap2 extends Simulation {
             }
 
             long oldBlockSize = blockSize;
-            // 1000 blocks
-            long newBlockSize = initSteps*integratorOS.getNumSubSteps()/1000;
-            if (newBlockSize < 1000) {
-                // make block size at least 1000, even if it means fewer blocks
-                newBlockSize = 1000;
-            }
-            if (newBlockSize > 1000000) {
-                // needs to be an int.  1e6 steps/block is a bit crazy.
-                newBlockSize = 1000000;
-            }
-            setAccumulatorBlockSize(newBlockSize);
+            setAccumulatorBlockSize(equilibrationBlockSize(initSteps));
             dpVirialOverlap[0].setNumAlpha(21);
             dpVirialOverlap[1].setNumAlpha(21);
             setRefPref(oldRefPref,30);
@@ -541,17 +549,7 @@ public class SimulationVirialOverlap2 extends Simulation {
         // (if needed) narrow in on a reference preference
         ai.setMaxSteps(initSteps);
         long oldBlockSize = blockSize;
-        // 1000 blocks
-        long newBlockSize = initSteps*integratorOS.getNumSubSteps()/1000;
-        if (newBlockSize < 1000) {
-            // make block size at least 1000, even if it means fewer blocks
-            newBlockSize = 1000;
-        }
-        if (newBlockSize > 1000000) {
-            // needs to be an int.  1e6 steps/block is a bit crazy.
-            newBlockSize = 1000000;
-        }
-        setAccumulatorBlockSize((int)newBlockSize);
+        setAccumulatorBlockSize(equilibrationBlockSize(initSteps));
         for (int i=0; i<2; i++) {
             integrators[i].getMoveManager().setEquilibrating(true);
         }
@@ -611,6 +609,16 @@ public class SimulationVirialOverlap2 extends Simulation {
     }
 
     public void printResults(double refIntegral, String[] extraNames) {
+        printResults(dvo, accumulators, numExtraTargetClusters, refIntegral, extraNames);
+    }
+
+    /**
+     * Prints the results held by the given overlap data and accumulators.
+     * This is also used to report the results combined from several walkers
+     * (see SimulationVirialOverlapParallel).
+     */
+    public static void printResults(DataVirialOverlap dvo, AccumulatorRatioAverageCovarianceFull[] accumulators,
+                                    int numExtraTargetClusters, double refIntegral, String[] extraNames) {
         double[] ratioAndError = dvo.getAverageAndError();
         double ratio = ratioAndError[0];
         double error = ratioAndError[1];
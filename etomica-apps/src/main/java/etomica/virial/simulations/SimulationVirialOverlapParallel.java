@@ -0,0 +1,324 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.simulations;
+
+import etomica.data.AccumulatorRatioAverageCovarianceFull;
+import etomica.util.ParallelUtils;
+import etomica.virial.overlap.DataVirialOverlap;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Runs several independent overlap-sampling walkers (each a complete
+ * SimulationVirialOverlap2) on separate threads and combines their results.
+ * The walkers share nothing while running; the reference and target
+ * accumulators of the walkers are merged afterwards, with the blocks from
+ * each walker treated as a separate chain, so that the combined averages and
+ * uncertainties are those of a single long run with the same number of
+ * blocks.
+ * <p>
+ * The walkers are built by a WalkerFactory, which must return a fully
+ * independent simulation each time it is called (its own clusters,
+ * potentials, boxes and random number generator).  Each Simulation seeds its
+ * own random number generator, so walkers are independent by default; for
+ * reproducible results, the factory should set a distinct seed for each
+ * walker (with setRandom, before calling init()).  The walkers must be
+ * initialized by the factory.
+ * <p>
+ * The methods here mirror the stages of a SimulationVirialOverlap2 run:
+ * initRefPref, equilibrate and run, followed by printResults.  Steps are
+ * divided evenly among the walkers, and a common refPref (found from the
+ * combined data) is used for all of them.
+ */
+public class SimulationVirialOverlapParallel {
+
+    protected final SimulationVirialOverlap2[] walkers;
+    protected final ForkJoinPool pool;
+    protected AccumulatorRatioAverageCovarianceFull[] accumulators;
+    protected DataVirialOverlap dvo;
+    public double refPref;
+
+    /**
+     * Creates the walkers, with one thread per walker.
+     */
+    public SimulationVirialOverlapParallel(int numWalkers, WalkerFactory factory) {
+        this(numWalkers, factory, numWalkers);
+    }
+
+    /**
+     * Creates the walkers, which will be run using the given number of
+     * threads.
+     */
+    public SimulationVirialOverlapParallel(int numWalkers, WalkerFactory factory, int numThreads) {
+        if (numWalkers < 1) {
+            throw new IllegalArgumentException("Number of walkers must be positive");
+        }
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        walkers = new SimulationVirialOverlap2[numWalkers];
+        for (int i = 0; i < numWalkers; i++) {
+            walkers[i] = factory.makeWalker(i);
+            for (int j = 0; j < i; j++) {
+                if (walkers[j] == walkers[i]) {
+                    throw new IllegalArgumentException("Factory must return a new walker each time");
+                }
+            }
+        }
+        refPref = walkers[0].refPref;
+        pool = numThreads > 1 && numWalkers > 1 ? new ForkJoinPool(Math.min(numThreads, numWalkers)) : null;
+    }
+
+    public SimulationVirialOverlap2[] getWalkers() {
+        return walkers;
+    }
+
+    /**
+     * Finds an initial estimate for refPref, either from the given file (if
+     * it exists) or by running all walkers for a total of initSteps steps
+     * with a wide range of alpha values.  This is the multi-walker version
+     * of SimulationVirialOverlap2.initRefPref.
+     */
+    public void initRefPref(String fileName, long initSteps) {
+        double oldRefPref = refPref;
+        // refPref = -1 indicates we are searching for an appropriate value
+        refPref = -1.0;
+        if (fileName != null) {
+            try {
+                FileReader fileReader = new FileReader(fileName);
+                BufferedReader bufReader = new BufferedReader(fileReader);
+                String refPrefString = bufReader.readLine();
+                refPref = Double.parseDouble(refPrefString);
+                bufReader.close();
+                fileReader.close();
+                System.out.println("setting ref pref (from file) to " + refPref);
+                for (SimulationVirialOverlap2 walker : walkers) {
+                    walker.dpVirialOverlap[0].setNumAlpha(walker.numAlpha);
+                    walker.dpVirialOverlap[1].setNumAlpha(walker.numAlpha);
+                    walker.setRefPref(refPref, 1);
+                }
+            } catch (IOException e) {
+                // file not there, which is ok.
+            }
+        }
+
+        if (refPref == -1) {
+            long[] oldBlockSize = new long[walkers.length];
+            boolean[] adjustable = new boolean[walkers.length];
+            for (int i = 0; i < walkers.length; i++) {
+                SimulationVirialOverlap2 walker = walkers[i];
+                oldBlockSize[i] = walker.blockSize;
+                adjustable[i] = startEquilibration(walker, initSteps, i);
+                walker.dpVirialOverlap[0].setNumAlpha(21);
+                walker.dpVirialOverlap[1].setNumAlpha(21);
+                walker.setRefPref(oldRefPref, 30);
+            }
+            runWalkers(walker -> walker.ai.actionPerformed());
+
+            refPref = getDataVirialOverlap().getOverlapAverage();
+            System.out.println("setting initial ref pref to " + refPref);
+            if (Double.isInfinite(refPref) || Double.isNaN(refPref)) {
+                throw new RuntimeException("Unable to determine ref pref from the combined data");
+            }
+            for (int i = 0; i < walkers.length; i++) {
+                SimulationVirialOverlap2 walker = walkers[i];
+                walker.integratorOS.setAdjustStepFraction(adjustable[i]);
+                walker.setAccumulatorBlockSize(oldBlockSize[i]);
+                walker.dpVirialOverlap[0].setNumAlpha(15);
+                walker.dpVirialOverlap[1].setNumAlpha(15);
+                walker.setRefPref(refPref, 4);
+                for (int j = 0; j < 2; j++) {
+                    walker.integrators[j].reset();
+                }
+                walker.refPref = -1;
+            }
+            // set refPref back to -1 so that later on we know that we've been looking for
+            // the appropriate value
+            refPref = -1;
+        }
+    }
+
+    /**
+     * Runs all walkers for a total of initSteps steps to equilibrate them
+     * and adjust their MC move step sizes, and (if needed) narrows in on
+     * refPref using the combined data.  This is the multi-walker version of
+     * SimulationVirialOverlap2.equilibrate.
+     */
+    public void equilibrate(String fileName, long initSteps) {
+        long[] oldBlockSize = new long[walkers.length];
+        boolean[] adjustable = new boolean[walkers.length];
+        for (int i = 0; i < walkers.length; i++) {
+            oldBlockSize[i] = walkers[i].blockSize;
+            adjustable[i] = startEquilibration(walkers[i], initSteps, i);
+        }
+        runWalkers(walker -> walker.ai.actionPerformed());
+        for (int i = 0; i < walkers.length; i++) {
+            walkers[i].integratorOS.setAdjustStepFraction(adjustable[i]);
+        }
+
+        if (refPref == -1) {
+            refPref = getDataVirialOverlap().getOverlapAverage();
+            System.out.println("setting ref pref to " + refPref);
+            if (Double.isInfinite(refPref) || Double.isNaN(refPref)) {
+                throw new RuntimeException("Unable to determine ref pref from the combined data");
+            }
+            for (SimulationVirialOverlap2 walker : walkers) {
+                walker.dpVirialOverlap[0].setNumAlpha(walker.numAlpha);
+                walker.dpVirialOverlap[1].setNumAlpha(walker.numAlpha);
+                walker.setRefPref(refPref, 1);
+            }
+            if (fileName != null) {
+                try {
+                    FileWriter fileWriter = new FileWriter(fileName);
+                    BufferedWriter bufWriter = new BufferedWriter(fileWriter);
+                    bufWriter.write(String.valueOf(refPref) + "\n");
+                    bufWriter.close();
+                    fileWriter.close();
+                } catch (IOException e) {
+                    throw new RuntimeException("couldn't write to refpref file");
+                }
+            }
+        } else {
+            for (SimulationVirialOverlap2 walker : walkers) {
+                walker.dvo.reset();
+            }
+        }
+        for (int i = 0; i < walkers.length; i++) {
+            SimulationVirialOverlap2 walker = walkers[i];
+            walker.setAccumulatorBlockSize(oldBlockSize[i]);
+            for (int j = 0; j < 2; j++) {
+                walker.integrators[j].getMoveManager().setEquilibrating(false);
+            }
+            if (walker.extraTargetClusters.length > 0) {
+                walker.initBlockAccumulator();
+            }
+        }
+    }
+
+    /**
+     * Sets refPref explicitly for all walkers.
+     */
+    public void setRefPref(double newRefPref) {
+        refPref = newRefPref;
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.setRefPref(newRefPref);
+        }
+    }
+
+    public void setAccumulatorBlockSize(long newBlockSize) {
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.setAccumulatorBlockSize(newBlockSize);
+        }
+    }
+
+    /**
+     * Runs the walkers concurrently for a total of numSteps steps (divided
+     * evenly among the walkers).
+     */
+    public void run(long numSteps) {
+        for (int i = 0; i < walkers.length; i++) {
+            walkers[i].ai.setMaxSteps(walkerSteps(numSteps, i));
+        }
+        runWalkers(walker -> walker.ai.actionPerformed());
+    }
+
+    /**
+     * Returns accumulators for the reference and target systems holding the
+     * combined data from all walkers.  These are rebuilt each time this
+     * method is called, and should not be given more data.
+     */
+    public AccumulatorRatioAverageCovarianceFull[] getAccumulators() {
+        AccumulatorRatioAverageCovarianceFull[] merged = new AccumulatorRatioAverageCovarianceFull[2];
+        for (int i = 0; i < 2; i++) {
+            merged[i] = new AccumulatorRatioAverageCovarianceFull(walkers[0].accumulators[i].getBlockSize());
+            merged[i].putDataInfo(walkers[0].dpVirialOverlap[i].getDataInfo());
+            for (SimulationVirialOverlap2 walker : walkers) {
+                merged[i].merge(walker.accumulators[i]);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns a DataVirialOverlap for the combined data from all walkers.
+     * All walkers use the same set of alpha values, so the first walker's
+     * DataProcessorVirialOverlap serves as the alpha source.
+     */
+    public DataVirialOverlap getDataVirialOverlap() {
+        accumulators = getAccumulators();
+        dvo = new DataVirialOverlap(walkers[0].dpVirialOverlap[0], accumulators[0], accumulators[1]);
+        return dvo;
+    }
+
+    public void printResults(double refIntegral) {
+        printResults(refIntegral, null);
+    }
+
+    public void printResults(double refIntegral, String[] extraNames) {
+        getDataVirialOverlap();
+        SimulationVirialOverlap2.printResults(dvo, accumulators, walkers[0].numExtraTargetClusters, refIntegral, extraNames);
+    }
+
+    /**
+     * Prepares walker i to run its share of initSteps steps for
+     * initialization or equilibration and returns whether its integratorOS
+     * adjusts the step fraction (which is turned off for now).  All walkers
+     * get the same block size so that their accumulators can be merged.
+     */
+    protected boolean startEquilibration(SimulationVirialOverlap2 walker, long initSteps, int i) {
+        walker.ai.setMaxSteps(walkerSteps(initSteps, i));
+        walker.setAccumulatorBlockSize(walker.equilibrationBlockSize(walkerSteps(initSteps, 0)));
+        for (int j = 0; j < 2; j++) {
+            walker.integrators[j].getMoveManager().setEquilibrating(true);
+        }
+        boolean adjustable = walker.integratorOS.isAdjustStepFraction();
+        if (adjustable) {
+            // run both systems equally; see SimulationVirialOverlap2.initRefPref
+            walker.integratorOS.setRefStepFraction(0.5);
+            walker.integratorOS.setAdjustStepFraction(false);
+        }
+        return adjustable;
+    }
+
+    /**
+     * Returns the number of steps walker i should take for a total of
+     * numSteps.
+     */
+    protected long walkerSteps(long numSteps, int i) {
+        long steps = numSteps / walkers.length;
+        if (i < numSteps % walkers.length) steps++;
+        return steps;
+    }
+
+    protected void runWalkers(Consumer<SimulationVirialOverlap2> action) {
+        if (pool == null) {
+            for (SimulationVirialOverlap2 walker : walkers) {
+                action.accept(walker);
+            }
+            return;
+        }
+        List<Callable<Object>> tasks = new ArrayList<>(walkers.length);
+        for (SimulationVirialOverlap2 walker : walkers) {
+            tasks.add(() -> {
+                action.accept(walker);
+                return null;
+            });
+        }
+        ParallelUtils.invokeAll(pool, tasks);
+    }
+
+    /**
+     * Makes the walkers.  Each call must return a new, initialized
+     * simulation that shares no mutable state with the others.
+     */
+    public interface WalkerFactory {
+        SimulationVirialOverlap2 makeWalker(int iWalker);
+    }
+}
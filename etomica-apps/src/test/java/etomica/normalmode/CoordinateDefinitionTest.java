@@ -0,0 +1,94 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.lattice.crystal.Basis;
+import etomica.lattice.crystal.BasisCubicFcc;
+import etomica.lattice.crystal.BasisMonatomic;
+import etomica.lattice.crystal.PrimitiveCubic;
+import etomica.simulation.Simulation;
+import etomica.space.BoundaryRectangularPeriodic;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that T vectors computed for all wave vectors at once (by FFT over
+ * the cells) agree with those summed one wave vector at a time.
+ */
+public class CoordinateDefinitionTest {
+
+    @Test
+    public void testMonatomic() {
+        int[] nCells = new int[]{4, 4, 8};
+        CoordinateDefinition cd = makeCoordinateDefinition(new BasisMonatomic(Space3D.getInstance()), nCells);
+        WaveVectorFactorySimple wvf = new WaveVectorFactorySimple(cd.getPrimitive(), cd.space);
+        wvf.makeWaveVectors(cd.getBox());
+        check(cd, wvf.getWaveVectors());
+    }
+
+    @Test
+    public void testFcc() {
+        int[] nCells = new int[]{3, 4, 2};
+        CoordinateDefinition cd = makeCoordinateDefinition(new BasisCubicFcc(), nCells);
+        Space space = cd.space;
+        Vector[] k = new Vector[nCells[0] * nCells[1] * nCells[2] + 1];
+        int count = 0;
+        for (int i = 0; i < nCells[0]; i++) {
+            for (int j = 0; j < nCells[1]; j++) {
+                for (int l = 0; l < nCells[2]; l++) {
+                    k[count] = space.makeVector();
+                    k[count].E(new double[]{2 * Math.PI * i / nCells[0], 2 * Math.PI * (j - 1) / nCells[1], 2 * Math.PI * l / nCells[2]});
+                    count++;
+                }
+            }
+        }
+        // not on the reciprocal lattice; summed directly
+        k[count] = space.makeVector();
+        k[count].E(new double[]{0.3, 0.7, -1.1});
+        check(cd, k);
+    }
+
+    protected CoordinateDefinition makeCoordinateDefinition(Basis basis, int[] nCells) {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        Box box = sim.makeBox(new BoundaryRectangularPeriodic(space, new double[]{nCells[0], nCells[1], nCells[2]}));
+        box.setNMolecules(species, nCells[0] * nCells[1] * nCells[2] * basis.getScaledCoordinates().length);
+        CoordinateDefinitionLeaf cd = new CoordinateDefinitionLeaf(box, new PrimitiveCubic(space, 1), basis, space);
+        cd.initializeCoordinates(nCells);
+
+        RandomMersenneTwister random = new RandomMersenneTwister(5);
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < atoms.size(); i++) {
+            Vector p = atoms.get(i).getPosition();
+            for (int j = 0; j < 3; j++) {
+                p.setX(j, p.getX(j) + 0.1 * (random.nextDouble() - 0.5));
+            }
+        }
+        return cd;
+    }
+
+    protected void check(CoordinateDefinition cd, Vector[] k) {
+        int dim = cd.getCoordinateDim();
+        double[][] allRealT = new double[k.length][dim];
+        double[][] allImaginaryT = new double[k.length][dim];
+        cd.calcT(k, allRealT, allImaginaryT);
+        double[] realT = new double[dim];
+        double[] imaginaryT = new double[dim];
+        for (int i = 0; i < k.length; i++) {
+            cd.calcT(k[i], realT, imaginaryT);
+            Assertions.assertArrayEquals(realT, allRealT[i], 1e-12);
+            Assertions.assertArrayEquals(imaginaryT, allImaginaryT[i], 1e-12);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.chem.elements.ElementSimple;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.species.Species;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the double-double Wheatley cluster agrees with the BigDecimal
+ * cluster, including configurations where double precision fails.
+ */
+public class ClusterWheatleySoftDDTest {
+    int nPoints = 7;
+    BoxCluster box;
+    MayerFunction f;
+
+    @BeforeEach
+    public void setup() {
+        Space space = Space.getInstance(3);
+        Species species = new SpeciesSpheresMono(space, new ElementSimple(""));
+        f = new MayerGeneralSpherical(new P2LennardJones(space));
+        ClusterWheatleySoft cluster = new ClusterWheatleySoft(nPoints, f, 1e-12);
+        Simulation sim = new Simulation(space);
+        sim.addSpecies(species);
+        box = new BoxCluster(new ClusterWeightAbs(cluster), space);
+        sim.addBox(box);
+        box.setNMolecules(species, nPoints);
+    }
+
+    @Test
+    public void testValue() {
+        ClusterWheatleySoftBD clusterBD = new ClusterWheatleySoftBD(nPoints, f, 40);
+        ClusterWheatleySoftDD clusterDD = new ClusterWheatleySoftDD(nPoints, f);
+        ClusterWheatleySoft clusterSoft = new ClusterWheatleySoft(nPoints, f, 1e-12);
+        clusterSoft.setDoDoubleDouble(true);
+        for (ClusterAbstract c : new ClusterAbstract[]{clusterBD, clusterDD, clusterSoft}) {
+            c.setTemperature(1.2);
+        }
+
+        RandomMersenneTwister random = new RandomMersenneTwister(2);
+        IAtomList atoms = box.getLeafList();
+        int nSmall = 0;
+        for (int k = 0; k < 200; k++) {
+            // alternate compact configurations and stretched ones, where
+            // the value is tiny and double precision is not enough
+            double size = k % 2 == 0 ? 1.5 : 4;
+            for (int i = 1; i < nPoints; i++) {
+                for (int d = 0; d < 3; d++) {
+                    atoms.get(i).getPosition().setX(d, atoms.get(i - 1).getPosition().getX(d) + size * (random.nextDouble() - 0.5));
+                }
+            }
+            box.trialNotify();
+            box.acceptNotify();
+            double bd = clusterBD.value(box);
+            double dd = clusterDD.value(box);
+            Assertions.assertEquals(bd, dd, 1e-12 * Math.abs(bd) + 1e-26);
+            // values just above tol are computed with double precision
+            Assertions.assertEquals(bd, clusterSoft.value(box), 1e-10 * Math.abs(bd) + 1e-16);
+            if (bd != 0 && Math.abs(bd) < 1e-12) nSmall++;
+        }
+        Assertions.assertTrue(nSmall > 10, "configurations needing extra precision: " + nSmall);
+    }
+
+    @Test
+    public void testBelowDoubleDoublePrecision() {
+        ClusterWheatleySoftBD clusterBD = new ClusterWheatleySoftBD(nPoints, f, 80);
+        ClusterWheatleySoftDD clusterDD = new ClusterWheatleySoftDD(nPoints, f);
+        clusterBD.setTemperature(1.2);
+        clusterDD.setTemperature(1.2);
+
+        RandomMersenneTwister random = new RandomMersenneTwister(3);
+        IAtomList atoms = box.getLeafList();
+        int nTiny = 0;
+        for (int k = 0; k < 50; k++) {
+            // very stretched configurations, where double-double does not
+            // give enough significant digits
+            for (int i = 1; i < nPoints; i++) {
+                for (int d = 0; d < 3; d++) {
+                    atoms.get(i).getPosition().setX(d, atoms.get(i - 1).getPosition().getX(d) + 12 * (random.nextDouble() - 0.5));
+                }
+            }
+            box.trialNotify();
+            box.acceptNotify();
+            double bd = clusterBD.value(box);
+            double dd = clusterDD.value(box);
+            Assertions.assertEquals(bd, dd, 1e-10 * Math.abs(bd));
+            if (bd != 0 && Math.abs(bd) < 1e-22) nTiny++;
+        }
+        Assertions.assertTrue(nTiny > 10, "configurations needing BigDecimal: " + nTiny);
+    }
+}
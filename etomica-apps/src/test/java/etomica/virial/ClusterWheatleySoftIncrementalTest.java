@@ -0,0 +1,91 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.chem.elements.ElementSimple;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.species.Species;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that incremental evaluation of the Wheatley cluster agrees with the
+ * full recursion for single-point and multi-point moves, including moves
+ * that are rejected.
+ */
+public class ClusterWheatleySoftIncrementalTest {
+    int nPoints = 7;
+    BoxCluster box;
+    MayerFunction f;
+
+    @BeforeEach
+    public void setup() {
+        Space space = Space.getInstance(3);
+        Species species = new SpeciesSpheresMono(space, new ElementSimple(""));
+        f = new MayerGeneralSpherical(new P2LennardJones(space));
+        ClusterWheatleySoft cluster = new ClusterWheatleySoft(nPoints, f, 1e-12);
+        Simulation sim = new Simulation(space);
+        sim.addSpecies(species);
+        box = new BoxCluster(new ClusterWeightAbs(cluster), space);
+        sim.addBox(box);
+        box.setNMolecules(species, nPoints);
+        IAtomList atoms = box.getLeafList();
+        for (int i = 1; i < nPoints; i++) {
+            atoms.get(i).getPosition().setX(0, i);
+        }
+        box.trialNotify();
+        box.acceptNotify();
+    }
+
+    @Test
+    public void testValue() {
+        ClusterWheatleySoft full = new ClusterWheatleySoft(nPoints, f, 1e-12);
+        full.setDoCaching(false);
+        ClusterWheatleySoft incremental = new ClusterWheatleySoft(nPoints, f, 1e-12);
+        incremental.setDoIncremental(true);
+        full.setTemperature(1.2);
+        incremental.setTemperature(1.2);
+
+        RandomMersenneTwister random = new RandomMersenneTwister(3);
+        IAtomList atoms = box.getLeafList();
+        Vector[] old = new Vector[nPoints];
+        for (int i = 0; i < nPoints; i++) {
+            old[i] = box.getSpace().makeVector();
+        }
+        for (int k = 0; k < 500; k++) {
+            for (int i = 0; i < nPoints; i++) {
+                old[i].E(atoms.get(i).getPosition());
+            }
+            // mostly single-point moves, sometimes two points
+            int nMove = k % 10 == 0 ? 2 : 1;
+            for (int m = 0; m < nMove; m++) {
+                Vector p = atoms.get(1 + random.nextInt(nPoints - 1)).getPosition();
+                for (int d = 0; d < 3; d++) {
+                    p.setX(d, p.getX(d) + 0.5 * (random.nextDouble() - 0.5));
+                }
+            }
+            box.trialNotify();
+            double expected = full.value(box);
+            Assertions.assertEquals(expected, incremental.value(box), 1e-10 * Math.abs(expected) + 1e-16);
+            if (random.nextInt(2) == 0) {
+                box.acceptNotify();
+                continue;
+            }
+            for (int i = 0; i < nPoints; i++) {
+                atoms.get(i).getPosition().E(old[i]);
+            }
+            box.rejectNotify();
+            expected = full.value(box);
+            Assertions.assertEquals(expected, incremental.value(box), 1e-10 * Math.abs(expected) + 1e-16);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.simulations;
+
+import etomica.chem.elements.ElementSimple;
+import etomica.data.AccumulatorRatioAverageCovarianceFull;
+import etomica.potential.P2LennardJones;
+import etomica.potential.Potential2Spherical;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import etomica.virial.*;
+import etomica.virial.cluster.Standard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the LJ B3 calculation from VirialLJTest with several walkers and
+ * checks that the combined results are within the same limits.
+ */
+public class SimulationVirialOverlapParallelTest {
+
+    @Test
+    public void testVirialLJ() {
+        final int nPoints = 3;
+        double temperature = 1;
+        long steps = 1000;
+        int numWalkers = 4;
+        Space space = Space3D.getInstance();
+
+        SimulationVirialOverlapParallel sim = new SimulationVirialOverlapParallel(numWalkers, iWalker -> {
+            MayerHardSphere fRef = new MayerHardSphere(1.5);
+            MayerEHardSphere eRef = new MayerEHardSphere(1.5);
+            Potential2Spherical pTarget = new P2LennardJones(space, 1.0, 1.0);
+            MayerGeneralSpherical fTarget = new MayerGeneralSpherical(pTarget);
+            MayerESpherical eTarget = new MayerESpherical(pTarget);
+            ClusterAbstract targetCluster = Standard.virialCluster(nPoints, fTarget, nPoints > 3, eTarget, true);
+            targetCluster.setTemperature(temperature);
+            ClusterAbstract refCluster = Standard.virialCluster(nPoints, fRef, nPoints > 3, eRef, true);
+            refCluster.setTemperature(temperature);
+            SimulationVirialOverlap2 walker = new SimulationVirialOverlap2(space, new SpeciesSpheresMono(space, new ElementSimple("LJ")), nPoints, temperature, refCluster, targetCluster);
+            walker.setRandom(new RandomMersenneTwister(new int[]{1, iWalker}));
+            walker.init();
+            walker.integratorOS.setAggressiveAdjustStepFraction(true);
+            walker.integratorOS.setNumSubSteps(1000);
+            return walker;
+        });
+
+        sim.initRefPref(null, steps / 100);
+        sim.equilibrate(null, steps / 40);
+        Assertions.assertTrue(Math.abs(sim.refPref - 1.34) < 0.12, "Ref pref (alpha) within expected limits: " + sim.refPref);
+
+        sim.run(steps);
+
+        long nRef = 0;
+        for (SimulationVirialOverlap2 walker : sim.getWalkers()) {
+            nRef += walker.accumulators[0].getSampleCount();
+        }
+        AccumulatorRatioAverageCovarianceFull[] accumulators = sim.getAccumulators();
+        Assertions.assertEquals(nRef, accumulators[0].getSampleCount());
+
+        double[] ratioAndError = sim.getDataVirialOverlap().getAverageAndError();
+        double ratio = ratioAndError[0];
+        double error = ratioAndError[1];
+        System.out.println("ratio: " + ratio + " " + error);
+        Assertions.assertTrue(Math.abs(ratio - 0.0604) < 0.011, "Final ratio within expected limits: " + ratio);
+        Assertions.assertTrue(Math.abs(error - 0.0034) < 0.0006, "Ratio uncertainty within expected limits: " + error);
+    }
+}
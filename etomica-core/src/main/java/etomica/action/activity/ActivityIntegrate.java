@@ -106,6 +106,14 @@ public class ActivityIntegrate extends Activity {
         return stepCount;
     }
 	
+	/**
+	 * Returns true if an overlap found when the integrator is reset at the
+	 * start of the activity is ignored.
+	 */
+	public boolean isIgnoreOverlap() {
+		return ignoreOverlap;
+	}
+
 	/**
 	 * @return Returns the integrator.
 	 */
@@ -20,7 +20,7 @@ public class Atom implements IAtom, java.io.Serializable {
 
      private static final long serialVersionUID = 3L;
      protected final AtomType type;
-     protected final Vector position;
+     protected Vector position;
      protected int index;
      protected IMolecule parent;
      protected int leafIndex;
@@ -95,6 +95,18 @@ public class Atom implements IAtom, java.io.Serializable {
         return position;
     }
 
+     /**
+      * Replaces the Vector that holds this atom's position.  The new vector
+      * takes on the current position.  This should only be called by the Box,
+      * when it moves the atom's coordinates into or out of its array storage.
+      *
+      * @param newPosition the vector that will hold the position from now on
+      */
+     public void setPositionVector(Vector newPosition) {
+         newPosition.E(position);
+         position = newPosition;
+     }
+
      public int getLeafIndex() {
         return leafIndex;
     }
@@ -10,7 +10,7 @@ import etomica.space.Vector;
 public class AtomLeafDynamic extends Atom implements IAtomKinetic {
 
     private static final long serialVersionUID = 1L;
-    protected final Vector velocity;
+    protected Vector velocity;
 
     public AtomLeafDynamic(Space space, AtomType type) {
         super(space, type);
@@ -20,4 +20,16 @@ public class AtomLeafDynamic extends Atom implements IAtomKinetic {
     public Vector getVelocity() {
         return velocity;
     }
+
+    /**
+     * Replaces the Vector that holds this atom's velocity.  The new vector
+     * takes on the current velocity.  This should only be called by the Box,
+     * when it moves the atom's coordinates into or out of its array storage.
+     *
+     * @param newVelocity the vector that will hold the velocity from now on
+     */
+    public void setVelocityVector(Vector newVelocity) {
+        newVelocity.E(velocity);
+        velocity = newVelocity;
+    }
 }
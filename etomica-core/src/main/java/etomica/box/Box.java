@@ -5,7 +5,9 @@
 package etomica.box;
 
 import etomica.action.BoxInflate;
+import etomica.atom.Atom;
 import etomica.atom.AtomArrayList;
+import etomica.atom.AtomLeafDynamic;
 import etomica.atom.IAtom;
 import etomica.atom.IAtomList;
 import etomica.molecule.IMolecule;
@@ -14,6 +16,7 @@ import etomica.molecule.MoleculeArrayList;
 import etomica.space.Boundary;
 import etomica.space.BoundaryRectangularPeriodic;
 import etomica.space.Space;
+import etomica.space3d.VectorStorage3D;
 import etomica.species.ISpecies;
 import etomica.util.Arrays;
 import etomica.util.Debug;
@@ -43,6 +46,11 @@ import etomica.util.Debug;
  * the addMolecule method. The indices are assigned to match the index in the list
  * holding the molecule/atom.
  * <br>
+ * In 3D, a box can optionally hold the positions, velocities and forces of
+ * its leaf atoms in contiguous arrays (see {@link #enableArrayStorage()}),
+ * indexed by leaf index.  The atoms' position and velocity vectors are then
+ * views into those arrays.
+ * <br>
  * A box is acted upon by an Integrator instance to move its atoms around and
  * generate configurations. <br>
  * A simulation may involve more than one box. All Box instances should be
@@ -65,6 +73,7 @@ public class Box {
     protected MoleculeArrayList[] moleculeLists;
     private final Boundary boundary;
     private int index;
+    protected VectorStorage3D positionStorage, velocityStorage, forceStorage;
 
     /**
      * Constructs box with default rectangular periodic boundary.
@@ -163,6 +172,9 @@ public class Box {
             IAtom childAtom = childList.get(iChild);
             childAtom.setLeafIndex(nLeafAtoms++);
             leafList.add(childAtom);
+            if (positionStorage != null) {
+                attachToStorage(childAtom);
+            }
         }
         eventManager.moleculeAdded(molecule);
 
@@ -202,6 +214,9 @@ public class Box {
         for (int iChild = 0; iChild < childList.size(); iChild++) {
             IAtom childAtom = childList.get(iChild);
             int leafIndex = childAtom.getLeafIndex();
+            if (positionStorage != null) {
+                detachFromStorage(childAtom);
+            }
             leafList.removeAndReplace(leafIndex);
             if (leafList.size() > leafIndex) {
                 IAtom movedAtom = leafList.get(leafIndex);
@@ -241,6 +256,12 @@ public class Box {
         if (n > currentNMolecules) {
             moleculeLists[species.getIndex()].ensureCapacity(n);
             leafList.ensureCapacity(leafList.size() + (n - currentNMolecules) * moleculeLeafAtoms);
+            if (positionStorage != null) {
+                int nLeaf = leafList.size() + (n - currentNMolecules) * moleculeLeafAtoms;
+                positionStorage.ensureCapacity(nLeaf);
+                velocityStorage.ensureCapacity(nLeaf);
+                forceStorage.ensureCapacity(nLeaf);
+            }
             if (newMolecule0 != null) {
                 addMolecule(newMolecule0);
                 currentNMolecules++;
@@ -339,6 +360,151 @@ public class Box {
         return leafList;
     }
 
+    /**
+     * Renumbers the leaf atoms so that the atom currently at leaf index
+     * order[i] gets leaf index i.  Listeners are notified of each change via
+     * atomLeafIndexChanged.  Each event moves an atom into a leaf index that
+     * is currently vacant (the index one past the last atom is used as a
+     * temporary), so listeners that simply move the atom's data from the old
+     * index to the new one (like AtomLeafAgentManager) remain consistent.
+     *
+     * @param order permutation of the leaf indices
+     * @throws IllegalArgumentException if order is not a permutation of the
+     *                                  leaf indices
+     */
+    public void reorderLeafAtoms(int[] order) {
+        int nLeaf = leafList.size();
+        if (order.length != nLeaf) {
+            throw new IllegalArgumentException("order must have one entry for each leaf atom");
+        }
+        int[] newIndex = new int[nLeaf];
+        for (int i = 0; i < nLeaf; i++) {
+            newIndex[i] = -1;
+        }
+        for (int i = 0; i < nLeaf; i++) {
+            if (order[i] < 0 || order[i] >= nLeaf || newIndex[order[i]] != -1) {
+                throw new IllegalArgumentException("order is not a permutation");
+            }
+            newIndex[order[i]] = i;
+        }
+
+        IAtom[] oldAtoms = leafList.toArray();
+        for (int i = 0; i < nLeaf; i++) {
+            leafList.set(i, oldAtoms[order[i]]);
+        }
+        if (positionStorage != null) {
+            positionStorage.permute(order);
+            velocityStorage.permute(order);
+            forceStorage.permute(order);
+        }
+
+        // follow each cycle of the permutation, starting by moving its first
+        // atom out of the way to the temporary index
+        for (int start = 0; start < nLeaf; start++) {
+            if (newIndex[start] == start || newIndex[start] == -1) continue;
+            IAtom startAtom = oldAtoms[start];
+            startAtom.setLeafIndex(nLeaf);
+            eventManager.atomLeafIndexChanged(startAtom, start);
+            int vacant = start;
+            while (order[vacant] != start) {
+                int from = order[vacant];
+                oldAtoms[from].setLeafIndex(vacant);
+                eventManager.atomLeafIndexChanged(oldAtoms[from], from);
+                newIndex[from] = -1;
+                vacant = from;
+            }
+            startAtom.setLeafIndex(vacant);
+            eventManager.atomLeafIndexChanged(startAtom, nLeaf);
+            newIndex[start] = -1;
+        }
+    }
+
+    /**
+     * Switches this box to hold leaf atom positions, velocities and forces in
+     * contiguous arrays indexed by leaf index.  Atoms already in the box, and
+     * any atoms added later, have their position (and velocity, for
+     * AtomLeafDynamic) vectors replaced by views into the arrays; atoms that
+     * are removed get their own vectors back.  Force storage is provided for
+     * the use of an MD integrator (which will use it if array storage is
+     * enabled before the integrator is constructed).
+     * <p>
+     * This is only available in 3D and requires leaf atoms to be subclasses
+     * of Atom.  Code that downcasts atom positions to Vector3D will not work
+     * with a box using array storage.
+     */
+    public void enableArrayStorage() {
+        if (positionStorage != null) return;
+        if (space.D() != 3) {
+            throw new IllegalStateException("Array storage is only available in 3D");
+        }
+        int nLeaf = leafList.size();
+        positionStorage = new VectorStorage3D(nLeaf);
+        velocityStorage = new VectorStorage3D(nLeaf);
+        forceStorage = new VectorStorage3D(nLeaf);
+        for (int i = 0; i < nLeaf; i++) {
+            attachToStorage(leafList.get(i));
+        }
+    }
+
+    /**
+     * @return true if leaf atom coordinates are held in arrays
+     * @see #enableArrayStorage()
+     */
+    public boolean isArrayStorage() {
+        return positionStorage != null;
+    }
+
+    /**
+     * @return the storage holding leaf atom positions, or null if array
+     * storage has not been enabled
+     */
+    public VectorStorage3D getPositionStorage() {
+        return positionStorage;
+    }
+
+    /**
+     * @return the storage holding leaf atom velocities, or null if array
+     * storage has not been enabled.  Elements for atoms that are not
+     * AtomLeafDynamic are present but unused.
+     */
+    public VectorStorage3D getVelocityStorage() {
+        return velocityStorage;
+    }
+
+    /**
+     * @return the storage available for leaf atom forces, or null if array
+     * storage has not been enabled
+     */
+    public VectorStorage3D getForceStorage() {
+        return forceStorage;
+    }
+
+    protected void attachToStorage(IAtom atom) {
+        if (!(atom instanceof Atom)) {
+            throw new IllegalStateException("Array storage requires leaf atoms to be Atoms");
+        }
+        ((Atom) atom).setPositionVector(positionStorage.add());
+        if (atom instanceof AtomLeafDynamic) {
+            ((AtomLeafDynamic) atom).setVelocityVector(velocityStorage.add());
+        } else {
+            velocityStorage.add();
+        }
+        forceStorage.add();
+    }
+
+    protected void detachFromStorage(IAtom atom) {
+        // give the atom its own vectors (holding the current values) before
+        // its slot gets reused
+        ((Atom) atom).setPositionVector(space.makeVector());
+        if (atom instanceof AtomLeafDynamic) {
+            ((AtomLeafDynamic) atom).setVelocityVector(space.makeVector());
+        }
+        int leafIndex = atom.getLeafIndex();
+        positionStorage.removeAndReplace(leafIndex);
+        velocityStorage.removeAndReplace(leafIndex);
+        forceStorage.removeAndReplace(leafIndex);
+    }
+
 
     protected void notifyNewMolecules(ISpecies species, int numNewMolecules, int moleculeLeafAtoms) {
         if (numNewMolecules < 1) return;
@@ -0,0 +1,221 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataFunction;
+import etomica.data.types.DataGroup;
+import etomica.units.dimensions.Time;
+
+/**
+ * Accumulator that computes the autocorrelation of the components of its
+ * input data with a multiple-tau correlator (see CorrelatorMultiTau) and
+ * returns the autocorrelation averaged over the components as a function of
+ * lag time.  Memory and time per sample are independent of the number of
+ * samples.  The components to correlate, and whether to subtract the
+ * average of each one, can be selected with setComponents; by default all
+ * components are used and their averages are subtracted.
+ * <p>
+ * The average and its uncertainty (from block averages kept by the
+ * correlator) are also pushed together to the sinks of getAvgErrFork.
+ * Lags that have not been reached yet are NaN.
+ */
+public class AccumulatorAutocorrelationMultiTau extends DataAccumulator implements DataSourceIndependent {
+
+    protected final DataTag tTag, errTag;
+    protected final double dt;
+    protected int nLevels;
+    protected long maxLag;
+    protected int minSamplesPerLag;
+    protected int[] components;
+    protected boolean[] subtractMean;
+    protected CorrelatorMultiTau correlator;
+    protected double[] x;
+    protected IDataInfo inputDataInfo;
+    protected DataFunction data, errData;
+    protected DataFunction.DataInfoFunction errDataInfo;
+    protected DataDoubleArray tData;
+    protected DataDoubleArray.DataInfoDoubleArray tDataInfo;
+    protected final DataFork avgErrFork;
+    protected DataGroup avgErrData;
+
+    /**
+     * @param nLevels the number of correlator levels; the longest lag is
+     *                about 16*2^(nLevels-1) samples
+     * @param dt      the time between samples
+     */
+    public AccumulatorAutocorrelationMultiTau(int nLevels, double dt) {
+        this.nLevels = nLevels;
+        this.dt = dt;
+        maxLag = Long.MAX_VALUE;
+        tTag = new DataTag();
+        errTag = new DataTag();
+        avgErrFork = new DataFork();
+    }
+
+    /**
+     * Selects the components of the input data to correlate, and for each
+     * one whether its average should be subtracted (components known to
+     * average to 0 are better off without).  Resets the accumulator.
+     */
+    public void setComponents(int[] components, boolean[] subtractMean) {
+        if (components.length != subtractMean.length) {
+            throw new IllegalArgumentException("components and subtractMean must have the same length");
+        }
+        this.components = components.clone();
+        this.subtractMean = subtractMean.clone();
+        if (inputDataInfo != null) putDataInfo(inputDataInfo);
+    }
+
+    public int[] getComponents() {
+        return components;
+    }
+
+    /**
+     * Sets the number of correlator levels and resets the accumulator.
+     */
+    public void setNumLevels(int newNumLevels) {
+        nLevels = newNumLevels;
+        if (inputDataInfo != null) putDataInfo(inputDataInfo);
+    }
+
+    public int getNumLevels() {
+        return nLevels;
+    }
+
+    /**
+     * Sets the longest lag (in samples) included in the data; longer lags
+     * are NaN.  This does not affect the samples that are kept.
+     */
+    public void setMaxLag(long newMaxLag) {
+        maxLag = newMaxLag;
+    }
+
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Sets the number of samples, per sample of lag, that must be taken
+     * before a lag is included in the data.  With 50, a lag of 10 samples is
+     * NaN until 500 samples have been taken.  The default is 0 (include any
+     * lag that has been reached).
+     */
+    public void setMinSamplesPerLag(int newMinSamplesPerLag) {
+        minSamplesPerLag = newMinSamplesPerLag;
+    }
+
+    public int getMinSamplesPerLag() {
+        return minSamplesPerLag;
+    }
+
+    public DataFork getAvgErrFork() {
+        return avgErrFork;
+    }
+
+    public DataFunction getErrorData() {
+        return errData;
+    }
+
+    @Override
+    protected boolean addData(IData inputData) {
+        for (int k = 0; k < components.length; k++) {
+            x[k] = inputData.getValue(components[k]);
+        }
+        correlator.addSample(x);
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        if (correlator != null) correlator.reset();
+    }
+
+    @Override
+    public IData getData() {
+        if (correlator == null) return null;
+        double[] y = data.getData();
+        double[] yErr = errData.getData();
+        int n = components.length;
+        long nSamples = correlator.getCount(0);
+        for (int i = 0; i < y.length; i++) {
+            long lag = correlator.getLag(i);
+            if (correlator.getCount(i) == 0 || lag > maxLag || nSamples < minSamplesPerLag * lag) {
+                y[i] = yErr[i] = Double.NaN;
+                continue;
+            }
+            double s = 0;
+            for (int k = 0; k < n; k++) {
+                s += correlator.getCorrelation(i, k);
+                if (subtractMean[k]) {
+                    double mean = correlator.getMean(k);
+                    s -= mean * mean;
+                }
+            }
+            y[i] = s / n;
+            yErr[i] = correlator.getCorrelationError(i);
+        }
+        if (avgErrFork.getDataSinks().length > 0) {
+            avgErrFork.putData(avgErrData);
+        }
+        return data;
+    }
+
+    @Override
+    protected IDataInfo processDataInfo(IDataInfo inputDataInfo) {
+        this.inputDataInfo = inputDataInfo;
+        boolean valid = components != null;
+        for (int k = 0; valid && k < components.length; k++) {
+            valid = components[k] < inputDataInfo.getLength();
+        }
+        if (!valid) {
+            components = new int[inputDataInfo.getLength()];
+            subtractMean = new boolean[components.length];
+            for (int k = 0; k < components.length; k++) {
+                components[k] = k;
+                subtractMean[k] = true;
+            }
+        }
+        x = new double[components.length];
+        correlator = new CorrelatorMultiTau(components.length, nLevels);
+        int nLags = correlator.getNumLags();
+        data = new DataFunction(new int[]{nLags});
+        errData = new DataFunction(new int[]{nLags});
+        tData = new DataDoubleArray(nLags);
+        double[] t = tData.getData();
+        for (int i = 0; i < nLags; i++) {
+            t[i] = dt * correlator.getLag(i);
+        }
+        tDataInfo = new DataDoubleArray.DataInfoDoubleArray("lag time", Time.DIMENSION, new int[]{nLags});
+        tDataInfo.addTag(tTag);
+        dataInfo = new DataFunction.DataInfoFunction(inputDataInfo.getLabel() + " autocorrelation", inputDataInfo.getDimension(), this);
+        dataInfo.addTag(tag);
+        errDataInfo = new DataFunction.DataInfoFunction(inputDataInfo.getLabel() + " autocorrelation error", inputDataInfo.getDimension(), this);
+        errDataInfo.addTag(errTag);
+        avgErrData = new DataGroup(new IData[]{data, errData});
+        avgErrFork.putDataInfo(new DataGroup.DataInfoGroup("autocorrelation", inputDataInfo.getDimension(), new IDataInfo[]{dataInfo, errDataInfo}));
+        return dataInfo;
+    }
+
+    @Override
+    public DataDoubleArray getIndependentData(int i) {
+        return tData;
+    }
+
+    @Override
+    public DataDoubleArray.DataInfoDoubleArray getIndependentDataInfo(int i) {
+        return tDataInfo;
+    }
+
+    @Override
+    public int getIndependentArrayDimension() {
+        return 1;
+    }
+
+    @Override
+    public DataTag getIndependentTag() {
+        return tTag;
+    }
+}
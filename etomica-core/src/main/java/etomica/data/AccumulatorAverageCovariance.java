@@ -178,6 +178,22 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
         blockCovSum.E(0);
     }
 
+    /**
+     * Adds the statistics collected by another accumulator to this one,
+     * including the covariance sums.  The other accumulator must compute the
+     * same kind of covariance (full or not) as this one.
+     *
+     * @see AccumulatorAverageFixed#merge(AccumulatorAverageFixed)
+     */
+    public void merge(AccumulatorAverageFixed other) {
+        if (!(other instanceof AccumulatorAverageCovariance) || ((AccumulatorAverageCovariance) other).fullCovariance != fullCovariance) {
+            throw new IllegalArgumentException("Can only merge with an AccumulatorAverageCovariance computing the same covariance");
+        }
+        super.merge(other);
+        covSum.PE(((AccumulatorAverageCovariance) other).covSum);
+        blockCovSum.PE(((AccumulatorAverageCovariance) other).blockCovSum);
+    }
+
     public IDataInfo processDataInfo(IDataInfo incomingDataInfo) {
         int n = incomingDataInfo.getLength();
         if (fullCovariance) {
@@ -23,6 +23,9 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
     protected IData sumSquare;//sum(value^2)
     protected IData mostRecentBlock, correlationSum, firstBlock;
     protected IData work, work2;
+    // sum of the first and last blocks of chains merged in from other accumulators
+    protected IData otherChainEnds;
+    protected int numOtherChains;
     protected boolean doStrictBlockData = false;
     protected IDataSink blockDataSink;
 
@@ -178,9 +181,10 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
             blockCorrelation.TE(-2 * count);
             blockCorrelation.PE(firstBlock);
             blockCorrelation.PE(mostRecentBlock);
+            blockCorrelation.PE(otherChainEnds);
             blockCorrelation.TE(average);
             blockCorrelation.PE(correlationSum);
-            blockCorrelation.DE(count - 1);
+            blockCorrelation.DE(count - 1 - numOtherChains);
             blockCorrelation.PE(work);
             blockCorrelation.DE(error);
             blockCorrelation.map(sanityCheckBC);
@@ -242,6 +246,62 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
         correlationSum.E(0);
         firstBlock.E(Double.NaN);
         mostRecentBlock.E(Double.NaN);
+        otherChainEnds.E(0);
+        numOtherChains = 0;
+    }
+
+    /**
+     * Adds the statistics collected by another accumulator to this one, as if
+     * the blocks collected by the other accumulator had been collected here.
+     * This is meant for combining the results of independent runs (such as
+     * separate walkers run on separate threads).  The sequence of blocks from
+     * each accumulator is treated as a separate chain, so that the block
+     * correlation only includes pairs of blocks that were actually collected
+     * consecutively.  The partially complete block of the other accumulator
+     * contributes to the average and standard deviation, but not to the block
+     * statistics.
+     * <p>
+     * This accumulator must have received the same DataInfo as the other
+     * accumulator and must have the same block size.  After a merge, this
+     * accumulator should only be used to report results; it should not be
+     * given more data.
+     *
+     * @param other the accumulator whose statistics should be added to this one
+     */
+    public void merge(AccumulatorAverageFixed other) {
+        if (sum == null || other.sum == null) {
+            throw new IllegalStateException("Both accumulators must have received their DataInfo");
+        }
+        if (other.blockSize != blockSize) {
+            throw new IllegalArgumentException("Block sizes must match");
+        }
+        if (other.sum.getLength() != sum.getLength()) {
+            throw new IllegalArgumentException("Data lengths must match");
+        }
+        if (other.count > 0) {
+            if (count == 0) {
+                firstBlock.E(other.firstBlock);
+                mostRecentBlock.E(other.mostRecentBlock);
+            } else {
+                otherChainEnds.PE(other.firstBlock);
+                otherChainEnds.PE(other.mostRecentBlock);
+                numOtherChains++;
+            }
+            otherChainEnds.PE(other.otherChainEnds);
+            numOtherChains += other.numOtherChains;
+        }
+        sum.PE(other.sum);
+        sumBlockSquare.PE(other.sumBlockSquare);
+        sumSquare.PE(other.sumSquare);
+        correlationSum.PE(other.correlationSum);
+        currentBlockSum.PE(other.currentBlockSum);
+        count += other.count;
+        // the partial blocks together may exceed a full block, in which case
+        // blockCountDown goes negative.  nTotalData remains correct.
+        blockCountDown -= other.blockSize - other.blockCountDown;
+        if (other.count > 0 || other.blockCountDown < other.blockSize) {
+            mostRecent.E(other.mostRecent);
+        }
     }
 
     public IDataInfo processDataInfo(IDataInfo incomingDataInfo) {
@@ -252,6 +312,7 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
         firstBlock = incomingDataInfo.makeData();
         correlationSum = incomingDataInfo.makeData();
         mostRecentBlock = incomingDataInfo.makeData();
+        otherChainEnds = incomingDataInfo.makeData();
         work = incomingDataInfo.makeData();
         work2 = incomingDataInfo.makeData();
         return super.processDataInfo(incomingDataInfo);
@@ -0,0 +1,276 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import java.util.Arrays;
+
+/**
+ * Multiple-tau correlator (Ramirez, Sinha, Shaw and Zhang, J. Chem. Phys.
+ * 133, 154103 (2010)) that computes the autocorrelation of several signals
+ * on a quasi-logarithmic grid of lags using memory and time per sample that
+ * do not grow with the length of the run.
+ * <p>
+ * Level 0 holds the last p samples and correlates them at lags 0 ... p-1.
+ * Every m values that enter level l are averaged and passed on to level l+1,
+ * which correlates at lags (p/m ... p-1) m^l.  Correlations at long lags are
+ * therefore computed from averaged values, which is a good approximation
+ * once the lag is much longer than the averaging time m^l.  Each level
+ * keeps its values in a single flat array, with the signals of a sample
+ * next to each other.
+ * <p>
+ * The correlator also keeps block averages of the signal-averaged product at
+ * each lag so that the uncertainty of the signal-averaged correlation can be
+ * estimated.  The block length doubles (and adjacent blocks are merged)
+ * whenever the number of blocks reaches twice the requested number.
+ */
+public class CorrelatorMultiTau {
+
+    protected final int nSignals, p, m, maxLevels;
+    protected final int nBlocks;
+    protected int nLevels;
+    // last p values at each level, with the signals of one value contiguous
+    protected double[][] values;
+    protected int[] head;
+    protected long[] nValues;
+    // values waiting to be averaged into the next level
+    protected double[][] pending;
+    protected int[] nPending;
+    // sums of products for each lag, with the signals of one lag contiguous
+    protected double[] corrSum;
+    protected long[] corrCount;
+    protected final double[] sum;
+    protected long count;
+    protected long[] blockSize, blockCount;
+    protected double[] blockSum;
+    protected double[][] blockAvg;
+    protected int[] nFullBlocks;
+
+    /**
+     * Creates a correlator with 16 lags per level, averaging pairs of values
+     * between levels and 30 blocks for error estimates.
+     *
+     * @param nSignals  the number of signals correlated
+     * @param maxLevels the number of levels; the longest lag is about
+     *                  16*2^(maxLevels-1) samples
+     */
+    public CorrelatorMultiTau(int nSignals, int maxLevels) {
+        this(nSignals, 16, 2, maxLevels, 30);
+    }
+
+    /**
+     * @param nSignals  the number of signals correlated
+     * @param p         the number of lags at each level, a multiple of m
+     * @param m         the number of values averaged from one level into the
+     *                  next
+     * @param maxLevels the number of levels
+     * @param nBlocks   the minimum number of blocks used for error estimates
+     *                  (once there are enough products)
+     */
+    public CorrelatorMultiTau(int nSignals, int p, int m, int maxLevels, int nBlocks) {
+        if (nSignals < 1 || m < 2 || p < m || p % m != 0 || maxLevels < 1 || nBlocks < 2) {
+            throw new IllegalArgumentException("invalid correlator parameters");
+        }
+        this.nSignals = nSignals;
+        this.p = p;
+        this.m = m;
+        this.maxLevels = maxLevels;
+        this.nBlocks = nBlocks;
+        sum = new double[nSignals];
+        int nLags = getNumLags();
+        corrSum = new double[nLags * nSignals];
+        corrCount = new long[nLags];
+        blockSize = new long[nLags];
+        blockCount = new long[nLags];
+        blockSum = new double[nLags];
+        blockAvg = new double[nLags][2 * nBlocks];
+        nFullBlocks = new int[nLags];
+        values = new double[0][];
+        head = new int[0];
+        nValues = new long[0];
+        pending = new double[0][];
+        nPending = new int[0];
+        reset();
+    }
+
+    /**
+     * Discards all samples.
+     */
+    public void reset() {
+        nLevels = 0;
+        values = new double[0][];
+        head = new int[0];
+        nValues = new long[0];
+        pending = new double[0][];
+        nPending = new int[0];
+        Arrays.fill(corrSum, 0);
+        Arrays.fill(corrCount, 0);
+        Arrays.fill(sum, 0);
+        count = 0;
+        Arrays.fill(blockSize, 1);
+        Arrays.fill(blockCount, 0);
+        Arrays.fill(blockSum, 0);
+        Arrays.fill(nFullBlocks, 0);
+    }
+
+    public int getNumSignals() {
+        return nSignals;
+    }
+
+    /**
+     * @return the number of lags, p + (maxLevels-1)(p - p/m)
+     */
+    public int getNumLags() {
+        return p + (maxLevels - 1) * (p - p / m);
+    }
+
+    /**
+     * @return the lag (in samples) of lag index i
+     */
+    public long getLag(int i) {
+        if (i < p) return i;
+        int pm = p - p / m;
+        int l = 1 + (i - p) / pm;
+        int j = p / m + (i - p) % pm;
+        long lag = j;
+        for (int k = 0; k < l; k++) lag *= m;
+        return lag;
+    }
+
+    /**
+     * @return the number of samples added since the last reset
+     */
+    public long getSampleCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of products that went into the correlation at lag
+     * index i
+     */
+    public long getCount(int i) {
+        return corrCount[i];
+    }
+
+    /**
+     * @return the average value of signal k
+     */
+    public double getMean(int k) {
+        return sum[k] / count;
+    }
+
+    /**
+     * @return the average of x_k(t) x_k(t+lag) at lag index i, or NaN if the
+     * lag has not been reached
+     */
+    public double getCorrelation(int i, int k) {
+        return corrSum[i * nSignals + k] / corrCount[i];
+    }
+
+    /**
+     * Returns an estimate of the uncertainty in the average over the signals
+     * of x_k(t) x_k(t+lag) at lag index i from the block averages, or NaN if
+     * there are too few blocks.
+     */
+    public double getCorrelationError(int i) {
+        int nb = nFullBlocks[i];
+        if (nb < 2) return Double.NaN;
+        double s = 0, s2 = 0;
+        double[] b = blockAvg[i];
+        for (int k = 0; k < nb; k++) {
+            s += b[k];
+            s2 += b[k] * b[k];
+        }
+        s /= nb;
+        s2 /= nb;
+        double var = s2 - s * s;
+        return var <= 0 ? 0 : Math.sqrt(var / (nb - 1));
+    }
+
+    /**
+     * Adds a sample of the signals.
+     */
+    public void addSample(double[] x) {
+        if (x.length != nSignals) {
+            throw new IllegalArgumentException("expected " + nSignals + " signals");
+        }
+        for (int k = 0; k < nSignals; k++) {
+            sum[k] += x[k];
+        }
+        count++;
+        add(0, x, 0);
+    }
+
+    protected void add(int l, double[] x, int offset) {
+        if (l == nLevels) addLevel();
+        double[] v = values[l];
+        int h = head[l] = head[l] + 1 == p ? 0 : head[l] + 1;
+        System.arraycopy(x, offset, v, h * nSignals, nSignals);
+        long n = ++nValues[l];
+
+        int j0 = l == 0 ? 0 : p / m;
+        int jMax = (int) Math.min(p - 1, n - 1);
+        int lagOffset = l == 0 ? 0 : p + (l - 1) * (p - p / m) - p / m;
+        int hs = h * nSignals;
+        for (int j = j0; j <= jMax; j++) {
+            int o = h - j;
+            if (o < 0) o += p;
+            o *= nSignals;
+            int i = lagOffset + j;
+            int c = i * nSignals;
+            double s = 0;
+            for (int k = 0; k < nSignals; k++) {
+                double xx = v[hs + k] * v[o + k];
+                corrSum[c + k] += xx;
+                s += xx;
+            }
+            corrCount[i]++;
+            addBlock(i, s / nSignals);
+        }
+
+        if (l + 1 < maxLevels) {
+            double[] a = pending[l];
+            for (int k = 0; k < nSignals; k++) {
+                a[k] += x[offset + k];
+            }
+            if (++nPending[l] == m) {
+                for (int k = 0; k < nSignals; k++) {
+                    a[k] /= m;
+                }
+                nPending[l] = 0;
+                add(l + 1, a, 0);
+                Arrays.fill(a, 0);
+            }
+        }
+    }
+
+    protected void addLevel() {
+        values = Arrays.copyOf(values, nLevels + 1);
+        values[nLevels] = new double[p * nSignals];
+        head = Arrays.copyOf(head, nLevels + 1);
+        head[nLevels] = -1;
+        nValues = Arrays.copyOf(nValues, nLevels + 1);
+        pending = Arrays.copyOf(pending, nLevels + 1);
+        pending[nLevels] = new double[nSignals];
+        nPending = Arrays.copyOf(nPending, nLevels + 1);
+        nLevels++;
+    }
+
+    protected void addBlock(int i, double s) {
+        blockSum[i] += s;
+        if (++blockCount[i] < blockSize[i]) return;
+        double[] b = blockAvg[i];
+        b[nFullBlocks[i]++] = blockSum[i] / blockSize[i];
+        blockSum[i] = 0;
+        blockCount[i] = 0;
+        if (nFullBlocks[i] == b.length) {
+            // merge adjacent blocks
+            for (int k = 0; k < nBlocks; k++) {
+                b[k] = 0.5 * (b[2 * k] + b[2 * k + 1]);
+            }
+            nFullBlocks[i] = nBlocks;
+            blockSize[i] *= 2;
+        }
+    }
+}
@@ -4,6 +4,7 @@
 
 package etomica.data;
 
+import etomica.meta.annotations.IndexSubclasses;
 
 /**
  * DataProcessor that accumulates and transforms given data and intermittently transmits
@@ -12,6 +13,7 @@ package etomica.data;
  * average or other statistics, updating a histogram).  After a specified number of times,
  * this instance will push the accumulated data to DataSink(s) that have been added to it.
  */
+@IndexSubclasses
 public abstract class DataAccumulator extends DataProcessorForked implements IDataSource {
 
     /**
@@ -0,0 +1,103 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataFunction;
+import etomica.units.dimensions.Dimension;
+import etomica.units.dimensions.Time;
+
+/**
+ * Base class for time-correlation functions computed from the samples of a
+ * TrajectoryStorage.  Holds the function and the lag times, which are
+ * filled in (from the storage's time between samples) when the data is
+ * requested.  Lags that have not been reached yet are NaN.
+ */
+public abstract class DataSourceTrajectory implements IDataSource, DataSourceIndependent, TrajectoryStorage.TrajectoryListener {
+
+    protected final TrajectoryStorage storage;
+    protected final DataTag tag, tTag;
+    protected final DataFunction data;
+    protected final DataFunction.DataInfoFunction dataInfo;
+    protected final DataDoubleArray tData;
+    protected final DataDoubleArray.DataInfoDoubleArray tDataInfo;
+
+    /**
+     * Creates the data source and adds it as a listener to the storage.
+     *
+     * @param nLags     the number of lags
+     * @param label     label of the function
+     * @param dimension dimension of the function
+     */
+    public DataSourceTrajectory(TrajectoryStorage storage, int nLags, String label, Dimension dimension) {
+        this.storage = storage;
+        tag = new DataTag();
+        tTag = new DataTag();
+        data = new DataFunction(new int[]{nLags});
+        tData = new DataDoubleArray(nLags);
+        tDataInfo = new DataDoubleArray.DataInfoDoubleArray("t", Time.DIMENSION, new int[]{nLags});
+        tDataInfo.addTag(tTag);
+        dataInfo = new DataFunction.DataInfoFunction(label, dimension, this);
+        dataInfo.addTag(tag);
+        storage.addListener(this);
+    }
+
+    /**
+     * @return the lag (in samples) of lag index i
+     */
+    protected abstract long getLag(int i);
+
+    /**
+     * Fills y with the function at each lag, or NaN for lags that have not
+     * been reached.
+     */
+    protected abstract void computeData(double[] y);
+
+    /**
+     * Discards the accumulated sums.
+     */
+    public abstract void reset();
+
+    @Override
+    public IData getData() {
+        double[] t = tData.getData();
+        double dt = storage.getSampleTime();
+        for (int i = 0; i < t.length; i++) {
+            t[i] = dt * getLag(i);
+        }
+        computeData(data.getData());
+        return data;
+    }
+
+    @Override
+    public DataTag getTag() {
+        return tag;
+    }
+
+    @Override
+    public IDataInfo getDataInfo() {
+        return dataInfo;
+    }
+
+    @Override
+    public DataDoubleArray getIndependentData(int i) {
+        return tData;
+    }
+
+    @Override
+    public DataDoubleArray.DataInfoDoubleArray getIndependentDataInfo(int i) {
+        return tDataInfo;
+    }
+
+    @Override
+    public int getIndependentArrayDimension() {
+        return 1;
+    }
+
+    @Override
+    public DataTag getIndependentTag() {
+        return tTag;
+    }
+}
@@ -0,0 +1,81 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.space.Vector;
+import etomica.units.dimensions.Null;
+
+/**
+ * Normalized collective intermediate scattering function,
+ * F(q,t)/F(q,0) = &lt;rho_q(0) rho_-q(t)&gt; / &lt;|rho_q|^2&gt;, computed
+ * from the samples of a TrajectoryStorage.  The real and imaginary parts of
+ * rho_q are correlated with a multiple-tau correlator, so lags between
+ * powers of 2 are included and long lags are averaged over many time
+ * origins.
+ */
+public class DataSourceTrajectoryF extends DataSourceTrajectory {
+
+    protected final double[] q;
+    protected final CorrelatorMultiTau correlator;
+    protected final double[] rhoq;
+
+    /**
+     * @param q       the wave vector
+     * @param nLevels the number of correlator levels; the longest lag is
+     *                about 16*2^(nLevels-1) samples
+     */
+    public DataSourceTrajectoryF(TrajectoryStorage storage, Vector q, int nLevels) {
+        this(storage, q, new CorrelatorMultiTau(2, nLevels));
+    }
+
+    private DataSourceTrajectoryF(TrajectoryStorage storage, Vector q, CorrelatorMultiTau correlator) {
+        super(storage, correlator.getNumLags(), "F(t)", Null.DIMENSION);
+        this.q = new double[q.getD()];
+        q.assignTo(this.q);
+        this.correlator = correlator;
+        rhoq = new double[2];
+    }
+
+    public void setQ(Vector newQ) {
+        newQ.assignTo(q);
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        correlator.reset();
+    }
+
+    @Override
+    protected long getLag(int i) {
+        return correlator.getLag(i);
+    }
+
+    @Override
+    protected void computeData(double[] y) {
+        double f0 = correlator.getCorrelation(0, 0) + correlator.getCorrelation(0, 1);
+        for (int i = 0; i < y.length; i++) {
+            y[i] = (correlator.getCorrelation(i, 0) + correlator.getCorrelation(i, 1)) / f0;
+        }
+    }
+
+    @Override
+    public void newFrame(long sample, double[] r) {
+        int D = q.length;
+        double c = 0, s = 0;
+        for (int o = 0; o < r.length; o += D) {
+            double qr = 0;
+            for (int k = 0; k < D; k++) {
+                qr += q[k] * r[o + k];
+            }
+            c += Math.cos(qr);
+            s += Math.sin(qr);
+        }
+        double norm = r.length == 0 ? 1 : 1 / Math.sqrt(r.length / D);
+        rhoq[0] = c * norm;
+        rhoq[1] = s * norm;
+        correlator.addSample(rhoq);
+    }
+}
@@ -0,0 +1,84 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.space.Vector;
+import etomica.units.dimensions.Null;
+
+import java.util.Arrays;
+
+/**
+ * Self intermediate scattering function, Fs(q,t) = &lt;cos(q.dr(t))&gt;, of
+ * the atoms (optionally only those of one type) over 1, 2, 4... samples of
+ * a TrajectoryStorage.
+ */
+public class DataSourceTrajectoryFs extends DataSourceTrajectory {
+
+    protected final double[] q;
+    protected final double[] fsSum;
+    protected final long[] nSamples;
+    protected AtomType type;
+
+    /**
+     * @param q the wave vector
+     */
+    public DataSourceTrajectoryFs(TrajectoryStorage storage, Vector q) {
+        super(storage, storage.getMaxLags(), "Fs(t)", Null.DIMENSION);
+        this.q = new double[q.getD()];
+        q.assignTo(this.q);
+        fsSum = new double[storage.getMaxLags()];
+        nSamples = new long[fsSum.length];
+    }
+
+    public void setQ(Vector newQ) {
+        newQ.assignTo(q);
+        reset();
+    }
+
+    public void setAtomType(AtomType type) {
+        this.type = type;
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(fsSum, 0);
+        Arrays.fill(nSamples, 0);
+    }
+
+    @Override
+    protected long getLag(int i) {
+        return 1L << i;
+    }
+
+    @Override
+    protected void computeData(double[] y) {
+        for (int i = 0; i < y.length; i++) {
+            y[i] = fsSum[i] / nSamples[i];
+        }
+    }
+
+    @Override
+    public void newDisplacements(int log2Lag, long sample, double[] dr) {
+        int D = q.length;
+        IAtomList atoms = storage.getBox().getLeafList();
+        double sum = 0;
+        int n = 0;
+        for (int i = 0, o = 0; o < dr.length; i++, o += D) {
+            if (type != null && atoms.get(i).getType() != type) continue;
+            double qdr = 0;
+            for (int k = 0; k < D; k++) {
+                qdr += q[k] * dr[o + k];
+            }
+            sum += Math.cos(qdr);
+            n++;
+        }
+        if (n == 0) return;
+        fsSum[log2Lag] += sum / n;
+        nSamples[log2Lag]++;
+    }
+}
@@ -0,0 +1,91 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.data.types.DataFunction;
+import etomica.units.dimensions.CompoundDimension;
+import etomica.units.dimensions.Dimension;
+import etomica.units.dimensions.Length;
+
+import java.util.Arrays;
+
+/**
+ * Mean square displacement of the atoms (optionally only those of one type)
+ * over 1, 2, 4... samples of a TrajectoryStorage.  The uncertainty is
+ * estimated from the scatter of the (non-overlapping) samples at each lag.
+ */
+public class DataSourceTrajectoryMSD extends DataSourceTrajectory {
+
+    protected final AtomType type;
+    protected final double[] msdSum, msd2Sum;
+    protected final long[] nSamples;
+    protected final DataFunction errData;
+
+    public DataSourceTrajectoryMSD(TrajectoryStorage storage) {
+        this(storage, null);
+    }
+
+    public DataSourceTrajectoryMSD(TrajectoryStorage storage, AtomType type) {
+        super(storage, storage.getMaxLags(), "MSD", new CompoundDimension(new Dimension[]{Length.DIMENSION}, new double[]{2}));
+        this.type = type;
+        int n = storage.getMaxLags();
+        msdSum = new double[n];
+        msd2Sum = new double[n];
+        nSamples = new long[n];
+        errData = new DataFunction(new int[]{n});
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(msdSum, 0);
+        Arrays.fill(msd2Sum, 0);
+        Arrays.fill(nSamples, 0);
+    }
+
+    /**
+     * Returns the uncertainty in the MSD at each lag, as of the last call to
+     * getData.
+     */
+    public DataFunction getErrorData() {
+        return errData;
+    }
+
+    @Override
+    protected long getLag(int i) {
+        return 1L << i;
+    }
+
+    @Override
+    protected void computeData(double[] y) {
+        double[] yErr = errData.getData();
+        for (int i = 0; i < y.length; i++) {
+            long M = nSamples[i];
+            y[i] = msdSum[i] / M;
+            yErr[i] = M < 2 ? Double.NaN : Math.sqrt((msd2Sum[i] / M - y[i] * y[i]) / (M - 1));
+        }
+    }
+
+    @Override
+    public void newDisplacements(int log2Lag, long sample, double[] dr) {
+        int D = storage.getBox().getSpace().D();
+        IAtomList atoms = storage.getBox().getLeafList();
+        double sum = 0;
+        int n = 0;
+        for (int i = 0, o = 0; o < dr.length; i++, o += D) {
+            if (type != null && atoms.get(i).getType() != type) continue;
+            for (int k = 0; k < D; k++) {
+                sum += dr[o + k] * dr[o + k];
+            }
+            n++;
+        }
+        if (n == 0) return;
+        double avg = sum / n;
+        msdSum[log2Lag] += avg;
+        msd2Sum[log2Lag] += avg * avg;
+        nSamples[log2Lag]++;
+    }
+}
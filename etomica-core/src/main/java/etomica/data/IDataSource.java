@@ -4,6 +4,8 @@
 
 package etomica.data;
 
+import etomica.meta.annotations.IndexSubclasses;
+
 /**
  * Interface for an object that can provide IData objects
  * on request.  Normally an IDataSource heads a stream that processes
@@ -11,6 +13,7 @@ package etomica.data;
  * IData is pulled from the IDataSource by a DataPump and pushed down the
  * data stream.
  */
+@IndexSubclasses
 public interface IDataSource {
 
     /**
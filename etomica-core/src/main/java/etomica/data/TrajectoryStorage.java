@@ -0,0 +1,334 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.integrator.Integrator;
+import etomica.integrator.IntegratorEvent;
+import etomica.integrator.IntegratorListener;
+import etomica.integrator.IntegratorMD;
+import etomica.space.Boundary;
+import etomica.space.Vector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Integrator listener that follows the unwrapped coordinates of the leaf
+ * atoms of a box and keeps the past configurations needed to compute
+ * displacements over 1, 2, 4, 8... samples.  Displacements over 2^j samples
+ * are computed at every sample that is a multiple of 2^j (so that the
+ * displacements over each lag do not overlap), once for all listeners.
+ * <p>
+ * Coordinates are unwrapped (using the boundary's nearest image) as they are
+ * sampled, so stored configurations never need to be shifted.  Each stored
+ * configuration is a flat buffer of the coordinates (x0, y0, z0, x1, ...)
+ * that is shared by every lag that needs it, so taking a sample costs a
+ * single copy of the coordinates, and at most log2(samples)+1 buffers are in
+ * use.  The buffers can be kept in a memory-mapped temporary file instead of
+ * the heap (see setMappedFileDirectory) for large systems and long runs.
+ */
+public class TrajectoryStorage implements IntegratorListener {
+
+    protected final Box box;
+    protected final int D;
+    protected final int maxLags;
+    protected final Vector dri;
+    protected final List<TrajectoryListener> listeners;
+    protected final ArrayDeque<DoubleBuffer> freeFrames;
+    protected int interval, intervalCountdown;
+    protected boolean enabled;
+    protected double[] r, rWrapped, dr;
+    protected DoubleBuffer[] saved;
+    protected long sampleCount;
+    protected double time0, sampleTime;
+    protected File mappedFileDirectory, mappedFile;
+    protected FileChannel channel;
+    protected int nMappedFrames;
+
+    /**
+     * Creates storage that samples every step and computes displacements over
+     * up to 2^29 samples.
+     */
+    public TrajectoryStorage(Box box) {
+        this(box, 1, 30);
+    }
+
+    /**
+     * @param box      the box whose atoms are followed
+     * @param interval the number of integrator steps between samples
+     * @param maxLags  the number of lags; the longest is 2^(maxLags-1) samples
+     */
+    public TrajectoryStorage(Box box, int interval, int maxLags) {
+        if (maxLags < 1 || maxLags > 62) {
+            throw new IllegalArgumentException("maxLags must be between 1 and 62");
+        }
+        this.box = box;
+        this.maxLags = maxLags;
+        D = box.getSpace().D();
+        dri = box.getSpace().makeVector();
+        listeners = new ArrayList<>();
+        freeFrames = new ArrayDeque<>();
+        saved = new DoubleBuffer[maxLags];
+        r = rWrapped = dr = new double[0];
+        setSampleInterval(interval);
+        enabled = true;
+    }
+
+    public Box getBox() {
+        return box;
+    }
+
+    /**
+     * @return the number of lags, including those not yet reached
+     */
+    public int getMaxLags() {
+        return maxLags;
+    }
+
+    public void setSampleInterval(int newInterval) {
+        if (newInterval < 1) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        interval = intervalCountdown = newInterval;
+        reset();
+    }
+
+    public int getSampleInterval() {
+        return interval;
+    }
+
+    public void setEnabled(boolean newEnabled) {
+        enabled = newEnabled;
+    }
+
+    public boolean getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Keeps the stored configurations in a memory-mapped temporary file in
+     * the given directory, or on the heap if the directory is null.  The file
+     * is deleted when the number of atoms or the directory changes, or when
+     * the JVM exits.  Discards all stored configurations.
+     */
+    public void setMappedFileDirectory(File dir) {
+        mappedFileDirectory = dir;
+        reset();
+        closeMappedFile();
+    }
+
+    public File getMappedFileDirectory() {
+        return mappedFileDirectory;
+    }
+
+    public void addListener(TrajectoryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TrajectoryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Discards all stored configurations.  The next sample starts a new
+     * trajectory.
+     */
+    public void reset() {
+        for (int j = 0; j < saved.length; j++) {
+            release(j);
+        }
+        sampleCount = 0;
+        sampleTime = Double.NaN;
+        intervalCountdown = interval;
+    }
+
+    /**
+     * @return the number of samples taken since the last reset
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the (simulation) time between samples, or NaN if fewer than 2
+     * samples have been taken
+     */
+    public double getSampleTime() {
+        return sampleTime;
+    }
+
+    /**
+     * @return the number of configurations currently stored
+     */
+    public int getFrameCount() {
+        int n = 0;
+        for (int j = 0; j < saved.length; j++) {
+            if (saved[j] != null && (j == 0 || saved[j] != saved[j - 1])) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the unwrapped coordinates at the last sample, as x0, y0, z0, x1...
+     */
+    public double[] getCoordinates() {
+        return r;
+    }
+
+    @Override
+    public void integratorInitialized(IntegratorEvent e) {
+    }
+
+    @Override
+    public void integratorStepStarted(IntegratorEvent e) {
+    }
+
+    @Override
+    public void integratorStepFinished(IntegratorEvent e) {
+        if (!enabled || --intervalCountdown > 0) return;
+        intervalCountdown = interval;
+        Integrator integrator = e.getIntegrator();
+        sample(integrator instanceof IntegratorMD ? ((IntegratorMD) integrator).getCurrentTime() : integrator.getStepCount());
+    }
+
+    /**
+     * Takes a sample of the coordinates at the given time, notifies the
+     * listeners of the new configuration and of the displacements for each
+     * lag that is due, and stores the configuration.
+     */
+    public void sample(double time) {
+        IAtomList atoms = box.getLeafList();
+        int n = atoms.size() * D;
+        if (n != r.length) {
+            reset();
+            r = new double[n];
+            rWrapped = new double[n];
+            dr = new double[n];
+            freeFrames.clear();
+            closeMappedFile();
+        }
+        Boundary boundary = box.getBoundary();
+        for (int i = 0, o = 0; o < n; i++, o += D) {
+            Vector p = atoms.get(i).getPosition();
+            if (sampleCount == 0) {
+                for (int k = 0; k < D; k++) {
+                    r[o + k] = rWrapped[o + k] = p.getX(k);
+                }
+                continue;
+            }
+            for (int k = 0; k < D; k++) {
+                dri.setX(k, p.getX(k) - rWrapped[o + k]);
+            }
+            boundary.nearestImage(dri);
+            for (int k = 0; k < D; k++) {
+                r[o + k] += dri.getX(k);
+                rWrapped[o + k] = p.getX(k);
+            }
+        }
+        if (sampleCount == 0) time0 = time;
+        else if (sampleCount == 1) sampleTime = time - time0;
+
+        for (TrajectoryListener l : listeners) {
+            l.newFrame(sampleCount, r);
+        }
+        for (int j = 0; j < maxLags && sampleCount % (1L << j) == 0 && saved[j] != null; j++) {
+            DoubleBuffer old = saved[j];
+            old.position(0);
+            old.get(dr);
+            for (int i = 0; i < n; i++) {
+                dr[i] = r[i] - dr[i];
+            }
+            for (TrajectoryListener l : listeners) {
+                l.newDisplacements(j, sampleCount, dr);
+            }
+        }
+
+        DoubleBuffer frame = newFrame(n);
+        frame.position(0);
+        frame.put(r);
+        for (int j = 0; j < maxLags && sampleCount % (1L << j) == 0; j++) {
+            release(j);
+            saved[j] = frame;
+        }
+        sampleCount++;
+    }
+
+    protected void release(int j) {
+        DoubleBuffer frame = saved[j];
+        if (frame == null) return;
+        saved[j] = null;
+        for (DoubleBuffer s : saved) {
+            if (s == frame) return;
+        }
+        freeFrames.add(frame);
+    }
+
+    protected DoubleBuffer newFrame(int n) {
+        DoubleBuffer frame = freeFrames.poll();
+        if (frame != null) return frame;
+        if (mappedFileDirectory == null) {
+            return DoubleBuffer.wrap(new double[n]);
+        }
+        long frameBytes = 8L * n;
+        try {
+            if (channel == null) {
+                mappedFile = File.createTempFile("trajectory", ".bin", mappedFileDirectory);
+                mappedFile.deleteOnExit();
+                channel = new RandomAccessFile(mappedFile, "rw").getChannel();
+                nMappedFrames = 0;
+            }
+            frame = channel.map(FileChannel.MapMode.READ_WRITE, nMappedFrames * frameBytes, frameBytes)
+                    .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            nMappedFrames++;
+            return frame;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map trajectory file", e);
+        }
+    }
+
+    protected void closeMappedFile() {
+        if (channel == null) return;
+        freeFrames.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing more we can do
+        }
+        mappedFile.delete();
+        channel = null;
+        mappedFile = null;
+    }
+
+    /**
+     * Receives the configurations and displacements computed by a
+     * TrajectoryStorage.  The arrays are reused and must not be modified or
+     * kept.
+     */
+    public interface TrajectoryListener {
+
+        /**
+         * Called with the unwrapped coordinates of each new sample.
+         */
+        default void newFrame(long sample, double[] r) {
+        }
+
+        /**
+         * Called with the displacements of all atoms over the last 2^log2Lag
+         * samples, as dx0, dy0, dz0, dx1...
+         */
+        default void newDisplacements(int log2Lag, long sample, double[] dr) {
+        }
+    }
+}
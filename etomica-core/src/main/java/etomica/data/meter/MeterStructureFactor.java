@@ -40,8 +40,11 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
     protected final DataTag tag, xTag;
     protected DataDoubleArray xData;
     protected DataInfoDoubleArray xDataInfo;
-    protected double[] atomTypeSignal;
+    protected double[] atomTypeSignal, atomTypeAmplitude;
     protected double cutoff;
+    protected final StructureFactorCalculator calculator;
+    protected double[] rhoRe, rhoIm;
+    protected double[] r, f;
 
     /**
      * Creates meter with default to compute the structure factor for all atoms
@@ -54,8 +57,10 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
         atomList = box.getLeafList();
         tag = new DataTag();
         xTag = new DataTag();
+        calculator = new StructureFactorCalculator(space.D());
 	    setCutoff(cutoff);
         atomTypeSignal = new double[0];
+        atomTypeAmplitude = new double[0];
 	}
 	
 	protected void resetData() {
@@ -66,6 +71,8 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
 	    dataInfo = new DataInfoFunction("Structure Factor", Null.DIMENSION, this);
         dataInfo.addTag(tag);
         data = new DataFunction(new int[]{waveVec.length}, struct);
+        rhoRe = new double[waveVec.length];
+        rhoIm = new double[waveVec.length];
 	}
 
 	protected int makeWaveVector(double cutoff) {
@@ -131,6 +138,7 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
 	    waveVec = new Vector[nVec];
         resetData();
         makeWaveVector(cutoff);
+        calculator.setWaveVectors(waveVec, box.getBoundary());
         this.cutoff = cutoff;
     }
 
@@ -148,6 +156,7 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
 			this.waveVec[i].E(waveVec[i]);
 		}
 		resetData();
+        calculator.setWaveVectors(this.waveVec, box.getBoundary());
 	}
 	
 	/**
@@ -171,22 +180,71 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
         atomTypeSignal[idx] = factor;
     }
 
+    /**
+     * Sets the amplitude of each atom of the given type in the collective
+     * density rho(q) = sum_j a_j exp(i q.r_j).  Unlike setAtomTypeFactor,
+     * which multiplies the phase, this gives (for example) the concentration
+     * structure factor |rho_A(q) - rho_B(q)|^2/N^2 of a binary mixture with
+     * amplitudes 1 and -1.  The amplitude is 1 for types that have not been
+     * set.
+     */
+    public void setAtomTypeAmplitude(AtomType atomType, double amplitude) {
+        int idx = atomType.getIndex();
+        if (idx >= atomTypeAmplitude.length) {
+            int oldLength = atomTypeAmplitude.length;
+            atomTypeAmplitude = Arrays.copyOf(atomTypeAmplitude, idx + 1);
+            for (int i = oldLength; i < idx; i++) atomTypeAmplitude[i] = 1;
+        }
+        atomTypeAmplitude[idx] = amplitude;
+    }
+
+    /**
+     * Sets the number of threads used to compute the structure factor.
+     */
+    public void setNumThreads(int numThreads) {
+        calculator.setNumThreads(numThreads);
+    }
+
+    public int getNumThreads() {
+        return calculator.getNumThreads();
+    }
+
+    /**
+     * Sets whether to compute the structure factor from a Fourier transformed
+     * grid, which is much faster for many wave vectors but approximate.  See
+     * StructureFactorCalculator.
+     */
+    public void setUseFFT(boolean useFFT) {
+        calculator.setUseFFT(useFFT);
+    }
+
+    public boolean getUseFFT() {
+        return calculator.getUseFFT();
+    }
+
     public IData getData() {
-        long numAtoms = atomList.size();
-        long n2 = numAtoms*numAtoms;
-        for (int i = 0; i < struct.length; i++) struct[i] = 0;
-        for(int k = 0; k<waveVec.length; k++){
-            double term1 = 0;
-            double term2 = 0;
-            for(int i = 0; i<numAtoms; i++){
-                IAtom atom = atomList.get(i);
-                int typeIdx = atom.getType().getIndex();
-                double signal = atomTypeSignal.length > typeIdx ? atomTypeSignal[typeIdx] : 1.0;
-                double dotprod = signal * waveVec[k].dot(atom.getPosition());
-                term1 += Math.cos(dotprod);
-                term2 += Math.sin(dotprod);
+        int numAtoms = atomList.size();
+        long n2 = (long)numAtoms*numAtoms;
+        // the type factor multiplies the phase q.r, so pass the calculator
+        // positions multiplied by the factor
+        int D = space.D();
+        if (r == null || r.length != numAtoms*D) {
+            r = new double[numAtoms*D];
+            f = new double[numAtoms];
+        }
+        for(int i = 0; i<numAtoms; i++){
+            IAtom atom = atomList.get(i);
+            int typeIdx = atom.getType().getIndex();
+            double signal = atomTypeSignal.length > typeIdx ? atomTypeSignal[typeIdx] : 1.0;
+            Vector p = atom.getPosition();
+            for (int a = 0; a < D; a++) {
+                r[i*D+a] = signal * p.getX(a);
             }
-            struct[k] = ((term1*term1) + (term2*term2))/n2;
+            f[i] = atomTypeAmplitude.length > typeIdx ? atomTypeAmplitude[typeIdx] : 1.0;
+        }
+        calculator.calculate(r, f, rhoRe, rhoIm);
+        for(int k = 0; k<waveVec.length; k++){
+            struct[k] = (rhoRe[k]*rhoRe[k] + rhoIm[k]*rhoIm[k])/n2;
         }
         return data;
     }
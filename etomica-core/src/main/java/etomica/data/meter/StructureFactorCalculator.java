@@ -0,0 +1,468 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import Jama.Matrix;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.space.Boundary;
+import etomica.space.Vector;
+import etomica.util.ParallelUtils;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes the collective densities rho(q) = sum_j f_j exp(i q.r_j) of a set
+ * of atoms for a set of wave vectors, from which the structure factor
+ * |rho(q)|^2/N follows.
+ * <p>
+ * Wave vectors that are integer combinations n_0 b_0 + n_1 b_1 + ... of the
+ * reciprocal vectors of the boundary (as are those enumerated by
+ * MeterStructureFactor) are handled with phase recurrences: for each atom,
+ * exp(i n b_a.r) is built for all needed n along each axis from a single
+ * cos/sin, and the phase for each wave vector is a product of these, so
+ * the cost is a few multiplications per atom and wave vector instead of a
+ * cos and a sin.  Wave vectors are grouped in rows that differ only in the
+ * last index so that most wave vectors take a single complex multiplication.
+ * Other wave vectors are computed directly.
+ * <p>
+ * Optionally (see setUseFFT), commensurate wave vectors are instead computed
+ * by spreading the atoms onto a grid with cubic B-splines, Fourier
+ * transforming the grid and dividing out the transform of the B-spline.  The
+ * cost is then nearly independent of the number of wave vectors, which pays
+ * off when there are many of them, but the result is approximate: the
+ * relative error from aliasing is below about 1% for the largest wave
+ * vectors and much smaller for small ones.  The grid has 4 points per
+ * wave-vector index along each axis (rounded up to a power of 2).
+ * <p>
+ * With more than one thread, the wave vectors (or grid lines) are split
+ * between tasks run on the common fork-join pool.
+ */
+public class StructureFactorCalculator {
+
+    protected final int D;
+    protected int numThreads;
+    protected boolean useFFT;
+    protected int nK;
+    // wave vectors, as q_0 x, q_0 y, q_0 z, q_1 x...
+    protected double[] q;
+    // for commensurate wave vectors, the reciprocal basis and the indices of
+    // the wave vectors, in row order
+    protected boolean commensurate;
+    protected Boundary boundary;
+    protected double[] edges, basis;
+    protected int[] nMax;
+    protected int[] rowIdx;
+    protected int[] rowStart;
+    protected int[] lastIdx;
+    protected int[] rowOrder;
+
+    public StructureFactorCalculator(int D) {
+        this.D = D;
+        numThreads = 1;
+        q = new double[0];
+        rowStart = new int[1];
+    }
+
+    /**
+     * Sets the number of tasks the calculation is split into.  The tasks run
+     * on the common fork-join pool, so no threads are owned by the
+     * calculator.
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        numThreads = newNumThreads;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets whether commensurate wave vectors are computed from a Fourier
+     * transformed grid (approximate, but much faster for many wave vectors)
+     * instead of by phase recurrences (exact).
+     */
+    public void setUseFFT(boolean newUseFFT) {
+        useFFT = newUseFFT;
+    }
+
+    public boolean getUseFFT() {
+        return useFFT;
+    }
+
+    /**
+     * Sets the wave vectors.  The wave vectors are checked against the
+     * reciprocal lattice of the boundary's current shape; phase recurrences
+     * are used (for all of them) only if they all belong to it.
+     */
+    public void setWaveVectors(Vector[] waveVectors, Boundary boundary) {
+        this.boundary = boundary;
+        nK = waveVectors.length;
+        q = new double[nK * D];
+        for (int k = 0; k < nK; k++) {
+            for (int a = 0; a < D; a++) {
+                q[k * D + a] = waveVectors[k].getX(a);
+            }
+        }
+        edges = new double[D * D];
+        for (int a = 0; a < D; a++) {
+            Vector e = boundary.getEdgeVector(a);
+            for (int c = 0; c < D; c++) {
+                edges[a * D + c] = e.getX(c);
+            }
+        }
+        // the indices of q along the reciprocal vectors are q.a/(2pi)
+        int[] idx = new int[nK * D];
+        commensurate = true;
+        nMax = new int[D];
+        for (int k = 0; k < nK && commensurate; k++) {
+            for (int a = 0; a < D; a++) {
+                double n = 0;
+                for (int c = 0; c < D; c++) {
+                    n += q[k * D + c] * edges[a * D + c];
+                }
+                n /= 2 * Math.PI;
+                long rn = Math.round(n);
+                if (Math.abs(n - rn) > 1e-8 || Math.abs(rn) > 1 << 15) {
+                    commensurate = false;
+                    break;
+                }
+                idx[k * D + a] = (int) rn;
+                nMax[a] = Math.max(nMax[a], Math.abs((int) rn));
+            }
+        }
+        if (!commensurate) {
+            rowStart = new int[1];
+            return;
+        }
+        // reciprocal basis: b_a . a_c = 2 pi delta_ac
+        Matrix A = new Matrix(D, D);
+        for (int a = 0; a < D; a++) {
+            for (int c = 0; c < D; c++) {
+                A.set(a, c, edges[a * D + c]);
+            }
+        }
+        Matrix B = A.inverse().transpose().times(2 * Math.PI);
+        basis = new double[D * D];
+        for (int a = 0; a < D; a++) {
+            for (int c = 0; c < D; c++) {
+                basis[a * D + c] = B.get(a, c);
+            }
+        }
+
+        // group the wave vectors into rows that differ only in the last index
+        long[] keys = new long[nK];
+        for (int k = 0; k < nK; k++) {
+            long key = 0;
+            for (int a = 0; a < D - 1; a++) {
+                key = key * (2 * nMax[a] + 1) + idx[k * D + a] + nMax[a];
+            }
+            keys[k] = (key << 32) | k;
+        }
+        Arrays.sort(keys);
+        rowOrder = new int[nK];
+        lastIdx = new int[nK];
+        int[] starts = new int[nK + 1];
+        List<int[]> rows = new ArrayList<>();
+        int nRows = 0;
+        for (int s = 0; s < nK; s++) {
+            int k = (int) keys[s];
+            rowOrder[s] = k;
+            lastIdx[s] = idx[k * D + D - 1];
+            if (s == 0 || (keys[s] >>> 32) != (keys[s - 1] >>> 32)) {
+                starts[nRows++] = s;
+                rows.add(Arrays.copyOfRange(idx, k * D, k * D + D - 1));
+            }
+        }
+        starts[nRows] = nK;
+        rowStart = Arrays.copyOf(starts, nRows + 1);
+        rowIdx = new int[nRows * (D - 1)];
+        for (int r = 0; r < nRows; r++) {
+            System.arraycopy(rows.get(r), 0, rowIdx, r * (D - 1), D - 1);
+        }
+    }
+
+    public int getNumWaveVectors() {
+        return nK;
+    }
+
+    /**
+     * @return true if the wave vectors are all reciprocal lattice vectors of
+     * the boundary (as it was when they were set)
+     */
+    public boolean isCommensurate() {
+        return commensurate;
+    }
+
+    /**
+     * Computes the real and imaginary parts of rho(q) for the given atoms,
+     * each weighted by the factor for its type (or 1 if the type has no
+     * factor).
+     */
+    public void calculate(IAtomList atoms, double[] typeFactor, double[] re, double[] im) {
+        int n = atoms.size();
+        double[] r = new double[n * D];
+        double[] f = new double[n];
+        for (int j = 0; j < n; j++) {
+            IAtom atom = atoms.get(j);
+            Vector p = atom.getPosition();
+            for (int a = 0; a < D; a++) {
+                r[j * D + a] = p.getX(a);
+            }
+            int t = atom.getType().getIndex();
+            f[j] = t < typeFactor.length ? typeFactor[t] : 1;
+        }
+        calculate(r, f, re, im);
+    }
+
+    /**
+     * Computes the real and imaginary parts of rho(q) for atoms with the given
+     * coordinates (x0, y0, z0, x1...) and factors (null for all 1).
+     */
+    public void calculate(double[] r, double[] f, double[] re, double[] im) {
+        if (commensurate && useFFT && boxUnchanged()) {
+            calculateFFT(r, f, re, im);
+            return;
+        }
+        int nRows = rowStart.length - 1;
+        int nTasks = Math.min(numThreads, commensurate ? nRows : nK);
+        if (nTasks <= 1) {
+            calculateRange(r, f, re, im, 0, commensurate ? nRows : nK);
+            return;
+        }
+        int nTotal = commensurate ? nRows : nK;
+        List<Callable<Object>> tasks = new ArrayList<>(nTasks);
+        for (int t = 0; t < nTasks; t++) {
+            int start = (int) ((long) nTotal * t / nTasks);
+            int end = (int) ((long) nTotal * (t + 1) / nTasks);
+            tasks.add(Executors.callable(() -> calculateRange(r, f, re, im, start, end)));
+        }
+        ParallelUtils.invokeAll(ForkJoinPool.commonPool(), tasks);
+    }
+
+    protected boolean boxUnchanged() {
+        for (int a = 0; a < D; a++) {
+            Vector e = boundary.getEdgeVector(a);
+            for (int c = 0; c < D; c++) {
+                if (e.getX(c) != edges[a * D + c]) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes rows start to end (or wave vectors start to end if they are
+     * not commensurate).
+     */
+    protected void calculateRange(double[] r, double[] f, double[] re, double[] im, int start, int end) {
+        int nAtoms = r.length / D;
+        if (!commensurate) {
+            for (int k = start; k < end; k++) {
+                double c = 0, s = 0;
+                for (int j = 0; j < nAtoms; j++) {
+                    double qr = 0;
+                    for (int a = 0; a < D; a++) {
+                        qr += q[k * D + a] * r[j * D + a];
+                    }
+                    double fj = f == null ? 1 : f[j];
+                    c += fj * Math.cos(qr);
+                    s += fj * Math.sin(qr);
+                }
+                re[k] = c;
+                im[k] = s;
+            }
+            return;
+        }
+
+        int sStart = rowStart[start], sEnd = rowStart[end];
+        double[] c = new double[sEnd - sStart];
+        double[] s = new double[sEnd - sStart];
+        // exp(i n b_a.r) for n = -nMax[a]...nMax[a], offset by nMax[a]
+        double[][] eRe = new double[D][], eIm = new double[D][];
+        for (int a = 0; a < D; a++) {
+            eRe[a] = new double[2 * nMax[a] + 1];
+            eIm[a] = new double[2 * nMax[a] + 1];
+        }
+        int last = D - 1;
+        double[] eLastRe = eRe[last], eLastIm = eIm[last];
+        int oLast = nMax[last];
+        for (int j = 0; j < nAtoms; j++) {
+            double fj = f == null ? 1 : f[j];
+            if (fj == 0) continue;
+            for (int a = 0; a < D; a++) {
+                double theta = 0;
+                for (int x = 0; x < D; x++) {
+                    theta += basis[a * D + x] * r[j * D + x];
+                }
+                double[] ar = eRe[a], ai = eIm[a];
+                int o = nMax[a];
+                ar[o] = 1;
+                ai[o] = 0;
+                if (o == 0) continue;
+                double c1 = Math.cos(theta), s1 = Math.sin(theta);
+                for (int m = 1; m <= o; m++) {
+                    double pr = ar[o + m - 1], pi = ai[o + m - 1];
+                    ar[o + m] = pr * c1 - pi * s1;
+                    ai[o + m] = pr * s1 + pi * c1;
+                    ar[o - m] = ar[o + m];
+                    ai[o - m] = -ai[o + m];
+                }
+            }
+            for (int row = start; row < end; row++) {
+                // phase of the first D-1 indices, times the atom's factor
+                double pr = fj, pi = 0;
+                for (int a = 0; a < last; a++) {
+                    int n = rowIdx[row * last + a] + nMax[a];
+                    double xr = eRe[a][n], xi = eIm[a][n];
+                    double t = pr * xr - pi * xi;
+                    pi = pr * xi + pi * xr;
+                    pr = t;
+                }
+                for (int sk = rowStart[row], u = sk - sStart; sk < rowStart[row + 1]; sk++, u++) {
+                    int n = lastIdx[sk] + oLast;
+                    double xr = eLastRe[n], xi = eLastIm[n];
+                    c[u] += pr * xr - pi * xi;
+                    s[u] += pr * xi + pi * xr;
+                }
+            }
+        }
+        for (int u = 0; u < c.length; u++) {
+            int k = rowOrder[sStart + u];
+            re[k] = c[u];
+            im[k] = s[u];
+        }
+    }
+
+    /**
+     * Spreads the atoms onto a grid with cubic B-splines, transforms the grid
+     * and picks out (and corrects) the wave vectors.
+     */
+    protected void calculateFFT(double[] r, double[] f, double[] re, double[] im) {
+        int[] M = new int[D];
+        int[] stride = new int[D];
+        int nGrid = 1;
+        for (int a = D - 1; a >= 0; a--) {
+            M[a] = nMax[a] == 0 ? 1 : Integer.highestOneBit(4 * nMax[a] - 1) << 1;
+            stride[a] = nGrid;
+            nGrid *= M[a];
+        }
+        double[] gridRe = new double[nGrid];
+        double[] gridIm = new double[nGrid];
+        int nAtoms = r.length / D;
+        int[] base = new int[D];
+        double[][] w = new double[D][4];
+        int nCorners = 1 << (2 * D);
+        for (int j = 0; j < nAtoms; j++) {
+            double fj = f == null ? 1 : f[j];
+            if (fj == 0) continue;
+            for (int a = 0; a < D; a++) {
+                double sa = 0;
+                for (int x = 0; x < D; x++) {
+                    sa += basis[a * D + x] * r[j * D + x];
+                }
+                double u = sa / (2 * Math.PI) * M[a];
+                double fl = Math.floor(u);
+                double t = u - fl;
+                base[a] = (int) fl - 1;
+                double t2 = t * t, t3 = t2 * t;
+                w[a][0] = (1 - t) * (1 - t) * (1 - t) / 6;
+                w[a][1] = (3 * t3 - 6 * t2 + 4) / 6;
+                w[a][2] = (-3 * t3 + 3 * t2 + 3 * t + 1) / 6;
+                w[a][3] = t3 / 6;
+            }
+            for (int corner = 0; corner < nCorners; corner++) {
+                double wc = fj;
+                int g = 0;
+                for (int a = 0; a < D; a++) {
+                    int p = (corner >> (2 * a)) & 3;
+                    wc *= w[a][p];
+                    int i = Math.floorMod(base[a] + p, M[a]);
+                    g += i * stride[a];
+                }
+                gridRe[g] += wc;
+            }
+        }
+
+        // transform along each axis
+        for (int a = 0; a < D; a++) {
+            if (M[a] == 1) continue;
+            int axis = a;
+            int nLines = nGrid / M[a];
+            int nTasks = Math.min(numThreads, nLines);
+            List<Callable<Object>> tasks = new ArrayList<>(nTasks);
+            for (int t = 0; t < nTasks; t++) {
+                int start = (int) ((long) nLines * t / nTasks);
+                int end = (int) ((long) nLines * (t + 1) / nTasks);
+                tasks.add(Executors.callable(() -> transformLines(gridRe, gridIm, M, stride, axis, start, end)));
+            }
+            if (nTasks == 1) {
+                transformLines(gridRe, gridIm, M, stride, axis, 0, nLines);
+            }
+            else {
+                ParallelUtils.invokeAll(ForkJoinPool.commonPool(), tasks);
+            }
+        }
+
+        // 1/|transform of the B-spline|, for each index along each axis
+        double[][] correction = new double[D][];
+        for (int a = 0; a < D; a++) {
+            correction[a] = new double[2 * nMax[a] + 1];
+            for (int n = -nMax[a]; n <= nMax[a]; n++) {
+                double x = Math.PI * n / M[a];
+                double sinc = n == 0 ? 1 : Math.sin(x) / x;
+                correction[a][n + nMax[a]] = 1 / (sinc * sinc * sinc * sinc);
+            }
+        }
+        int last = D - 1;
+        for (int row = 0; row < rowStart.length - 1; row++) {
+            int g0 = 0;
+            double corr0 = 1;
+            for (int a = 0; a < last; a++) {
+                int n = rowIdx[row * last + a];
+                g0 += Math.floorMod(n, M[a]) * stride[a];
+                corr0 *= correction[a][n + nMax[a]];
+            }
+            for (int sk = rowStart[row]; sk < rowStart[row + 1]; sk++) {
+                int n = lastIdx[sk];
+                int g = g0 + Math.floorMod(n, M[last]) * stride[last];
+                double corr = corr0 * correction[last][n + nMax[last]];
+                int k = rowOrder[sk];
+                // the grid transform has exp(-i q.r); rho(q) has exp(+i q.r)
+                re[k] = gridRe[g] * corr;
+                im[k] = -gridIm[g] * corr;
+            }
+        }
+    }
+
+    protected static void transformLines(double[] gridRe, double[] gridIm, int[] M, int[] stride, int axis, int start, int end) {
+        int m = M[axis];
+        int s = stride[axis];
+        double[][] line = new double[2][m];
+        for (int l = start; l < end; l++) {
+            // line l: the index along the axis is 0, the others come from l
+            int g0 = (l / s) * s * m + l % s;
+            for (int i = 0; i < m; i++) {
+                line[0][i] = gridRe[g0 + i * s];
+                line[1][i] = gridIm[g0 + i * s];
+            }
+            FastFourierTransformer.transformInPlace(line, DftNormalization.STANDARD, TransformType.FORWARD);
+            for (int i = 0; i < m; i++) {
+                gridRe[g0 + i * s] = line[0][i];
+                gridIm[g0 + i * s] = line[1][i];
+            }
+        }
+    }
+}
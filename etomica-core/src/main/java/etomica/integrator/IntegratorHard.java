@@ -17,8 +17,9 @@ import etomica.potential.*;
 import etomica.simulation.Simulation;
 import etomica.space.Vector;
 import etomica.util.Debug;
+import etomica.util.EventHeap;
+import etomica.util.EventQueue;
 import etomica.util.TreeLinker;
-import etomica.util.TreeList;
 import etomica.util.random.IRandom;
 
 import java.util.ArrayList;
@@ -41,7 +42,7 @@ public class IntegratorHard extends IntegratorMD implements INeighborListListene
     protected final IteratorDirective upList = new IteratorDirective(IteratorDirective.Direction.UP);
     protected final IteratorDirective downList = new IteratorDirective(IteratorDirective.Direction.DOWN);
     protected final AtomArrayList listToUpdate = new AtomArrayList();
-    protected final TreeList eventList = new TreeList();
+    protected EventQueue eventList = new EventHeap();
     private final ReverseCollisionHandler reverseCollisionHandler;
     private final CollisionHandlerUp collisionHandlerUp;
     private final CollisionHandlerDown collisionHandlerDown;
@@ -255,6 +256,22 @@ public class IntegratorHard extends IntegratorMD implements INeighborListListene
         throw new RuntimeException("this simulation is not a time machine");
     }
 
+    /**
+     * Sets the queue used to hold collision events.  The default is an
+     * EventHeap; a TreeList can also be used, but its performance depends on
+     * the order in which events are added.
+     */
+    public void setEventQueue(EventQueue newEventQueue) {
+        eventList.reset();
+        eventList = newEventQueue;
+        collisionHandlerDown.eventList = newEventQueue;
+        resetCollisionTimes();
+    }
+
+    public EventQueue getEventQueue() {
+        return eventList;
+    }
+
     public void resetStepCount() {
         super.resetStepCount();
         collisionCount = 0;
@@ -618,11 +635,11 @@ public class IntegratorHard extends IntegratorMD implements INeighborListListene
 	//sets collision times of atoms downlist of given atom to minimum of their current
 	//value and their value with given atom
 	private static final class CollisionHandlerDown implements PotentialCalculation {
-        final TreeList eventList;
+        EventQueue eventList;
         double collisionTimeStep;
         private final AtomLeafAgentManager<Agent> integratorAgentManager;
 
-        CollisionHandlerDown(TreeList list, AtomLeafAgentManager<Agent> integratorAgentManager) {
+        CollisionHandlerDown(EventQueue list, AtomLeafAgentManager<Agent> integratorAgentManager) {
             eventList = list;
             this.integratorAgentManager = integratorAgentManager;
         }
@@ -9,15 +9,29 @@ import etomica.integrator.mcmove.*;
 import etomica.util.Arrays;
 import etomica.util.EventManager;
 import etomica.util.IEvent;
+import etomica.util.ParallelUtils;
 import etomica.util.random.IRandom;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Integrator manages other Integrators which either act on a Box, or manage
  * still other Integrators.  Each step, this class either performs global MC 
  * moves between the Integrators or runs the sub-integrators.
+ * <p>
+ * With more than one thread (see {@link #setNumThreads}), the sub-integrators
+ * run ahead of this integrator between global moves, by up to
+ * {@link #getMaxBlockSteps maxBlockSteps} steps.  Listeners on the
+ * sub-integrators see each of their steps as usual, but listeners on this
+ * integrator may see sub-integrator configurations (and step counts) that are
+ * ahead of its own step count.  Set maxBlockSteps to this integrator's
+ * sampling interval (or less) if that matters.
  * 
  * @author David Kofke and Andrew Schultz
  */
@@ -33,7 +47,13 @@ public class IntegratorManagerMC extends Integrator {
     protected final List<Integrator> integrators;
     protected double temperature;
     private double globalMoveInterval;
-    
+    private int numThreads = 1;
+    private ForkJoinPool pool;
+    private int maxBlockSteps = 10000;
+    // number of steps the sub-integrators have taken beyond this integrator
+    private int stepsAhead;
+    private boolean globalMovePending;
+
     public IntegratorManagerMC(IRandom random) {
         super();
         this.random = random;
@@ -70,6 +90,8 @@ public class IntegratorManagerMC extends Integrator {
      */
     public void reset() throws ConfigurationOverlapException {
         super.reset();
+        stepsAhead = 0;
+        globalMovePending = false;
 
         moveManager.recomputeMoveFrequencies();
         ConfigurationOverlapException overlapException = null;
@@ -88,10 +110,60 @@ public class IntegratorManagerMC extends Integrator {
         }
     }
 
+    /**
+     * Adds the given integrator to the list of integrators.  With more than
+     * one thread, the integrator must not use the same IRandom as this
+     * integrator or any of the other integrators.
+     *
+     * @throws IllegalArgumentException if running in parallel and the
+     *                                  integrator's IRandom is already in use
+     */
     public void addIntegrator(Integrator integrator){
+        if (numThreads > 1) {
+            Set<IRandom> randoms = randoms();
+            IRandom r = getRandom(integrator);
+            if (r != null && randoms.contains(r)) {
+                throw new IllegalArgumentException("integrators run in parallel must each have their own IRandom");
+            }
+        }
         integrators.add(integrator);
     }
 
+    /**
+     * Returns the random number generator used by the given integrator, or
+     * null if it is not known.
+     */
+    protected static IRandom getRandom(Integrator integrator) {
+        if (integrator instanceof IntegratorMC) {
+            return ((IntegratorMC) integrator).random;
+        }
+        if (integrator instanceof IntegratorMD) {
+            return ((IntegratorMD) integrator).random;
+        }
+        if (integrator instanceof IntegratorManagerMC) {
+            return ((IntegratorManagerMC) integrator).random;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the random number generators used by this integrator and its
+     * sub-integrators.
+     *
+     * @throws IllegalStateException if any of them share an IRandom
+     */
+    private Set<IRandom> randoms() {
+        Set<IRandom> randoms = Collections.newSetFromMap(new IdentityHashMap<>());
+        randoms.add(random);
+        for (Integrator integrator : integrators) {
+            IRandom r = getRandom(integrator);
+            if (r != null && !randoms.add(r)) {
+                throw new IllegalStateException("integrators run in parallel must each have their own IRandom");
+            }
+        }
+        return randoms;
+    }
+
     /**
      * Removes the given integrator from the list of integrators.  Returns
      * false if the given integrator was not handled by this integrator.
@@ -124,6 +196,10 @@ public class IntegratorManagerMC extends Integrator {
      * a single doStep.
      */
     protected void doStepInternal() {
+        if (numThreads > 1) {
+            doStepParallel();
+            return;
+        }
         if(random.nextDouble() < globalMoveProbability) {
             doGlobalMoves();
         } else {
@@ -133,6 +209,115 @@ public class IntegratorManagerMC extends Integrator {
         }
     }
 
+    /**
+     * Takes a step with the sub-integrators running concurrently.  When a
+     * step is not a global move, this draws ahead to find how many steps
+     * there will be before the next global move and has each sub-integrator
+     * take all of those steps at once, on its own thread.  The following
+     * steps of this integrator then do nothing until the global move is due.
+     * The random numbers drawn by this integrator are the same as in serial
+     * mode, so the sequence of steps and global moves is also the same.
+     */
+    protected void doStepParallel() {
+        if (stepsAhead > 0) {
+            stepsAhead--;
+            return;
+        }
+        if (globalMovePending) {
+            globalMovePending = false;
+            doGlobalMoves();
+            return;
+        }
+        if (random.nextDouble() < globalMoveProbability) {
+            doGlobalMoves();
+            return;
+        }
+        int nSteps = 1;
+        while (nSteps < maxBlockSteps) {
+            if (random.nextDouble() < globalMoveProbability) {
+                globalMovePending = true;
+                break;
+            }
+            nSteps++;
+        }
+        final int n = nSteps;
+        List<Callable<Object>> tasks = new ArrayList<>(integrators.size());
+        for (Integrator integrator : this.integrators) {
+            tasks.add(() -> {
+                for (int i = 0; i < n; i++) {
+                    integrator.doStep();
+                }
+                return null;
+            });
+        }
+        ParallelUtils.invokeAll(pool, tasks);
+        stepsAhead = nSteps - 1;
+    }
+
+    /**
+     * @return the number of threads used to run the sub-integrators
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets the number of threads used to run the sub-integrators.  With more
+     * than one thread, the sub-integrators take their steps concurrently
+     * between global moves, which act as a barrier.  The sub-integrators
+     * (and their MC moves) must not share any mutable state, including the
+     * random number generator and any listeners or data accumulators.  Each
+     * sub-integrator must have its own IRandom, distinct from this
+     * integrator's; the results are then the same as with one thread, except
+     * that the sub-integrators may have run up to maxBlockSteps steps ahead
+     * of this integrator when it stops.
+     *
+     * @throws IllegalStateException if more than one thread is requested and
+     *                               the integrators share an IRandom
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        if (newNumThreads > 1) {
+            randoms();
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        numThreads = newNumThreads;
+        stepsAhead = 0;
+        globalMovePending = false;
+        if (numThreads > 1) {
+            pool = new ForkJoinPool(numThreads);
+        }
+    }
+
+    /**
+     * @return the maximum number of steps the sub-integrators take at once
+     * in parallel mode
+     */
+    public int getMaxBlockSteps() {
+        return maxBlockSteps;
+    }
+
+    /**
+     * Sets the maximum number of steps the sub-integrators take at once in
+     * parallel mode.  This only matters when global moves are rare.  The
+     * sub-integrators may be this many steps ahead of this integrator, so
+     * listeners on this integrator that look at the sub-integrators' boxes
+     * see configurations from later steps than this integrator's step count.
+     * To keep such samples in step, set this to no more than the interval of
+     * those listeners.  Default is 10000.
+     */
+    public void setMaxBlockSteps(int newMaxBlockSteps) {
+        if (newMaxBlockSteps < 1) {
+            throw new IllegalArgumentException("max block steps must be positive");
+        }
+        maxBlockSteps = newMaxBlockSteps;
+    }
+
     /**
      * Method to select and perform an elementary Monte Carlo move. The type of
      * move performed is chosen from all MCMoves that have been added to the
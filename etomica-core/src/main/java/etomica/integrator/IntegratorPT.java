@@ -33,6 +33,10 @@ import etomica.util.random.IRandom;
  * Every time an integrator is added to this one, a MCMoveSwap class is made (by this
  * integrator using the factory) to manage swap trials between the new integrator's
  * box and that of the one most recently added.
+ * <p>
+ * The integrators can be run concurrently by calling setNumThreads; each
+ * integrator must then have its own random number generator and
+ * PotentialMaster.
  * 
  * @author David Kofke
  */
@@ -25,6 +25,8 @@ public class IntegratorVelocityVerlet extends IntegratorMD implements AgentSourc
     protected final Tensor workTensor;
 
     protected AtomLeafAgentManager<Vector> agentManager;
+    // true if forces are held in the box's force storage
+    protected final boolean arrayForces;
 
     public IntegratorVelocityVerlet(Simulation sim, PotentialMaster potentialMaster, Box box) {
         this(potentialMaster, sim.getRandom(), 0.05, 1.0, box);
@@ -43,6 +45,7 @@ public class IntegratorVelocityVerlet extends IntegratorMD implements AgentSourc
         allAtoms.setIncludeLrc(true);
         pressureTensor = space.makeTensor();
         workTensor = space.makeTensor();
+        arrayForces = box.isArrayStorage();
         agentManager = new AtomLeafAgentManager<>(this, box);
         forceSum.setAgentManager(agentManager);
     }
@@ -77,6 +80,10 @@ public class IntegratorVelocityVerlet extends IntegratorMD implements AgentSourc
                 System.out.println(pair+" dr "+dr);
             }
         }
+        if (arrayForces) {
+            doStepArrays();
+            return;
+        }
         IAtomList leafList = box.getLeafList();
         int nLeaf = leafList.size();
         for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
@@ -124,6 +131,70 @@ public class IntegratorVelocityVerlet extends IntegratorMD implements AgentSourc
         }
     }
 
+    /**
+     * Performs the same step as doStepInternal, but works directly on the
+     * position, velocity and force arrays held by the box.
+     */
+    protected void doStepArrays() {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.size();
+        double[] r = box.getPositionStorage().getData();
+        double[] v = box.getVelocityStorage().getData();
+        double[] f = box.getForceStorage().getData();
+        for (int i=0, j=0; i<nLeaf; i++, j+=3) {
+            double c = 0.5*timeStep*leafList.get(i).getType().rm();
+            v[j] += c*f[j];
+            v[j+1] += c*f[j+1];
+            v[j+2] += c*f[j+2];
+            r[j] += timeStep*v[j];
+            r[j+1] += timeStep*v[j+1];
+            r[j+2] += timeStep*v[j+2];
+        }
+
+        eventManager.forcePrecomputed();
+
+        forceSum.reset();
+        potentialMaster.calculate(box, allAtoms, forceSum);
+
+        eventManager.forceComputed();
+
+        if(forceSum instanceof PotentialCalculationForcePressureSum){
+            pressureTensor.E(((PotentialCalculationForcePressureSum)forceSum).getPressureTensor());
+        }
+
+        double kxx = 0, kxy = 0, kxz = 0, kyy = 0, kyz = 0, kzz = 0;
+        for (int i=0, j=0; i<nLeaf; i++, j+=3) {
+            AtomType type = leafList.get(i).getType();
+            double m = type.getMass();
+            double vx = v[j], vy = v[j+1], vz = v[j+2];
+            kxx += m*vx*vx;
+            kxy += m*vx*vy;
+            kxz += m*vx*vz;
+            kyy += m*vy*vy;
+            kyz += m*vy*vz;
+            kzz += m*vz*vz;
+            double c = 0.5*timeStep*type.rm();
+            v[j] = vx + c*f[j];
+            v[j+1] = vy + c*f[j+1];
+            v[j+2] = vz + c*f[j+2];
+        }
+        pressureTensor.PE(0, 0, kxx);
+        pressureTensor.PE(0, 1, kxy);
+        pressureTensor.PE(0, 2, kxz);
+        pressureTensor.PE(1, 0, kxy);
+        pressureTensor.PE(1, 1, kyy);
+        pressureTensor.PE(1, 2, kyz);
+        pressureTensor.PE(2, 0, kxz);
+        pressureTensor.PE(2, 1, kyz);
+        pressureTensor.PE(2, 2, kzz);
+
+        pressureTensor.TE(1/box.getBoundary().volume());
+
+        if(isothermal) {
+            doThermostatInternal();
+        }
+    }
+
     /**
      * Returns the pressure tensor based on the forces calculated during the
      * last time step.
@@ -155,6 +226,9 @@ public class IntegratorVelocityVerlet extends IntegratorMD implements AgentSourc
 //--------------------------------------------------------------
     
     public Vector makeAgent(IAtom a, Box agentBox) {
+        if (arrayForces) {
+            return agentBox.getForceStorage().get(a.getLeafIndex());
+        }
         return space.makeVector();
     }
     
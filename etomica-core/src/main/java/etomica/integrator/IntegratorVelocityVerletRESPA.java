@@ -0,0 +1,522 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.AtomLeafAgentManager.AgentSource;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomKinetic;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.integrator.IntegratorVelocityVerletShake.BondConstraints;
+import etomica.molecule.IMolecule;
+import etomica.molecule.IMoleculeList;
+import etomica.potential.IteratorDirective;
+import etomica.potential.PotentialCalculationForcePressureSum;
+import etomica.potential.PotentialMaster;
+import etomica.space.Boundary;
+import etomica.space.Tensor;
+import etomica.space.Vector;
+import etomica.species.ISpecies;
+import etomica.util.random.IRandom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Velocity Verlet integrator using Tuckerman's reversible multiple time step
+ * algorithm (r-RESPA).  The interactions are split into levels, each with its
+ * own PotentialMaster and forces.  Level 0 holds the fastest-varying forces
+ * (typically bonds, angles and torsions) and is integrated with the shortest
+ * step; each following level is evaluated once for every nInner steps of the
+ * level before it.  The time step of the integrator is the step of the
+ * slowest level, so with two levels and nInner=4, the slow forces are
+ * computed once per time step and the fast forces four times.
+ * <p>
+ * The PotentialMaster given to the constructor should include all of the
+ * interactions; it is used only for the potential energy.  The sum of the
+ * level PotentialMasters should be equivalent to it.  Neighbor lists are
+ * checked only at the end of each (outer) time step, so the neighbor range
+ * should allow for atoms moving that far.
+ * <p>
+ * Forces for each level are found with a PotentialCalculationForcePressureSum,
+ * so the pressure tensor is available as with IntegratorVelocityVerlet.  The
+ * total force on each atom after each step is held by the agent manager from
+ * getAgentManager().
+ * <p>
+ * Bond lengths within molecules can be held fixed with setBondConstraints.
+ * Positions are then constrained with SHAKE after each step of the fastest
+ * level (correcting the velocities to match, as in RATTLE), and the velocity
+ * components along the bonds are removed after each kick of any level.  The
+ * pressure tensor does not include the virial of the constraint forces.
+ */
+public class IntegratorVelocityVerletRESPA extends IntegratorMD implements AgentSource<Vector> {
+
+    protected final List<Level> levels;
+    protected final IteratorDirective allAtoms;
+    protected final Tensor pressureTensor;
+    protected final Tensor workTensor;
+    protected final AtomLeafAgentManager<Vector> agentManager;
+    // true if total forces are held in the box's force storage
+    protected final boolean arrayForces;
+    protected final Map<ISpecies, BondConstraints> bondConstraints;
+    protected double shakeTol;
+    protected int maxIterations;
+    protected final Vector dr, dv;
+    protected Vector[] drOld;
+    protected boolean[][] moved;
+
+    /**
+     * @param potentialMaster PotentialMaster with all interactions, used to
+     *                        compute the energy
+     * @param random          random number generator used for the thermostat
+     * @param timeStep        time step of the slowest level
+     * @param temperature     temperature for the thermostat
+     * @param box             box to integrate
+     */
+    public IntegratorVelocityVerletRESPA(PotentialMaster potentialMaster, IRandom random,
+                                         double timeStep, double temperature, Box box) {
+        super(potentialMaster, random, timeStep, temperature, box);
+        levels = new ArrayList<>();
+        allAtoms = new IteratorDirective();
+        // LRC contributes nothing to the forces, but does contribute to the
+        // pressure tensor
+        allAtoms.setIncludeLrc(true);
+        pressureTensor = space.makeTensor();
+        workTensor = space.makeTensor();
+        arrayForces = box.isArrayStorage();
+        agentManager = new AtomLeafAgentManager<>(this, box);
+        bondConstraints = new HashMap<>();
+        shakeTol = 1e-14;
+        maxIterations = 100;
+        dr = space.makeVector();
+        dv = space.makeVector();
+        drOld = new Vector[0];
+        moved = new boolean[2][0];
+    }
+
+    /**
+     * Adds a level of forces that vary more slowly than those of all levels
+     * added so far.  The first level added is integrated with the shortest
+     * time step.  reset() must be called after all levels have been added.
+     *
+     * @param levelPotentialMaster PotentialMaster with the interactions for
+     *                             this level
+     * @param nInner               number of steps of the previous level for
+     *                             each step of this level; must be 1 for the
+     *                             first level
+     */
+    public void addLevel(PotentialMaster levelPotentialMaster, int nInner) {
+        if (levels.isEmpty() ? nInner != 1 : nInner < 1) {
+            throw new IllegalArgumentException("nInner must be 1 for the first level and positive for others");
+        }
+        levels.add(new Level(levelPotentialMaster, nInner));
+    }
+
+    /**
+     * Returns the number of levels.
+     */
+    public int getNumLevels() {
+        return levels.size();
+    }
+
+    /**
+     * Returns the PotentialMaster for the given level.
+     */
+    public PotentialMaster getLevelPotentialMaster(int level) {
+        return levels.get(level).potentialMaster;
+    }
+
+    /**
+     * Returns the number of steps of the previous level for each step of the
+     * given level.
+     */
+    public int getNumInnerSteps(int level) {
+        return levels.get(level).nInner;
+    }
+
+    /**
+     * Sets the number of steps of the previous level for each step of the
+     * given level.  Changing this for the slowest level changes the shortest
+     * time step, not the time step of the integrator.
+     */
+    public void setNumInnerSteps(int level, int nInner) {
+        if (level == 0 ? nInner != 1 : nInner < 1) {
+            throw new IllegalArgumentException("nInner must be 1 for the first level and positive for others");
+        }
+        levels.get(level).nInner = nInner;
+    }
+
+    /**
+     * Returns the agent manager holding the forces from the given level.
+     */
+    public AtomLeafAgentManager<Vector> getLevelAgentManager(int level) {
+        return levels.get(level).forces;
+    }
+
+    /**
+     * Returns the agent manager holding the total force on each atom.
+     */
+    public AtomLeafAgentManager<Vector> getAgentManager() {
+        return agentManager;
+    }
+
+    /**
+     * Holds the distances between the given pairs of atoms in each molecule
+     * of the species fixed.  reset() should be called afterwards so that the
+     * velocities are made consistent with the constraints.
+     */
+    public void setBondConstraints(ISpecies species, int[][] bondedAtoms, double[] bondLengths) {
+        setBondConstraints(species, new BondConstraints(bondedAtoms, bondLengths));
+    }
+
+    /**
+     * Sets the constraints for the species, or removes them if null.  The
+     * constraints' redistributeForces is called after the forces of each
+     * level are computed, and relaxMolecule after the positions are
+     * constrained.
+     */
+    public void setBondConstraints(ISpecies species, BondConstraints constraints) {
+        if (constraints == null) {
+            bondConstraints.remove(species);
+        }
+        else {
+            bondConstraints.put(species, constraints);
+        }
+    }
+
+    public BondConstraints getBondConstraints(ISpecies species) {
+        return bondConstraints.get(species);
+    }
+
+    /**
+     * Sets the tolerance for the constraints.  Bond lengths are satisfied
+     * when the relative error of their square is less than this, and
+     * velocities when the squared cosine of the angle between each bond and
+     * the relative velocity of its atoms is less than this.
+     */
+    public void setShakeTolerance(double newShakeTol) {
+        shakeTol = newShakeTol;
+    }
+
+    public double getShakeTolerance() {
+        return shakeTol;
+    }
+
+    /**
+     * Sets the maximum number of iterations used to satisfy the constraints
+     * of a molecule.
+     */
+    public void setMaxIterations(int newMaxIterations) {
+        maxIterations = newMaxIterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Returns the pressure tensor based on the forces calculated during the
+     * last time step.
+     */
+    public Tensor getPressureTensor() {
+        return pressureTensor;
+    }
+
+    protected void doStepInternal() {
+        super.doStepInternal();
+        if (levels.isEmpty()) {
+            throw new IllegalStateException("No force levels have been added");
+        }
+        doStepLevel(levels.size() - 1, timeStep);
+
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.size();
+        for (int iLeaf = 0; iLeaf < nLeaf; iLeaf++) {
+            IAtomKinetic a = (IAtomKinetic) leafList.get(iLeaf);
+            Vector velocity = a.getVelocity();
+            workTensor.Ev1v2(velocity, velocity);
+            workTensor.TE(a.getType().getMass());
+            pressureTensor.PE(workTensor);
+        }
+        pressureTensor.TE(1 / box.getBoundary().volume());
+
+        if (isothermal) {
+            doThermostatInternal();
+            constrainVelocities();
+        }
+    }
+
+    /**
+     * Advances the box by dt with the given level's forces applied as
+     * half-kicks at either end and the faster levels integrated in between.
+     */
+    protected void doStepLevel(int iLevel, double dt) {
+        Level level = levels.get(iLevel);
+        kick(level, 0.5 * dt);
+        if (iLevel == 0) {
+            drift(dt);
+        }
+        else {
+            double dtInner = dt / level.nInner;
+            for (int i = 0; i < level.nInner; i++) {
+                doStepLevel(iLevel - 1, dtInner);
+            }
+        }
+        if (iLevel == levels.size() - 1) {
+            computeSlowestForces();
+        }
+        else {
+            computeForces(level);
+        }
+        kick(level, 0.5 * dt);
+    }
+
+    protected void kick(Level level, double dt) {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.size();
+        for (int iLeaf = 0; iLeaf < nLeaf; iLeaf++) {
+            IAtomKinetic a = (IAtomKinetic) leafList.get(iLeaf);
+            a.getVelocity().PEa1Tv1(dt * a.getType().rm(), level.forces.getAgent(a));
+        }
+        constrainVelocities();
+    }
+
+    /**
+     * Moves the atoms with their current velocities for a time dt, and then
+     * restores the bond lengths of constrained molecules.
+     */
+    protected void drift(double dt) {
+        if (bondConstraints.isEmpty()) {
+            IAtomList leafList = box.getLeafList();
+            int nLeaf = leafList.size();
+            for (int iLeaf = 0; iLeaf < nLeaf; iLeaf++) {
+                IAtomKinetic a = (IAtomKinetic) leafList.get(iLeaf);
+                a.getPosition().PEa1Tv1(dt, a.getVelocity());
+            }
+            return;
+        }
+        IMoleculeList molecules = box.getMoleculeList();
+        for (int i = 0; i < molecules.size(); i++) {
+            IMolecule molecule = molecules.get(i);
+            BondConstraints constraints = bondConstraints.get(molecule.getType());
+            IAtomList childList = molecule.getChildList();
+            if (constraints != null) {
+                saveBondVectors(constraints, childList);
+            }
+            for (int j = 0; j < childList.size(); j++) {
+                IAtomKinetic a = (IAtomKinetic) childList.get(j);
+                a.getPosition().PEa1Tv1(dt, a.getVelocity());
+            }
+            if (constraints != null) {
+                constrainPositions(constraints, childList, dt);
+                constraints.relaxMolecule(molecule);
+            }
+        }
+    }
+
+    protected void saveBondVectors(BondConstraints constraints, IAtomList childList) {
+        int[][] bondedAtoms = constraints.bondedAtoms;
+        if (drOld.length < bondedAtoms.length) {
+            Vector[] newDrOld = new Vector[bondedAtoms.length];
+            System.arraycopy(drOld, 0, newDrOld, 0, drOld.length);
+            for (int j = drOld.length; j < newDrOld.length; j++) {
+                newDrOld[j] = space.makeVector();
+            }
+            drOld = newDrOld;
+        }
+        Boundary boundary = box.getBoundary();
+        for (int j = 0; j < bondedAtoms.length; j++) {
+            drOld[j].Ev1Mv2(childList.get(bondedAtoms[j][1]).getPosition(), childList.get(bondedAtoms[j][0]).getPosition());
+            boundary.nearestImage(drOld[j]);
+        }
+        if (moved[0].length < childList.size()) {
+            moved = new boolean[2][childList.size()];
+        }
+    }
+
+    /**
+     * SHAKE: moves the atoms along the bond vectors from before the drift
+     * until the bond lengths are restored, and corrects the velocities by
+     * the same displacement over dt.
+     */
+    protected void constrainPositions(BondConstraints constraints, IAtomList childList, double dt) {
+        int[][] bondedAtoms = constraints.bondedAtoms;
+        double[] bondLengths = constraints.bondLengths;
+        Boundary boundary = box.getBoundary();
+        for (int j = 0; j < childList.size(); j++) {
+            moved[1][j] = true;
+        }
+        for (int iter = 0; iter < maxIterations; iter++) {
+            boolean success = true;
+            for (int j = 0; j < childList.size(); j++) {
+                moved[0][j] = moved[1][j];
+                moved[1][j] = false;
+            }
+            for (int j = 0; j < bondedAtoms.length; j++) {
+                int iAtom1 = bondedAtoms[j][0];
+                int iAtom2 = bondedAtoms[j][1];
+                if (!moved[0][iAtom1] && !moved[0][iAtom2]) continue;
+                IAtomKinetic atom1 = (IAtomKinetic) childList.get(iAtom1);
+                IAtomKinetic atom2 = (IAtomKinetic) childList.get(iAtom2);
+                dr.Ev1Mv2(atom2.getPosition(), atom1.getPosition());
+                boundary.nearestImage(dr);
+                double bl2 = bondLengths[j] * bondLengths[j];
+                double diffSq = bl2 - dr.squared();
+                if (Math.abs(diffSq / bl2) <= shakeTol) continue;
+                double drDotDrOld = dr.dot(drOld[j]);
+                if (drDotDrOld / bl2 < 0.1) {
+                    throw new IllegalStateException("bond " + j + " of " + childList.get(iAtom1).getParentGroup() + " rotated too far to constrain; reduce the time step");
+                }
+                double rm1 = atom1.getType().rm();
+                double rm2 = atom2.getType().rm();
+                double gab = diffSq / (2.0 * (rm1 + rm2) * drDotDrOld);
+                atom2.getPosition().PEa1Tv1(gab * rm2, drOld[j]);
+                atom1.getPosition().PEa1Tv1(-gab * rm1, drOld[j]);
+                atom2.getVelocity().PEa1Tv1(gab * rm2 / dt, drOld[j]);
+                atom1.getVelocity().PEa1Tv1(-gab * rm1 / dt, drOld[j]);
+                moved[1][iAtom1] = true;
+                moved[1][iAtom2] = true;
+                success = false;
+            }
+            if (success) return;
+        }
+        throw new IllegalStateException("SHAKE failed to converge for " + childList.get(0).getParentGroup());
+    }
+
+    /**
+     * RATTLE: removes the components of the relative velocities along the
+     * bonds of constrained molecules.
+     */
+    protected void constrainVelocities() {
+        if (bondConstraints.isEmpty()) return;
+        Boundary boundary = box.getBoundary();
+        IMoleculeList molecules = box.getMoleculeList();
+        for (int i = 0; i < molecules.size(); i++) {
+            IMolecule molecule = molecules.get(i);
+            BondConstraints constraints = bondConstraints.get(molecule.getType());
+            if (constraints == null) continue;
+            IAtomList childList = molecule.getChildList();
+            int[][] bondedAtoms = constraints.bondedAtoms;
+            double[] bondLengths = constraints.bondLengths;
+            if (moved[0].length < childList.size()) {
+                moved = new boolean[2][childList.size()];
+            }
+            for (int j = 0; j < childList.size(); j++) {
+                moved[1][j] = true;
+            }
+            boolean success = false;
+            for (int iter = 0; iter < maxIterations && !success; iter++) {
+                success = true;
+                for (int j = 0; j < childList.size(); j++) {
+                    moved[0][j] = moved[1][j];
+                    moved[1][j] = false;
+                }
+                for (int j = 0; j < bondedAtoms.length; j++) {
+                    int iAtom1 = bondedAtoms[j][0];
+                    int iAtom2 = bondedAtoms[j][1];
+                    if (!moved[0][iAtom1] && !moved[0][iAtom2]) continue;
+                    IAtomKinetic atom1 = (IAtomKinetic) childList.get(iAtom1);
+                    IAtomKinetic atom2 = (IAtomKinetic) childList.get(iAtom2);
+                    dr.Ev1Mv2(atom2.getPosition(), atom1.getPosition());
+                    boundary.nearestImage(dr);
+                    dv.Ev1Mv2(atom2.getVelocity(), atom1.getVelocity());
+                    double drDotDv = dr.dot(dv);
+                    // relative to the largest velocity the bond could have
+                    if (drDotDv * drDotDv <= shakeTol * dr.squared() * dv.squared()) continue;
+                    double rm1 = atom1.getType().rm();
+                    double rm2 = atom2.getType().rm();
+                    double g = -drDotDv / ((rm1 + rm2) * bondLengths[j] * bondLengths[j]);
+                    atom2.getVelocity().PEa1Tv1(g * rm2, dr);
+                    atom1.getVelocity().PEa1Tv1(-g * rm1, dr);
+                    moved[1][iAtom1] = true;
+                    moved[1][iAtom2] = true;
+                    success = false;
+                }
+            }
+            if (!success) {
+                throw new IllegalStateException("RATTLE failed to converge for " + molecule);
+            }
+        }
+    }
+
+    protected void computeForces(Level level) {
+        level.forceSum.reset();
+        level.potentialMaster.calculate(box, allAtoms, level.forceSum);
+        if (bondConstraints.isEmpty()) return;
+        IMoleculeList molecules = box.getMoleculeList();
+        for (int i = 0; i < molecules.size(); i++) {
+            IMolecule molecule = molecules.get(i);
+            BondConstraints constraints = bondConstraints.get(molecule.getType());
+            if (constraints != null) {
+                constraints.redistributeForces(molecule, level.forces);
+            }
+        }
+    }
+
+    /**
+     * Computes forces for the slowest level (the other levels must already
+     * be current) and then the total force and the virial part of the
+     * pressure tensor.
+     */
+    protected void computeSlowestForces() {
+        eventManager.forcePrecomputed();
+
+        computeForces(levels.get(levels.size() - 1));
+
+        pressureTensor.E(0);
+        for (Level level : levels) {
+            pressureTensor.PE(level.forceSum.getPressureTensor());
+        }
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.size();
+        for (int iLeaf = 0; iLeaf < nLeaf; iLeaf++) {
+            IAtom a = leafList.get(iLeaf);
+            Vector f = agentManager.getAgent(a);
+            f.E(0);
+            for (Level level : levels) {
+                f.PE(level.forces.getAgent(a));
+            }
+        }
+
+        eventManager.forceComputed();
+    }
+
+    public void reset() {
+        super.reset();
+        if (levels.isEmpty()) return;
+        for (int i = 0; i < levels.size() - 1; i++) {
+            computeForces(levels.get(i));
+        }
+        computeSlowestForces();
+        constrainVelocities();
+    }
+
+    public Vector makeAgent(IAtom a, Box agentBox) {
+        if (arrayForces) {
+            return agentBox.getForceStorage().get(a.getLeafIndex());
+        }
+        return space.makeVector();
+    }
+
+    public void releaseAgent(Vector agent, IAtom atom, Box agentBox) {}
+
+    protected class Level {
+        public final PotentialMaster potentialMaster;
+        public final PotentialCalculationForcePressureSum forceSum;
+        public final AtomLeafAgentManager<Vector> forces;
+        public int nInner;
+
+        public Level(PotentialMaster potentialMaster, int nInner) {
+            this.potentialMaster = potentialMaster;
+            this.nInner = nInner;
+            forceSum = new PotentialCalculationForcePressureSum(space);
+            forces = new AtomLeafAgentManager<>(a -> space.makeVector(), box);
+            forceSum.setAgentManager(forces);
+        }
+    }
+}
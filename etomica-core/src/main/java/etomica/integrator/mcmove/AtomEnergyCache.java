@@ -0,0 +1,474 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator.mcmove;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.atom.iterator.AtomIterator;
+import etomica.box.Box;
+import etomica.molecule.IMolecule;
+import etomica.molecule.IMoleculeList;
+import etomica.potential.IPotentialAtomic;
+import etomica.potential.IPotentialMolecular;
+import etomica.potential.IteratorDirective;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialMaster;
+import etomica.util.IListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the energy of each atom in a box (one-body energy plus all pair
+ * energies involving the atom) so that MC moves can take the energy of the
+ * configuration before the trial from the cache instead of computing it.
+ * The pair energies are stored as well so that when a trial is accepted only
+ * the moved atoms and their neighbors need to be updated, using the pair
+ * energies computed for the trial configuration.
+ * <p>
+ * A move using the cache (MCMoveAtom, MCMoveMolecule and MCMoveInsertDelete
+ * when given the cache) takes the old energy from getAtomEnergy or
+ * getMoleculeEnergy, computes the new energy with computeTrialEnergy, and
+ * calls acceptTrial or rejectTrial.  The cache must be added as a listener to
+ * the integrator's move event manager; an accepted trial from any other move
+ * that affects atoms in the box causes the cache to be recomputed from scratch
+ * the next time it is used.  Changes to the configuration made outside of MC
+ * moves require a call to reset().
+ * <p>
+ * Only one- and two-body potentials (including bonded pairs) can be
+ * decomposed into atom energies.  Long-range corrections are not cached; see
+ * getLrcEnergy.
+ */
+public class AtomEnergyCache implements IListener<MCMoveEvent>, AtomLeafAgentManager.AgentSource<AtomEnergyCache.AtomEnergies> {
+
+    protected final PotentialMaster potentialMaster;
+    protected final Box box;
+    protected final AtomLeafAgentManager<AtomEnergies> agentManager;
+    protected final IteratorDirective id, lrcId;
+    protected final PotentialCalculationEnergySum lrcSum;
+    protected final Recorder recorder;
+    protected final List<AtomEnergies> trialAtoms;
+    protected boolean valid, trialAccepted;
+    // whether a trial energy was computed or an atom left the box since the
+    // last trial was completed
+    protected boolean trialComputed, atomRemoved;
+
+    public AtomEnergyCache(PotentialMaster potentialMaster, Box box) {
+        this.potentialMaster = potentialMaster;
+        this.box = box;
+        id = new IteratorDirective();
+        id.includeLrc = false;
+        lrcId = new IteratorDirective();
+        lrcSum = new PotentialCalculationEnergySum();
+        recorder = new Recorder();
+        trialAtoms = new ArrayList<>();
+        agentManager = new AtomLeafAgentManager<>(this, box);
+    }
+
+    public Box getBox() {
+        return box;
+    }
+
+    /**
+     * Discards all cached energies.  They will be recomputed when next needed.
+     */
+    public void reset() {
+        valid = false;
+        clearTrial();
+    }
+
+    /**
+     * Returns the energy of the given atom with everything else in the box,
+     * as computed by MeterPotentialEnergy targeting the atom (without
+     * long-range correction).
+     */
+    public double getAtomEnergy(IAtom atom) {
+        ensureValid();
+        return agentManager.getAgent(atom).energy;
+    }
+
+    /**
+     * Returns the energy of the given molecule with everything else in the
+     * box, including interactions within the molecule, as computed by
+     * MeterPotentialEnergy targeting the molecule (without long-range
+     * correction).
+     */
+    public double getMoleculeEnergy(IMolecule molecule) {
+        ensureValid();
+        IAtomList atoms = molecule.getChildList();
+        double sum = 0;
+        for (int i = 0; i < atoms.size(); i++) {
+            AtomEnergies a = agentManager.getAgent(atoms.get(i));
+            sum += a.energy;
+            // pairs within the molecule were included for both atoms
+            for (int j = 0; j < a.nPairs; j++) {
+                if (a.partners[j].atom.getParentGroup() == molecule) {
+                    sum -= 0.5 * a.pairEnergies[j];
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the long-range correction energy for the given molecule, which
+     * is not included in the cached energies.
+     */
+    public double getLrcEnergy(IMolecule molecule) {
+        lrcId.setTargetMolecule(molecule);
+        lrcId.includeLrc = true;
+        lrcSum.zeroSum();
+        potentialMaster.lrcMaster().calculate(box, lrcId, lrcSum);
+        lrcId.setTargetMolecule(null);
+        return lrcSum.getSum();
+    }
+
+    /**
+     * Computes the energy of the given atom in its current (trial) position
+     * and remembers the pair energies so that acceptTrial can update the
+     * cache.
+     */
+    public double computeTrialEnergy(IAtom atom) {
+        clearTrial();
+        addTrialAtom(atom);
+        id.setTargetAtom(atom);
+        id.setDirection(null);
+        id.includeLrc = false;
+        return computeTrial();
+    }
+
+    /**
+     * Computes the energy of the given molecule in its current (trial)
+     * position and remembers the pair energies so that acceptTrial can update
+     * the cache.
+     *
+     * @param includeLrc whether the returned energy includes the long-range
+     *                   correction for the molecule
+     */
+    public double computeTrialEnergy(IMolecule molecule, boolean includeLrc) {
+        clearTrial();
+        IAtomList atoms = molecule.getChildList();
+        for (int i = 0; i < atoms.size(); i++) {
+            addTrialAtom(atoms.get(i));
+        }
+        id.setTargetMolecule(molecule);
+        id.setDirection(null);
+        id.includeLrc = includeLrc;
+        return computeTrial();
+    }
+
+    protected void addTrialAtom(IAtom atom) {
+        AtomEnergies a = agentManager.getAgent(atom);
+        a.nTrialPairs = 0;
+        a.trialEnergy = 0;
+        a.inTrial = true;
+        trialAtoms.add(a);
+    }
+
+    protected double computeTrial() {
+        recorder.trial = true;
+        recorder.zeroSum();
+        potentialMaster.calculate(box, id, recorder);
+        id.clear();
+        for (AtomEnergies a : trialAtoms) {
+            a.inTrial = false;
+        }
+        trialComputed = true;
+        return recorder.getSum();
+    }
+
+    /**
+     * Replaces the cached energies of the atoms in the last trial, and the
+     * contributions to their neighbors, with those computed for the trial.
+     * If no trial energy was computed (as for subclasses of
+     * MCMoveInsertDelete that compute the energy of an inserted molecule with
+     * a meter) and no atom was removed, the cache cannot know what changed,
+     * so it is recomputed when next used.
+     */
+    public void acceptTrial() {
+        trialAccepted = true;
+        if (!trialComputed && !atomRemoved) {
+            valid = false;
+        }
+        if (!valid) {
+            clearTrial();
+            return;
+        }
+        if (trialAtoms.size() == 1) {
+            // most neighbors remain neighbors; update those pairs in place
+            AtomEnergies a = trialAtoms.get(0);
+            double energy = a.trialEnergy;
+            for (int j = a.nPairs - 1; j >= 0; j--) {
+                AtomEnergies b = a.partners[j];
+                int k = b.trialSlot;
+                if (k < 0) {
+                    removePair(a, j);
+                    continue;
+                }
+                double e = a.trialPairEnergies[k];
+                b.energy += e - a.pairEnergies[j];
+                a.pairEnergies[j] = e;
+                b.pairEnergies[a.twins[j]] = e;
+                b.trialSlot = -1;
+                energy += e;
+            }
+            a.energy = energy;
+            for (int j = 0; j < a.nTrialPairs; j++) {
+                AtomEnergies b = a.trialPartners[j];
+                if (b.trialSlot < 0) continue;
+                addPair(a, b, a.trialPairEnergies[j]);
+            }
+            clearTrial();
+            return;
+        }
+        for (AtomEnergies a : trialAtoms) {
+            removePairs(a);
+        }
+        for (AtomEnergies a : trialAtoms) {
+            // what is left is the old one-body energy
+            a.energy = a.trialEnergy;
+        }
+        for (AtomEnergies a : trialAtoms) {
+            for (int j = 0; j < a.nTrialPairs; j++) {
+                addPair(a, a.trialPartners[j], a.trialPairEnergies[j]);
+            }
+        }
+        clearTrial();
+    }
+
+    /**
+     * Discards the energies computed for the last trial.
+     */
+    public void rejectTrial() {
+        clearTrial();
+    }
+
+    public void actionPerformed(MCMoveEvent evt) {
+        if (!(evt instanceof MCMoveTrialCompletedEvent)) return;
+        if (((MCMoveTrialCompletedEvent) evt).isAccepted() && !trialAccepted) {
+            // accepted by a move that does not use the cache
+            AtomIterator iterator = evt.getMCMove().affectedAtoms(box);
+            iterator.reset();
+            if (iterator.nextAtom() != null) {
+                valid = false;
+            }
+        }
+        trialAccepted = false;
+        clearTrial();
+    }
+
+    protected void clearTrial() {
+        for (AtomEnergies a : trialAtoms) {
+            for (int j = 0; j < a.nTrialPairs; j++) {
+                a.trialPartners[j].trialSlot = -1;
+            }
+            a.nTrialPairs = 0;
+        }
+        trialAtoms.clear();
+        trialComputed = false;
+        atomRemoved = false;
+    }
+
+    protected void ensureValid() {
+        if (valid) return;
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < atoms.size(); i++) {
+            AtomEnergies a = agentManager.getAgent(atoms.get(i));
+            a.nPairs = 0;
+            a.energy = 0;
+        }
+        // each pair is found from both atoms; the recorder keeps it only
+        // from the atom with the lower index
+        recorder.trial = false;
+        id.setDirection(null);
+        id.includeLrc = false;
+        for (int i = 0; i < atoms.size(); i++) {
+            IAtom atom = atoms.get(i);
+            recorder.target = agentManager.getAgent(atom);
+            id.setTargetAtom(atom);
+            potentialMaster.calculate(box, id, recorder);
+        }
+        id.clear();
+        recorder.target = null;
+        valid = true;
+    }
+
+    protected static void addPair(AtomEnergies a, AtomEnergies b, double e) {
+        int ia = a.nPairs, ib = b.nPairs;
+        a.ensureCapacity(ia + 1);
+        b.ensureCapacity(ib + 1);
+        a.partners[ia] = b;
+        a.pairEnergies[ia] = e;
+        a.twins[ia] = ib;
+        b.partners[ib] = a;
+        b.pairEnergies[ib] = e;
+        b.twins[ib] = ia;
+        a.nPairs++;
+        b.nPairs++;
+        a.energy += e;
+        b.energy += e;
+    }
+
+    /**
+     * Removes all pairs of atom a, subtracting their energies from a and its
+     * partners.
+     */
+    protected static void removePairs(AtomEnergies a) {
+        for (int j = a.nPairs - 1; j >= 0; j--) {
+            removePair(a, j);
+        }
+    }
+
+    /**
+     * Removes pair j of atom a, subtracting its energy from a and the
+     * partner.  The last pair of each atom is moved into the vacated slot.
+     */
+    protected static void removePair(AtomEnergies a, int j) {
+        AtomEnergies b = a.partners[j];
+        double e = a.pairEnergies[j];
+        a.energy -= e;
+        b.energy -= e;
+        removeSlot(b, a.twins[j]);
+        removeSlot(a, j);
+    }
+
+    private static void removeSlot(AtomEnergies a, int j) {
+        int last = a.nPairs - 1;
+        if (j != last) {
+            AtomEnergies c = a.partners[last];
+            int cSlot = a.twins[last];
+            a.partners[j] = c;
+            a.pairEnergies[j] = a.pairEnergies[last];
+            a.twins[j] = cSlot;
+            c.twins[cSlot] = j;
+        }
+        a.partners[last] = null;
+        a.nPairs--;
+    }
+
+    public AtomEnergies makeAgent(IAtom a, Box agentBox) {
+        return new AtomEnergies(a);
+    }
+
+    public void releaseAgent(AtomEnergies agent, IAtom atom, Box agentBox) {
+        // the atom is leaving the box; its neighbors lose their pairs with it
+        removePairs(agent);
+        atomRemoved = true;
+        agent.energy = 0;
+    }
+
+    /**
+     * Energies for one atom: the total, the pair energies with each partner
+     * and the slot of each pair in the partner's list.
+     */
+    public static class AtomEnergies {
+        public final IAtom atom;
+        protected double energy;
+        protected int nPairs;
+        protected AtomEnergies[] partners;
+        protected double[] pairEnergies;
+        protected int[] twins;
+        protected boolean inTrial;
+        protected double trialEnergy;
+        protected int nTrialPairs;
+        // slot of this atom in the trial pairs of a single moved atom, or -1
+        protected int trialSlot = -1;
+        protected AtomEnergies[] trialPartners;
+        protected double[] trialPairEnergies;
+
+        public AtomEnergies(IAtom atom) {
+            this.atom = atom;
+            partners = new AtomEnergies[8];
+            pairEnergies = new double[8];
+            twins = new int[8];
+            trialPartners = new AtomEnergies[8];
+            trialPairEnergies = new double[8];
+        }
+
+        protected void ensureCapacity(int n) {
+            if (n <= partners.length) return;
+            int newLength = Math.max(n, 2 * partners.length);
+            partners = Arrays.copyOf(partners, newLength);
+            pairEnergies = Arrays.copyOf(pairEnergies, newLength);
+            twins = Arrays.copyOf(twins, newLength);
+        }
+
+        protected void addTrialPair(AtomEnergies b, double e, boolean single) {
+            if (single && b.trialSlot >= 0) {
+                // another potential for the same pair
+                trialPairEnergies[b.trialSlot] += e;
+                return;
+            }
+            if (nTrialPairs == trialPartners.length) {
+                trialPartners = Arrays.copyOf(trialPartners, 2 * nTrialPairs);
+                trialPairEnergies = Arrays.copyOf(trialPairEnergies, 2 * nTrialPairs);
+            }
+            if (single) b.trialSlot = nTrialPairs;
+            trialPartners[nTrialPairs] = b;
+            trialPairEnergies[nTrialPairs] = e;
+            nTrialPairs++;
+        }
+    }
+
+    /**
+     * Sums the energy and attributes each contribution to atoms, either
+     * directly into the cache (when recomputing everything) or into the trial
+     * energies of the atoms in the trial.
+     */
+    protected class Recorder extends PotentialCalculationEnergySum {
+        protected boolean trial;
+        protected AtomEnergies target;
+
+        public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+            double e = potential.energy(atoms);
+            sum += e;
+            switch (atoms.size()) {
+                case 0:
+                    // long-range correction
+                    break;
+                case 1: {
+                    AtomEnergies a = agentManager.getAgent(atoms.get(0));
+                    if (trial) {
+                        a.trialEnergy += e;
+                    }
+                    else if (a == target) {
+                        a.energy += e;
+                    }
+                    break;
+                }
+                case 2: {
+                    // most pairs from cell neighbors are beyond the cutoff
+                    if (e == 0) break;
+                    AtomEnergies a = agentManager.getAgent(atoms.get(0));
+                    AtomEnergies b = agentManager.getAgent(atoms.get(1));
+                    if (trial) {
+                        boolean single = trialAtoms.size() == 1;
+                        if (a.inTrial) {
+                            a.addTrialPair(b, e, single);
+                        }
+                        else {
+                            b.addTrialPair(a, e, single);
+                        }
+                    }
+                    else {
+                        AtomEnergies other = a == target ? b : a;
+                        if (other.atom.getLeafIndex() > target.atom.getLeafIndex()) {
+                            addPair(target, other, e);
+                        }
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("AtomEnergyCache can only handle one- and two-body potentials");
+            }
+        }
+
+        public void doCalculation(IMoleculeList molecules, IPotentialMolecular potential) {
+            throw new IllegalStateException("AtomEnergyCache cannot handle molecular potentials");
+        }
+    }
+}
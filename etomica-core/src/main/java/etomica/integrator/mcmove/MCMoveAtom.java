@@ -36,6 +36,7 @@ public class MCMoveAtom extends MCMoveBoxStep {
     protected AtomSource atomSource;
     protected boolean fixOverlap;
     protected Space space;
+    protected AtomEnergyCache energyCache;
 
     /**
      * Constructs the move with default stepSize = 1.0, stepSizeMax = 15.0, fixOverlap = false
@@ -96,7 +97,7 @@ public class MCMoveAtom extends MCMoveBoxStep {
         atom = atomSource.getAtom();
         if (atom == null) return false;
         energyMeter.setTarget(atom);
-        uOld = energyMeter.getDataAsScalar();
+        uOld = energyCache == null ? energyMeter.getDataAsScalar() : energyCache.getAtomEnergy(atom);
         if (uOld > 1e8 && !fixOverlap) {
             PotentialCalculationEnergySum.debug = true;
             energyMeter.getDataAsScalar();
@@ -109,7 +110,7 @@ public class MCMoveAtom extends MCMoveBoxStep {
     }//end of doTrial
 
     public double getChi(double temperature) {
-        uNew = energyMeter.getDataAsScalar();
+        uNew = energyCache == null ? energyMeter.getDataAsScalar() : energyCache.computeTrialEnergy(atom);
         return Math.exp(-(uNew - uOld) / temperature);
     }
 
@@ -117,10 +118,12 @@ public class MCMoveAtom extends MCMoveBoxStep {
         return uNew - uOld;
     }
 
-    public void acceptNotify() {  /* do nothing */
+    public void acceptNotify() {
+        if (energyCache != null) energyCache.acceptTrial();
     }
 
     public void rejectNotify() {
+        if (energyCache != null) energyCache.rejectTrial();
         translationVector.TE(-1);
         atom.getPosition().PE(translationVector);
     }
@@ -151,4 +154,18 @@ public class MCMoveAtom extends MCMoveBoxStep {
     public void setAtomSource(AtomSource source) {
         atomSource = source;
     }
+
+    /**
+     * Sets a cache of atom energies used to find the energy before the trial
+     * without computing it.  The cache must be for this move's box and
+     * registered as a listener with the integrator's move event manager.
+     * Pass null to compute both energies with the meter (the default).
+     */
+    public void setEnergyCache(AtomEnergyCache newEnergyCache) {
+        energyCache = newEnergyCache;
+    }
+
+    public AtomEnergyCache getEnergyCache() {
+        return energyCache;
+    }
 }
@@ -48,6 +48,7 @@ public class MCMoveInsertDelete extends MCMoveBox {
     protected IMoleculeList moleculeList;
     protected IRandom random;
     protected RandomPositionSource positionSource;
+    protected AtomEnergyCache energyCache;
 
     public MCMoveInsertDelete(PotentialMaster potentialMaster, IRandom random,
                               Space _space) {
@@ -98,6 +99,21 @@ public class MCMoveInsertDelete extends MCMoveBox {
         return positionSource;
     }
 
+    /**
+     * Sets a cache of atom energies used to find the energy of a molecule
+     * chosen for deletion without computing it.  The cache must be for this
+     * move's box and registered as a listener with the integrator's move
+     * event manager.  Pass null to compute energies with the meter (the
+     * default).
+     */
+    public void setEnergyCache(AtomEnergyCache newEnergyCache) {
+        energyCache = newEnergyCache;
+    }
+
+    public AtomEnergyCache getEnergyCache() {
+        return energyCache;
+    }
+
     /**
      * Chooses and performs with equal probability an elementary molecule insertion
      * or deletion.
@@ -120,8 +136,16 @@ public class MCMoveInsertDelete extends MCMoveBox {
             }
             testMolecule = moleculeList.get(random.nextInt(moleculeList.size()));
             //delete molecule only upon accepting trial
-            energyMeter.setTarget(testMolecule);
-            uOld = energyMeter.getDataAsScalar();
+            if (energyCache == null) {
+                energyMeter.setTarget(testMolecule);
+                uOld = energyMeter.getDataAsScalar();
+            }
+            else {
+                uOld = energyCache.getMoleculeEnergy(testMolecule);
+                if (energyMeter.isIncludeLrc()) {
+                    uOld += energyCache.getLrcEnergy(testMolecule);
+                }
+            }
             uNew = 0.0;
         } 
         uNew = Double.NaN;
@@ -133,8 +157,13 @@ public class MCMoveInsertDelete extends MCMoveBox {
         double a = box.getBoundary().volume()/numMolecules;
 
         if(insert) {
-            energyMeter.setTarget(testMolecule);
-            uNew = energyMeter.getDataAsScalar();
+            if (energyCache == null) {
+                energyMeter.setTarget(testMolecule);
+                uNew = energyMeter.getDataAsScalar();
+            }
+            else {
+                uNew = energyCache.computeTrialEnergy(testMolecule, energyMeter.isIncludeLrc());
+            }
         }
         else {
             uNew = 0;
@@ -153,9 +182,11 @@ public class MCMoveInsertDelete extends MCMoveBox {
             box.removeMolecule(testMolecule);
             reservoir.add(testMolecule);
         }
+        if (energyCache != null) energyCache.acceptTrial();
     }
     
     public void rejectNotify() {
+        if (energyCache != null) energyCache.rejectTrial();
         if(insert) {
             // rejected insertion - remove from box and return to reservoir
             box.removeMolecule(testMolecule);
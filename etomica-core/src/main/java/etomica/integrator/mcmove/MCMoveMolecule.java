@@ -41,6 +41,7 @@ public class MCMoveMolecule extends MCMoveBoxStep implements MCMoveMolecular {
     protected final Vector groupTranslationVector;
     protected MoleculeSource moleculeSource;
     protected IMolecule molecule;
+    protected AtomEnergyCache energyCache;
 
     public MCMoveMolecule(Simulation sim, PotentialMaster potentialMaster,
                           Space _space) {
@@ -81,7 +82,7 @@ public class MCMoveMolecule extends MCMoveBoxStep implements MCMoveMolecular {
         molecule = moleculeSource.getMolecule();
         if (molecule == null) return false;
         energyMeter.setTarget(molecule);
-        uOld = energyMeter.getDataAsScalar();
+        uOld = energyCache == null ? energyMeter.getDataAsScalar() : energyCache.getMoleculeEnergy(molecule);
         if(Double.isInfinite(uOld)) {
             throw new RuntimeException("Started with overlap");
         }
@@ -92,7 +93,7 @@ public class MCMoveMolecule extends MCMoveBoxStep implements MCMoveMolecular {
     }
 
     public double getChi(double temperature) {
-        uNew = energyMeter.getDataAsScalar();
+        uNew = energyCache == null ? energyMeter.getDataAsScalar() : energyCache.computeTrialEnergy(molecule, false);
         //System.out.println("Translation uNew: "+uNew+ " uOld: "+uOld+" re "+energyMeter.getDataAsScalar());
         return Math.exp(-(uNew - uOld) / temperature);
     }
@@ -102,10 +103,12 @@ public class MCMoveMolecule extends MCMoveBoxStep implements MCMoveMolecular {
     /**
      * Method called by IntegratorMC in the event that the most recent trial is accepted.
      */
-    public void acceptNotify() {  /* do nothing */
+    public void acceptNotify() {
+        if (energyCache != null) energyCache.acceptTrial();
     }
     
     public void rejectNotify() {
+        if (energyCache != null) energyCache.rejectTrial();
         groupTranslationVector.TE(-1);
         moveMoleculeAction.actionPerformed(molecule);
     }
@@ -138,4 +141,18 @@ public class MCMoveMolecule extends MCMoveBoxStep implements MCMoveMolecular {
     public void setMoleculeSource(MoleculeSource source) {
         moleculeSource = source;
     }
+
+    /**
+     * Sets a cache of atom energies used to find the energy before the trial
+     * without computing it.  The cache must be for this move's box and
+     * registered as a listener with the integrator's move event manager.
+     * Pass null to compute both energies with the meter (the default).
+     */
+    public void setEnergyCache(AtomEnergyCache newEnergyCache) {
+        energyCache = newEnergyCache;
+    }
+
+    public AtomEnergyCache getEnergyCache() {
+        return energyCache;
+    }
 }
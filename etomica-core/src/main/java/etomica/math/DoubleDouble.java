@@ -0,0 +1,184 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.math;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Mutable double-double number: an unevaluated sum hi + lo of two doubles
+ * with |lo| <= ulp(hi)/2, giving about 106 bits (32 decimal digits) of
+ * precision.  Operations modify this number in place (in the style of
+ * Vector's E, PE and TE methods), so that arrays of DoubleDouble can be
+ * allocated once and then used for calculations that would otherwise need
+ * BigDecimal, without creating any objects.
+ * <p>
+ * The arithmetic uses the error-free transformations of Dekker and Knuth
+ * (two-sum and two-product via splitting).  Splitting overflows for
+ * magnitudes above about 1e300, and the range is otherwise that of double.
+ */
+public class DoubleDouble {
+
+    /**
+     * Relative precision of a double-double, 2^-104.
+     */
+    public static final double EPSILON = 4.93038065763132e-32;
+    // 2^27+1, used to split a double into two 26-bit halves
+    private static final double SPLITTER = 134217729.0;
+
+    private double hi, lo;
+
+    public DoubleDouble() {
+    }
+
+    public DoubleDouble(double x) {
+        hi = x;
+    }
+
+    /**
+     * @return the leading (double) part of this number
+     */
+    public double hi() {
+        return hi;
+    }
+
+    /**
+     * @return the trailing part of this number
+     */
+    public double lo() {
+        return lo;
+    }
+
+    /**
+     * @return this number rounded to a double
+     */
+    public double doubleValue() {
+        return hi + lo;
+    }
+
+    public boolean isZero() {
+        return hi == 0;
+    }
+
+    public boolean isNaN() {
+        return Double.isNaN(hi) || Double.isNaN(lo);
+    }
+
+    /**
+     * @return the exact value of this number as a BigDecimal
+     */
+    public BigDecimal toBigDecimal() {
+        return new BigDecimal(hi).add(new BigDecimal(lo));
+    }
+
+    /**
+     * Sets this number equal to x.
+     */
+    public void E(double x) {
+        hi = x;
+        lo = 0;
+    }
+
+    /**
+     * Sets this number equal to a.
+     */
+    public void E(DoubleDouble a) {
+        hi = a.hi;
+        lo = a.lo;
+    }
+
+    /**
+     * Adds x to this number.
+     */
+    public void PE(double x) {
+        double s = hi + x;
+        double bb = s - hi;
+        double e = (hi - (s - bb)) + (x - bb) + lo;
+        hi = s + e;
+        lo = e - (hi - s);
+    }
+
+    /**
+     * Adds a to this number.
+     */
+    public void PE(DoubleDouble a) {
+        add(a.hi, a.lo);
+    }
+
+    /**
+     * Subtracts a from this number.
+     */
+    public void ME(DoubleDouble a) {
+        add(-a.hi, -a.lo);
+    }
+
+    /**
+     * Multiplies this number by a.
+     */
+    public void TE(DoubleDouble a) {
+        double p = hi * a.hi;
+        double e = twoProdErr(hi, a.hi, p) + (hi * a.lo + lo * a.hi);
+        hi = p + e;
+        lo = e - (hi - p);
+    }
+
+    /**
+     * Adds a*b to this number.
+     */
+    public void PEv1Tv2(DoubleDouble a, DoubleDouble b) {
+        double p = a.hi * b.hi;
+        double e = twoProdErr(a.hi, b.hi, p) + (a.hi * b.lo + a.lo * b.hi);
+        double pHi = p + e;
+        add(pHi, e - (pHi - p));
+    }
+
+    /**
+     * Subtracts a*b from this number.
+     */
+    public void MEv1Tv2(DoubleDouble a, DoubleDouble b) {
+        double p = a.hi * b.hi;
+        double e = twoProdErr(a.hi, b.hi, p) + (a.hi * b.lo + a.lo * b.hi);
+        double pHi = p + e;
+        add(-pHi, -(e - (pHi - p)));
+    }
+
+    /**
+     * Adds (bHi + bLo) to this number, with both pairs of components summed
+     * exactly before renormalizing.
+     */
+    private void add(double bHi, double bLo) {
+        double s1 = hi + bHi;
+        double bb = s1 - hi;
+        double s2 = (hi - (s1 - bb)) + (bHi - bb);
+        double t1 = lo + bLo;
+        bb = t1 - lo;
+        double t2 = (lo - (t1 - bb)) + (bLo - bb);
+        s2 += t1;
+        double s = s1 + s2;
+        s2 = s2 - (s - s1);
+        s2 += t2;
+        hi = s + s2;
+        lo = s2 - (hi - s);
+    }
+
+    /**
+     * Returns the rounding error of the product p = a*b, so that a*b = p + err
+     * exactly.
+     */
+    private static double twoProdErr(double a, double b, double p) {
+        double t = SPLITTER * a;
+        double aHi = t - (t - a);
+        double aLo = a - aHi;
+        t = SPLITTER * b;
+        double bHi = t - (t - b);
+        double bLo = b - bHi;
+        return ((aHi * bHi - p) + aHi * bLo + aLo * bHi) + aLo * bLo;
+    }
+
+    public String toString() {
+        if (Double.isNaN(hi) || Double.isInfinite(hi)) return Double.toString(hi);
+        return toBigDecimal().round(new MathContext(32)).toString();
+    }
+}
@@ -166,6 +166,99 @@ public class FastFourierTransform implements java.io.Serializable {
 	public double[] getReal() {return real;}
 	public double[] getImaginary() {return imaginary;}
 
+	/**
+	 * Performs an (unscaled) forward transform, F(m) = sum_n f(n) exp(-2 pi i m.n/N),
+	 * of data on a multidimensional grid in place.  The data are stored with
+	 * the last index varying fastest; dims holds the number of points along
+	 * each direction.  Directions with a power-of-2 number of points are
+	 * transformed with the FFT, others with a direct DFT (which is fine for
+	 * the short lines of a lattice of cells).
+	 */
+	public static void transform(double[] real, double[] imaginary, int[] dims) {
+		int total = 1;
+		for (int d : dims) total *= d;
+		if (real.length != total || imaginary.length != total) {
+			throw new IllegalArgumentException("data length does not match grid dimensions");
+		}
+		int stride = total;
+		for (int d=0; d<dims.length; d++) {
+			int n = dims[d];
+			stride /= n;
+			if (n == 1) continue;
+			double[] lineReal = new double[n];
+			double[] lineImaginary = new double[n];
+			double[] workReal = new double[n];
+			double[] workImaginary = new double[n];
+			boolean pow2 = (n & (n-1)) == 0;
+			double[] cos = new double[n];
+			double[] sin = new double[n];
+			for (int j=0; j<n; j++) {
+				cos[j] = Math.cos(2*Math.PI*j/n);
+				sin[j] = Math.sin(2*Math.PI*j/n);
+			}
+			// each line starts at an index whose digit for direction d is 0
+			for (int start=0; start<total; start++) {
+				if ((start/stride) % n != 0) continue;
+				for (int j=0, p=start; j<n; j++, p+=stride) {
+					lineReal[j] = real[p];
+					lineImaginary[j] = imaginary[p];
+				}
+				if (pow2) {
+					fft(lineReal, lineImaginary, cos, sin);
+				}
+				else {
+					for (int m=0; m<n; m++) {
+						double sr = 0, si = 0;
+						for (int j=0, mj=0; j<n; j++, mj=(mj+m)%n) {
+							sr += lineReal[j]*cos[mj] + lineImaginary[j]*sin[mj];
+							si += lineImaginary[j]*cos[mj] - lineReal[j]*sin[mj];
+						}
+						workReal[m] = sr;
+						workImaginary[m] = si;
+					}
+					System.arraycopy(workReal, 0, lineReal, 0, n);
+					System.arraycopy(workImaginary, 0, lineImaginary, 0, n);
+				}
+				for (int j=0, p=start; j<n; j++, p+=stride) {
+					real[p] = lineReal[j];
+					imaginary[p] = lineImaginary[j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unscaled forward radix-2 transform of a line, using tables of
+	 * cos(2 pi j/n) and sin(2 pi j/n).
+	 */
+	private static void fft(double[] real, double[] imaginary, double[] cos, double[] sin) {
+		int n = real.length;
+		for (int i=1, j=0; i<n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) j ^= bit;
+			j ^= bit;
+			if (i < j) {
+				double t = real[i]; real[i] = real[j]; real[j] = t;
+				t = imaginary[i]; imaginary[i] = imaginary[j]; imaginary[j] = t;
+			}
+		}
+		for (int len=2; len<=n; len<<=1) {
+			int half = len >> 1, step = n/len;
+			for (int i=0; i<n; i+=len) {
+				for (int j=0; j<half; j++) {
+					double wr = cos[j*step], wi = -sin[j*step];
+					int i1 = i+j, i2 = i1+half;
+					double tr = wr*real[i2] - wi*imaginary[i2];
+					double ti = wr*imaginary[i2] + wi*real[i2];
+					real[i2] = real[i1] - tr;
+					imaginary[i2] = imaginary[i1] - ti;
+					real[i1] += tr;
+					imaginary[i1] += ti;
+				}
+			}
+		}
+	}
+
 // in order to test the fft....	
 	public static void main (String [] arg) {
 	
@@ -1,11 +1,39 @@
 package etomica.meta;
 
-import java.util.List;
-import java.util.Set;
+import etomica.meta.annotations.IndexSubclasses;
+import io.github.lukehutch.fastclasspathscanner.FastClasspathScanner;
 
-import static etomica.meta.Common.*;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Finds the subclasses of a class, or the classes implementing an interface.
+ * For types annotated with IndexSubclasses, the classes are read from the
+ * index written at build time by the component index annotation processor
+ * (META-INF/etomica/index/ in each jar or class directory).  Classpath
+ * elements compiled without the processor have no index; their classes are
+ * found by scanning just those elements.  Types that are not annotated, and
+ * classpaths where nothing has an index, are handled by scanning the whole
+ * classpath.
+ * <p>
+ * Like the classpath scan, the returned classes include abstract classes.
+ */
 public class ComponentIndex<T> {
+    // must match etomica.processor.ComponentIndexProcessor.INDEX_PATH and INDEX_MARKER
+    public static final String INDEX_PATH = "META-INF/etomica/index/";
+    public static final String INDEX_MARKER = "META-INF/etomica/indexed";
+
+    private static final Map<Class<?>, List<Class<?>>> indexCache = new ConcurrentHashMap<>();
+
     private final Class<T> componentClass;
 
 
@@ -14,11 +42,110 @@ public class ComponentIndex<T> {
     }
 
     public List<Class<?>> getComponentSet() {
+        if (componentClass.isAnnotationPresent(IndexSubclasses.class) && !Classpath.INDEXED_ROOTS.isEmpty()) {
+            return new ArrayList<>(indexCache.computeIfAbsent(componentClass, ComponentIndex::find));
+        }
+        // referencing Common triggers the classpath scan
         if (componentClass.isInterface()) {
-            return CLASSPATH_SCAN.classNamesToClassRefs(CLASSPATH_SCAN.getNamesOfClassesImplementing(componentClass));
+            return Common.CLASSPATH_SCAN.classNamesToClassRefs(Common.CLASSPATH_SCAN.getNamesOfClassesImplementing(componentClass));
         } else {
-            return CLASSPATH_SCAN.classNamesToClassRefs(CLASSPATH_SCAN.getNamesOfSubclassesOf(componentClass));
+            return Common.CLASSPATH_SCAN.classNamesToClassRefs(Common.CLASSPATH_SCAN.getNamesOfSubclassesOf(componentClass));
         }
 
     }
+
+    private static List<Class<?>> find(Class<?> componentClass) {
+        Set<Class<?>> classes = new LinkedHashSet<>(readIndex(componentClass));
+        for (String name : Classpath.UNINDEXED_CLASS_NAMES) {
+            try {
+                Class<?> c = Class.forName(name, false, componentClass.getClassLoader());
+                // the processor indexes named classes and enums only
+                if (c != componentClass && componentClass.isAssignableFrom(c) && !c.isInterface()
+                        && !c.isAnonymousClass() && !c.isLocalClass() && !c.isSynthetic()) {
+                    classes.add(c);
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                // missing a dependency; skip it
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(classes));
+    }
+
+    /**
+     * Returns the classes listed in all index resources for the given class,
+     * or an empty list if there are none.
+     */
+    private static List<Class<?>> readIndex(Class<?> componentClass) {
+        ClassLoader loader = componentClass.getClassLoader();
+        Set<String> names = new LinkedHashSet<>();
+        try {
+            Enumeration<URL> resources = loader.getResources(INDEX_PATH + componentClass.getName());
+            while (resources.hasMoreElements()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(resources.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (!line.isEmpty()) names.add(line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<Class<?>> classes = new ArrayList<>();
+        for (String name : names) {
+            try {
+                classes.add(Class.forName(name, false, loader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                // listed in a stale index or missing a dependency; skip it
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Returns the jar or class directory holding the given resource.
+     */
+    private static File classpathRoot(URL resource, String path) throws IOException {
+        try {
+            if (resource.getProtocol().equals("jar")) {
+                return new File(((JarURLConnection) resource.openConnection()).getJarFileURL().toURI()).getCanonicalFile();
+            }
+            File file = new File(resource.toURI());
+            for (int i = path.split("/").length; i > 0; i--) {
+                file = file.getParentFile();
+            }
+            return file.getCanonicalFile();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Classpath elements that have an index, and the etomica classes in those
+     * that do not.  Loaded the first time an annotated type is looked up.
+     */
+    private static class Classpath {
+        static final Set<File> INDEXED_ROOTS = new HashSet<>();
+        static final List<String> UNINDEXED_CLASS_NAMES;
+
+        static {
+            try {
+                Enumeration<URL> markers = ComponentIndex.class.getClassLoader().getResources(INDEX_MARKER);
+                while (markers.hasMoreElements()) {
+                    INDEXED_ROOTS.add(classpathRoot(markers.nextElement(), INDEX_MARKER));
+                }
+                List<File> unindexed = new ArrayList<>();
+                if (!INDEXED_ROOTS.isEmpty()) {
+                    for (File f : new FastClasspathScanner("etomica").getUniqueClasspathElements()) {
+                        if (!INDEXED_ROOTS.contains(f.getCanonicalFile())) unindexed.add(f);
+                    }
+                }
+                UNINDEXED_CLASS_NAMES = unindexed.isEmpty() ? Collections.emptyList()
+                        : new FastClasspathScanner("etomica").overrideClasspath(unindexed).scan().getNamesOfAllClasses();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 }
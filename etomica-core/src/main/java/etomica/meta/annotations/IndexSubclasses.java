@@ -0,0 +1,15 @@
+package etomica.meta.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a class or interface whose subclasses (or implementing classes) are
+ * listed at build time by etomica.processor.ComponentIndexProcessor, so that
+ * ComponentIndex can find them without scanning the classpath.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface IndexSubclasses {
+
+}
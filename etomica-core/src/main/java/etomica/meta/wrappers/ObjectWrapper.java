@@ -15,36 +15,53 @@ import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 public class ObjectWrapper<T> extends Wrapper<T> {
 
+    // filtered property descriptors for each wrapped class
+    private static final Map<Class<?>, List<PropertyDescriptor>> propertyCache = new ConcurrentHashMap<>();
+
     public ObjectWrapper(T wrapped, SimulationModel simModel, boolean doSerialize) {
         super(wrapped, simModel, doSerialize);
         List<Property> properties = new ArrayList<>();
-        try {
-            Arrays.stream(Introspector.getBeanInfo(wrappedClass).getPropertyDescriptors())
-                    .filter(propertyDescriptor -> !propertyDescriptor.getName().equalsIgnoreCase("class"))
-                    .filter(propertyDescriptor -> propertyDescriptorMethod(propertyDescriptor) != null)
-                    .filter(propertyDescriptor -> !hasAnnotation(propertyDescriptorMethod(propertyDescriptor), IgnoreProperty.class))
-                    .filter(propertyDescriptor -> !hasAnnotation(propertyDescriptorMethod(propertyDescriptor), JsonIgnore.class))
-                    .filter(propertyDescriptor -> !propertyDescriptor.getName().toLowerCase().endsWith("dimension"))
-                    .forEach(propertyDescriptor -> properties.add(makeProperty(wrapped, propertyDescriptor)));
+        for (PropertyDescriptor propertyDescriptor : getPropertyDescriptors(wrappedClass)) {
+            properties.add(makeProperty(wrapped, propertyDescriptor));
+        }
 
-            for (Property p : properties) {
-                if (p.isValueProperty()) {
-                    valueProps.add(p);
-                } else {
-                    childProps.add(p);
-                }
+        for (Property p : properties) {
+            if (p.isValueProperty()) {
+                valueProps.add(p);
+            } else {
+                childProps.add(p);
             }
-        } catch (IntrospectionException e) {
-            e.printStackTrace();
         }
     }
 
+    /**
+     * Returns the descriptors of the properties of the given class that are
+     * wrapped.  Introspection and the annotation checks are done only once
+     * per class.
+     */
+    private static List<PropertyDescriptor> getPropertyDescriptors(Class<?> cls) {
+        return propertyCache.computeIfAbsent(cls, c -> {
+            try {
+                return Collections.unmodifiableList(Arrays.stream(Introspector.getBeanInfo(c).getPropertyDescriptors())
+                        .filter(propertyDescriptor -> !propertyDescriptor.getName().equalsIgnoreCase("class"))
+                        .filter(propertyDescriptor -> propertyDescriptorMethod(propertyDescriptor) != null)
+                        .filter(propertyDescriptor -> !hasAnnotation(propertyDescriptorMethod(propertyDescriptor), IgnoreProperty.class))
+                        .filter(propertyDescriptor -> !hasAnnotation(propertyDescriptorMethod(propertyDescriptor), JsonIgnore.class))
+                        .filter(propertyDescriptor -> !propertyDescriptor.getName().toLowerCase().endsWith("dimension"))
+                        .collect(Collectors.toList()));
+            } catch (IntrospectionException e) {
+                e.printStackTrace();
+                return Collections.emptyList();
+            }
+        });
+    }
+
     private static Property makeProperty(Object o, PropertyDescriptor propertyDescriptor) {
         Class propertyType = propertyDescriptor.getPropertyType();
         if (propertyType != null && Vector.class.isAssignableFrom(propertyType)) {
@@ -1,6 +1,7 @@
 package etomica.meta.wrappers;
 
 import etomica.meta.SimulationModel;
+import etomica.meta.annotations.IndexSubclasses;
 import etomica.meta.properties.Property;
 
 import java.util.ArrayList;
@@ -13,6 +14,7 @@ import java.util.Map;
  * fields are made accessible in the simulation model.
  * @param <T> the class of the wrapped object
  */
+@IndexSubclasses
 public abstract class Wrapper<T> {
     protected final T wrapped;
     protected final Class wrappedClass;
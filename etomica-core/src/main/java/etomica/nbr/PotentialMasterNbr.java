@@ -4,7 +4,9 @@
 
 package etomica.nbr;
 
+import etomica.atom.AtomPair;
 import etomica.atom.AtomType;
+import etomica.atom.IAtom;
 import etomica.box.Box;
 import etomica.box.BoxAgentManager;
 import etomica.box.BoxCellManager;
@@ -245,4 +247,44 @@ public abstract class PotentialMasterNbr extends PotentialMaster {
     }
 
     public abstract BoxCellManager getBoxCellManager(Box box);
+
+    /**
+     * Neighbor callback that checks the criterion for each pair involving a
+     * target atom and passes accepted pairs to a PotentialCalculation.  A
+     * single instance (with a single AtomPair) can be reused for all atoms,
+     * so that no objects are created per pair.  As with PotentialMasterList,
+     * the PotentialCalculation must not hold on to the AtomPair it is given.
+     */
+    protected static class PairCalculator implements NeighborIterator.AtomPairConsumer {
+        private final AtomPair pair = new AtomPair();
+        private IAtom targetAtom;
+        private NeighborCriterion[] criteria;
+        private IPotentialAtomic[] potentials;
+        private PotentialCalculation pc;
+
+        public PairCalculator() {
+        }
+
+        /**
+         * Sets the target atom, along with its criteria and potentials
+         * (indexed by the other atom's type) and the calculation to perform.
+         */
+        public void setTarget(IAtom targetAtom, NeighborCriterion[] criteria, IPotentialAtomic[] potentials, PotentialCalculation pc) {
+            this.targetAtom = targetAtom;
+            this.criteria = criteria;
+            this.potentials = potentials;
+            this.pc = pc;
+        }
+
+        @Override
+        public void accept(IAtom atom0, IAtom atom1) {
+            IAtom otherAtom = atom0 == targetAtom ? atom1 : atom0;
+            NeighborCriterion criterion = criteria[otherAtom.getType().getIndex()];
+            if (criterion != null && criterion.accept(atom0, atom1)) {
+                pair.atom0 = atom0;
+                pair.atom1 = atom1;
+                pc.doCalculation(pair, potentials[otherAtom.getType().getIndex()]);
+            }
+        }
+    }
 }
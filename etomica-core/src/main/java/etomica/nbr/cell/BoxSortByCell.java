@@ -0,0 +1,48 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.cell;
+
+import etomica.action.IAction;
+import etomica.box.Box;
+
+/**
+ * Action that renumbers the leaf atoms of a box so that atoms in the same
+ * cell have consecutive leaf indices, with cells taken in the order of the
+ * Hilbert curve of the manager's CellTraversal.  Within a cell, atoms keep
+ * their previous relative order.  Atoms that are near each other in space
+ * are then near each other in memory (in the leaf list and in anything
+ * indexed by leaf index), which makes loops over neighbors faster for large
+ * systems.  Atoms without a cell go at the end.
+ * <p>
+ * The atoms' cell assignments must be current (as they are right after
+ * NeighborCellManager.assignCellAll).  The traversal is rebuilt afterwards,
+ * so it refers to the new leaf indices.
+ */
+public class BoxSortByCell implements IAction {
+
+    protected final Box box;
+    protected final NeighborCellManager cellManager;
+
+    public BoxSortByCell(Box box, NeighborCellManager cellManager) {
+        this.box = box;
+        this.cellManager = cellManager;
+    }
+
+    public void actionPerformed() {
+        CellTraversal traversal = cellManager.getCellTraversal();
+        traversal.rebuild();
+        int[] order = traversal.getAtomOrder();
+        boolean sorted = true;
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] != i) {
+                sorted = false;
+                break;
+            }
+        }
+        if (sorted) return;
+        box.reorderLeafAtoms(order);
+        traversal.rebuild();
+    }
+}
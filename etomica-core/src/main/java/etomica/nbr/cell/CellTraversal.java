@@ -0,0 +1,290 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.cell;
+
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.lattice.CellLattice;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the cell assignments of a NeighborCellManager, with the cells
+ * ordered along a Hilbert curve and the occupants of all cells held in
+ * contiguous arrays.  Cells that are next to each other along the curve are
+ * next to each other in space, so a loop over the cells in curve order (or
+ * over a run of consecutive cells) keeps revisiting the same atoms, and
+ * sorting the atoms in this order (see getAtomOrder) puts neighboring atoms
+ * near each other in memory.
+ * <p>
+ * The cell at position p along the curve is cellOrder[p], and its atoms
+ * (as leaf indices, in increasing order) are
+ * <pre>
+ *   cellAtoms[cellStart[p]] ... cellAtoms[cellStart[p+1]-1]
+ * </pre>
+ * Atoms without a cell (if any) follow, from cellStart[numCells] to the end.
+ * The arrays are rebuilt by NeighborCellManager.assignCellAll once the
+ * manager's traversal has been requested, and by rebuild.  They are not
+ * updated when single atoms change cells (MC moves) or are renumbered.
+ */
+public class CellTraversal {
+
+    protected final Box box;
+    protected final NeighborCellManager cellManager;
+    private Object[] sites;
+    private int[] cellOrder = new int[0];
+    private int[] cellRank = new int[0];
+    private int[] cellStart = new int[1];
+    private int[] cellAtoms = new int[0];
+    private IAtom[] atoms = new IAtom[0];
+    private int[] atomSlot = new int[0];
+    private int[] atomRank = new int[0];
+    private int[] blockStart = new int[1];
+    private int blockAtoms;
+
+    public CellTraversal(Box box, NeighborCellManager cellManager) {
+        this.box = box;
+        this.cellManager = cellManager;
+    }
+
+    /**
+     * Rebuilds the occupant arrays from the current cell assignments (and the
+     * curve if the lattice has changed).
+     */
+    public void rebuild() {
+        CellLattice lattice = cellManager.getLattice();
+        if (lattice.sites() != sites) {
+            sites = lattice.sites();
+            cellOrder = hilbertOrder(lattice.getSize());
+            cellRank = new int[cellOrder.length];
+            for (int p = 0; p < cellOrder.length; p++) {
+                cellRank[cellOrder[p]] = p;
+            }
+        }
+        int nCells = cellOrder.length;
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.size();
+        if (cellStart.length != nCells + 1) {
+            cellStart = new int[nCells + 1];
+        }
+        else {
+            Arrays.fill(cellStart, 0);
+        }
+        if (atomRank.length != nLeaf) {
+            atomRank = new int[nLeaf];
+            atomSlot = new int[nLeaf];
+        }
+
+        // counting sort of the atoms by the position of their cell along the curve
+        for (int i = 0; i < nLeaf; i++) {
+            Cell cell = cellManager.getCell(leafList.get(i));
+            if (cell == null) {
+                atomRank[i] = -1;
+                continue;
+            }
+            int p = cellRank[cell.getLatticeArrayIndex()];
+            atomRank[i] = p;
+            cellStart[p + 1]++;
+        }
+        for (int p = 0; p < nCells; p++) {
+            cellStart[p + 1] += cellStart[p];
+        }
+        if (cellAtoms.length != nLeaf) {
+            cellAtoms = new int[nLeaf];
+            atoms = new IAtom[nLeaf];
+        }
+        int[] next = Arrays.copyOf(cellStart, nCells + 1);
+        for (int i = 0; i < nLeaf; i++) {
+            // atoms without a cell go after the last cell
+            int s = atomRank[i] < 0 ? next[nCells]++ : next[atomRank[i]]++;
+            cellAtoms[s] = i;
+            atoms[s] = leafList.get(i);
+            atomSlot[i] = s;
+        }
+        blockAtoms = 0;
+    }
+
+    /**
+     * @return the number of cells
+     */
+    public int getNumCells() {
+        return cellOrder.length;
+    }
+
+    /**
+     * Returns the lattice array index of the cell at each position along the
+     * curve.
+     */
+    public int[] getCellOrder() {
+        return cellOrder;
+    }
+
+    /**
+     * Returns the position along the curve of each cell, indexed by the
+     * cell's lattice array index.
+     */
+    public int[] getCellRank() {
+        return cellRank;
+    }
+
+    /**
+     * Returns the start of each cell's atoms in the arrays returned by
+     * getCellAtoms and getAtoms, indexed by position along the curve.  The
+     * array has an extra element at the end so that the end of the atoms of
+     * the cell at position p is cellStart[p+1].
+     */
+    public int[] getCellStart() {
+        return cellStart;
+    }
+
+    /**
+     * Returns the leaf indices of the atoms in each cell, for all cells in
+     * curve order.
+     */
+    public int[] getCellAtoms() {
+        return cellAtoms;
+    }
+
+    /**
+     * Returns the atoms in each cell, in the same order as getCellAtoms.
+     */
+    public IAtom[] getAtoms() {
+        return atoms;
+    }
+
+    /**
+     * Returns the position of each atom (indexed by leaf index) in the arrays
+     * returned by getCellAtoms and getAtoms.
+     */
+    public int[] getAtomSlots() {
+        return atomSlot;
+    }
+
+    /**
+     * Returns the permutation that sorts the leaf atoms by the position of
+     * their cell along the curve, suitable for Box.reorderLeafAtoms.  This is
+     * the same array as getCellAtoms.
+     */
+    public int[] getAtomOrder() {
+        return cellAtoms;
+    }
+
+    /**
+     * Divides the curve into blocks of consecutive cells with about the given
+     * number of atoms in each (a block always has at least one cell).  The
+     * cells of block b are at positions blockStart[b] ... blockStart[b+1]-1.
+     * Blocks small enough that the atoms of a block and of its cells'
+     * neighbors fit in cache can be processed one at a time (or handed to
+     * different threads) without thrashing.
+     *
+     * @return the block starts, with an extra element at the end
+     */
+    public int[] getBlockStart(int atomsPerBlock) {
+        if (atomsPerBlock < 1) {
+            throw new IllegalArgumentException("block size must be positive");
+        }
+        if (atomsPerBlock == blockAtoms) {
+            return blockStart;
+        }
+        int nCells = cellOrder.length;
+        int nBlocks = 0;
+        int[] starts = new int[nCells + 1];
+        int blockEnd = 0;
+        for (int p = 0; p < nCells; p++) {
+            if (p == 0 || cellStart[p] >= blockEnd) {
+                starts[nBlocks++] = p;
+                blockEnd = cellStart[p] + atomsPerBlock;
+            }
+        }
+        starts[nBlocks] = nCells;
+        blockStart = Arrays.copyOf(starts, nBlocks + 1);
+        blockAtoms = atomsPerBlock;
+        return blockStart;
+    }
+
+    /**
+     * Returns the lattice array indices of the cells of a lattice with the
+     * given size, in the order of a Hilbert curve through the smallest cube
+     * with power-of-2 edges that contains the lattice.  If the lattice itself
+     * is such a cube, consecutive cells are always adjacent; otherwise the
+     * curve occasionally jumps where it leaves and re-enters the lattice.
+     */
+    public static int[] hilbertOrder(int[] size) {
+        int D = size.length;
+        int nCells = 1, maxSize = 1;
+        for (int n : size) {
+            nCells *= n;
+            maxSize = Math.max(maxSize, n);
+        }
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxSize - 1));
+        if (bits * D > 62) {
+            throw new IllegalArgumentException("lattice is too large");
+        }
+        // sort (curve index, array index) pairs packed into longs
+        long[] keys = new long[nCells];
+        int[] idx = new int[D];
+        int[] x = new int[D];
+        for (int c = 0; c < nCells; c++) {
+            System.arraycopy(idx, 0, x, 0, D);
+            keys[c] = (hilbertIndex(x, bits) << 32) | c;
+            // next lattice index, last dimension fastest (as in RectangularLattice)
+            for (int k = D - 1; k >= 0; k--) {
+                if (++idx[k] < size[k]) break;
+                idx[k] = 0;
+            }
+        }
+        Arrays.sort(keys);
+        int[] order = new int[nCells];
+        for (int p = 0; p < nCells; p++) {
+            order[p] = (int) keys[p];
+        }
+        return order;
+    }
+
+    /**
+     * Returns the position along a D-dimensional Hilbert curve of the point
+     * with the given integer coordinates, each less than 2^bits.  Uses
+     * Skilling's transpose algorithm (AIP Conf. Proc. 707, 381 (2004)).  The
+     * coordinates are overwritten.
+     */
+    public static long hilbertIndex(int[] x, int bits) {
+        int D = x.length;
+        int M = 1 << (bits - 1);
+        // inverse undo excess work
+        for (int Q = M; Q > 1; Q >>= 1) {
+            int P = Q - 1;
+            for (int i = 0; i < D; i++) {
+                if ((x[i] & Q) != 0) {
+                    x[0] ^= P;
+                }
+                else {
+                    int t = (x[0] ^ x[i]) & P;
+                    x[0] ^= t;
+                    x[i] ^= t;
+                }
+            }
+        }
+        // Gray encode
+        for (int i = 1; i < D; i++) {
+            x[i] ^= x[i - 1];
+        }
+        int t = 0;
+        for (int Q = M; Q > 1; Q >>= 1) {
+            if ((x[D - 1] & Q) != 0) t ^= Q - 1;
+        }
+        for (int i = 0; i < D; i++) {
+            x[i] ^= t;
+        }
+        // interleave the bits of the transposed index
+        long h = 0;
+        for (int b = bits - 1; b >= 0; b--) {
+            for (int i = 0; i < D; i++) {
+                h = (h << 1) | ((x[i] >> b) & 1);
+            }
+        }
+        return h;
+    }
+}
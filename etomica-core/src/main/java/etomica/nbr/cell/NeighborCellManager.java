@@ -45,6 +45,7 @@ public class NeighborCellManager implements BoxCellManager, BoundaryEventListene
     protected final Vector v;
     protected final int[] numCells;
     protected boolean suppressBoxLengthWarning;
+    protected CellTraversal cellTraversal;
     
     /**
      * Constructs manager for neighbor cells in the given box.  The number of
@@ -218,6 +219,22 @@ public class NeighborCellManager implements BoxCellManager, BoundaryEventListene
             IAtom atom = leafList.get(i);
             assignCell(atom);
         }
+        if (cellTraversal != null) {
+            cellTraversal.rebuild();
+        }
+    }
+
+    /**
+     * Returns the traversal of this manager's cells along a space-filling
+     * curve.  Once this has been called, the traversal's occupant arrays are
+     * rebuilt by each call to assignCellAll.
+     */
+    public CellTraversal getCellTraversal() {
+        if (cellTraversal == null) {
+            cellTraversal = new CellTraversal(box, this);
+            cellTraversal.rebuild();
+        }
+        return cellTraversal;
     }
     
     public Cell getCell(IAtom atom) {
@@ -32,6 +32,8 @@ public class PotentialMasterCell extends PotentialMasterNbr {
     private final BoxAgentSourceCellManager cellManagerSource;
     private final BoxAgentManager<NeighborCellManager> neighborCellManagers;
     private final BoxAgentManager<NeighborIterator> neighborIterators;
+    private final AtomSetSinglet atomSetSinglet = new AtomSetSinglet();
+    private final PairCalculator pairCalculator = new PairCalculator();
 
     /**
      * Creates PotentialMasterCell with default (1.0) range.  Range
@@ -210,24 +212,9 @@ public class PotentialMasterCell extends PotentialMasterNbr {
 
     private void calculate(IAtom atom, NeighborIterator neighborIterator, PotentialCalculation pc, IteratorDirective.Direction direction) {
         calculate1Body(atom, pc);
-        NeighborCriterion[] myCriteria = criteria[atom.getType().getIndex()];
-        IPotentialAtomic[] potentials = rangedPotentials[atom.getType().getIndex()];
-
-        neighborIterator.forEachNeighbor(atom, direction,
-                (targetAtom, otherAtom) -> {
-                    NeighborCriterion criterion = myCriteria[otherAtom.getType().getIndex()];
-                    if (criterion != null && criterion.accept(targetAtom, otherAtom)) {
-                        pc.doCalculation(new AtomPair(targetAtom, otherAtom), potentials[otherAtom.getType().getIndex()]);
-                    }
-                },
-                (otherAtom, targetAtom) -> {
-                    NeighborCriterion criterion = myCriteria[otherAtom.getType().getIndex()];
-                    if (criterion != null && criterion.accept(otherAtom, targetAtom)) {
-                        pc.doCalculation(new AtomPair(otherAtom, targetAtom), potentials[otherAtom.getType().getIndex()]);
-                    }
-                }
-        );
-
+        pairCalculator.setTarget(atom, criteria[atom.getType().getIndex()], rangedPotentials[atom.getType().getIndex()], pc);
+        neighborIterator.forEachNeighbor(atom, direction, pairCalculator);
+        pairCalculator.setTarget(null, null, null, null);
     }
 
     private void calculate1Body(IAtom atom, PotentialCalculation pc) {
@@ -236,9 +223,11 @@ public class PotentialMasterCell extends PotentialMasterNbr {
             List<NeighborCriterion> criteria1 = criteria1Body[atom.getType().getIndex()];
             for (int i = 0; i < potentials1.size(); i++) {
                 if (criteria1.get(i).accept(atom, null)) {
-                    pc.doCalculation(new AtomSetSinglet(atom), potentials1.get(i));
+                    atomSetSinglet.atom = atom;
+                    pc.doCalculation(atomSetSinglet, potentials1.get(i));
                 }
             }
         }
     }
+
 }
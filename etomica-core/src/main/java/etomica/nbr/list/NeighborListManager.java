@@ -17,7 +17,9 @@ import etomica.integrator.IntegratorEvent;
 import etomica.integrator.IntegratorListener;
 import etomica.lattice.CellLattice;
 import etomica.nbr.NeighborCriterion;
+import etomica.nbr.cell.BoxSortByCell;
 import etomica.nbr.cell.Cell;
+import etomica.nbr.cell.CellTraversal;
 import etomica.nbr.cell.NeighborCellManager;
 import etomica.potential.IPotentialAtomic;
 import etomica.space.Space;
@@ -56,6 +58,11 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
     private int iieCount;
     private boolean quiet;
     private boolean maintainDownLists = false;
+    private int sortInterval;
+    private int sortCountdown;
+    private BoxSortByCell cellSorter;
+    private final CellTraversal cellTraversal;
+    private int blockSize;
 
     private static final boolean isParallel = Boolean.parseBoolean(System.getProperty("etomica.nbr.parallel"));
 
@@ -77,6 +84,8 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
         this.cellManager = neighborCellManager;
         this.lattice = cellManager.getLattice();
         this.lattice.setPeriodicity(box.getBoundary().getPeriodicity());
+        cellTraversal = cellManager.getCellTraversal();
+        blockSize = 256;
 
         box.getEventManager().addListener(new BoxEventListener() {
             @Override
@@ -217,6 +226,64 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
         return numUpdates;
     }
 
+    /**
+     * Returns the number of neighbor list updates between spatial sorts of
+     * the atoms.  0 means the atoms are never sorted.
+     */
+    public int getSortInterval() {
+        return sortInterval;
+    }
+
+    /**
+     * Sets the number of neighbor list updates between spatial sorts of the
+     * atoms.  When a sort is due, the leaf atoms are renumbered (see
+     * BoxSortByCell) after they are assigned to cells and before the
+     * neighbors are found, so that atoms in the same cell are next to each
+     * other in memory.  This speeds up neighbor iteration in large systems.
+     * 0 (the default) disables sorting.
+     */
+    public void setSortInterval(int newSortInterval) {
+        if (newSortInterval < 0) {
+            throw new IllegalArgumentException("sort interval must not be negative");
+        }
+        sortInterval = newSortInterval;
+        sortCountdown = 1;
+    }
+
+    /**
+     * Renumbers the atoms by cell if a sort is due.  Cell assignments must
+     * be current.
+     */
+    protected void sortAtomsIfNeeded() {
+        if (sortInterval == 0 || --sortCountdown > 0) return;
+        sortCountdown = sortInterval;
+        if (cellSorter == null) {
+            cellSorter = new BoxSortByCell(box, cellManager);
+        }
+        cellSorter.actionPerformed();
+    }
+
+    /**
+     * Returns the number of atoms in each block of cells processed together
+     * when the neighbor lists are built.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the number of atoms in each block of cells processed together
+     * when the neighbor lists are built (see CellTraversal.getBlockStart).
+     * With parallel neighbor building (etomica.nbr.parallel), each block is
+     * a separate task.  Default is 256.
+     */
+    public void setBlockSize(int newBlockSize) {
+        if (newBlockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive");
+        }
+        blockSize = newBlockSize;
+    }
+
     /**
      * @return Returns the pbcEnforcer.
      */
@@ -250,42 +317,55 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
 
         cellManager.setDoApplyPBC(!doApplyPBC);
         cellManager.assignCellAll();
+        sortAtomsIfNeeded();
 
         updateNeighbors();
         initialized = true;
     }
 
+    /**
+     * Finds the up-neighbors of each atom, taking the cells in blocks along
+     * the cell traversal's curve.
+     */
     private void updateNeighbors() {
-        int[][] nbrCells = lattice.getUpNeighbors();
-        Object[] sites = lattice.sites();
-        IntStream range = isParallel ? IntStream.range(0, sites.length).parallel() : IntStream.range(0, sites.length);
-        range.forEach(centralCellIdx -> {
-            Cell centralCell = (Cell) sites[centralCellIdx];
-            IAtomList centralCellAtoms = centralCell.occupants();
-
-            if (!centralCellAtoms.isEmpty()) {
-
-                // loop over pairs within the cell
-                for (int i = 0; i < centralCellAtoms.size(); i++) {
-                    for (int j = i + 1; j < centralCellAtoms.size(); j++) {
-                        updatePair(centralCellAtoms.get(i), centralCellAtoms.get(j));
-                    }
-                }
-
-                for (int nbrCellIdx : nbrCells[centralCellIdx]) {
-                    Cell nbrCell = (Cell) lattice.sites()[nbrCellIdx];
-                    IAtomList nbrCellAtoms = nbrCell.occupants();
+        int[] blockStart = cellTraversal.getBlockStart(blockSize);
+        int nBlocks = blockStart.length - 1;
+        IntStream range = isParallel ? IntStream.range(0, nBlocks).parallel() : IntStream.range(0, nBlocks);
+        range.forEach(block -> {
+            for (int p = blockStart[block]; p < blockStart[block + 1]; p++) {
+                updateCellNeighbors(p);
+            }
+        });
+    }
 
-                    for (int i = 0; i < centralCellAtoms.size(); i++) {
-                        for (int j = 0; j < nbrCellAtoms.size(); j++) {
-                            updatePair(centralCellAtoms.get(i), nbrCellAtoms.get(j));
-                        }
-                    }
+    /**
+     * Finds the up-neighbors of the atoms in the cell at the given position
+     * along the curve: later atoms in the same cell, and atoms in the cell's
+     * up-neighbor cells.
+     */
+    private void updateCellNeighbors(int p) {
+        int[] cellStart = cellTraversal.getCellStart();
+        IAtom[] atoms = cellTraversal.getAtoms();
+        int start = cellStart[p], end = cellStart[p + 1];
+        if (start == end) return;
+
+        // loop over pairs within the cell
+        for (int i = start; i < end; i++) {
+            for (int j = i + 1; j < end; j++) {
+                updatePair(atoms[i], atoms[j]);
+            }
+        }
 
+        int[] cellRank = cellTraversal.getCellRank();
+        for (int nbrCellIdx : lattice.getUpNeighbors()[cellTraversal.getCellOrder()[p]]) {
+            int q = cellRank[nbrCellIdx];
+            int nbrStart = cellStart[q], nbrEnd = cellStart[q + 1];
+            for (int i = start; i < end; i++) {
+                for (int j = nbrStart; j < nbrEnd; j++) {
+                    updatePair(atoms[i], atoms[j]);
                 }
             }
-
-        });
+        }
     }
 
     private void updatePair(IAtom atom1, IAtom atom2) {
@@ -0,0 +1,366 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.box.BoxAtomIndexEvent;
+import etomica.box.BoxEventListener;
+import etomica.box.BoxMoleculeEvent;
+import etomica.nbr.NeighborCriterion;
+import etomica.nbr.cell.Cell;
+import etomica.nbr.cell.CellTraversal;
+import etomica.nbr.cell.NeighborCellManager;
+import etomica.potential.IPotentialAtomic;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Neighbor list manager that holds the neighbor lists of all atoms in a few
+ * flat int arrays (compressed sparse row format) rather than in an
+ * AtomNeighborLists of AtomArrayLists for each atom.  Neighbors are stored as
+ * leaf indices.  The up-neighbors of the atom with leaf index i that interact
+ * via the potential with index t (the type index of the neighbor) are found
+ * at
+ * <pre>
+ *   neighbors[upStart[i*nTypes+t]] ... neighbors[upStart[i*nTypes+t+1]-1]
+ * </pre>
+ * Only up lists are kept unless down lists are requested (via
+ * ensureDownLists), in which case they are built in the same format.
+ * <p>
+ * getUpList and getDownList still work, but they return lightweight views
+ * that are created on each call.  PotentialMasterList iterates over the
+ * arrays directly.
+ * <p>
+ * The lists cannot be updated incrementally; if molecules are added to or
+ * removed from the box (or atoms are renumbered), the lists are rebuilt when
+ * next used.  This manager is therefore best suited to simulations where the
+ * number of atoms is fixed (molecular dynamics).
+ */
+public class NeighborListManagerCompact extends NeighborListManager {
+
+    private static final AtomNeighborLists EMPTY_NEIGHBOR_LISTS = new AtomNeighborLists();
+
+    protected int nTypes;
+    protected int[] upStart = new int[1];
+    protected int[] upNeighbors = new int[0];
+    protected int[] downStart = new int[1];
+    protected int[] downNeighbors = new int[0];
+    protected boolean maintainDownLists;
+    protected boolean dirty;
+    private int[] scratch = new int[0];
+    private int[] typeCount = new int[0];
+
+    public NeighborListManagerCompact(PotentialMasterList potentialMasterList, double range, Box box) {
+        super(potentialMasterList, range, box);
+        box.getEventManager().addListener(new BoxEventListener() {
+            @Override
+            public void boxMoleculeRemoved(BoxMoleculeEvent e) {
+                dirty = initialized;
+            }
+
+            @Override
+            public void boxAtomLeafIndexChanged(BoxAtomIndexEvent e) {
+                dirty = initialized;
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the lists if molecules have been added or removed since they
+     * were last built.  The accessors call this themselves, but callers that
+     * use the arrays directly from multiple threads should call it first.
+     */
+    public void ensureCurrent() {
+        if (dirty) {
+            neighborSetup();
+        }
+    }
+
+    /**
+     * @return the number of atom types (and potentials) used for each atom's
+     * row of the upStart and downStart arrays
+     */
+    public int getNumTypes() {
+        return nTypes;
+    }
+
+    /**
+     * Returns the start of each (atom, potential) row of up-neighbors in the
+     * array returned by getUpNeighbors.  The array has an extra element at
+     * the end so that the end of row k is upStart[k+1].
+     */
+    public int[] getUpStart() {
+        ensureCurrent();
+        return upStart;
+    }
+
+    /**
+     * @return the leaf indices of the up-neighbors of all atoms
+     */
+    public int[] getUpNeighbors() {
+        ensureCurrent();
+        return upNeighbors;
+    }
+
+    /**
+     * Returns the start of each (atom, potential) row of down-neighbors in
+     * the array returned by getDownNeighbors.  ensureDownLists must be called
+     * before down lists can be used.
+     */
+    public int[] getDownStart() {
+        ensureCurrent();
+        return downStart;
+    }
+
+    /**
+     * @return the leaf indices of the down-neighbors of all atoms
+     */
+    public int[] getDownNeighbors() {
+        ensureCurrent();
+        return downNeighbors;
+    }
+
+    protected void neighborSetup() {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.size();
+        for (int i = 0; i < nLeaf; i++) {
+            IAtom atom = leafList.get(i);
+            final NeighborCriterion[] criterion = potentialMaster.getCriteria(atom.getType());
+            for (NeighborCriterion aCriterion : criterion) {
+                if (aCriterion != null) aCriterion.reset(atom);
+            }
+
+            List<NeighborCriterion> criteria = potentialMaster.getCriteria1Body(atom.getType());
+            for (int j = 0; j < criteria.size(); j++) {
+                agentManager1Body.getAgent(atom).setIsInteracting(criteria.get(j).accept(atom, null), j);
+            }
+        }
+
+        NeighborCellManager cellManager = getNeighborCellManager();
+        cellManager.setDoApplyPBC(!getDoApplyPBC());
+        cellManager.assignCellAll();
+        sortAtomsIfNeeded();
+
+        nTypes = potentialMaster.getRangedPotentials().length;
+        if (typeCount.length != nTypes) {
+            typeCount = new int[nTypes];
+        }
+        buildUpLists(leafList, cellManager);
+        if (maintainDownLists) {
+            buildDownLists(leafList);
+        }
+        dirty = false;
+        initialized = true;
+    }
+
+    /**
+     * Finds the up-neighbors of each atom (in the same cell but later in the
+     * cell traversal's arrays, or in an up-neighbor cell), appending them to
+     * the neighbor array one atom at a time and then sorting each atom's
+     * neighbors by type.
+     */
+    private void buildUpLists(IAtomList leafList, NeighborCellManager cellManager) {
+        int nLeaf = leafList.size();
+        if (upStart.length != nLeaf * nTypes + 1) {
+            upStart = new int[nLeaf * nTypes + 1];
+        }
+        CellTraversal traversal = cellManager.getCellTraversal();
+        int[] cellStart = traversal.getCellStart();
+        int[] cellRank = traversal.getCellRank();
+        IAtom[] cellAtoms = traversal.getAtoms();
+        int[] atomSlots = traversal.getAtomSlots();
+        int[][] nbrCells = cellManager.getLattice().getUpNeighbors();
+        int n = 0;
+        for (int i = 0; i < nLeaf; i++) {
+            IAtom atom = leafList.get(i);
+            int atomStart = n;
+            Cell cell = cellManager.getCell(atom);
+            if (cell != null) {
+                IPotentialAtomic[] potentials = potentialMaster.getRangedPotentials(atom.getType());
+                NeighborCriterion[] criteria = potentialMaster.getCriteria(atom.getType());
+                int p = cellRank[cell.getLatticeArrayIndex()];
+                for (int j = atomSlots[i] + 1; j < cellStart[p + 1]; j++) {
+                    n = addIfNeighbor(atom, cellAtoms[j], potentials, criteria, n);
+                }
+                for (int nbrCellIdx : nbrCells[cell.getLatticeArrayIndex()]) {
+                    int q = cellRank[nbrCellIdx];
+                    for (int j = cellStart[q]; j < cellStart[q + 1]; j++) {
+                        n = addIfNeighbor(atom, cellAtoms[j], potentials, criteria, n);
+                    }
+                }
+            }
+            sortByType(leafList, upNeighbors, atomStart, n, upStart, i * nTypes);
+        }
+        upStart[nLeaf * nTypes] = n;
+    }
+
+    private int addIfNeighbor(IAtom atom, IAtom otherAtom, IPotentialAtomic[] potentials, NeighborCriterion[] criteria, int n) {
+        int otherType = otherAtom.getType().getIndex();
+        if (potentials[otherType] == null || !criteria[otherType].accept(atom, otherAtom)) {
+            return n;
+        }
+        if (n == upNeighbors.length) {
+            upNeighbors = Arrays.copyOf(upNeighbors, Math.max(16, n + (n >> 1)));
+        }
+        upNeighbors[n] = otherAtom.getLeafIndex();
+        return n + 1;
+    }
+
+    /**
+     * Sorts neighbors[start..end) by atom type (a counting sort that keeps
+     * the order within each type) and fills in the row starts for the atom
+     * whose first row is rowStart[row0].
+     */
+    private void sortByType(IAtomList leafList, int[] neighbors, int start, int end, int[] rowStart, int row0) {
+        if (nTypes == 1) {
+            rowStart[row0] = start;
+            return;
+        }
+        Arrays.fill(typeCount, 0);
+        for (int k = start; k < end; k++) {
+            typeCount[leafList.get(neighbors[k]).getType().getIndex()]++;
+        }
+        int s = start;
+        for (int t = 0; t < nTypes; t++) {
+            rowStart[row0 + t] = s;
+            s += typeCount[t];
+            typeCount[t] = rowStart[row0 + t];
+        }
+        if (scratch.length < end - start) {
+            scratch = new int[end - start];
+        }
+        for (int k = start; k < end; k++) {
+            scratch[typeCount[leafList.get(neighbors[k]).getType().getIndex()]++ - start] = neighbors[k];
+        }
+        System.arraycopy(scratch, 0, neighbors, start, end - start);
+    }
+
+    /**
+     * Constructs the down lists as the transpose of the up lists.
+     */
+    private void buildDownLists(IAtomList leafList) {
+        int nLeaf = leafList.size();
+        int nRows = nLeaf * nTypes;
+        if (downStart.length != nRows + 1) {
+            downStart = new int[nRows + 1];
+        }
+        int nPairs = upStart[nRows];
+        if (downNeighbors.length < nPairs) {
+            downNeighbors = new int[nPairs];
+        }
+        // count the down-neighbors in each row, then convert counts to starts
+        Arrays.fill(downStart, 0);
+        for (int i = 0; i < nLeaf; i++) {
+            int iType = leafList.get(i).getType().getIndex();
+            for (int k = upStart[i * nTypes]; k < upStart[(i + 1) * nTypes]; k++) {
+                downStart[upNeighbors[k] * nTypes + iType + 1]++;
+            }
+        }
+        for (int r = 0; r < nRows; r++) {
+            downStart[r + 1] += downStart[r];
+        }
+        int[] next = Arrays.copyOf(downStart, nRows);
+        for (int i = 0; i < nLeaf; i++) {
+            int iType = leafList.get(i).getType().getIndex();
+            for (int k = upStart[i * nTypes]; k < upStart[(i + 1) * nTypes]; k++) {
+                downNeighbors[next[upNeighbors[k] * nTypes + iType]++] = i;
+            }
+        }
+    }
+
+    public void ensureDownLists() {
+        if (!maintainDownLists) {
+            maintainDownLists = true;
+            if (initialized && !dirty) {
+                buildDownLists(box.getLeafList());
+            }
+        }
+    }
+
+    /**
+     * Marks the lists for rebuilding.  The compact lists cannot be updated
+     * one atom at a time.
+     */
+    public void addAtomNotify(IAtom atom) {
+        dirty = initialized;
+    }
+
+    public IAtomList[] getUpList(IAtom atom) {
+        ensureCurrent();
+        return makeLists(atom, upStart, upNeighbors);
+    }
+
+    public IAtomList[] getDownList(IAtom atom) {
+        ensureCurrent();
+        return makeLists(atom, maintainDownLists ? downStart : null, downNeighbors);
+    }
+
+    /**
+     * Makes views of the atom's rows.  If rowStart is null, the lists are
+     * empty (down lists that are not being maintained).
+     */
+    private IAtomList[] makeLists(IAtom atom, int[] rowStart, int[] neighbors) {
+        IAtomList leafList = box.getLeafList();
+        IAtomList[] lists = new IAtomList[nTypes];
+        int row0 = atom.getLeafIndex() * nTypes;
+        for (int t = 0; t < nTypes; t++) {
+            int start = rowStart == null ? 0 : rowStart[row0 + t];
+            int end = rowStart == null ? 0 : rowStart[row0 + t + 1];
+            lists[t] = new NeighborIndexList(leafList, neighbors, start, end);
+        }
+        return lists;
+    }
+
+    public AtomNeighborLists makeAgent(IAtom atom, Box agentBox) {
+        // neighbors are held in the arrays, not in per-atom agents
+        return EMPTY_NEIGHBOR_LISTS;
+    }
+
+    public void releaseAgent(AtomNeighborLists nbrLists, IAtom atom, Box agentBox) {
+        dirty = initialized;
+    }
+
+    /**
+     * Read-only view of a range of leaf indices as a list of atoms.
+     */
+    private static class NeighborIndexList extends AbstractList<IAtom> implements IAtomList {
+        private final IAtomList leafList;
+        private final int[] neighbors;
+        private final int start, size;
+
+        NeighborIndexList(IAtomList leafList, int[] neighbors, int start, int end) {
+            this.leafList = leafList;
+            this.neighbors = neighbors;
+            this.start = start;
+            this.size = end - start;
+        }
+
+        public IAtom get(int i) {
+            return leafList.get(neighbors[start + i]);
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Constructs instances of NeighborListManagerCompact on behalf of the
+     * PotentialMaster
+     */
+    public static class NeighborListCompactAgentSource extends NeighborListAgentSource {
+        public NeighborListCompactAgentSource(double range) {
+            super(range);
+        }
+
+        public NeighborListManager makeAgent(Box box) {
+            return new NeighborListManagerCompact(potentialMaster, range, box);
+        }
+    }
+}
@@ -17,10 +17,12 @@ import etomica.simulation.Simulation;
 import etomica.space.Space;
 import etomica.species.ISpecies;
 import etomica.util.Debug;
+import etomica.util.ParallelUtils;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * PotentialMaster used to implement neighbor listing.  Instance of this
@@ -37,6 +39,9 @@ public class PotentialMasterList extends PotentialMasterNbr {
     private int cellRange;
     private double maxPotentialRange = 0;
     private double safetyFactor = 0.4;
+    private int numThreads = 1;
+    private ForkJoinPool pool;
+    private ParallelWorker[] parallelWorkers;
 
     /**
      * Default constructor uses range of 1.0.
@@ -153,6 +158,44 @@ public class PotentialMasterList extends PotentialMasterNbr {
         }
     }
 
+    /**
+     * @return the number of threads used for calculations over the whole box
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets the number of threads used for calculations over the whole box
+     * (such as the force calculation of an MD integrator).  With more than one
+     * thread, the atoms are split into contiguous blocks, one per thread, and
+     * each thread uses its own copies of the potentials (which must implement
+     * PotentialCopyable), made for the first parallel calculation after the
+     * potentials are added or removed.  Only PotentialCalculations
+     * implementing PotentialCalculationParallel that make a worker are run in
+     * parallel; others are performed serially.  For a given number of threads, results do not depend on
+     * thread scheduling, but they can differ in the last digits from results
+     * with a different number of threads.
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        numThreads = newNumThreads;
+        parallelWorkers = null;
+        if (numThreads > 1) {
+            pool = new ForkJoinPool(numThreads);
+            parallelWorkers = new ParallelWorker[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                parallelWorkers[i] = new ParallelWorker();
+            }
+        }
+    }
+
     public NeighborListManager getNeighborManager(Box box) {
         // we didn't have the simulation when we made the agent manager.
         // setting the simulation after the first time is a quick return
@@ -236,10 +279,23 @@ public class PotentialMasterList extends PotentialMasterNbr {
             maxPotentialRange = potential.getRange();
         }
         recomputeCriteriaRanges();
+        discardPotentialCopies();
+    }
+
+    /**
+     * Discards the threads' copies of the ranged potentials, so that they are
+     * made again for the next parallel calculation.
+     */
+    private void discardPotentialCopies() {
+        if (parallelWorkers == null) return;
+        for (ParallelWorker parallelWorker : parallelWorkers) {
+            parallelWorker.potentials = null;
+        }
     }
 
     public void removePotential(IPotentialAtomic potential) {
         super.removePotential(potential);
+        discardPotentialCopies();
 
         maxPotentialRange = 0;
         for (int i = 0; i < rangedPotentials.length; i++) {
@@ -320,8 +376,20 @@ public class PotentialMasterList extends PotentialMasterNbr {
         setBoxForPotentials(box);
         NeighborListManager nbrManager = neighborListAgentManager.getAgent(box);
         IAtomList atoms = box.getLeafList();
-        for (int i = 0; i < atoms.size(); i++) {
-            calculateUp(atoms.get(i), pc, nbrManager);
+        if (numThreads > 1 && pc instanceof PotentialCalculationParallel && setupParallel((PotentialCalculationParallel) pc, box)) {
+            calculateParallel(box, pc, nbrManager);
+        } else if (nbrManager instanceof NeighborListManagerCompact) {
+            NeighborListManagerCompact compactManager = (NeighborListManagerCompact) nbrManager;
+            compactManager.ensureCurrent();
+            for (int i = 0; i < atoms.size(); i++) {
+                IAtom atom = atoms.get(i);
+                calculate1Body(atom, pc, nbrManager);
+                calculateUp(atom, pc, atomPair, rangedPotentials[atom.getType().getIndex()], compactManager);
+            }
+        } else {
+            for (int i = 0; i < atoms.size(); i++) {
+                calculateUp(atoms.get(i), pc, nbrManager);
+            }
         }
 
         for (int i = 0; i < simulation.getSpeciesCount(); i++) {
@@ -338,6 +406,65 @@ public class PotentialMasterList extends PotentialMasterNbr {
         }
     }
 
+    /**
+     * Prepares each thread's worker and potentials for the calculation.
+     *
+     * @return false if the calculation does not make workers and must be
+     * performed serially
+     */
+    private boolean setupParallel(PotentialCalculationParallel pc, Box box) {
+        for (ParallelWorker parallelWorker : parallelWorkers) {
+            if (!parallelWorker.setup(pc, box)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Performs the pair part of the calculation with each thread handling a
+     * block of atoms and accumulating into its own worker.  The workers are
+     * then reduced (in order) into the given calculation, and the 1-body
+     * part is performed serially.
+     */
+    private void calculateParallel(Box box, PotentialCalculation pc, NeighborListManager nbrManager) {
+        IAtomList atoms = box.getLeafList();
+        int nAtoms = atoms.size();
+        if (nbrManager instanceof NeighborListManagerCompact) {
+            ((NeighborListManagerCompact) nbrManager).ensureCurrent();
+        }
+        List<Callable<Object>> tasks = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            ParallelWorker parallelWorker = parallelWorkers[t];
+            int start = (int) ((long) nAtoms * t / numThreads);
+            int end = (int) ((long) nAtoms * (t + 1) / numThreads);
+            tasks.add(Executors.callable(() -> {
+                for (int i = start; i < end; i++) {
+                    parallelWorker.calculateUp(atoms.get(i), nbrManager);
+                }
+            }));
+        }
+        ParallelUtils.invokeAll(pool, tasks);
+
+        // each thread reduces its block of atoms, taking workers in order
+        tasks.clear();
+        for (int t = 0; t < numThreads; t++) {
+            int start = (int) ((long) nAtoms * t / numThreads);
+            int end = (int) ((long) nAtoms * (t + 1) / numThreads);
+            tasks.add(Executors.callable(() -> {
+                for (ParallelWorker parallelWorker : parallelWorkers) {
+                    parallelWorker.worker.reduceAtoms(start, end);
+                }
+            }));
+        }
+        ParallelUtils.invokeAll(pool, tasks);
+        for (ParallelWorker parallelWorker : parallelWorkers) {
+            parallelWorker.worker.reduceGlobal();
+        }
+
+        for (int i = 0; i < nAtoms; i++) {
+            calculate1Body(atoms.get(i), pc, nbrManager);
+        }
+    }
+
     /**
      * Overrides superclass method to enable direct neighbor-list iteration
      * instead of iteration via species/potential hierarchy. If no target atoms are
@@ -444,6 +571,26 @@ public class PotentialMasterList extends PotentialMasterNbr {
         }
     }
 
+    /**
+     * Performs the calculation for the atom with all of its up-neighbors,
+     * taken directly from the arrays of a NeighborListManagerCompact.
+     */
+    private static void calculateUp(IAtom atom, PotentialCalculation pc, AtomPair pair, IPotentialAtomic[] potentials, NeighborListManagerCompact neighborManager) {
+        IAtomList leafList = neighborManager.box.getLeafList();
+        int[] upStart = neighborManager.upStart;
+        int[] upNeighbors = neighborManager.upNeighbors;
+        int row0 = atom.getLeafIndex() * neighborManager.nTypes;
+        pair.atom0 = atom;
+        for (int i = 0; i < potentials.length; i++) {
+            if (potentials[i] == null) continue;
+            int end = upStart[row0 + i + 1];
+            for (int k = upStart[row0 + i]; k < end; k++) {
+                pair.atom1 = leafList.get(upNeighbors[k]);
+                pc.doCalculation(pair, potentials[i]);
+            }
+        }
+    }
+
     private void calculate(IAtom atom, IteratorDirective.Direction direction, PotentialCalculation pc, NeighborListManager neighborManager) {
         calculate1Body(atom, pc, neighborManager);
 
@@ -517,4 +664,75 @@ public class PotentialMasterList extends PotentialMasterNbr {
         pc.doCalculation(atomList, potential);
     }
 
+    private static IPotentialAtomic makeCopy(IPotentialAtomic p) {
+        if (!(p instanceof PotentialCopyable)) {
+            throw new IllegalStateException(p + " must implement PotentialCopyable to be used with multiple threads");
+        }
+        return ((PotentialCopyable) p).makeCopy();
+    }
+
+    /**
+     * Per-thread state for parallel calculations: the worker for the
+     * PotentialCalculation, copies of the ranged potentials and an AtomPair.
+     */
+    private class ParallelWorker {
+        private final List<IPotentialAtomic> potentialCopies = new ArrayList<>();
+        private final AtomPair pair = new AtomPair();
+        private IPotentialAtomic[][] potentials;
+        private PotentialCalculationParallel pc;
+        private PotentialCalculationParallel.Worker worker;
+
+        /**
+         * @return false if the calculation does not make a worker
+         */
+        private boolean setup(PotentialCalculationParallel newPc, Box box) {
+            if (pc != newPc) {
+                pc = newPc;
+                worker = pc.makeWorker();
+            }
+            if (worker == null) return false;
+            worker.reset();
+
+            if (potentials == null || potentials.length != rangedPotentials.length) {
+                makePotentialCopies();
+            }
+            for (IPotentialAtomic p : potentialCopies) {
+                p.setBox(box);
+            }
+            return true;
+        }
+
+        private void makePotentialCopies() {
+            Map<IPotentialAtomic, IPotentialAtomic> copies = new IdentityHashMap<>();
+            int nTypes = rangedPotentials.length;
+            IPotentialAtomic[][] newPotentials = new IPotentialAtomic[nTypes][nTypes];
+            for (int i = 0; i < nTypes; i++) {
+                for (int j = 0; j < nTypes; j++) {
+                    IPotentialAtomic p = rangedPotentials[i][j];
+                    newPotentials[i][j] = p == null ? null : copies.computeIfAbsent(p, PotentialMasterList::makeCopy);
+                }
+            }
+            potentials = newPotentials;
+            potentialCopies.clear();
+            potentialCopies.addAll(copies.values());
+        }
+
+        private void calculateUp(IAtom atom, NeighborListManager neighborManager) {
+            IPotentialAtomic[] atomPotentials = potentials[atom.getType().getIndex()];
+            if (neighborManager instanceof NeighborListManagerCompact) {
+                PotentialMasterList.calculateUp(atom, worker, pair, atomPotentials, (NeighborListManagerCompact) neighborManager);
+                return;
+            }
+            for (int i = 0; i < atomPotentials.length; i++) {
+                if (atomPotentials[i] == null) continue;
+                IAtomList list = neighborManager.getUpList(atom)[i];
+                int nNeighbors = list.size();
+                pair.atom0 = atom;
+                for (int j = 0; j < nNeighbors; j++) {
+                    pair.atom1 = list.get(j);
+                    worker.doCalculation(pair, atomPotentials[i]);
+                }
+            }
+        }
+    }
 }
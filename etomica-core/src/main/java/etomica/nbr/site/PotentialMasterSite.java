@@ -26,6 +26,8 @@ public class PotentialMasterSite extends PotentialMasterNbr {
     private final BoxAgentManager<NeighborIterator> neighborIterators;
     private int cellRange;
     private final BoxAgentManager<NeighborSiteManager> neighborSiteManagers;
+    private final AtomSetSinglet atomSetSinglet = new AtomSetSinglet();
+    private final PairCalculator pairCalculator = new PairCalculator();
 
 	/**
 	 * Invokes superclass constructor, specifying IteratorFactoryCell
@@ -165,24 +167,9 @@ public class PotentialMasterSite extends PotentialMasterNbr {
 
     private void calculate(IAtom atom, NeighborIterator neighborIterator, PotentialCalculation pc, IteratorDirective.Direction direction) {
         calculate1Body(atom, pc);
-        NeighborCriterion[] myCriteria = criteria[atom.getType().getIndex()];
-        IPotentialAtomic[] potentials = rangedPotentials[atom.getType().getIndex()];
-
-        neighborIterator.forEachNeighbor(atom, direction,
-                (targetAtom, otherAtom) -> {
-                    NeighborCriterion criterion = myCriteria[otherAtom.getType().getIndex()];
-                    if (criterion != null && criterion.accept(targetAtom, otherAtom)) {
-                        pc.doCalculation(new AtomPair(targetAtom, otherAtom), potentials[otherAtom.getType().getIndex()]);
-                    }
-                },
-                (otherAtom, targetAtom) -> {
-                    NeighborCriterion criterion = myCriteria[otherAtom.getType().getIndex()];
-                    if (criterion != null && criterion.accept(otherAtom, targetAtom)) {
-                        pc.doCalculation(new AtomPair(otherAtom, targetAtom), potentials[otherAtom.getType().getIndex()]);
-                    }
-                }
-        );
-
+        pairCalculator.setTarget(atom, criteria[atom.getType().getIndex()], rangedPotentials[atom.getType().getIndex()], pc);
+        neighborIterator.forEachNeighbor(atom, direction, pairCalculator);
+        pairCalculator.setTarget(null, null, null, null);
     }
 
     private void calculate1Body(IAtom atom, PotentialCalculation pc) {
@@ -191,7 +178,8 @@ public class PotentialMasterSite extends PotentialMasterNbr {
             List<NeighborCriterion> criteria1 = criteria1Body[atom.getType().getIndex()];
             for (int i = 0; i < potentials1.size(); i++) {
                 if (criteria1.get(i).accept(atom, null)) {
-                    pc.doCalculation(new AtomSetSinglet(atom), potentials1.get(i));
+                    atomSetSinglet.atom = atom;
+                    pc.doCalculation(atomSetSinglet, potentials1.get(i));
                 }
             }
         }
@@ -7,7 +7,11 @@ package etomica.potential;
 import etomica.atom.AtomLeafAgentManager;
 import etomica.atom.IAtom;
 import etomica.atom.IAtomList;
+import etomica.atom.iterator.AtomIterator;
 import etomica.box.Box;
+import etomica.integrator.mcmove.MCMoveEvent;
+import etomica.integrator.mcmove.MCMoveTrialCompletedEvent;
+import etomica.integrator.mcmove.MCMoveTrialInitiatedEvent;
 import etomica.molecule.IMolecule;
 import etomica.molecule.IMoleculeList;
 import etomica.space.Space;
@@ -16,6 +20,7 @@ import etomica.space.Vector;
 import etomica.space3d.Tensor3D;
 import etomica.units.Joule;
 import etomica.util.Constants;
+import etomica.util.IListener;
 import org.apache.commons.math3.special.Erf;
 
 /**Sabry*/
@@ -44,6 +49,10 @@ public class EwaldSummation implements PotentialSoft{
     protected double rCutRealES, rCutSquared, kCut;
     protected final double sqrtPI = Math.sqrt(Math.PI);
     protected boolean doRealSum = true;
+    protected StructureFactorCache sfCache;
+    // tensor that gradient should add the real-space and intramolecular
+    // virial to, if any
+    protected Tensor virialTensor;
 
 	// *********************************************** constructor ************************************ // 
     public EwaldSummation(Box box, AtomLeafAgentManager<MyCharge> atomAgentManager, Space _space, double kCut, double rCutRealES){
@@ -241,6 +250,7 @@ public class EwaldSummation implements PotentialSoft{
         this.alpha = alpha;
         alpha2 = alpha*alpha;
         alpha3 = alpha2 * alpha;
+        if (sfCache != null) sfCache.reset();
     }
 
     public double getRange() {
@@ -264,9 +274,18 @@ public class EwaldSummation implements PotentialSoft{
 
     public double energy(IAtomList atoms) {
         double real = doRealSum ? uReal() : 0;
-        double fourier = uFourier();
-        double self = uSelf();
-        double bondCorr = uBondCorr();
+        double fourier, self, bondCorr;
+        if (sfCache != null) {
+            sfCache.ensureValid();
+            fourier = sfCache.uFourier();
+            self = sfCache.uSelf;
+            bondCorr = sfCache.uBondCorr();
+        }
+        else {
+            fourier = uFourier();
+            self = uSelf();
+            bondCorr = uBondCorr();
+        }
 
         double totalEnergy = real + fourier + self + bondCorr;
         if (false) {
@@ -281,6 +300,263 @@ public class EwaldSummation implements PotentialSoft{
         return totalEnergy;
     }
 
+    /**
+     * Returns a listener that lets the Fourier part of the energy be updated
+     * incrementally during Monte Carlo.  The listener should be added to the
+     * move event manager of the MC integrator for this box.  Once this
+     * method is called, energy() keeps the structure factor S(k) for each
+     * k-vector.  When a trial starts, S(k) is updated from only the atoms the
+     * move affected (their old and new positions), so the energy of the trial
+     * costs O(K) per moved atom instead of O(N*K).  The updated S(k) is kept
+     * if the trial is accepted and dropped if it is rejected.  The
+     * intramolecular correction for the moved molecules is updated the same
+     * way.
+     * <p>
+     * All changes to the configuration must then come from moves performed
+     * by that integrator; call resetStructureFactorCache if atoms are moved
+     * any other way.  If the number of atoms changes, everything is
+     * recomputed.  The real-space part is not affected; for MC it should be
+     * handled through makeP2EwaldReal so that only the moved molecule's
+     * pairs are computed.
+     */
+    public IListener<MCMoveEvent> makeMCMoveListener() {
+        if (sfCache == null) {
+            sfCache = new StructureFactorCache();
+        }
+        return sfCache;
+    }
+
+    /**
+     * Forces the cached structure factors (see makeMCMoveListener) to be
+     * recomputed from scratch the next time the energy is needed.
+     */
+    public void resetStructureFactorCache() {
+        if (sfCache != null) sfCache.reset();
+    }
+
+    /**
+     * Structure factors and energy terms for the current configuration, plus
+     * those for the configuration of the current MC trial.
+     */
+    protected class StructureFactorCache implements IListener<MCMoveEvent> {
+        protected int nK;
+        protected double[] kx = new double[0], ky = new double[0], kz = new double[0];
+        protected double[] kCoeff = new double[0];
+        protected double[] sReal = new double[0], sImag = new double[0];
+        protected double[] trialReal = new double[0], trialImag = new double[0];
+        // positions of all atoms in the accepted configuration
+        protected double[] oldPositions = new double[0];
+        protected int nAtoms;
+        protected boolean valid, trialActive;
+        protected double uFourier, uSelf, uBondCorr;
+        protected double trialUFourier, trialUBondCorr;
+        protected int[] trialAtoms = new int[0];
+        protected int nTrialAtoms;
+
+        public void reset() {
+            valid = false;
+            trialActive = false;
+        }
+
+        public double uFourier() {
+            return trialActive ? trialUFourier : uFourier;
+        }
+
+        public double uBondCorr() {
+            return trialActive ? trialUBondCorr : uBondCorr;
+        }
+
+        /**
+         * Recomputes everything if the cache is not valid.
+         */
+        public void ensureValid() {
+            if (valid && box.getLeafList().size() == nAtoms) return;
+            trialActive = false;
+            setupKVectors();
+            IAtomList atoms = box.getLeafList();
+            nAtoms = atoms.size();
+            if (oldPositions.length != 3 * nAtoms) {
+                oldPositions = new double[3 * nAtoms];
+            }
+            for (int i = 0; i < nAtoms; i++) {
+                Vector r = atoms.get(i).getPosition();
+                for (int d = 0; d < 3; d++) {
+                    oldPositions[3 * i + d] = r.getX(d);
+                }
+            }
+            double u = 0;
+            for (int k = 0; k < nK; k++) {
+                double re = 0, im = 0;
+                for (int i = 0; i < nAtoms; i++) {
+                    IAtom atom = atoms.get(i);
+                    double charge = atomAgentManager.getAgent(atom).charge;
+                    if (charge == 0) continue;
+                    double kr = kx[k] * oldPositions[3 * i] + ky[k] * oldPositions[3 * i + 1] + kz[k] * oldPositions[3 * i + 2];
+                    re += charge * Math.cos(kr);
+                    im += charge * Math.sin(kr);
+                }
+                sReal[k] = re;
+                sImag[k] = im;
+                u += kCoeff[k] * (re * re + im * im);
+            }
+            uFourier = u;
+            uSelf = EwaldSummation.this.uSelf();
+            uBondCorr = EwaldSummation.this.uBondCorr();
+            valid = true;
+        }
+
+        protected void setupKVectors() {
+            double kCutSquared = kCut * kCut;
+            double coefficient = 2.0 * Math.PI / volume;
+            int maxK = (2 * nKs[0] + 1) * (2 * nKs[1] + 1) * (2 * nKs[2] + 1);
+            if (kx.length < maxK) {
+                kx = new double[maxK];
+                ky = new double[maxK];
+                kz = new double[maxK];
+                kCoeff = new double[maxK];
+                sReal = new double[maxK];
+                sImag = new double[maxK];
+                trialReal = new double[maxK];
+                trialImag = new double[maxK];
+            }
+            nK = 0;
+            for (int kX = -nKs[0]; kX < nKs[0] + 1; kX++) {
+                for (int kY = -nKs[1]; kY < nKs[1] + 1; kY++) {
+                    for (int kZ = -nKs[2]; kZ < nKs[2] + 1; kZ++) {
+                        if (kX * kX + kY * kY + kZ * kZ == 0) continue;
+                        double x = kX * basis[0], y = kY * basis[1], z = kZ * basis[2];
+                        double kSquared = x * x + y * y + z * z;
+                        if (kSquared > kCutSquared) continue;
+                        kx[nK] = x;
+                        ky[nK] = y;
+                        kz[nK] = z;
+                        kCoeff[nK] = coefficient * Math.exp(-0.25 * kSquared / alpha2) / kSquared;
+                        nK++;
+                    }
+                }
+            }
+        }
+
+        public void actionPerformed(MCMoveEvent evt) {
+            if (evt instanceof MCMoveTrialInitiatedEvent) {
+                startTrial(evt.getMCMove().affectedAtoms(box));
+            }
+            else if (evt instanceof MCMoveTrialCompletedEvent) {
+                if (!trialActive) return;
+                trialActive = false;
+                if (((MCMoveTrialCompletedEvent) evt).isAccepted()) {
+                    acceptTrial();
+                }
+            }
+        }
+
+        /**
+         * Computes the structure factors for the trial configuration from
+         * those of the accepted configuration and the old and new positions
+         * of the affected atoms.
+         */
+        protected void startTrial(AtomIterator affected) {
+            ensureValid();
+            nTrialAtoms = 0;
+            affected.reset();
+            for (IAtom atom = affected.nextAtom(); atom != null; atom = affected.nextAtom()) {
+                if (atom.getLeafIndex() >= nAtoms) {
+                    // new atom; we can't do anything incremental
+                    valid = false;
+                    return;
+                }
+                if (nTrialAtoms == trialAtoms.length) {
+                    trialAtoms = java.util.Arrays.copyOf(trialAtoms, 2 * nTrialAtoms + 1);
+                }
+                trialAtoms[nTrialAtoms++] = atom.getLeafIndex();
+            }
+            if (nTrialAtoms == 0) return;
+            IAtomList atoms = box.getLeafList();
+            System.arraycopy(sReal, 0, trialReal, 0, nK);
+            System.arraycopy(sImag, 0, trialImag, 0, nK);
+            for (int j = 0; j < nTrialAtoms; j++) {
+                int i = trialAtoms[j];
+                double charge = atomAgentManager.getAgent(atoms.get(i)).charge;
+                if (charge == 0) continue;
+                Vector r = atoms.get(i).getPosition();
+                double x = r.getX(0), y = r.getX(1), z = r.getX(2);
+                double x0 = oldPositions[3 * i], y0 = oldPositions[3 * i + 1], z0 = oldPositions[3 * i + 2];
+                for (int k = 0; k < nK; k++) {
+                    double kr = kx[k] * x + ky[k] * y + kz[k] * z;
+                    double kr0 = kx[k] * x0 + ky[k] * y0 + kz[k] * z0;
+                    trialReal[k] += charge * (Math.cos(kr) - Math.cos(kr0));
+                    trialImag[k] += charge * (Math.sin(kr) - Math.sin(kr0));
+                }
+            }
+            double u = 0;
+            for (int k = 0; k < nK; k++) {
+                u += kCoeff[k] * (trialReal[k] * trialReal[k] + trialImag[k] * trialImag[k]);
+            }
+            trialUFourier = u;
+            trialUBondCorr = uBondCorr;
+            IMolecule lastMolecule = null;
+            for (int j = 0; j < nTrialAtoms; j++) {
+                IMolecule molecule = atoms.get(trialAtoms[j]).getParentGroup();
+                if (molecule == lastMolecule) continue;
+                lastMolecule = molecule;
+                trialUBondCorr += moleculeBondCorr(molecule, false) - moleculeBondCorr(molecule, true);
+            }
+            trialActive = true;
+        }
+
+        protected void acceptTrial() {
+            double[] t = sReal;
+            sReal = trialReal;
+            trialReal = t;
+            t = sImag;
+            sImag = trialImag;
+            trialImag = t;
+            uFourier = trialUFourier;
+            uBondCorr = trialUBondCorr;
+            IAtomList atoms = box.getLeafList();
+            for (int j = 0; j < nTrialAtoms; j++) {
+                int i = trialAtoms[j];
+                Vector r = atoms.get(i).getPosition();
+                for (int d = 0; d < 3; d++) {
+                    oldPositions[3 * i + d] = r.getX(d);
+                }
+            }
+        }
+
+        /**
+         * Returns the intramolecular correction for the given molecule, using
+         * either the current positions or those of the accepted
+         * configuration.
+         */
+        protected double moleculeBondCorr(IMolecule molecule, boolean old) {
+            double uCorr = 0;
+            IAtomList childList = molecule.getChildList();
+            for (int siteA = 0; siteA < childList.size(); siteA++) {
+                IAtom atomA = childList.get(siteA);
+                double chargeA = atomAgentManager.getAgent(atomA).charge;
+                if (chargeA == 0) continue;
+                for (int siteB = siteA + 1; siteB < childList.size(); siteB++) {
+                    IAtom atomB = childList.get(siteB);
+                    double chargeB = atomAgentManager.getAgent(atomB).charge;
+                    if (chargeB == 0) continue;
+                    if (old) {
+                        int a = 3 * atomA.getLeafIndex(), b = 3 * atomB.getLeafIndex();
+                        for (int d = 0; d < 3; d++) {
+                            rAB.setX(d, oldPositions[a + d] - oldPositions[b + d]);
+                        }
+                    }
+                    else {
+                        rAB.Ev1Mv2(atomA.getPosition(), atomB.getPosition());
+                    }
+                    box.getBoundary().nearestImage(rAB);
+                    double rABMagnitude = Math.sqrt(rAB.squared());
+                    uCorr -= chargeA * chargeB * Erf.erf(alpha * rABMagnitude) / rABMagnitude;
+                }
+            }
+            return uCorr;
+        }
+    }
+
     public double virial(IAtomList atoms) {
         return 0;
     }
@@ -291,8 +567,6 @@ public class EwaldSummation implements PotentialSoft{
 
     public Vector[] gradient(IAtomList atoms) {
         int nAtoms = box.getLeafList().size();
-        double coeff = 4.0*Math.PI/volume;
-        double kCutSquared = kCut * kCut; // criteria for spherical cutoff in fourier space
 
         if(gradient.length < nAtoms){
             gradient = new Vector[nAtoms];
@@ -345,6 +619,11 @@ public class EwaldSummation implements PotentialSoft{
                                 double realCoeff = - chargeA*chargeB * B / rAB3; // gradU = -F
                                 gradient[i].PEa1Tv1(realCoeff, drTmp);
                                 gradient[j].PEa1Tv1(-realCoeff, drTmp);
+                                if (virialTensor != null) {
+                                    // W += F_A rAB
+                                    tempTensorkk.Ev1v2(drTmp, drTmp);
+                                    virialTensor.PEa1Tt1(-realCoeff, tempTensorkk);
+                                }
                             }
                         }
                     }
@@ -352,7 +631,49 @@ public class EwaldSummation implements PotentialSoft{
             }
         }
 
-        //Fourier gradient Part		
+        //Fourier gradient Part
+        gradientFourier(nAtoms);
+
+        //Intra-Molecular  gradient:
+        for (int i = 0; i< moleculeList.size(); i++){
+            IMolecule molecule = moleculeList.get(i);
+            int numSites = molecule.getChildList().size();
+            for (int siteA=0; siteA<numSites; siteA++){
+                IAtom atomA = molecule.getChildList().get(siteA); // index = 0, 1, 2, 3|||leafIndex=0...184
+                double chargeA = atomAgentManager.getAgent(atomA).charge;
+                if (chargeA==0) continue;
+                Vector positionA = atomA.getPosition();
+                for (int siteB=siteA+1; siteB<numSites; siteB++){
+                    IAtom atomB = molecule.getChildList().get(siteB);
+                    double chargeB = atomAgentManager.getAgent(atomB).charge;
+                    if (chargeB==0) continue;
+                    Vector positionB = atomB.getPosition();
+
+                    rAB.Ev1Mv2(positionA, positionB);
+                    box.getBoundary().nearestImage(rAB);
+                    double rAB2 = rAB.squared();
+                    double rABMagnitude = Math.sqrt(rAB2);
+                    double B = 2*alpha/sqrtPI * Math.exp(-alpha2*rAB2)-Erf.erf(alpha*rABMagnitude)/rABMagnitude; 
+                    double coeffAB = - chargeA*chargeB * B / rAB2; // gradU = -F
+                    gradient[atomA.getLeafIndex()].PEa1Tv1(coeffAB, rAB);
+                    gradient[atomB.getLeafIndex()].PEa1Tv1(-coeffAB, rAB);
+                    if (virialTensor != null) {
+                        tempTensorkk.Ev1v2(rAB, rAB);
+                        virialTensor.PEa1Tt1(-coeffAB, tempTensorkk);
+                    }
+                }
+            }
+        }
+        return gradient;
+    }
+
+    /**
+     * Adds the Fourier-space part of the gradient for the first nAtoms leaf
+     * atoms into the gradient array.
+     */
+    protected void gradientFourier(int nAtoms) {
+        double coeff = 4.0*Math.PI/volume;
+        double kCutSquared = kCut * kCut; // criteria for spherical cutoff in fourier space
 
         for (int xAxis = -nKs[0]; xAxis < nKs[0]+1; xAxis++){
             kVector.setX(0, (xAxis * basis[0]));// assign value to the x-axis
@@ -385,34 +706,6 @@ public class EwaldSummation implements PotentialSoft{
                 }//end of storing Sin and Cos
             }
         }//End loop over ks
-
-        //Intra-Molecular  gradient:
-        for (int i = 0; i< moleculeList.size(); i++){
-            IMolecule molecule = moleculeList.get(i);
-            int numSites = molecule.getChildList().size();
-            for (int siteA=0; siteA<numSites; siteA++){
-                IAtom atomA = molecule.getChildList().get(siteA); // index = 0, 1, 2, 3|||leafIndex=0...184
-                double chargeA = atomAgentManager.getAgent(atomA).charge;
-                if (chargeA==0) continue;
-                Vector positionA = atomA.getPosition();
-                for (int siteB=siteA+1; siteB<numSites; siteB++){
-                    IAtom atomB = molecule.getChildList().get(siteB);
-                    double chargeB = atomAgentManager.getAgent(atomB).charge;
-                    if (chargeB==0) continue;
-                    Vector positionB = atomB.getPosition();
-
-                    rAB.Ev1Mv2(positionA, positionB);
-                    box.getBoundary().nearestImage(rAB);
-                    double rAB2 = rAB.squared();
-                    double rABMagnitude = Math.sqrt(rAB2);
-                    double B = 2*alpha/sqrtPI * Math.exp(-alpha2*rAB2)-Erf.erf(alpha*rABMagnitude)/rABMagnitude; 
-                    double coeffAB = - chargeA*chargeB * B / rAB2; // gradU = -F
-                    gradient[atomA.getLeafIndex()].PEa1Tv1(coeffAB, rAB);
-                    gradient[atomB.getLeafIndex()].PEa1Tv1(-coeffAB, rAB);
-                }
-            }
-        }
-        return gradient;
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////// 
@@ -602,7 +895,10 @@ public class EwaldSummation implements PotentialSoft{
         }
 
         public Vector[] gradient(IAtomList atoms, Tensor pressureTensor) {
-            return gradient(atoms);
+            gradient(atoms);
+            // rAB = rA - rB, so this is the usual gradient[0] (r1-r0) term
+            pressureTensor.MEv1v2(gradient2[0], rAB);
+            return gradient2;
         }
     }
 }
@@ -0,0 +1,377 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.space.Space;
+import etomica.space.Tensor;
+import etomica.space.Vector;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+/**
+ * Ewald summation with the Fourier-space part computed by the smooth
+ * particle-mesh Ewald method (Essmann et al., J. Chem. Phys. 103, 8577
+ * (1995)).  Charges are spread onto a grid with cardinal B-splines, the grid
+ * is transformed with a 3D FFT, and energies, forces and the virial are
+ * computed from the transformed grid.  The cost of the Fourier part scales
+ * as N log N rather than N*(number of k-vectors).
+ * <p>
+ * The real-space, self and intramolecular terms are the same as for
+ * EwaldSummation.  For large systems, the real-space part should be handled
+ * through a neighbor list with the potential returned by makeP2EwaldReal.
+ * <p>
+ * The grid size along each axis must be a power of 2.  By default it is the
+ * smallest power of 2 that holds all of the k-vectors within kCut, and the
+ * B-spline order is 6.  The box must be rectangular.  secondDerivative still
+ * uses the explicit k-vector sum.
+ */
+public class EwaldSummationSPME extends EwaldSummation {
+
+    protected final FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
+    protected final int[] gridSize = new int[3];
+    protected int order;
+    protected double[] gridReal, gridImag;
+    // influence function C(m), including the B-spline moduli; and the
+    // virial factor 2(1+pi^2 m^2/alpha^2)/m^2
+    protected double[] influence, virialFactor;
+    protected boolean influenceValid;
+    // per-atom B-spline weights and derivatives for each dimension, and the
+    // first grid point the atom contributes to
+    protected double[] theta, dTheta;
+    protected int[] gridStart;
+    protected double[] lineReal, lineImag;
+
+    public EwaldSummationSPME(Box box, AtomLeafAgentManager<MyCharge> atomAgentManager, Space _space, double kCut, double rCutRealES) {
+        super(box, atomAgentManager, _space, kCut, rCutRealES);
+        if (space.D() != 3) {
+            throw new IllegalArgumentException("SPME requires a 3D space");
+        }
+        for (int i = 0; i < 3; i++) {
+            int n = 1;
+            while (n < 2 * nKs[i] + 1) n *= 2;
+            gridSize[i] = n;
+        }
+        setOrder(6);
+    }
+
+    /**
+     * Sets the number of grid points along each axis.  Each must be a power
+     * of 2 and at least the B-spline order.
+     */
+    public void setGridSize(int nx, int ny, int nz) {
+        int[] n = new int[]{nx, ny, nz};
+        for (int i = 0; i < 3; i++) {
+            if (n[i] < order || Integer.bitCount(n[i]) != 1) {
+                throw new IllegalArgumentException("grid size must be a power of 2 and at least the spline order");
+            }
+        }
+        System.arraycopy(n, 0, gridSize, 0, 3);
+        gridReal = null;
+        influenceValid = false;
+    }
+
+    public int[] getGridSize() {
+        return gridSize.clone();
+    }
+
+    /**
+     * Sets the order of the B-splines used to spread charges onto the grid
+     * (4 is cubic interpolation).  Higher orders are more accurate for a
+     * given grid.  Even orders are recommended.
+     */
+    public void setOrder(int newOrder) {
+        if (newOrder < 3 || newOrder > Math.min(gridSize[0], Math.min(gridSize[1], gridSize[2]))) {
+            throw new IllegalArgumentException("order must be at least 3 and no larger than the grid");
+        }
+        order = newOrder;
+        theta = null;
+        influenceValid = false;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public void setAlpha(double alpha) {
+        super.setAlpha(alpha);
+        influenceValid = false;
+    }
+
+    /**
+     * Computes the B-spline weights M_n(w+n-1-j) (j = 0..n-1) and their
+     * derivatives for the fractional part w of a scaled coordinate.
+     */
+    protected static void fillBSpline(double w, int n, double[] m, double[] dm, int offset) {
+        m[offset + n - 1] = 0;
+        m[offset + 1] = w;
+        m[offset] = 1 - w;
+        for (int k = 3; k < n; k++) {
+            double div = 1.0 / (k - 1);
+            m[offset + k - 1] = div * w * m[offset + k - 2];
+            for (int j = 1; j < k - 1; j++) {
+                m[offset + k - j - 1] = div * ((w + j) * m[offset + k - j - 2] + (k - j - w) * m[offset + k - j - 1]);
+            }
+            m[offset] = div * (1 - w) * m[offset];
+        }
+        if (dm != null) {
+            dm[offset] = -m[offset];
+            for (int j = 1; j < n; j++) {
+                dm[offset + j] = m[offset + j - 1] - m[offset + j];
+            }
+        }
+        double div = 1.0 / (n - 1);
+        m[offset + n - 1] = div * w * m[offset + n - 2];
+        for (int j = 1; j < n - 1; j++) {
+            m[offset + n - j - 1] = div * ((w + j) * m[offset + n - j - 2] + (n - j - w) * m[offset + n - j - 1]);
+        }
+        m[offset] = div * (1 - w) * m[offset];
+    }
+
+    /**
+     * Computes |b(m)|^2 for each grid index along one axis of size k.
+     */
+    protected double[] bSplineModuli(int k) {
+        double[] m = new double[order];
+        fillBSpline(0, order, m, null, 0);
+        // m[j] = M_n(n-1-j), so M_n(i+1) = m[n-2-i]
+        double[] bsp = new double[k];
+        for (int i = 0; i < k; i++) {
+            double sc = 0, ss = 0;
+            for (int j = 0; j < order - 1; j++) {
+                double arg = 2 * Math.PI * i * j / k;
+                sc += m[order - 2 - j] * Math.cos(arg);
+                ss += m[order - 2 - j] * Math.sin(arg);
+            }
+            bsp[i] = sc * sc + ss * ss;
+        }
+        // fix zeros (only possible for odd orders) by averaging neighbors
+        for (int i = 0; i < k; i++) {
+            if (bsp[i] < 1e-10) {
+                bsp[i] = 0.5 * (bsp[(i - 1 + k) % k] + bsp[(i + 1) % k]);
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            bsp[i] = 1.0 / bsp[i];
+        }
+        return bsp;
+    }
+
+    protected void computeInfluence() {
+        int kx = gridSize[0], ky = gridSize[1], kz = gridSize[2];
+        int nGrid = kx * ky * kz;
+        influence = new double[nGrid];
+        virialFactor = new double[nGrid];
+        double[] bx = bSplineModuli(kx), by = bSplineModuli(ky), bz = bSplineModuli(kz);
+        double pi2a2 = Math.PI * Math.PI / alpha2;
+        double prefactor = 1.0 / (2 * Math.PI * volume);
+        for (int ix = 0; ix < kx; ix++) {
+            double mx = (ix <= kx / 2 ? ix : ix - kx) / boxSize[0];
+            for (int iy = 0; iy < ky; iy++) {
+                double my = (iy <= ky / 2 ? iy : iy - ky) / boxSize[1];
+                for (int iz = 0; iz < kz; iz++) {
+                    int idx = (ix * ky + iy) * kz + iz;
+                    if (idx == 0) continue;
+                    double mz = (iz <= kz / 2 ? iz : iz - kz) / boxSize[2];
+                    double m2 = mx * mx + my * my + mz * mz;
+                    influence[idx] = prefactor * Math.exp(-pi2a2 * m2) / m2 * bx[ix] * by[iy] * bz[iz];
+                    virialFactor[idx] = 2 * (1 + pi2a2 * m2) / m2;
+                }
+            }
+        }
+        influenceValid = true;
+    }
+
+    /**
+     * Computes B-spline weights for all atoms and spreads the charges onto
+     * the grid.
+     */
+    protected void spreadCharges() {
+        IAtomList atoms = box.getLeafList();
+        int nAtoms = atoms.size();
+        int kx = gridSize[0], ky = gridSize[1], kz = gridSize[2];
+        int nGrid = kx * ky * kz;
+        if (gridReal == null || gridReal.length != nGrid) {
+            gridReal = new double[nGrid];
+            gridImag = new double[nGrid];
+            lineReal = new double[Math.max(kx, Math.max(ky, kz))];
+            lineImag = new double[lineReal.length];
+        } else {
+            java.util.Arrays.fill(gridReal, 0);
+            java.util.Arrays.fill(gridImag, 0);
+        }
+        if (theta == null || theta.length < 3 * order * nAtoms) {
+            theta = new double[3 * order * nAtoms];
+            dTheta = new double[3 * order * nAtoms];
+            gridStart = new int[3 * nAtoms];
+        }
+        for (int i = 0; i < nAtoms; i++) {
+            IAtom atom = atoms.get(i);
+            double q = atomAgentManager.getAgent(atom).charge;
+            Vector r = atom.getPosition();
+            for (int d = 0; d < 3; d++) {
+                double u = gridSize[d] * (r.getX(d) / boxSize[d] + 0.5);
+                double fl = Math.floor(u);
+                fillBSpline(u - fl, order, theta, dTheta, (3 * i + d) * order);
+                int start = ((int) fl - order + 1) % gridSize[d];
+                if (start < 0) start += gridSize[d];
+                gridStart[3 * i + d] = start;
+            }
+            if (q == 0) continue;
+            int ox = 3 * i * order, oy = ox + order, oz = oy + order;
+            for (int jx = 0; jx < order; jx++) {
+                int gx = (gridStart[3 * i] + jx) % kx;
+                double wx = q * theta[ox + jx];
+                for (int jy = 0; jy < order; jy++) {
+                    int gy = (gridStart[3 * i + 1] + jy) % ky;
+                    double wxy = wx * theta[oy + jy];
+                    int row = (gx * ky + gy) * kz;
+                    for (int jz = 0; jz < order; jz++) {
+                        int gz = (gridStart[3 * i + 2] + jz) % kz;
+                        gridReal[row + gz] += wxy * theta[oz + jz];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms the grid in place along all three axes.
+     */
+    protected void fft3D(TransformType type) {
+        int[] n = gridSize;
+        int[] stride = new int[]{n[1] * n[2], n[2], 1};
+        double[][] line = new double[2][];
+        for (int d = 0; d < 3; d++) {
+            int len = n[d];
+            double[] re = len == lineReal.length ? lineReal : new double[len];
+            double[] im = len == lineImag.length ? lineImag : new double[len];
+            line[0] = re;
+            line[1] = im;
+            int d1 = (d + 1) % 3, d2 = (d + 2) % 3;
+            for (int a = 0; a < n[d1]; a++) {
+                for (int b = 0; b < n[d2]; b++) {
+                    int base = a * stride[d1] + b * stride[d2];
+                    for (int k = 0; k < len; k++) {
+                        re[k] = gridReal[base + k * stride[d]];
+                        im[k] = gridImag[base + k * stride[d]];
+                    }
+                    FastFourierTransformer.transformInPlace(line, DftNormalization.STANDARD, type);
+                    for (int k = 0; k < len; k++) {
+                        gridReal[base + k * stride[d]] = re[k];
+                        gridImag[base + k * stride[d]] = im[k];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Spreads the charges and transforms the grid, returning the
+     * Fourier-space energy.  If pressureTensor is not null, the
+     * Fourier-space virial is added to it.  The grid is left holding the
+     * transformed charges multiplied by the influence function.
+     */
+    protected double computeReciprocal(Tensor pressureTensor) {
+        if (!influenceValid) {
+            computeInfluence();
+        }
+        spreadCharges();
+        fft3D(TransformType.FORWARD);
+        int kx = gridSize[0], ky = gridSize[1], kz = gridSize[2];
+        double u = 0;
+        double vxx = 0, vyy = 0, vzz = 0, vxy = 0, vxz = 0, vyz = 0;
+        for (int ix = 0; ix < kx; ix++) {
+            double mx = (ix <= kx / 2 ? ix : ix - kx) / boxSize[0];
+            for (int iy = 0; iy < ky; iy++) {
+                double my = (iy <= ky / 2 ? iy : iy - ky) / boxSize[1];
+                for (int iz = 0; iz < kz; iz++) {
+                    int idx = (ix * ky + iy) * kz + iz;
+                    double c = influence[idx];
+                    double s2 = gridReal[idx] * gridReal[idx] + gridImag[idx] * gridImag[idx];
+                    double e = c * s2;
+                    u += e;
+                    if (pressureTensor != null && idx != 0) {
+                        double mz = (iz <= kz / 2 ? iz : iz - kz) / boxSize[2];
+                        double f = virialFactor[idx];
+                        vxx += e * (1 - f * mx * mx);
+                        vyy += e * (1 - f * my * my);
+                        vzz += e * (1 - f * mz * mz);
+                        vxy -= e * f * mx * my;
+                        vxz -= e * f * mx * mz;
+                        vyz -= e * f * my * mz;
+                    }
+                    gridReal[idx] *= c;
+                    gridImag[idx] *= c;
+                }
+            }
+        }
+        if (pressureTensor != null) {
+            pressureTensor.PE(0, 0, vxx);
+            pressureTensor.PE(1, 1, vyy);
+            pressureTensor.PE(2, 2, vzz);
+            pressureTensor.PE(0, 1, vxy);
+            pressureTensor.PE(1, 0, vxy);
+            pressureTensor.PE(0, 2, vxz);
+            pressureTensor.PE(2, 0, vxz);
+            pressureTensor.PE(1, 2, vyz);
+            pressureTensor.PE(2, 1, vyz);
+        }
+        return u;
+    }
+
+    public double uFourier() {
+        return computeReciprocal(null);
+    }
+
+    protected void gradientFourier(int nAtoms) {
+        computeReciprocal(virialTensor);
+        // convolve the charges with the influence function
+        fft3D(TransformType.INVERSE);
+        int kx = gridSize[0], ky = gridSize[1], kz = gridSize[2];
+        // undo the 1/N of the normalized inverse transform
+        double nGrid = kx * ky * kz;
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < nAtoms; i++) {
+            double q = atomAgentManager.getAgent(atoms.get(i)).charge;
+            if (q == 0) continue;
+            int ox = 3 * i * order, oy = ox + order, oz = oy + order;
+            double fx = 0, fy = 0, fz = 0;
+            for (int jx = 0; jx < order; jx++) {
+                int gx = (gridStart[3 * i] + jx) % kx;
+                for (int jy = 0; jy < order; jy++) {
+                    int gy = (gridStart[3 * i + 1] + jy) % ky;
+                    int row = (gx * ky + gy) * kz;
+                    for (int jz = 0; jz < order; jz++) {
+                        int gz = (gridStart[3 * i + 2] + jz) % kz;
+                        double g = gridReal[row + gz];
+                        fx += dTheta[ox + jx] * theta[oy + jy] * theta[oz + jz] * g;
+                        fy += theta[ox + jx] * dTheta[oy + jy] * theta[oz + jz] * g;
+                        fz += theta[ox + jx] * theta[oy + jy] * dTheta[oz + jz] * g;
+                    }
+                }
+            }
+            double c = 2 * q * nGrid;
+            Vector gi = gradient[i];
+            gi.setX(0, gi.getX(0) + c * fx * kx / boxSize[0]);
+            gi.setX(1, gi.getX(1) + c * fy * ky / boxSize[1]);
+            gi.setX(2, gi.getX(2) + c * fz * kz / boxSize[2]);
+        }
+    }
+
+    public Vector[] gradient(IAtomList atoms, Tensor pressureTensor) {
+        virialTensor = pressureTensor;
+        try {
+            gradient(atoms);
+        } finally {
+            virialTensor = null;
+        }
+        return gradient;
+    }
+}
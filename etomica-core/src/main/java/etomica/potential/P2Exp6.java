@@ -20,7 +20,7 @@ import etomica.units.dimensions.Length;
  * @author Tai Tan
  */
 
-public class P2Exp6 extends Potential2SoftSpherical {
+public class P2Exp6 extends Potential2SoftSpherical implements PotentialCopyable {
 
     public P2Exp6(Space _space) {
         // these defaults probably aren't appropriate -- need to develop A,B,C
@@ -113,6 +113,13 @@ public class P2Exp6 extends Potential2SoftSpherical {
         return new CompoundDimension(new Dimension[] {Energy.DIMENSION, Length.DIMENSION}, new double[] {1.0, 6.0});
     }
 
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
+
     private double AA, BB, CC;
     protected final Vector dr01;
 
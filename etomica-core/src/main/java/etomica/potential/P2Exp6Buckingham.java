@@ -23,7 +23,7 @@ import etomica.units.dimensions.Length;
  * @author Hye Min
  */
 
-public class P2Exp6Buckingham extends Potential2SoftSpherical {
+public class P2Exp6Buckingham extends Potential2SoftSpherical implements PotentialCopyable {
 
     public P2Exp6Buckingham(Space _space) {
               this(_space, 1.0, 1.0, 1.0, 1.0);
@@ -151,6 +151,13 @@ public class P2Exp6Buckingham extends Potential2SoftSpherical {
         return new CompoundDimension(new Dimension[] {Energy.DIMENSION, Length.DIMENSION}, new double[] {1.0, 6.0});
     }
 
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
+
     protected final Vector dr01;
 
     private static final long serialVersionUID = 1L;
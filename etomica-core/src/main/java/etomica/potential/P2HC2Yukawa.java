@@ -30,7 +30,7 @@ import etomica.space.Space;
  * @author msellers
  */
 
-public final class P2HC2Yukawa extends Potential2SoftSpherical {
+public final class P2HC2Yukawa extends Potential2SoftSpherical implements PotentialCopyable {
 
 
 	
@@ -123,6 +123,13 @@ public final class P2HC2Yukawa extends Potential2SoftSpherical {
 		expZ1 = Math.exp(-z1);
 		expZ2 = Math.exp(-z2);
 	}
+
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
 	
     private static final long serialVersionUID = 1L;
 	private double sigma;
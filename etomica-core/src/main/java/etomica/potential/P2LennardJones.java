@@ -16,7 +16,7 @@ import etomica.units.dimensions.Length;
  *
  * @author David Kofke
  */
-public class P2LennardJones extends Potential2SoftSpherical {
+public class P2LennardJones extends Potential2SoftSpherical implements PotentialCopyable {
 
     public P2LennardJones(Space space) {
         this(space, 1.0, 1.0);
@@ -100,6 +100,13 @@ public class P2LennardJones extends Potential2SoftSpherical {
     }
     public Dimension getEpsilonDimension() {return Energy.DIMENSION;}
    
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
+
     private static final long serialVersionUID = 1L;
     private double sigma, sigmaSquared;
     private double epsilon;
@@ -21,7 +21,7 @@ import etomica.units.dimensions.Length;
  * @author Tai Tan
  */
 
-public class P2LennardJonesDreiding extends Potential2SoftSpherical {
+public class P2LennardJonesDreiding extends Potential2SoftSpherical implements PotentialCopyable {
 	
 	public P2LennardJonesDreiding(Space space) {
         this(space, 1.0, 1.0);
@@ -98,6 +98,14 @@ public class P2LennardJonesDreiding extends Potential2SoftSpherical {
         }
     public Dimension getSigmaDimension() {return Length.DIMENSION;}
     public Dimension getEpsilonDimension() {return Energy.DIMENSION;}
+
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
+
    
     private double sigma, sigmaSquared;
     private double epsilon;
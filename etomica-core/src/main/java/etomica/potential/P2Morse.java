@@ -24,7 +24,7 @@ import etomica.units.dimensions.Length;
  */
 
 
-public final class P2Morse extends Potential2SoftSpherical {
+public final class P2Morse extends Potential2SoftSpherical implements PotentialCopyable {
 
     public P2Morse(Space space) {
         this(space, 1.0, 1.0, 1.0);
@@ -114,6 +114,13 @@ public final class P2Morse extends Potential2SoftSpherical {
         a = dummy;
     }
     
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
+
     private static final long serialVersionUID = 1L;
     private double re;
     private double epsilon;
@@ -25,7 +25,7 @@ import etomica.units.dimensions.Length;
  *
  * @author Tai Boon Tan
  */
-public final class P2SoftSphere extends Potential2SoftSpherical {
+public final class P2SoftSphere extends Potential2SoftSpherical implements PotentialCopyable {
 
     public P2SoftSphere(Space space) {
         this(space, 1.0, 1.0, 12);
@@ -167,6 +167,13 @@ public final class P2SoftSphere extends Potential2SoftSpherical {
      */
     public int getExponent() {return n;}
 
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
+
     private double sigma, sigma2;
     private double epsilon;
     private final int n;
@@ -0,0 +1,244 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.box.Box;
+import etomica.space.Space;
+
+/**
+ * Wraps a soft-spherical potential whose energy is expensive to compute and
+ * replaces it with piecewise Hermite polynomials tabulated on a uniform grid
+ * in r^2, from rMin to the cutoff.  Quintic interpolation (value, first and
+ * second derivatives matched at each node) gives an energy and force that are
+ * continuous with continuous first derivative; cubic interpolation (value and
+ * first derivative) converges more slowly and needs more grid points for the
+ * same accuracy.  The grid is refined until the energy (and, if the wrapped
+ * potential provides derivatives, r du/dr) at the middle and quarter points
+ * of every interval are within the given tolerance, relative for magnitudes
+ * above 1 and absolute below.  d2u comes from the interpolant's second
+ * derivative and is less accurate.
+ * <p>
+ * The energy and its derivatives are zero beyond the cutoff, as with
+ * P2SoftSphericalTruncated (wrap this potential in P2SoftSphericalTruncated
+ * with the same cutoff to get a long-range correction).  Below rMin, the
+ * wrapped potential is used directly.
+ * <p>
+ * For potentials that do not implement du and d2u (P2ArgonAziz1993,
+ * P2QChemInterpolated), the derivatives at the grid points can be found by
+ * finite differences of the energy; du and d2u of the tabulated potential are
+ * then those of the interpolant.
+ */
+public class P2SoftSphericalTabulated extends Potential2SoftSpherical implements PotentialCopyable {
+
+    protected final Potential2SoftSpherical potential;
+    protected final double rMin, r2Min, rCutoff, r2Cutoff;
+    protected final int order;
+    protected final boolean numericalDerivatives;
+    protected final int nIntervals;
+    protected final double h, invH;
+    // coefficients of the polynomial in t = (r2 - r2Min)/h - i for each interval i
+    protected final double[] c;
+
+    /**
+     * Tabulates the potential with quintic interpolation, using the wrapped
+     * potential's derivatives.
+     */
+    public P2SoftSphericalTabulated(Space space, Potential2SoftSpherical potential, double rMin, double rCutoff, double tolerance) {
+        this(space, potential, rMin, rCutoff, tolerance, 5, false);
+    }
+
+    /**
+     * @param space                space of the simulation
+     * @param potential            the potential to tabulate
+     * @param rMin                 smallest separation in the table
+     * @param rCutoff              the cutoff; the potential is 0 beyond it
+     * @param tolerance            maximum error in u (and du) for the table
+     * @param order                order of the interpolating polynomials, 3 or 5
+     * @param numericalDerivatives if true, derivatives at the grid points are
+     *                             computed from finite differences of u
+     */
+    public P2SoftSphericalTabulated(Space space, Potential2SoftSpherical potential, double rMin, double rCutoff, double tolerance,
+                                    int order, boolean numericalDerivatives) {
+        super(space);
+        if (order != 3 && order != 5) {
+            throw new IllegalArgumentException("order must be 3 or 5");
+        }
+        if (!(rMin > 0) || !(rCutoff > rMin) || Double.isInfinite(rCutoff)) {
+            throw new IllegalArgumentException("need 0 < rMin < rCutoff < infinity");
+        }
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("tolerance must be positive");
+        }
+        this.potential = potential;
+        this.rMin = rMin;
+        this.rCutoff = rCutoff;
+        this.order = order;
+        this.numericalDerivatives = numericalDerivatives;
+        r2Min = rMin * rMin;
+        r2Cutoff = rCutoff * rCutoff;
+
+        int n = 64;
+        while (true) {
+            double[] cTry = tabulate(n);
+            if (isAccurate(cTry, n, tolerance)) {
+                c = cTry;
+                break;
+            }
+            if (n >= 1 << 22) {
+                throw new RuntimeException("Could not tabulate potential within " + tolerance + " using " + n + " intervals");
+            }
+            n *= 2;
+        }
+        nIntervals = n;
+        h = (r2Cutoff - r2Min) / n;
+        invH = 1 / h;
+    }
+
+    /**
+     * Returns the wrapped potential.
+     */
+    public Potential2SoftSpherical getWrappedPotential() {
+        return potential;
+    }
+
+    /**
+     * Returns the number of intervals in the table.
+     */
+    public int getNumIntervals() {
+        return nIntervals;
+    }
+
+    protected double[] tabulate(int n) {
+        double hn = (r2Cutoff - r2Min) / n;
+        // u, du/ds and d2u/ds2 at each node, with s = r^2
+        double[] u = new double[n + 1];
+        double[] us = new double[n + 1];
+        double[] uss = new double[n + 1];
+        for (int i = 0; i <= n; i++) {
+            double s = r2Min + i * hn;
+            u[i] = potential.u(s);
+            if (numericalDerivatives) {
+                double d = 2e-3 * s;
+                double um2 = potential.u(s - 2 * d), um1 = potential.u(s - d);
+                double up1 = potential.u(s + d), up2 = potential.u(s + 2 * d);
+                us[i] = (um2 - 8 * um1 + 8 * up1 - up2) / (12 * d);
+                uss[i] = (-um2 + 16 * um1 - 30 * u[i] + 16 * up1 - up2) / (12 * d * d);
+            }
+            else {
+                double du = potential.du(s);
+                us[i] = du / (2 * s);
+                uss[i] = (potential.d2u(s) - du) / (4 * s * s);
+            }
+            if (Double.isNaN(u[i]) || Double.isInfinite(u[i]) || Double.isNaN(us[i]) || Double.isInfinite(us[i])) {
+                throw new IllegalArgumentException("potential is not finite at r=" + Math.sqrt(s));
+            }
+        }
+        double[] cn = new double[6 * n];
+        for (int i = 0; i < n; i++) {
+            // value and derivatives with respect to t
+            double p0 = u[i], p1 = u[i + 1];
+            double m0 = us[i] * hn, m1 = us[i + 1] * hn;
+            double dp = p1 - p0;
+            int k = 6 * i;
+            cn[k] = p0;
+            cn[k + 1] = m0;
+            if (order == 3) {
+                cn[k + 2] = 3 * dp - 2 * m0 - m1;
+                cn[k + 3] = -2 * dp + m0 + m1;
+            }
+            else {
+                double a0 = uss[i] * hn * hn, a1 = uss[i + 1] * hn * hn;
+                cn[k + 2] = 0.5 * a0;
+                cn[k + 3] = 10 * dp - 6 * m0 - 4 * m1 - 1.5 * a0 + 0.5 * a1;
+                cn[k + 4] = -15 * dp + 8 * m0 + 7 * m1 + 1.5 * a0 - a1;
+                cn[k + 5] = 6 * dp - 3 * m0 - 3 * m1 - 0.5 * a0 + 0.5 * a1;
+            }
+        }
+        return cn;
+    }
+
+    protected boolean isAccurate(double[] cn, int n, double tolerance) {
+        double hn = (r2Cutoff - r2Min) / n;
+        for (int i = 0; i < n; i++) {
+            int k = 6 * i;
+            for (int j = 1; j < 4; j++) {
+                double t = 0.25 * j;
+                double s = r2Min + (i + t) * hn;
+                double u = potential.u(s);
+                double uTab = cn[k] + t * (cn[k + 1] + t * (cn[k + 2] + t * (cn[k + 3] + t * (cn[k + 4] + t * cn[k + 5]))));
+                if (!(Math.abs(uTab - u) <= tolerance * Math.max(1, Math.abs(u)))) return false;
+                if (numericalDerivatives) continue;
+                double du = potential.du(s);
+                double duTab = 2 * s / hn * (cn[k + 1] + t * (2 * cn[k + 2] + t * (3 * cn[k + 3] + t * (4 * cn[k + 4] + t * 5 * cn[k + 5]))));
+                if (!(Math.abs(duTab - du) <= tolerance * Math.max(1, Math.abs(du)))) return false;
+            }
+        }
+        return true;
+    }
+
+    public double u(double r2) {
+        if (r2 >= r2Cutoff) return 0;
+        if (r2 < r2Min) return potential.u(r2);
+        double x = (r2 - r2Min) * invH;
+        int i = (int) x;
+        if (i == nIntervals) i--;
+        double t = x - i;
+        int k = 6 * i;
+        return c[k] + t * (c[k + 1] + t * (c[k + 2] + t * (c[k + 3] + t * (c[k + 4] + t * c[k + 5]))));
+    }
+
+    public double du(double r2) {
+        if (r2 >= r2Cutoff) return 0;
+        if (r2 < r2Min) return potential.du(r2);
+        double x = (r2 - r2Min) * invH;
+        int i = (int) x;
+        if (i == nIntervals) i--;
+        double t = x - i;
+        int k = 6 * i;
+        double dudt = c[k + 1] + t * (2 * c[k + 2] + t * (3 * c[k + 3] + t * (4 * c[k + 4] + t * 5 * c[k + 5])));
+        return 2 * r2 * invH * dudt;
+    }
+
+    public double d2u(double r2) {
+        if (r2 >= r2Cutoff) return 0;
+        if (r2 < r2Min) return potential.d2u(r2);
+        double x = (r2 - r2Min) * invH;
+        int i = (int) x;
+        if (i == nIntervals) i--;
+        double t = x - i;
+        int k = 6 * i;
+        double dudt = c[k + 1] + t * (2 * c[k + 2] + t * (3 * c[k + 3] + t * (4 * c[k + 4] + t * 5 * c[k + 5])));
+        double d2udt2 = 2 * c[k + 2] + t * (6 * c[k + 3] + t * (12 * c[k + 4] + t * 20 * c[k + 5]));
+        return 4 * r2 * r2 * invH * invH * d2udt2 + 2 * r2 * invH * dudt;
+    }
+
+    /**
+     * Returns the integral of the wrapped potential beyond rC.
+     */
+    public double uInt(double rC) {
+        return potential.uInt(rC);
+    }
+
+    public double getRange() {
+        return rCutoff;
+    }
+
+    public void setBox(Box box) {
+        potential.setBox(box);
+        super.setBox(box);
+    }
+
+    /**
+     * Returns a copy of this potential for use by another thread, which
+     * shares the table.  The wrapped potential must also implement
+     * PotentialCopyable.
+     */
+    public IPotentialAtomic makeCopy() {
+        if (!(potential instanceof PotentialCopyable)) {
+            throw new IllegalStateException(potential + " must implement PotentialCopyable to be copied");
+        }
+        return new ThreadCopy(this);
+    }
+}
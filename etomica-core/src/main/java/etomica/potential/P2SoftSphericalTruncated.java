@@ -22,7 +22,7 @@ import etomica.units.dimensions.Length;
  * pair correlations beyond the cutoff.
  */
 public class P2SoftSphericalTruncated extends Potential2SoftSpherical
-               implements PotentialTruncated {
+               implements PotentialTruncated, PotentialCopyable {
 
     protected final Potential2SoftSpherical potential;
     protected double rCutoff, r2Cutoff;
@@ -46,6 +46,17 @@ public class P2SoftSphericalTruncated extends Potential2SoftSpherical
         super.setBox(box);
     }
 
+    /**
+     * Returns a copy of this potential for use by another thread.  The
+     * wrapped potential must also implement PotentialCopyable.
+     */
+    public IPotentialAtomic makeCopy() {
+        if (!(potential instanceof PotentialCopyable)) {
+            throw new IllegalStateException(potential + " must implement PotentialCopyable to be copied");
+        }
+        return new ThreadCopy(this);
+    }
+
     /**
      * Returns the energy of the wrapped potential if the separation
      * is less than the cutoff value
@@ -16,7 +16,7 @@ import etomica.units.dimensions.Length;
  *
  * @author David Kofke (edited by Eric C. Cichowski and Todd Schmidt)
  */
-public class P2WCA extends Potential2SoftSpherical {
+public class P2WCA extends Potential2SoftSpherical implements PotentialCopyable {
 
     /**
      * Constructs potential using default sigma and epsilon given by Default class.
@@ -119,6 +119,13 @@ public class P2WCA extends Potential2SoftSpherical {
     }
     public Dimension getEpsilonDimension() {return Energy.DIMENSION;}
    
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
+
     private static final long serialVersionUID = 1L;
     private double sigma, sigmaSquared, range, rangeSquared;
     private double epsilon;
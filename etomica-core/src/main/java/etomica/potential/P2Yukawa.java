@@ -18,7 +18,7 @@ import etomica.space.Space;
  *
  */
 
-public final class P2Yukawa extends Potential2SoftSpherical {
+public final class P2Yukawa extends Potential2SoftSpherical implements PotentialCopyable {
 	
     public P2Yukawa(Space _space) {
 		this(_space, 1.0, 1.0);
@@ -78,6 +78,13 @@ public final class P2Yukawa extends Potential2SoftSpherical {
 	public final void setVZero(double v) {vzero = v;}
 
 	
+    /**
+     * Returns a copy of this potential for use by another thread.
+     */
+    public IPotentialAtomic makeCopy() {
+        return new ThreadCopy(this);
+    }
+
     private static final long serialVersionUID = 1L;
 	private double kappa;
 	private double vzero;
@@ -119,6 +119,43 @@ public abstract class Potential2SoftSpherical extends Potential2 implements Pote
         boundary = box.getBoundary();
     }
 
+    /**
+     * Potential for use by another thread, made by the makeCopy method of
+     * subclasses that implement PotentialCopyable.  It takes u, du, d2u, uInt
+     * and the range from the original potential, so that later changes to
+     * the original's parameters are seen by the copy, but it has its own dr
+     * and gradient vectors.
+     */
+    protected static class ThreadCopy extends Potential2SoftSpherical {
+
+        protected final Potential2SoftSpherical potential;
+
+        public ThreadCopy(Potential2SoftSpherical potential) {
+            super(potential.space);
+            this.potential = potential;
+        }
+
+        public double u(double r2) {
+            return potential.u(r2);
+        }
+
+        public double du(double r2) {
+            return potential.du(r2);
+        }
+
+        public double d2u(double r2) {
+            return potential.d2u(r2);
+        }
+
+        public double uInt(double rC) {
+            return potential.uInt(rC);
+        }
+
+        public double getRange() {
+            return potential.getRange();
+        }
+    }
+
     protected final Vector[] gradient;
     protected Boundary boundary;
     protected final Vector dr;
@@ -16,7 +16,7 @@ import etomica.molecule.IMoleculeList;
  *
  * @author David Kofke
  */
-public class PotentialCalculationEnergySum implements PotentialCalculation, PotentialCalculationMolecular, java.io.Serializable {
+public class PotentialCalculationEnergySum implements PotentialCalculationParallel, PotentialCalculationMolecular, java.io.Serializable {
 
     public static boolean debug = false;
     
@@ -59,6 +59,31 @@ public class PotentialCalculationEnergySum implements PotentialCalculation, Pote
 	public double getSum() {
         return sum;
     }
+
+    /**
+     * Returns a worker that sums the energy, or null for subclasses, which
+     * must make their own worker to be run in parallel.
+     */
+    public Worker makeWorker() {
+        if (getClass() != PotentialCalculationEnergySum.class) return null;
+        return new Worker() {
+            double workerSum;
+
+            public void reset() {
+                workerSum = 0;
+            }
+
+            public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+                workerSum += potential.energy(atoms);
+            }
+
+            public void reduceAtoms(int start, int end) {}
+
+            public void reduceGlobal() {
+                sum += workerSum;
+            }
+        };
+    }
 	
     private static final long serialVersionUID = 1L;
 	protected double sum = 0.0;
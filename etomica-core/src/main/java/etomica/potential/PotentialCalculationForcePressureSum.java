@@ -19,8 +19,10 @@ public class PotentialCalculationForcePressureSum extends PotentialCalculationFo
         
     private static final long serialVersionUID = 1L;
     protected final Tensor pressureTensor;
+    protected final Space space;
     
     public PotentialCalculationForcePressureSum(Space space) {
+        this.space = space;
         pressureTensor = space.makeTensor();
     }
     
@@ -70,4 +72,34 @@ public class PotentialCalculationForcePressureSum extends PotentialCalculationFo
     public Tensor getPressureTensor() {
         return pressureTensor;
     }
+
+    /**
+     * Returns a worker that sums forces and the pressure tensor, or null for
+     * subclasses, which must make their own worker to be run in parallel.
+     */
+    public Worker makeWorker() {
+        if (getClass() != PotentialCalculationForcePressureSum.class) return null;
+        return new ForcePressureWorker();
+    }
+
+    /**
+     * Worker that also accumulates its own pressure tensor.
+     */
+    protected class ForcePressureWorker extends ForceWorker {
+
+        protected final Tensor workerPressureTensor = space.makeTensor();
+
+        public void reset() {
+            super.reset();
+            workerPressureTensor.E(0);
+        }
+
+        protected Vector[] gradient(IAtomList atoms, PotentialSoft potential) {
+            return potential.gradient(atoms, workerPressureTensor);
+        }
+
+        public void reduceGlobal() {
+            pressureTensor.PE(workerPressureTensor);
+        }
+    }
 }
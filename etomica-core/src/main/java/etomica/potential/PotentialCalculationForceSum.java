@@ -6,13 +6,14 @@ package etomica.potential;
 
 import etomica.atom.AtomLeafAgentManager;
 import etomica.atom.IAtomList;
+import etomica.box.Box;
 import etomica.space.Vector;
 
 /**
  * Sums the force on each iterated atom and adds it to the integrator agent
  * associated with the atom.
  */
-public class PotentialCalculationForceSum implements PotentialCalculation {
+public class PotentialCalculationForceSum implements PotentialCalculationParallel {
         
     protected AtomLeafAgentManager<Vector> integratorAgentManager;
 
@@ -61,4 +62,76 @@ public class PotentialCalculationForceSum implements PotentialCalculation {
                 }
 		}
 	}
+
+    /**
+     * Returns a worker that sums forces, or null for subclasses, which must
+     * make their own worker to be run in parallel.
+     */
+    public Worker makeWorker() {
+        if (getClass() != PotentialCalculationForceSum.class) return null;
+        return new ForceWorker();
+    }
+
+    /**
+     * Worker that sums forces into its own array of vectors (indexed by leaf
+     * index), which are added to the integrator's agents by reduceAtoms.
+     */
+    protected class ForceWorker implements Worker {
+
+        protected Vector[] forces = new Vector[0];
+
+        public void reset() {
+            Box box = integratorAgentManager.getBox();
+            int nLeaf = box.getLeafList().size();
+            if (forces.length < nLeaf) {
+                Vector[] newForces = new Vector[nLeaf];
+                System.arraycopy(forces, 0, newForces, 0, forces.length);
+                for (int i = forces.length; i < nLeaf; i++) {
+                    newForces[i] = box.getSpace().makeVector();
+                }
+                forces = newForces;
+            }
+            for (int i = 0; i < nLeaf; i++) {
+                forces[i].E(0);
+            }
+        }
+
+        protected Vector[] gradient(IAtomList atoms, PotentialSoft potential) {
+            return potential.gradient(atoms);
+        }
+
+        public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+            if (!(potential instanceof PotentialSoft)) return;
+            Vector[] f = gradient(atoms, (PotentialSoft) potential);
+            if (f == null) return;
+            switch (potential.nBody()) {
+                case 0:
+                    int nLeaf = integratorAgentManager.getBox().getLeafList().size();
+                    for (int i = 0; i < nLeaf; i++) {
+                        forces[i].ME(f[i]);
+                    }
+                    break;
+                case 1:
+                    forces[atoms.get(0).getLeafIndex()].ME(f[0]);
+                    break;
+                case 2:
+                    forces[atoms.get(0).getLeafIndex()].ME(f[0]);
+                    forces[atoms.get(1).getLeafIndex()].ME(f[1]);
+                    break;
+                default:
+                    for (int i = 0; i < atoms.size(); i++) {
+                        forces[atoms.get(i).getLeafIndex()].ME(f[i]);
+                    }
+            }
+        }
+
+        public void reduceAtoms(int start, int end) {
+            IAtomList leafList = integratorAgentManager.getBox().getLeafList();
+            for (int i = start; i < end; i++) {
+                integratorAgentManager.getAgent(leafList.get(i)).PE(forces[i]);
+            }
+        }
+
+        public void reduceGlobal() {}
+    }
 }
@@ -0,0 +1,48 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+/**
+ * Interface for a PotentialCalculation whose work can be split across
+ * threads.  Each thread uses its own Worker, which accumulates results
+ * privately.  Once all threads are done, the results of the workers are
+ * added into the original calculation, always in the same order, so that the
+ * result does not depend on thread scheduling.
+ */
+public interface PotentialCalculationParallel extends PotentialCalculation {
+
+    /**
+     * Returns a new worker that performs this calculation and accumulates its
+     * results privately, or null if the calculation must be performed
+     * serially.  Workers do not call doCalculation on the calculation, so
+     * implementations return null for subclasses that do not make their own
+     * worker (which might override doCalculation).
+     *
+     * @return a new worker, or null
+     */
+    Worker makeWorker();
+
+    interface Worker extends PotentialCalculation {
+
+        /**
+         * Zeros the results held by this worker.  This is called before each
+         * calculation.
+         */
+        void reset();
+
+        /**
+         * Adds per-atom results for atoms with leaf index from start up to
+         * (but not including) end into the calculation that made this worker.
+         * Different ranges may be reduced concurrently.
+         */
+        void reduceAtoms(int start, int end);
+
+        /**
+         * Adds results that do not belong to individual atoms (energy, virial,
+         * etc.) into the calculation that made this worker.
+         */
+        void reduceGlobal();
+    }
+}
@@ -0,0 +1,27 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+/**
+ * Interface for a potential that can make copies of itself for use by other
+ * threads.  A copy computes the same interactions as the original, including
+ * after later changes to the original's parameters, but has its own scratch
+ * fields, so that the original and the copy can be used concurrently.
+ * Copies are made once and then used for many calculations.
+ * <p>
+ * A class that implements this interface must make sure that everything the
+ * copy uses from the original can be called from several threads at once.
+ * For a Potential2SoftSpherical returning a ThreadCopy, that means u, du, d2u
+ * and uInt may not write to fields, and energy and gradient may not be
+ * overridden to do anything but evaluate u and du.  Subclasses that break
+ * this must override makeCopy.
+ */
+public interface PotentialCopyable extends IPotentialAtomic {
+
+    /**
+     * @return a copy of this potential that shares no scratch fields with it
+     */
+    IPotentialAtomic makeCopy();
+}
@@ -12,6 +12,7 @@ import etomica.box.Box;
 import etomica.chem.elements.IElement;
 import etomica.integrator.Integrator;
 import etomica.meta.annotations.IgnoreProperty;
+import etomica.meta.annotations.IndexSubclasses;
 import etomica.meta.javadoc.KeepSimJavadoc;
 import etomica.space.Boundary;
 import etomica.space.Space;
@@ -28,6 +29,7 @@ import java.util.*;
  * and a controller.
  */
 @KeepSimJavadoc
+@IndexSubclasses
 public class Simulation {
 
     protected final Space space;
@@ -74,9 +74,15 @@ public class Tensor3D implements Tensor, java.io.Serializable {
         if(v.length != 3) {
             throw new IllegalArgumentException("Tensor requires 3 vectors to set its values");
         }
-        xx = ((Vector3D)v[0]).x; xy = ((Vector3D)v[1]).x; xz = ((Vector3D)v[2]).x;
-        yx = ((Vector3D)v[0]).y; yy = ((Vector3D)v[1]).y; yz = ((Vector3D)v[2]).y;
-        zx = ((Vector3D)v[0]).z; zy = ((Vector3D)v[1]).z; zz = ((Vector3D)v[2]).z;
+        if (v[0] instanceof Vector3D && v[1] instanceof Vector3D && v[2] instanceof Vector3D) {
+            xx = ((Vector3D)v[0]).x; xy = ((Vector3D)v[1]).x; xz = ((Vector3D)v[2]).x;
+            yx = ((Vector3D)v[0]).y; yy = ((Vector3D)v[1]).y; yz = ((Vector3D)v[2]).y;
+            zx = ((Vector3D)v[0]).z; zy = ((Vector3D)v[1]).z; zz = ((Vector3D)v[2]).z;
+            return;
+        }
+        xx = v[0].getX(0); xy = v[1].getX(0); xz = v[2].getX(0);
+        yx = v[0].getX(1); yy = v[1].getX(1); yz = v[2].getX(1);
+        zx = v[0].getX(2); zy = v[1].getX(2); zz = v[2].getX(2);
     }
 
     public void E(double[] d) {
@@ -96,27 +102,40 @@ public class Tensor3D implements Tensor, java.io.Serializable {
 
     public void diagE(Vector v) {
         this.E(0.0);
-        Vector3D v3 = (Vector3D)v;
-        xx = v3.x;
-        yy = v3.y;
-        zz = v3.z;
+        xx = v.getX(0);
+        yy = v.getX(1);
+        zz = v.getX(2);
     }
     
     public void assignTo(Vector[] v) {
         if(v.length != 3) {
             throw new IllegalArgumentException("Tensor requires 3 vector for assignment");
         }
-        ((Vector3D)v[0]).x = xx; ((Vector3D)v[1]).x = xy; ((Vector3D)v[2]).x = xz;
-        ((Vector3D)v[0]).y = yx; ((Vector3D)v[1]).y = yy; ((Vector3D)v[2]).y = yz;
-        ((Vector3D)v[0]).z = zx; ((Vector3D)v[1]).z = zy; ((Vector3D)v[2]).z = zz;
+        if (v[0] instanceof Vector3D && v[1] instanceof Vector3D && v[2] instanceof Vector3D) {
+            ((Vector3D)v[0]).x = xx; ((Vector3D)v[1]).x = xy; ((Vector3D)v[2]).x = xz;
+            ((Vector3D)v[0]).y = yx; ((Vector3D)v[1]).y = yy; ((Vector3D)v[2]).y = yz;
+            ((Vector3D)v[0]).z = zx; ((Vector3D)v[1]).z = zy; ((Vector3D)v[2]).z = zz;
+            return;
+        }
+        v[0].setX(0, xx); v[1].setX(0, xy); v[2].setX(0, xz);
+        v[0].setX(1, yx); v[1].setX(1, yy); v[2].setX(1, yz);
+        v[0].setX(2, zx); v[1].setX(2, zy); v[2].setX(2, zz);
     }
 
     public void Ev1v2(Vector v1, Vector v2) {
-        Vector3D u1 = (Vector3D)v1;
-        Vector3D u2 = (Vector3D)v2;
-        xx=u1.x*u2.x; xy=u1.x*u2.y; xz=u1.x*u2.z;
-        yx=u1.y*u2.x; yy=u1.y*u2.y; yz=u1.y*u2.z;
-        zx=u1.z*u2.x; zy=u1.z*u2.y; zz=u1.z*u2.z;
+        if (v1 instanceof Vector3D && v2 instanceof Vector3D) {
+            Vector3D u1 = (Vector3D)v1;
+            Vector3D u2 = (Vector3D)v2;
+            xx=u1.x*u2.x; xy=u1.x*u2.y; xz=u1.x*u2.z;
+            yx=u1.y*u2.x; yy=u1.y*u2.y; yz=u1.y*u2.z;
+            zx=u1.z*u2.x; zy=u1.z*u2.y; zz=u1.z*u2.z;
+            return;
+        }
+        double u1x = v1.getX(0), u1y = v1.getX(1), u1z = v1.getX(2);
+        double u2x = v2.getX(0), u2y = v2.getX(1), u2z = v2.getX(2);
+        xx=u1x*u2x; xy=u1x*u2y; xz=u1x*u2z;
+        yx=u1y*u2x; yy=u1y*u2y; yz=u1y*u2z;
+        zx=u1z*u2x; zy=u1z*u2y; zz=u1z*u2z;
     }
     
     public void E(double a) {
@@ -181,19 +200,35 @@ public class Tensor3D implements Tensor, java.io.Serializable {
     }
     
     public void PEv1v2(Vector v1, Vector v2) {
-        Vector3D u1 = (Vector3D)v1;
-        Vector3D u2 = (Vector3D)v2;
-        xx+=u1.x*u2.x; xy+=u1.x*u2.y; xz+=u1.x*u2.z;
-        yx+=u1.y*u2.x; yy+=u1.y*u2.y; yz+=u1.y*u2.z;
-        zx+=u1.z*u2.x; zy+=u1.z*u2.y; zz+=u1.z*u2.z;
+        if (v1 instanceof Vector3D && v2 instanceof Vector3D) {
+            Vector3D u1 = (Vector3D)v1;
+            Vector3D u2 = (Vector3D)v2;
+            xx+=u1.x*u2.x; xy+=u1.x*u2.y; xz+=u1.x*u2.z;
+            yx+=u1.y*u2.x; yy+=u1.y*u2.y; yz+=u1.y*u2.z;
+            zx+=u1.z*u2.x; zy+=u1.z*u2.y; zz+=u1.z*u2.z;
+            return;
+        }
+        double u1x = v1.getX(0), u1y = v1.getX(1), u1z = v1.getX(2);
+        double u2x = v2.getX(0), u2y = v2.getX(1), u2z = v2.getX(2);
+        xx+=u1x*u2x; xy+=u1x*u2y; xz+=u1x*u2z;
+        yx+=u1y*u2x; yy+=u1y*u2y; yz+=u1y*u2z;
+        zx+=u1z*u2x; zy+=u1z*u2y; zz+=u1z*u2z;
     }
     
     public void MEv1v2(Vector v1, Vector v2) {
-        Vector3D u1 = (Vector3D)v1;
-        Vector3D u2 = (Vector3D)v2;
-        xx-=u1.x*u2.x; xy-=u1.x*u2.y; xz-=u1.x*u2.z;
-        yx-=u1.y*u2.x; yy-=u1.y*u2.y; yz-=u1.y*u2.z;
-        zx-=u1.z*u2.x; zy-=u1.z*u2.y; zz-=u1.z*u2.z;
+        if (v1 instanceof Vector3D && v2 instanceof Vector3D) {
+            Vector3D u1 = (Vector3D)v1;
+            Vector3D u2 = (Vector3D)v2;
+            xx-=u1.x*u2.x; xy-=u1.x*u2.y; xz-=u1.x*u2.z;
+            yx-=u1.y*u2.x; yy-=u1.y*u2.y; yz-=u1.y*u2.z;
+            zx-=u1.z*u2.x; zy-=u1.z*u2.y; zz-=u1.z*u2.z;
+            return;
+        }
+        double u1x = v1.getX(0), u1y = v1.getX(1), u1z = v1.getX(2);
+        double u2x = v2.getX(0), u2y = v2.getX(1), u2z = v2.getX(2);
+        xx-=u1x*u2x; xy-=u1x*u2y; xz-=u1x*u2z;
+        yx-=u1y*u2x; yy-=u1y*u2y; yz-=u1y*u2z;
+        zx-=u1z*u2x; zy-=u1z*u2y; zz-=u1z*u2z;
     }
     
     public void PEa1Tt1(double a1, Tensor t1) {
@@ -262,12 +297,19 @@ public class Tensor3D implements Tensor, java.io.Serializable {
     }
 
     public void transform(Vector v) {
-        Vector3D v3D = (Vector3D) v;
-        double x1 = xx * v3D.x + xy * v3D.y + xz * v3D.z;
-        double y1 = yx * v3D.x + yy * v3D.y + yz * v3D.z;
-        v3D.z = zx * v3D.x + zy * v3D.y + zz * v3D.z;
-        v3D.x = x1;
-        v3D.y = y1;
+        if (v instanceof Vector3D) {
+            Vector3D v3D = (Vector3D) v;
+            double x1 = xx * v3D.x + xy * v3D.y + xz * v3D.z;
+            double y1 = yx * v3D.x + yy * v3D.y + yz * v3D.z;
+            v3D.z = zx * v3D.x + zy * v3D.y + zz * v3D.z;
+            v3D.x = x1;
+            v3D.y = y1;
+            return;
+        }
+        double vx = v.getX(0), vy = v.getX(1), vz = v.getX(2);
+        v.setX(0, xx * vx + xy * vy + xz * vz);
+        v.setX(1, yx * vx + yy * vy + yz * vz);
+        v.setX(2, zx * vx + zy * vy + zz * vz);
     }
 
     public boolean equals(Tensor t) {
@@ -60,8 +60,12 @@ public final class Vector3D implements Vector, java.io.Serializable {
     }
 
     public boolean equals(Vector v) {
-        return (x == ((Vector3D) v).x) && (y == ((Vector3D) v).y)
-                && (z == ((Vector3D) v).z);
+        if (v instanceof Vector3D) {
+            return (x == ((Vector3D) v).x) && (y == ((Vector3D) v).y)
+                    && (z == ((Vector3D) v).z);
+        }
+        return (x == v.getX(0)) && (y == v.getX(1))
+                && (z == v.getX(2));
     }
 
     public boolean isZero() {
@@ -69,9 +73,15 @@ public final class Vector3D implements Vector, java.io.Serializable {
     }
 
     public void E(Vector u) {
-        x = ((Vector3D) u).x;
-        y = ((Vector3D) u).y;
-        z = ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            x = ((Vector3D) u).x;
+            y = ((Vector3D) u).y;
+            z = ((Vector3D) u).z;
+            return;
+        }
+        x = u.getX(0);
+        y = u.getX(1);
+        z = u.getX(2);
     }
 
     public void E(double a) {
@@ -96,21 +106,39 @@ public final class Vector3D implements Vector, java.io.Serializable {
     }
     
     public void Ea1Tv1(double a1, Vector u) {
-        x = a1 * ((Vector3D) u).x;
-        y = a1 * ((Vector3D) u).y;
-        z = a1 * ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            x = a1 * ((Vector3D) u).x;
+            y = a1 * ((Vector3D) u).y;
+            z = a1 * ((Vector3D) u).z;
+            return;
+        }
+        x = a1 * u.getX(0);
+        y = a1 * u.getX(1);
+        z = a1 * u.getX(2);
     }
 
     public void PEa1Tv1(double a1, Vector u) {
-        x += a1 * ((Vector3D) u).x;
-        y += a1 * ((Vector3D) u).y;
-        z += a1 * ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            x += a1 * ((Vector3D) u).x;
+            y += a1 * ((Vector3D) u).y;
+            z += a1 * ((Vector3D) u).z;
+            return;
+        }
+        x += a1 * u.getX(0);
+        y += a1 * u.getX(1);
+        z += a1 * u.getX(2);
     }
 
     public void PE(Vector u) {
-        x += ((Vector3D) u).x;
-        y += ((Vector3D) u).y;
-        z += ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            x += ((Vector3D) u).x;
+            y += ((Vector3D) u).y;
+            z += ((Vector3D) u).z;
+            return;
+        }
+        x += u.getX(0);
+        y += u.getX(1);
+        z += u.getX(2);
     }
 
     public void PE(double a) {
@@ -120,9 +148,15 @@ public final class Vector3D implements Vector, java.io.Serializable {
     }
 
     public void ME(Vector u) {
-        x -= ((Vector3D) u).x;
-        y -= ((Vector3D) u).y;
-        z -= ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            x -= ((Vector3D) u).x;
+            y -= ((Vector3D) u).y;
+            z -= ((Vector3D) u).z;
+            return;
+        }
+        x -= u.getX(0);
+        y -= u.getX(1);
+        z -= u.getX(2);
     }
 
     public void TE(double a) {
@@ -132,31 +166,71 @@ public final class Vector3D implements Vector, java.io.Serializable {
     }
 
     public void TE(Vector u) {
-        x *= ((Vector3D) u).x;
-        y *= ((Vector3D) u).y;
-        z *= ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            x *= ((Vector3D) u).x;
+            y *= ((Vector3D) u).y;
+            z *= ((Vector3D) u).z;
+            return;
+        }
+        x *= u.getX(0);
+        y *= u.getX(1);
+        z *= u.getX(2);
     }
 
     public void DE(Vector u) {
-        x /= ((Vector3D) u).x;
-        y /= ((Vector3D) u).y;
-        z /= ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            x /= ((Vector3D) u).x;
+            y /= ((Vector3D) u).y;
+            z /= ((Vector3D) u).z;
+            return;
+        }
+        x /= u.getX(0);
+        y /= u.getX(1);
+        z /= u.getX(2);
     }
 
     public void Ev1Pv2(Vector u1, Vector u2) {
-        x = ((Vector3D) u1).x + ((Vector3D) u2).x;
-        y = ((Vector3D) u1).y + ((Vector3D) u2).y;
-        z = ((Vector3D) u1).z + ((Vector3D) u2).z;
+        if (u1 instanceof Vector3D && u2 instanceof Vector3D) {
+            x = ((Vector3D) u1).x + ((Vector3D) u2).x;
+            y = ((Vector3D) u1).y + ((Vector3D) u2).y;
+            z = ((Vector3D) u1).z + ((Vector3D) u2).z;
+            return;
+        }
+        x = u1.getX(0) + u2.getX(0);
+        y = u1.getX(1) + u2.getX(1);
+        z = u1.getX(2) + u2.getX(2);
     }
 
     public void Ev1Mv2(Vector u1, Vector u2) {
-        x = ((Vector3D) u1).x - ((Vector3D) u2).x;
-        y = ((Vector3D) u1).y - ((Vector3D) u2).y;
-        z = ((Vector3D) u1).z - ((Vector3D) u2).z;
+        if (u1 instanceof Vector3D && u2 instanceof Vector3D) {
+            x = ((Vector3D) u1).x - ((Vector3D) u2).x;
+            y = ((Vector3D) u1).y - ((Vector3D) u2).y;
+            z = ((Vector3D) u1).z - ((Vector3D) u2).z;
+            return;
+        }
+        x = u1.getX(0) - u2.getX(0);
+        y = u1.getX(1) - u2.getX(1);
+        z = u1.getX(2) - u2.getX(2);
     }
     
     public void mod(Vector u) {
-        mod((Vector3D) u);
+        if (u instanceof Vector3D) {
+            mod((Vector3D) u);
+            return;
+        }
+        double ux = u.getX(0), uy = u.getX(1), uz = u.getX(2);
+        while (x > ux)
+            x -= ux;
+        while (x < 0.0)
+            x += ux;
+        while (y > uy)
+            y -= uy;
+        while (y < 0.0)
+            y += uy;
+        while (z > uz)
+            z -= uz;
+        while (z < 0.0)
+            z += uz;
     }
 
     public void mod(Vector3D u) {
@@ -179,15 +253,25 @@ public final class Vector3D implements Vector, java.io.Serializable {
     }
 
     public double Mv1Squared(Vector u) {
-        double dx = x - ((Vector3D) u).x;
-        double dy = y - ((Vector3D) u).y;
-        double dz = z - ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            double dx = x - ((Vector3D) u).x;
+            double dy = y - ((Vector3D) u).y;
+            double dz = z - ((Vector3D) u).z;
+            return dx * dx + dy * dy + dz * dz;
+        }
+        double dx = x - u.getX(0);
+        double dy = y - u.getX(1);
+        double dz = z - u.getX(2);
         return dx * dx + dy * dy + dz * dz;
     }
 
     public double dot(Vector u) {
-        return x * ((Vector3D) u).x + y * ((Vector3D) u).y + z
-                * ((Vector3D) u).z;
+        if (u instanceof Vector3D) {
+            return x * ((Vector3D) u).x + y * ((Vector3D) u).y + z
+                    * ((Vector3D) u).z;
+        }
+        return x * u.getX(0) + y * u.getX(1) + z
+                * u.getX(2);
     }
 
     /*
@@ -195,15 +279,15 @@ public final class Vector3D implements Vector, java.io.Serializable {
      * Does not normalize this vector on completion.  Assumes that the given vector is not identically zero.
      */
     public void setPerpendicularTo(Vector v) {
-        Vector3D v3 = (Vector3D)v;
-        if(v3.z != 0) {
-            x = v3.z;
-            y = v3.z;
-            z = -(v3.x + v3.y);
+        double vx = v.getX(0), vy = v.getX(1), vz = v.getX(2);
+        if(vz != 0) {
+            x = vz;
+            y = vz;
+            z = -(vx + vy);
         } else {
-            x = -(v3.y + v3.z);
-            y = v3.x;
-            z = v3.x;
+            x = -(vy + vz);
+            y = vx;
+            z = vx;
         }
     }
 
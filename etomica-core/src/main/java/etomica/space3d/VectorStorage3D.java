@@ -0,0 +1,126 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.space3d;
+
+import java.util.Arrays;
+
+/**
+ * Holds a list of 3-dimensional vectors in a single contiguous double[]
+ * (x0, y0, z0, x1, y1, z1, ...), handing out {@link ViewVector3D} instances
+ * that read and write their slot of the array.  Loops that need to stream
+ * over all of the vectors can use {@link #getData()} directly.
+ * <p>
+ * Elements are added at the end and removed by moving the last element into
+ * the vacated slot, mirroring AtomArrayList.removeAndReplace, so that the
+ * element index can track an atom's leaf index.  The views remain valid
+ * (and keep referring to the same logical element) as the array grows or
+ * elements are moved.
+ */
+public class VectorStorage3D {
+
+    protected double[] data;
+    protected ViewVector3D[] views;
+    protected int size;
+
+    public VectorStorage3D() {
+        this(8);
+    }
+
+    public VectorStorage3D(int initialCapacity) {
+        data = new double[3 * initialCapacity];
+        views = new ViewVector3D[initialCapacity];
+    }
+
+    /**
+     * @return the number of vectors held
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the backing array.  The components of vector i are at 3i, 3i+1
+     * and 3i+2.  The array is replaced when the storage grows, so callers
+     * should not hold on to it across additions.
+     */
+    public double[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the view for vector i
+     */
+    public ViewVector3D get(int i) {
+        return views[i];
+    }
+
+    /**
+     * Ensures that the storage can hold at least n vectors without
+     * reallocating.
+     */
+    public void ensureCapacity(int n) {
+        if (n <= views.length) return;
+        data = Arrays.copyOf(data, 3 * n);
+        views = Arrays.copyOf(views, n);
+        for (int i = 0; i < size; i++) {
+            views[i].data = data;
+        }
+    }
+
+    /**
+     * Appends a new (zero) vector and returns its view.
+     */
+    public ViewVector3D add() {
+        if (size == views.length) {
+            ensureCapacity(Math.max(8, size + (size >> 1)));
+        }
+        ViewVector3D v = new ViewVector3D(data, size);
+        views[size] = v;
+        data[3 * size] = data[3 * size + 1] = data[3 * size + 2] = 0;
+        size++;
+        return v;
+    }
+
+    /**
+     * Removes vector i by moving the last vector into its place.  The view
+     * of the moved vector is re-pointed to slot i; the view of the removed
+     * vector is detached and should no longer be used.
+     */
+    public void removeAndReplace(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+        size--;
+        views[i].data = null;
+        if (i < size) {
+            System.arraycopy(data, 3 * size, data, 3 * i, 3);
+            views[i] = views[size];
+            views[i].offset = 3 * i;
+        }
+        views[size] = null;
+    }
+
+    /**
+     * Reorders the vectors so that the vector previously at order[i] is
+     * now at i.  Views follow their vectors.
+     *
+     * @param order permutation of 0..size-1
+     */
+    public void permute(int[] order) {
+        double[] newData = new double[data.length];
+        ViewVector3D[] newViews = new ViewVector3D[views.length];
+        for (int i = 0; i < size; i++) {
+            int j = order[i];
+            System.arraycopy(data, 3 * j, newData, 3 * i, 3);
+            newViews[i] = views[j];
+            newViews[i].offset = 3 * i;
+        }
+        data = newData;
+        views = newViews;
+        for (int i = 0; i < size; i++) {
+            views[i].data = data;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.space3d;
+
+import etomica.math.function.IFunction;
+import etomica.space.Vector;
+import etomica.util.random.IRandom;
+
+/**
+ * 3-dimensional Vector whose components live in a shared double[] owned by a
+ * {@link VectorStorage3D}, rather than in fields of the vector itself.  The
+ * x, y and z components are held at offset, offset+1 and offset+2.  The
+ * storage re-points the view if the backing array is reallocated or if the
+ * element it represents is moved within the array.
+ */
+public final class ViewVector3D implements Vector {
+
+    double[] data;
+    int offset;
+
+    ViewVector3D(double[] data, int index) {
+        this.data = data;
+        this.offset = 3 * index;
+    }
+
+    public int getD() {
+        return 3;
+    }
+
+    public String toString() {
+        return "(" + data[offset] + ", " + data[offset + 1] + ", " + data[offset + 2] + ")";
+    }
+
+    public double getX(int i) {
+        return data[offset + i];
+    }
+
+    public void setX(int i, double d) {
+        data[offset + i] = d;
+    }
+
+    public void assignTo(double[] array) {
+        array[0] = data[offset];
+        array[1] = data[offset + 1];
+        array[2] = data[offset + 2];
+    }
+
+    public boolean equals(Vector v) {
+        return data[offset] == v.getX(0) && data[offset + 1] == v.getX(1) && data[offset + 2] == v.getX(2);
+    }
+
+    public boolean isZero() {
+        return data[offset] == 0.0 && data[offset + 1] == 0.0 && data[offset + 2] == 0.0;
+    }
+
+    public void E(Vector u) {
+        data[offset] = u.getX(0);
+        data[offset + 1] = u.getX(1);
+        data[offset + 2] = u.getX(2);
+    }
+
+    public void E(double a) {
+        data[offset] = a;
+        data[offset + 1] = a;
+        data[offset + 2] = a;
+    }
+
+    public void E(double a, double b, double c) {
+        data[offset] = a;
+        data[offset + 1] = b;
+        data[offset + 2] = c;
+    }
+
+    public void E(double[] u) {
+        if (u.length != 3) {
+            throw new IllegalArgumentException("ViewVector3D must be given a 3 element array.");
+        }
+        data[offset] = u[0];
+        data[offset + 1] = u[1];
+        data[offset + 2] = u[2];
+    }
+
+    public void Ea1Tv1(double a1, Vector u) {
+        data[offset] = a1 * u.getX(0);
+        data[offset + 1] = a1 * u.getX(1);
+        data[offset + 2] = a1 * u.getX(2);
+    }
+
+    public void PEa1Tv1(double a1, Vector u) {
+        data[offset] += a1 * u.getX(0);
+        data[offset + 1] += a1 * u.getX(1);
+        data[offset + 2] += a1 * u.getX(2);
+    }
+
+    public void PE(Vector u) {
+        data[offset] += u.getX(0);
+        data[offset + 1] += u.getX(1);
+        data[offset + 2] += u.getX(2);
+    }
+
+    public void PE(double a) {
+        data[offset] += a;
+        data[offset + 1] += a;
+        data[offset + 2] += a;
+    }
+
+    public void ME(Vector u) {
+        data[offset] -= u.getX(0);
+        data[offset + 1] -= u.getX(1);
+        data[offset + 2] -= u.getX(2);
+    }
+
+    public void TE(double a) {
+        data[offset] *= a;
+        data[offset + 1] *= a;
+        data[offset + 2] *= a;
+    }
+
+    public void TE(Vector u) {
+        data[offset] *= u.getX(0);
+        data[offset + 1] *= u.getX(1);
+        data[offset + 2] *= u.getX(2);
+    }
+
+    public void DE(Vector u) {
+        data[offset] /= u.getX(0);
+        data[offset + 1] /= u.getX(1);
+        data[offset + 2] /= u.getX(2);
+    }
+
+    public void Ev1Pv2(Vector u1, Vector u2) {
+        data[offset] = u1.getX(0) + u2.getX(0);
+        data[offset + 1] = u1.getX(1) + u2.getX(1);
+        data[offset + 2] = u1.getX(2) + u2.getX(2);
+    }
+
+    public void Ev1Mv2(Vector u1, Vector u2) {
+        data[offset] = u1.getX(0) - u2.getX(0);
+        data[offset + 1] = u1.getX(1) - u2.getX(1);
+        data[offset + 2] = u1.getX(2) - u2.getX(2);
+    }
+
+    public void mod(Vector u) {
+        for (int i = 0; i < 3; i++) {
+            double ui = u.getX(i);
+            double xi = data[offset + i];
+            while (xi > ui)
+                xi -= ui;
+            while (xi < 0.0)
+                xi += ui;
+            data[offset + i] = xi;
+        }
+    }
+
+    public double squared() {
+        double x = data[offset], y = data[offset + 1], z = data[offset + 2];
+        return x * x + y * y + z * z;
+    }
+
+    public double Mv1Squared(Vector u) {
+        double dx = data[offset] - u.getX(0);
+        double dy = data[offset + 1] - u.getX(1);
+        double dz = data[offset + 2] - u.getX(2);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    public double dot(Vector u) {
+        return data[offset] * u.getX(0) + data[offset + 1] * u.getX(1) + data[offset + 2] * u.getX(2);
+    }
+
+    public void XE(Vector u) {//cross product
+        double x = data[offset], y = data[offset + 1], z = data[offset + 2];
+        data[offset] = y * u.getX(2) - z * u.getX(1);
+        data[offset + 1] = z * u.getX(0) - x * u.getX(2);
+        data[offset + 2] = x * u.getX(1) - y * u.getX(0);
+    }
+
+    public void normalize() {
+        TE(1.0 / Math.sqrt(squared()));
+    }
+
+    public boolean isNaN() {
+        return Double.isNaN(data[offset]) || Double.isNaN(data[offset + 1]) || Double.isNaN(data[offset + 2]);
+    }
+
+    public void map(IFunction function) {
+        data[offset] = function.f(data[offset]);
+        data[offset + 1] = function.f(data[offset + 1]);
+        data[offset + 2] = function.f(data[offset + 2]);
+    }
+
+    public void nearestImage(Vector dimensions) {
+        for (int i = 0; i < 3; i++) {
+            double d = dimensions.getX(i);
+            double half = 0.5 * d;
+            double xi = data[offset + i];
+            while (xi > half)
+                xi -= d;
+            while (xi < -half)
+                xi += d;
+            data[offset + i] = xi;
+        }
+    }
+
+    public void setRandomCube(IRandom random) {
+        data[offset] = random.nextFixedDouble() - 0.5;
+        data[offset + 1] = random.nextFixedDouble() - 0.5;
+        data[offset + 2] = random.nextFixedDouble() - 0.5;
+    }
+
+    // same algorithms as Vector3D, so that both consume the random number
+    // stream identically
+    public void setRandomSphere(IRandom random) {
+        double z1, z2, zsq;
+        do {
+            z1 = 2.0 * random.nextFixedDouble() - 1.0;
+            z2 = 2.0 * random.nextFixedDouble() - 1.0;
+            zsq = z1 * z1 + z2 * z2;
+        } while (zsq > 1.0);
+
+        double ranh = 2.0 * Math.sqrt(1.0 - zsq);
+        data[offset] = z1 * ranh;
+        data[offset + 1] = z2 * ranh;
+        data[offset + 2] = 1.0 - 2.0 * zsq;
+    }
+
+    public void setRandomInSphere(IRandom random) {
+        double r = Vector3D.cubeRoot(random.nextFixedDouble());
+        double u, v, s;
+        do {
+            u = 1.0 - 2.0 * random.nextFixedDouble();
+            v = 1.0 - 2.0 * random.nextFixedDouble();
+            s = u * u + v * v;
+        } while (s > 1);
+        double ra = 2. * r * Math.sqrt(1. - s);
+        data[offset] = ra * u;
+        data[offset + 1] = ra * v;
+        data[offset + 2] = r * (2 * s - 1.);
+    }
+}
@@ -0,0 +1,121 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+/**
+ * EventQueue implemented as a binary heap held in an array.  Unlike
+ * TreeList, the cost of adding and removing linkers is O(log N) regardless
+ * of the order in which they are added, and the first element is found
+ * without any search.  Each linker keeps its position in the heap, so it can
+ * be removed from anywhere in the heap.
+ */
+public class EventHeap implements EventQueue, java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private TreeLinker[] heap = new TreeLinker[16];
+    private int size;
+
+    public void add(TreeLinker newNode) {
+        if (newNode.heap != null) {
+            throw new IllegalArgumentException("attempting to add a linker which is already in a heap");
+        }
+        if (size == heap.length) {
+            heap = java.util.Arrays.copyOf(heap, 2 * size);
+        }
+        newNode.heap = this;
+        siftUp(newNode, size);
+        size++;
+    }
+
+    public Object firstElement() {
+        return size == 0 ? null : heap[0].obj;
+    }
+
+    /**
+     * Removes the given linker from the heap.  This is called by the linker's
+     * remove method.
+     */
+    void remove(TreeLinker oldNode) {
+        int i = oldNode.heapIndex;
+        oldNode.heap = null;
+        size--;
+        TreeLinker last = heap[size];
+        heap[size] = null;
+        if (i == size) return;
+        if (i > 0 && last.sortKey < heap[(i - 1) >> 1].sortKey) {
+            siftUp(last, i);
+        }
+        else {
+            siftDown(last, i);
+        }
+    }
+
+    /**
+     * Moves node up from position i until its parent has a lower sortKey.
+     */
+    private void siftUp(TreeLinker node, int i) {
+        double key = node.sortKey;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            TreeLinker p = heap[parent];
+            if (p.sortKey <= key) break;
+            heap[i] = p;
+            p.heapIndex = i;
+            i = parent;
+        }
+        heap[i] = node;
+        node.heapIndex = i;
+    }
+
+    /**
+     * Moves node down from position i until its children have higher
+     * sortKeys.
+     */
+    private void siftDown(TreeLinker node, int i) {
+        double key = node.sortKey;
+        int half = size >> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            TreeLinker c = heap[child];
+            int right = child + 1;
+            if (right < size && heap[right].sortKey < c.sortKey) {
+                child = right;
+                c = heap[child];
+            }
+            if (key <= c.sortKey) break;
+            heap[i] = c;
+            c.heapIndex = i;
+            i = child;
+        }
+        heap[i] = node;
+        node.heapIndex = i;
+    }
+
+    public void reset() {
+        for (int i = 0; i < size; i++) {
+            heap[i].heap = null;
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    public void check() {
+        for (int i = 0; i < size; i++) {
+            if (heap[i].heap != this || heap[i].heapIndex != i) {
+                throw new IllegalStateException("linker " + heap[i] + " at " + i + " has inconsistent heap index " + heap[i].heapIndex);
+            }
+            if (i > 0 && heap[(i - 1) >> 1].sortKey > heap[i].sortKey) {
+                throw new IllegalStateException("linker " + heap[i] + " has a lower sortKey than its parent " + heap[(i - 1) >> 1]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of linkers in the heap.
+     */
+    public int size() {
+        return size;
+    }
+}
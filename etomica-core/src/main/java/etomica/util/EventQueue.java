@@ -0,0 +1,37 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+/**
+ * A priority queue of TreeLinkers, ordered by their sortKey.  Linkers are
+ * removed from the queue by calling their remove method.  A linker's sortKey
+ * must not be changed while it is in the queue, except that the sortKeys of
+ * all linkers may be shifted by the same amount.
+ */
+public interface EventQueue {
+
+    /**
+     * Adds the given linker to the queue.  The linker must not already be
+     * in a queue.
+     */
+    void add(TreeLinker newNode);
+
+    /**
+     * Returns the object associated with the lowest sortKey, or null if the
+     * queue is empty.
+     */
+    Object firstElement();
+
+    /**
+     * Removes all linkers from the queue.
+     */
+    void reset();
+
+    /**
+     * Checks the queue for consistency, throwing an IllegalStateException if
+     * a problem is found.
+     */
+    void check();
+}
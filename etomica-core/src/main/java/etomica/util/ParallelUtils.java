@@ -0,0 +1,47 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Non-instantiable class providing static methods for running tasks on a
+ * thread pool.
+ */
+public class ParallelUtils {
+
+    /**
+     * Private constructor to ensure non-instantiation.
+     */
+    private ParallelUtils() {}
+
+    /**
+     * Runs the given tasks on the pool and waits for all of them to finish.
+     * If a task fails, its exception is rethrown (wrapped in a
+     * RuntimeException if it is checked).
+     */
+    public static <T> void invokeAll(ExecutorService pool, Collection<? extends Callable<T>> tasks) {
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -6,7 +6,7 @@ package etomica.util;
 
 
 /**
- * Linker used in the binary tree TreeList.  TreeLinkers point to the
+ * Linker used in the binary tree TreeList (and in EventHeap).  TreeLinkers point to the
  * TreeLinker above, to the left and right of them within the tree.
  * 
  * @author andrew
@@ -15,6 +15,9 @@ public class TreeLinker {
     public final Object obj;
     public TreeLinker previous, nextLeft, nextRight;
     public double sortKey;
+    // the heap this linker is in (if it is in an EventHeap) and its position there
+    EventHeap heap;
+    int heapIndex;
 
     /**
      * Constructor throws exception if given atom is null.  Only
@@ -36,9 +39,14 @@ public class TreeLinker {
      * Disconnects this linker from the linkers above and below it, and
      * puts them in sequence, repairing the hole.  There is no indication 
      * in the linker itself that it is no longer part of the tree (unless 
-     * Debug is on).
+     * Debug is on).  If the linker is in an EventHeap, it is removed from
+     * the heap instead.
      */
     public void remove() {
+        if (heap != null) {
+            heap.remove(this);
+            return;
+        }
         TreeLinker newNext;
         if (nextRight == null) {
             newNext = nextLeft;
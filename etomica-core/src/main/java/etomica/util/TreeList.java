@@ -10,7 +10,9 @@ package etomica.util;
  * Objects are added with a sortKey, which determines how it is added
  * to the tree (left for objects with lower sort keys, right for objects
  * with higher sort keys).  The lowest event is always at the bottom on
- * the left.  Objects can be added and removed.
+ * the left.  Objects can be added and removed.  The shape of the tree (and
+ * the cost of operations) depends on the order in which objects are added;
+ * EventHeap does not have this problem.
  *
  * @author andrew
  */
@@ -21,7 +23,7 @@ package etomica.util;
  * an object that is not in the tree.  Do not taunt the tree.  Turning
  * on Debug will attempt to catch problems.
  */
-public class TreeList implements java.io.Serializable {
+public class TreeList implements EventQueue, java.io.Serializable {
 
     private static final long serialVersionUID = 1L;
     private TreeLinker head;
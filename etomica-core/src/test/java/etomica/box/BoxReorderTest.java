@@ -0,0 +1,68 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.box;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtom;
+import etomica.simulation.Simulation;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoxReorderTest {
+
+    private static Box makeBox(boolean arrayStorage) {
+        Simulation sim = new Simulation(Space3D.getInstance());
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, sim.getSpace());
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        Box box = sim.makeBox();
+        if (arrayStorage) box.enableArrayStorage();
+        box.setNMolecules(species, 6);
+        for (IAtom atom : box.getLeafList()) {
+            atom.getPosition().E(atom.getLeafIndex());
+        }
+        return box;
+    }
+
+    private static void checkReorder(Box box) {
+        AtomLeafAgentManager<String> agents = new AtomLeafAgentManager<>(a -> "atom" + a.getLeafIndex(), box);
+        IAtom[] atoms = box.getLeafList().toArray(new IAtom[0]);
+        // two cycles (0 1 3) and (2 4), with 5 fixed
+        int[] order = new int[]{3, 0, 4, 1, 2, 5};
+        box.reorderLeafAtoms(order);
+        for (int i = 0; i < order.length; i++) {
+            IAtom atom = box.getLeafList().get(i);
+            assertSame(atoms[order[i]], atom);
+            assertEquals(i, atom.getLeafIndex());
+            assertEquals("atom" + order[i], agents.getAgent(atom));
+            assertEquals(order[i], atom.getPosition().getX(0));
+        }
+        assertEquals(6, agents.getAgents().size());
+    }
+
+    @Test
+    void testReorder() {
+        checkReorder(makeBox(false));
+    }
+
+    @Test
+    void testReorderArrayStorage() {
+        Box box = makeBox(true);
+        checkReorder(box);
+        double[] data = box.getPositionStorage().getData();
+        for (int i = 0; i < 6; i++) {
+            assertEquals(box.getLeafList().get(i).getPosition().getX(1), data[3 * i + 1]);
+        }
+    }
+
+    @Test
+    void testNotPermutation() {
+        Box box = makeBox(false);
+        assertThrows(IllegalArgumentException.class, () -> box.reorderLeafAtoms(new int[]{0, 1, 1, 2, 3, 4}));
+    }
+}
@@ -0,0 +1,125 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataFunction;
+import etomica.data.types.DataGroup;
+import etomica.units.dimensions.Null;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccumulatorAutocorrelationMultiTauTest {
+
+    private static final int N = 1000;
+
+    private double[][] x;
+
+    /**
+     * Three components: white noise about 2, an AR(1) process and a constant
+     * offset plus an AR(1) process.
+     */
+    @BeforeEach
+    void setUp() {
+        RandomMersenneTwister random = new RandomMersenneTwister(4);
+        x = new double[N][3];
+        for (int t = 0; t < N; t++) {
+            x[t][0] = 2 + random.nextGaussian();
+            x[t][1] = t > 0 ? 0.9 * x[t - 1][1] + random.nextGaussian() : 0;
+            x[t][2] = t > 0 ? 0.5 * (x[t - 1][2] - 1) + 1 + random.nextGaussian() : 1;
+        }
+    }
+
+    private void run(AccumulatorAutocorrelationMultiTau acc) {
+        DataDoubleArray data = new DataDoubleArray(3);
+        acc.putDataInfo(new DataDoubleArray.DataInfoDoubleArray("x", Null.DIMENSION, new int[]{3}));
+        for (double[] xt : x) {
+            System.arraycopy(xt, 0, data.getData(), 0, 3);
+            acc.putData(data);
+        }
+    }
+
+    /**
+     * Autocorrelation of component k at lag j over all origins, minus the
+     * squared mean if requested.
+     */
+    private double autocorrelation(int k, int j, boolean subtractMean) {
+        double sum = 0, mean = 0;
+        for (int t = 0; t < N; t++) {
+            mean += x[t][k];
+            if (t + j < N) sum += x[t][k] * x[t + j][k];
+        }
+        mean /= N;
+        return sum / (N - j) - (subtractMean ? mean * mean : 0);
+    }
+
+    @Test
+    void testAllComponents() {
+        AccumulatorAutocorrelationMultiTau acc = new AccumulatorAutocorrelationMultiTau(4, 0.1);
+        assertNull(acc.getData());
+        DataGroup[] pushed = new DataGroup[1];
+        acc.getAvgErrFork().addDataSink(new IDataSink() {
+            public void putData(IData data) {
+                pushed[0] = (DataGroup) data;
+            }
+
+            public void putDataInfo(IDataInfo dataInfo) {
+            }
+        });
+        run(acc);
+
+        double[] y = ((DataFunction) acc.getData()).getData();
+        for (int j = 0; j < 16; j++) {
+            double expected = 0;
+            for (int k = 0; k < 3; k++) {
+                expected += autocorrelation(k, j, true);
+            }
+            assertEquals(expected / 3, y[j], 1e-10, "lag " + j);
+            assertEquals(0.1 * j, acc.getIndependentData(0).getValue(j), 1e-10);
+        }
+        assertSame(acc.getData(), pushed[0].getData(0));
+        assertSame(acc.getErrorData(), pushed[0].getData(1));
+        for (int i = 0; i < y.length; i++) {
+            assertFalse(Double.isNaN(acc.getErrorData().getValue(i)), "lag index " + i);
+        }
+
+        acc.setMaxLag(10);
+        y = ((DataFunction) acc.getData()).getData();
+        assertFalse(Double.isNaN(y[10]));
+        assertTrue(Double.isNaN(y[11]));
+        assertTrue(Double.isNaN(acc.getErrorData().getValue(11)));
+
+        acc.reset();
+        y = ((DataFunction) acc.getData()).getData();
+        assertTrue(Double.isNaN(y[0]));
+    }
+
+    @Test
+    void testComponents() {
+        AccumulatorAutocorrelationMultiTau acc = new AccumulatorAutocorrelationMultiTau(4, 1);
+        acc.setComponents(new int[]{2, 1}, new boolean[]{true, false});
+        run(acc);
+        assertArrayEquals(new int[]{2, 1}, acc.getComponents());
+
+        double[] y = ((DataFunction) acc.getData()).getData();
+        for (int j = 0; j < 16; j++) {
+            double expected = (autocorrelation(2, j, true) + autocorrelation(1, j, false)) / 2;
+            assertEquals(expected, y[j], 1e-10, "lag " + j);
+        }
+
+        // lags beyond the samples taken are NaN
+        acc.setNumLevels(8);
+        assertEquals(16 + 7 * 8, ((DataFunction) acc.getData()).getLength());
+        run(acc);
+        y = ((DataFunction) acc.getData()).getData();
+        assertFalse(Double.isNaN(y[16]));
+        assertTrue(Double.isNaN(y[y.length - 1]));
+
+        assertThrows(IllegalArgumentException.class, () -> acc.setComponents(new int[]{0}, new boolean[0]));
+    }
+}
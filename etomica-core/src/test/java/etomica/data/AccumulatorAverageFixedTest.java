@@ -62,4 +62,50 @@ class AccumulatorAverageFixedTest {
         double error = accData.getValue(accumulator.ERROR.index);
         Assertions.assertTrue(error / 1.35e-4 + 1.35e-4 / error - 2 < 0.02, "error " + error);
     }
+
+    @Test
+    public void testMerge() {
+        DataDouble.DataInfoDouble dataInfo = new DataDouble.DataInfoDouble("test", Null.DIMENSION);
+        AccumulatorAverageFixed all = new AccumulatorAverageFixed(10);
+        all.putDataInfo(dataInfo);
+        AccumulatorAverageFixed[] walkers = new AccumulatorAverageFixed[2];
+        DataDouble rawData = new DataDouble();
+        RandomMersenneTwister rng = new RandomMersenneTwister(5);
+        for (int j=0; j<2; j++) {
+            walkers[j] = new AccumulatorAverageFixed(10);
+            walkers[j].putDataInfo(dataInfo);
+            // the first walker ends on a block boundary, so all sees the same blocks
+            for (int i=0; i<(j==0 ? 100000 : 100005); i++) {
+                rawData.x = 0.5 + (rawData.x-0.5)*0.95 + (rng.nextDouble() - 0.5)*0.05;
+                walkers[j].putData(rawData);
+                all.putData(rawData);
+            }
+        }
+
+        AccumulatorAverageFixed merged = new AccumulatorAverageFixed(10);
+        merged.putDataInfo(dataInfo);
+        merged.merge(walkers[0]);
+        IData data0 = walkers[0].getData();
+        IData mergedData = merged.getData();
+        for (int i=0; i<5; i++) {
+            Assertions.assertEquals(data0.getValue(i), mergedData.getValue(i), 1e-12);
+        }
+
+        merged.merge(walkers[1]);
+        Assertions.assertEquals(all.getBlockCount(), merged.getBlockCount());
+        Assertions.assertEquals(all.getSampleCount(), merged.getSampleCount());
+        IData allData = all.getData();
+        mergedData = merged.getData();
+        Assertions.assertEquals(allData.getValue(all.AVERAGE.index), mergedData.getValue(merged.AVERAGE.index), 1e-12);
+        Assertions.assertEquals(allData.getValue(all.STANDARD_DEVIATION.index), mergedData.getValue(merged.STANDARD_DEVIATION.index), 1e-12);
+        // only the pair of blocks spanning the two walkers differs
+        double allCorrelation = allData.getValue(all.BLOCK_CORRELATION.index);
+        double mergedCorrelation = mergedData.getValue(merged.BLOCK_CORRELATION.index);
+        Assertions.assertEquals(allCorrelation, mergedCorrelation, 1e-3);
+        Assertions.assertEquals(allData.getValue(all.ERROR.index), mergedData.getValue(merged.ERROR.index), 1e-3 * allData.getValue(all.ERROR.index));
+
+        AccumulatorAverageFixed wrongSize = new AccumulatorAverageFixed(20);
+        wrongSize.putDataInfo(dataInfo);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> wrongSize.merge(walkers[0]));
+    }
 }
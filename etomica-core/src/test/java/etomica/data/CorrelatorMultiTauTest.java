@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CorrelatorMultiTauTest {
+
+    @Test
+    void testLags() {
+        CorrelatorMultiTau correlator = new CorrelatorMultiTau(1, 3);
+        assertEquals(32, correlator.getNumLags());
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, correlator.getLag(i));
+        }
+        assertEquals(16, correlator.getLag(16));
+        assertEquals(30, correlator.getLag(23));
+        assertEquals(32, correlator.getLag(24));
+        assertEquals(60, correlator.getLag(31));
+    }
+
+    @Test
+    void testShortLagsAreExact() {
+        RandomMersenneTwister random = new RandomMersenneTwister(1);
+        int n = 1000;
+        double[][] x = new double[n][2];
+        for (int t = 0; t < n; t++) {
+            x[t][0] = random.nextGaussian();
+            x[t][1] = t > 0 ? 0.9 * x[t - 1][1] + random.nextGaussian() : 0;
+        }
+        CorrelatorMultiTau correlator = new CorrelatorMultiTau(2, 4);
+        for (double[] xt : x) {
+            correlator.addSample(xt);
+        }
+        for (int j = 0; j < 16; j++) {
+            for (int k = 0; k < 2; k++) {
+                double sum = 0;
+                for (int t = 0; t + j < n; t++) {
+                    sum += x[t][k] * x[t + j][k];
+                }
+                assertEquals(n - j, correlator.getCount(j));
+                assertEquals(sum / (n - j), correlator.getCorrelation(j, k), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    void testLongLags() {
+        // a slowly varying signal is hardly changed by averaging
+        double period = 2000;
+        CorrelatorMultiTau correlator = new CorrelatorMultiTau(1, 6);
+        double[] x = new double[1];
+        for (int t = 0; t < 100000; t++) {
+            x[0] = Math.sin(2 * Math.PI * t / period);
+            correlator.addSample(x);
+        }
+        for (int i = 16; i < correlator.getNumLags(); i++) {
+            double expected = 0.5 * Math.cos(2 * Math.PI * correlator.getLag(i) / period);
+            assertEquals(expected, correlator.getCorrelation(i, 0), 0.01, "lag " + correlator.getLag(i));
+        }
+        assertEquals(0, correlator.getMean(0), 0.01);
+        assertEquals(0, correlator.getCorrelationError(0), 0.01);
+    }
+}
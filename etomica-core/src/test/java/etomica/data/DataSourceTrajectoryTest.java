@@ -0,0 +1,167 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.chem.elements.ElementSimple;
+import etomica.data.types.DataFunction;
+import etomica.simulation.Simulation;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSourceTrajectoryTest {
+
+    private static final double L = 4;
+    private static final int N_SAMPLES = 256;
+
+    private Box box;
+    private AtomType typeA;
+    private double[][][] x;
+
+    /**
+     * Random walk of 15 A and 5 B atoms through the periodic boundaries.
+     */
+    @BeforeEach
+    void setUp() {
+        Simulation sim = new Simulation(Space3D.getInstance());
+        typeA = new AtomType(new ElementSimple("A"));
+        SpeciesSpheresMono speciesA = new SpeciesSpheresMono(sim.getSpace(), typeA);
+        SpeciesSpheresMono speciesB = new SpeciesSpheresMono(sim.getSpace(), new AtomType(new ElementSimple("B")));
+        sim.addSpecies(speciesA);
+        sim.addSpecies(speciesB);
+        box = sim.makeBox();
+        box.setNMolecules(speciesA, 15);
+        box.setNMolecules(speciesB, 5);
+        box.getBoundary().setBoxSize(Vector.of(L, L, L));
+        int n = box.getLeafList().size();
+
+        x = new double[N_SAMPLES][n][3];
+        RandomMersenneTwister random = new RandomMersenneTwister(3);
+        for (int t = 1; t < N_SAMPLES; t++) {
+            for (int i = 0; i < n; i++) {
+                for (int k = 0; k < 3; k++) {
+                    x[t][i][k] = x[t - 1][i][k] + 0.5 * (random.nextDouble() - 0.5);
+                }
+            }
+        }
+    }
+
+    private void run(TrajectoryStorage storage) {
+        IAtomList atoms = box.getLeafList();
+        for (int t = 0; t < N_SAMPLES; t++) {
+            for (int i = 0; i < atoms.size(); i++) {
+                Vector p = atoms.get(i).getPosition();
+                p.E(x[t][i]);
+                p.PE(box.getBoundary().centralImage(p));
+            }
+            storage.sample(0.5 * t);
+        }
+    }
+
+    /**
+     * Fs from the true trajectory, averaged over origins that are multiples
+     * of the lag, for the atoms of the given type (or all atoms).
+     */
+    private double fs(double[] q, int lag, AtomType type) {
+        IAtomList atoms = box.getLeafList();
+        double sum = 0;
+        int m = 0;
+        for (int t = lag; t < N_SAMPLES; t += lag) {
+            double s = 0;
+            int n = 0;
+            for (int i = 0; i < atoms.size(); i++) {
+                if (type != null && atoms.get(i).getType() != type) continue;
+                double qdr = 0;
+                for (int k = 0; k < 3; k++) {
+                    qdr += q[k] * (x[t][i][k] - x[t - lag][i][k]);
+                }
+                s += Math.cos(qdr);
+                n++;
+            }
+            sum += s / n;
+            m++;
+        }
+        return m == 0 ? Double.NaN : sum / m;
+    }
+
+    @Test
+    void testFs() {
+        TrajectoryStorage storage = new TrajectoryStorage(box, 1, 10);
+        double[] q = {3, 1, 0.5};
+        DataSourceTrajectoryFs meterFs = new DataSourceTrajectoryFs(storage, Vector.of(q));
+        DataSourceTrajectoryFs meterFsA = new DataSourceTrajectoryFs(storage, Vector.of(q));
+        meterFsA.setAtomType(typeA);
+        run(storage);
+
+        double[] y = ((DataFunction) meterFs.getData()).getData();
+        double[] yA = ((DataFunction) meterFsA.getData()).getData();
+        for (int j = 0; j < 10; j++) {
+            int lag = 1 << j;
+            double expected = fs(q, lag, null);
+            if (Double.isNaN(expected)) {
+                assertTrue(Double.isNaN(y[j]));
+                assertTrue(Double.isNaN(yA[j]));
+                continue;
+            }
+            assertEquals(expected, y[j], 1e-10, "lag " + lag);
+            assertEquals(fs(q, lag, typeA), yA[j], 1e-10, "lag " + lag);
+            assertEquals(0.5 * lag, meterFs.getIndependentData(0).getValue(j), 1e-10);
+        }
+        // displacements of one sample are small compared to 1/q
+        assertTrue(y[0] > 0.5);
+        assertTrue(y[0] > y[6]);
+
+        meterFs.reset();
+        assertTrue(Double.isNaN(((DataFunction) meterFs.getData()).getValue(0)));
+    }
+
+    @Test
+    void testF() {
+        TrajectoryStorage storage = new TrajectoryStorage(box, 1, 10);
+        // q must be commensurate with the box for rho_q to be periodic
+        double[] q = {2 * Math.PI / L, 0, 2 * 2 * Math.PI / L};
+        DataSourceTrajectoryF meterF = new DataSourceTrajectoryF(storage, Vector.of(q), 3);
+        run(storage);
+
+        int n = box.getLeafList().size();
+        double[][] rhoq = new double[N_SAMPLES][2];
+        for (int t = 0; t < N_SAMPLES; t++) {
+            for (int i = 0; i < n; i++) {
+                double qr = 0;
+                for (int k = 0; k < 3; k++) {
+                    qr += q[k] * x[t][i][k];
+                }
+                rhoq[t][0] += Math.cos(qr);
+                rhoq[t][1] += Math.sin(qr);
+            }
+        }
+
+        // lags below 16 are computed without averaging, so they are exact
+        double[] y = ((DataFunction) meterF.getData()).getData();
+        double f0 = 0;
+        for (int t = 0; t < N_SAMPLES; t++) {
+            f0 += rhoq[t][0] * rhoq[t][0] + rhoq[t][1] * rhoq[t][1];
+        }
+        f0 /= N_SAMPLES;
+        for (int j = 0; j < 16; j++) {
+            double sum = 0;
+            for (int t = 0; t + j < N_SAMPLES; t++) {
+                sum += rhoq[t][0] * rhoq[t + j][0] + rhoq[t][1] * rhoq[t + j][1];
+            }
+            assertEquals(sum / (N_SAMPLES - j) / f0, y[j], 1e-10, "lag " + j);
+            assertEquals(0.5 * j, meterF.getIndependentData(0).getValue(j), 1e-10);
+        }
+        assertEquals(1, y[0], 1e-12);
+        assertEquals(60 * 0.5, meterF.getIndependentData(0).getValue(y.length - 1), 1e-10);
+    }
+}
@@ -0,0 +1,97 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.chem.elements.ElementSimple;
+import etomica.data.types.DataFunction;
+import etomica.simulation.Simulation;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrajectoryStorageTest {
+
+    /**
+     * Moves atoms randomly through the periodic boundaries and checks the
+     * MSD against the MSD computed from the true (unwrapped) trajectory.
+     */
+    private static void checkRandomWalk(File mappedFileDirectory) {
+        Simulation sim = new Simulation(Space3D.getInstance());
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim.getSpace(), new AtomType(new ElementSimple("A")));
+        sim.addSpecies(species);
+        Box box = sim.makeBox();
+        box.setNMolecules(species, 20);
+        box.getBoundary().setBoxSize(Vector.of(4, 4, 4));
+        IAtomList atoms = box.getLeafList();
+        int n = atoms.size();
+
+        int nSamples = 256;
+        double[][][] x = new double[nSamples][n][3];
+        RandomMersenneTwister random = new RandomMersenneTwister(2);
+        for (int t = 1; t < nSamples; t++) {
+            for (int i = 0; i < n; i++) {
+                for (int k = 0; k < 3; k++) {
+                    x[t][i][k] = x[t - 1][i][k] + 0.5 * (random.nextDouble() - 0.5);
+                }
+            }
+        }
+
+        TrajectoryStorage storage = new TrajectoryStorage(box, 1, 10);
+        storage.setMappedFileDirectory(mappedFileDirectory);
+        DataSourceTrajectoryMSD msd = new DataSourceTrajectoryMSD(storage);
+        for (int t = 0; t < nSamples; t++) {
+            for (int i = 0; i < n; i++) {
+                Vector p = atoms.get(i).getPosition();
+                p.E(x[t][i]);
+                p.PE(box.getBoundary().centralImage(p));
+            }
+            storage.sample(t);
+            assertTrue(storage.getFrameCount() <= 10);
+        }
+
+        double[] y = ((DataFunction) msd.getData()).getData();
+        for (int j = 0; j < 10; j++) {
+            int lag = 1 << j;
+            double sum = 0;
+            int m = 0;
+            for (int t = lag; t < nSamples; t += lag) {
+                for (int i = 0; i < n; i++) {
+                    for (int k = 0; k < 3; k++) {
+                        double d = x[t][i][k] - x[t - lag][i][k];
+                        sum += d * d;
+                    }
+                }
+                m++;
+            }
+            if (m == 0) {
+                assertTrue(Double.isNaN(y[j]));
+            }
+            else {
+                assertEquals(sum / (m * n), y[j], 1e-10, "lag " + lag);
+            }
+            assertEquals(lag, msd.getIndependentData(0).getValue(j), 1e-10);
+        }
+        storage.setMappedFileDirectory(null);
+    }
+
+    @Test
+    void testHeap() {
+        checkRandomWalk(null);
+    }
+
+    @Test
+    void testMapped() {
+        checkRandomWalk(new File(System.getProperty("java.io.tmpdir")));
+    }
+}
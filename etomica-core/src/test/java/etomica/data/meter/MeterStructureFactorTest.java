@@ -0,0 +1,118 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.chem.elements.ElementSimple;
+import etomica.data.IData;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeterStructureFactorTest {
+
+    private Box box;
+    private AtomType typeA, typeB;
+
+    @BeforeEach
+    void setUp() {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        typeA = new AtomType(new ElementSimple("A"));
+        typeB = new AtomType(new ElementSimple("B"));
+        SpeciesSpheresMono speciesA = new SpeciesSpheresMono(space, typeA);
+        SpeciesSpheresMono speciesB = new SpeciesSpheresMono(space, typeB);
+        sim.addSpecies(speciesA);
+        sim.addSpecies(speciesB);
+        box = sim.makeBox();
+        box.getBoundary().setBoxSize(Vector.of(6, 7, 8));
+        box.setNMolecules(speciesA, 40);
+        box.setNMolecules(speciesB, 20);
+        RandomMersenneTwister random = new RandomMersenneTwister(5);
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < atoms.size(); i++) {
+            Vector p = atoms.get(i).getPosition();
+            for (int k = 0; k < 3; k++) {
+                p.setX(k, (random.nextDouble() - 0.5) * box.getBoundary().getBoxSize().getX(k));
+            }
+        }
+    }
+
+    /**
+     * Checks the meter against |sum_j exp(i f_j q.r_j)|^2 / N^2, with f_j
+     * the factor for atom j's type, as the meter computed it directly.
+     */
+    private void check(MeterStructureFactor meter, double fA, double fB) {
+        IAtomList atoms = box.getLeafList();
+        int n = atoms.size();
+        IData data = meter.getData();
+        Vector[] waveVec = meter.waveVec;
+        assertTrue(waveVec.length > 10);
+        for (int k = 0; k < waveVec.length; k++) {
+            double c = 0, s = 0;
+            for (int i = 0; i < n; i++) {
+                IAtom atom = atoms.get(i);
+                double f = atom.getType() == typeA ? fA : fB;
+                double qr = f * waveVec[k].dot(atom.getPosition());
+                c += Math.cos(qr);
+                s += Math.sin(qr);
+            }
+            assertEquals((c * c + s * s) / ((double) n * n), data.getValue(k), 1e-12);
+        }
+    }
+
+    @Test
+    void testNoFactors() {
+        MeterStructureFactor meter = new MeterStructureFactor(box.getSpace(), box, 3);
+        check(meter, 1, 1);
+        meter.setAtomTypeFactor(typeB, 1);
+        check(meter, 1, 1);
+    }
+
+    @Test
+    void testFactorScalesPhase() {
+        MeterStructureFactor meter = new MeterStructureFactor(box.getSpace(), box, 3);
+        meter.setAtomTypeFactor(typeB, -1);
+        check(meter, 1, -1);
+        meter.setNumThreads(3);
+        check(meter, 1, -1);
+        meter.setAtomTypeFactor(typeA, 0.5);
+        meter.setAtomTypeFactor(typeB, 2);
+        check(meter, 0.5, 2);
+        meter.setAtomTypeFactor(typeB, 0);
+        check(meter, 0.5, 0);
+    }
+
+    @Test
+    void testAmplitude() {
+        MeterStructureFactor meter = new MeterStructureFactor(box.getSpace(), box, 3);
+        meter.setAtomTypeAmplitude(typeB, -1);
+        IAtomList atoms = box.getLeafList();
+        int n = atoms.size();
+        IData data = meter.getData();
+        Vector[] waveVec = meter.waveVec;
+        for (int k = 0; k < waveVec.length; k++) {
+            double c = 0, s = 0;
+            for (int i = 0; i < n; i++) {
+                IAtom atom = atoms.get(i);
+                double a = atom.getType() == typeA ? 1 : -1;
+                double qr = waveVec[k].dot(atom.getPosition());
+                c += a * Math.cos(qr);
+                s += a * Math.sin(qr);
+            }
+            assertEquals((c * c + s * s) / ((double) n * n), data.getValue(k), 1e-12);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.chem.elements.ElementSimple;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space2d.Space2D;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StructureFactorCalculatorTest {
+
+    private static Box makeBox(Space space, Vector size, int nAtoms) {
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(space, new AtomType(new ElementSimple("A")));
+        sim.addSpecies(species);
+        Box box = sim.makeBox();
+        box.getBoundary().setBoxSize(size);
+        box.setNMolecules(species, nAtoms);
+        RandomMersenneTwister random = new RandomMersenneTwister(3);
+        for (int i = 0; i < nAtoms; i++) {
+            Vector p = box.getLeafList().get(i).getPosition();
+            for (int k = 0; k < space.D(); k++) {
+                p.setX(k, (random.nextDouble() - 0.5) * size.getX(k));
+            }
+        }
+        return box;
+    }
+
+    /**
+     * Checks the calculator against cos/sin sums for the wave vectors of
+     * MeterStructureFactor, and returns the largest error of the FFT result
+     * relative to sqrt(N).
+     */
+    private static double check(Box box, double cutoff) {
+        IAtomList atoms = box.getLeafList();
+        int n = atoms.size();
+        int D = box.getSpace().D();
+        Vector[] waveVec = new MeterStructureFactor(box.getSpace(), box, cutoff).waveVec;
+        int nK = waveVec.length;
+        double[] r = new double[n * D];
+        double[] f = new double[n];
+        RandomMersenneTwister random = new RandomMersenneTwister(4);
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < D; k++) {
+                r[i * D + k] = atoms.get(i).getPosition().getX(k);
+            }
+            f[i] = random.nextDouble();
+        }
+        double[] c = new double[nK], s = new double[nK];
+        for (int k = 0; k < nK; k++) {
+            for (int i = 0; i < n; i++) {
+                double qr = waveVec[k].dot(atoms.get(i).getPosition());
+                c[k] += f[i] * Math.cos(qr);
+                s[k] += f[i] * Math.sin(qr);
+            }
+        }
+
+        StructureFactorCalculator calculator = new StructureFactorCalculator(D);
+        calculator.setWaveVectors(waveVec, box.getBoundary());
+        assertTrue(calculator.isCommensurate());
+        double[] re = new double[nK], im = new double[nK];
+        for (int nThreads : new int[]{1, 3}) {
+            calculator.setNumThreads(nThreads);
+            calculator.calculate(r, f, re, im);
+            for (int k = 0; k < nK; k++) {
+                assertEquals(c[k], re[k], 1e-9);
+                assertEquals(s[k], im[k], 1e-9);
+            }
+        }
+
+        calculator.setUseFFT(true);
+        calculator.calculate(r, f, re, im);
+        double maxErr = 0;
+        for (int k = 0; k < nK; k++) {
+            maxErr = Math.max(maxErr, Math.hypot(re[k] - c[k], im[k] - s[k]));
+        }
+        return maxErr / Math.sqrt(n);
+    }
+
+    @Test
+    void test3D() {
+        double err = check(makeBox(Space3D.getInstance(), Vector.of(5.0, 6.0, 7.0), 200), 6);
+        assertTrue(err < 0.02, "FFT error " + err);
+    }
+
+    @Test
+    void test2D() {
+        double err = check(makeBox(Space2D.getInstance(), Vector.of(10.0, 8.0), 200), 8);
+        assertTrue(err < 0.02, "FFT error " + err);
+    }
+
+    @Test
+    void testIncommensurate() {
+        Box box = makeBox(Space3D.getInstance(), Vector.of(5.0, 5.0, 5.0), 50);
+        Vector q = Vector.of(7.0, 0.0, 0.0);
+        StructureFactorCalculator calculator = new StructureFactorCalculator(3);
+        calculator.setWaveVectors(new Vector[]{q}, box.getBoundary());
+        assertFalse(calculator.isCommensurate());
+        double[] re = new double[1], im = new double[1];
+        calculator.calculate(box.getLeafList(), new double[0], re, im);
+        double c = 0, s = 0;
+        for (int i = 0; i < 50; i++) {
+            double qr = q.dot(box.getLeafList().get(i).getPosition());
+            c += Math.cos(qr);
+            s += Math.sin(qr);
+        }
+        assertEquals(c, re[0], 1e-10);
+        assertEquals(s, im[0], 1e-10);
+    }
+}
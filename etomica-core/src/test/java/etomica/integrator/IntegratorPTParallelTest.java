@@ -0,0 +1,115 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator;
+
+import etomica.atom.AtomType;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.PotentialMasterMonatomic;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.space3d.Vector3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IntegratorPTParallelTest {
+
+    private static final int nReplicas = 4;
+
+    private static IntegratorPT makePT(int numThreads) {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        IntegratorPT pt = new IntegratorPT(new RandomMersenneTwister(1), space);
+        pt.setGlobalMoveInterval(20);
+        pt.setNumThreads(numThreads);
+        for (int i = 0; i < nReplicas; i++) {
+            Box box = sim.makeBox();
+            box.getBoundary().setBoxSize(new Vector3D(6, 6, 6));
+            box.setNMolecules(species, 108);
+            new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+            // each replica gets its own potential master and random number generator
+            PotentialMasterMonatomic potentialMaster = new PotentialMasterMonatomic(sim);
+            AtomType type = species.getLeafType();
+            potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5), new AtomType[]{type, type});
+            RandomMersenneTwister random = new RandomMersenneTwister(100 + i);
+            IntegratorMC integrator = new IntegratorMC(potentialMaster, random, 1.0 + 0.2 * i, box);
+            integrator.getMoveManager().addMCMove(new MCMoveAtom(random, potentialMaster, space));
+            pt.addIntegrator(integrator);
+        }
+        pt.reset();
+        return pt;
+    }
+
+    private static double[] positions(IntegratorPT pt) {
+        Integrator[] integrators = pt.getIntegrators();
+        int n = ((IntegratorBox) integrators[0]).getBox().getLeafList().size();
+        double[] x = new double[3 * n * integrators.length];
+        for (int i = 0; i < integrators.length; i++) {
+            Box box = ((IntegratorBox) integrators[i]).getBox();
+            for (int j = 0; j < n; j++) {
+                for (int k = 0; k < 3; k++) {
+                    x[3 * (i * n + j) + k] = box.getLeafList().get(j).getPosition().getX(k);
+                }
+            }
+        }
+        return x;
+    }
+
+    @Test
+    void testMatchesSerial() {
+        IntegratorPT parallel = makePT(3);
+        for (int i = 0; i < 2000; i++) {
+            parallel.doStep();
+        }
+        long replicaSteps = parallel.getIntegrators()[0].getStepCount();
+
+        // the serial run must take the same number of replica steps; the
+        // parallel replicas may have run ahead of the manager
+        IntegratorPT serial = makePT(1);
+        while (serial.getIntegrators()[0].getStepCount() < replicaSteps) {
+            serial.doStep();
+        }
+        for (Integrator integrator : parallel.getIntegrators()) {
+            assertEquals(replicaSteps, integrator.getStepCount());
+        }
+        assertArrayEquals(positions(serial), positions(parallel));
+        assertEquals(((IntegratorBox) serial.getIntegrators()[2]).getPotentialEnergy(),
+                ((IntegratorBox) parallel.getIntegrators()[2]).getPotentialEnergy());
+    }
+
+    @Test
+    void testSharedRandom() {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        PotentialMasterMonatomic potentialMaster = new PotentialMasterMonatomic(sim);
+        RandomMersenneTwister random = new RandomMersenneTwister(2);
+        IntegratorPT pt = new IntegratorPT(new RandomMersenneTwister(1), space);
+        pt.addIntegrator(new IntegratorMC(potentialMaster, random, 1.0, sim.makeBox()));
+        pt.addIntegrator(new IntegratorMC(potentialMaster, random, 1.2, sim.makeBox()));
+        assertThrows(IllegalStateException.class, () -> pt.setNumThreads(2));
+        assertEquals(1, pt.getNumThreads());
+
+        IntegratorPT pt2 = new IntegratorPT(new RandomMersenneTwister(1), space);
+        pt2.setNumThreads(2);
+        pt2.addIntegrator(new IntegratorMC(potentialMaster, random, 1.0, sim.makeBox()));
+        assertThrows(IllegalArgumentException.class,
+                () -> pt2.addIntegrator(new IntegratorMC(potentialMaster, random, 1.2, sim.makeBox())));
+        assertEquals(1, pt2.getIntegrators().length);
+    }
+}
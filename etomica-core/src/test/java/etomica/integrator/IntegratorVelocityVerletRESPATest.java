@@ -0,0 +1,355 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomKinetic;
+import etomica.atom.IAtomList;
+import etomica.atom.iterator.ApiBuilder;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.config.ConformationLinear;
+import etomica.data.meter.MeterKineticEnergy;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.lattice.LatticeCubicSimple;
+import etomica.models.water.ConformationWater3P;
+import etomica.models.water.P2WaterSPC;
+import etomica.models.water.SpeciesWater3P;
+import etomica.molecule.IMolecule;
+import etomica.potential.*;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.RotationTensor3D;
+import etomica.space3d.Space3D;
+import etomica.species.ISpecies;
+import etomica.species.SpeciesSpheres;
+import etomica.units.Electron;
+import etomica.units.Kelvin;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs LJ dimers with stiff harmonic bonds, splitting the bonds (fast) from
+ * the intermolecular LJ interactions (slow), and rigid SPC water with
+ * constrained bonds.
+ */
+class IntegratorVelocityVerletRESPATest {
+
+    Space space;
+    Simulation sim;
+    Box box;
+    PotentialMaster pmAll, pmBonds, pmLJ;
+
+    @BeforeEach
+    void setUp() {
+        space = Space3D.getInstance();
+        sim = new Simulation(space);
+        SpeciesSpheres species = new SpeciesSpheres(sim, space, 2);
+        species.setIsDynamic(true);
+        ((ConformationLinear) species.getConformation()).setBondLength(1.0);
+        sim.addSpecies(species);
+        box = sim.makeBox();
+        box.getBoundary().setBoxSize(Vector.of(6.5, 6.5, 6.5));
+        box.setNMolecules(species, 64);
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+
+        pmAll = new PotentialMaster();
+        pmBonds = new PotentialMaster();
+        pmLJ = new PotentialMaster();
+        P2Harmonic p2Bond = new P2Harmonic(space, 1000, 1.0);
+        P2SoftSphericalTruncatedForceShifted p2LJ = new P2SoftSphericalTruncatedForceShifted(space, new P2LennardJones(space), 2.5);
+        AtomType type = species.getLeafType();
+        for (PotentialMaster pm : new PotentialMaster[]{pmAll, pmBonds}) {
+            PotentialGroup pGroup = pm.makePotentialGroup(1);
+            pGroup.addPotential(p2Bond, ApiBuilder.makeAdjacentPairIterator());
+            pm.addPotential(pGroup, new ISpecies[]{species});
+        }
+        for (PotentialMaster pm : new PotentialMaster[]{pmAll, pmLJ}) {
+            pm.addPotential(p2LJ, new AtomType[]{type, type});
+            pm.lrcMaster().setEnabled(false);
+        }
+    }
+
+    @Test
+    void testSingleStepMatchesVelocityVerlet() {
+        double dt = 0.002;
+        IntegratorVelocityVerletRESPA respa = new IntegratorVelocityVerletRESPA(pmAll, new RandomMersenneTwister(1), dt, 1.0, box);
+        respa.addLevel(pmBonds, 1);
+        respa.addLevel(pmLJ, 1);
+        respa.reset();
+        IAtomList atoms = box.getLeafList();
+        Vector[] r0 = new Vector[atoms.size()], v0 = new Vector[atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            r0[i] = space.makeVector();
+            r0[i].E(atoms.get(i).getPosition());
+            v0[i] = space.makeVector();
+            v0[i].E(((IAtomKinetic) atoms.get(i)).getVelocity());
+        }
+        for (int i = 0; i < 50; i++) {
+            respa.doStep();
+        }
+        Vector[] r1 = new Vector[atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            r1[i] = space.makeVector();
+            r1[i].E(atoms.get(i).getPosition());
+            atoms.get(i).getPosition().E(r0[i]);
+        }
+
+        IntegratorVelocityVerlet vv = new IntegratorVelocityVerlet(pmAll, new RandomMersenneTwister(1), dt, 1.0, box);
+        vv.reset();
+        for (int i = 0; i < atoms.size(); i++) {
+            ((IAtomKinetic) atoms.get(i)).getVelocity().E(v0[i]);
+        }
+        for (int i = 0; i < 50; i++) {
+            vv.doStep();
+        }
+        for (int i = 0; i < atoms.size(); i++) {
+            assertTrue(Math.sqrt(r1[i].Mv1Squared(atoms.get(i).getPosition())) < 1e-10);
+        }
+        Vector f = space.makeVector();
+        for (int i = 0; i < atoms.size(); i++) {
+            f.E(respa.getLevelAgentManager(0).getAgent(atoms.get(i)));
+            f.PE(respa.getLevelAgentManager(1).getAgent(atoms.get(i)));
+            assertTrue(Math.sqrt(f.Mv1Squared(respa.getAgentManager().getAgent(atoms.get(i)))) < 1e-10);
+        }
+    }
+
+    @Test
+    void testEnergyConservation() {
+        IntegratorVelocityVerletRESPA respa = new IntegratorVelocityVerletRESPA(pmAll, new RandomMersenneTwister(2), 0.01, 1.0, box);
+        respa.addLevel(pmBonds, 1);
+        respa.addLevel(pmLJ, 4);
+        respa.reset();
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(pmAll, box);
+        MeterKineticEnergy meterKE = new MeterKineticEnergy(box);
+        double e0 = meterPE.getDataAsScalar() + meterKE.getDataAsScalar();
+        double maxDev = 0;
+        for (int i = 0; i < 1000; i++) {
+            respa.doStep();
+            double e = meterPE.getDataAsScalar() + meterKE.getDataAsScalar();
+            maxDev = Math.max(maxDev, Math.abs(e - e0));
+        }
+        // with a single time step of 0.01, the deviation is about 3 times larger
+        assertTrue(maxDev / box.getLeafList().size() < 0.006, "energy deviation " + maxDev);
+        assertEquals(1000 * 0.01, respa.getCurrentTime(), 1e-9);
+    }
+
+    private static final double lOH = ConformationWater3P.bondLengthOH;
+    private static final double lHH = Math.sqrt(2 * lOH * lOH * (1 - Math.cos(ConformationWater3P.angleHOH)));
+    private static final int[][] waterBonds = {{0, 2}, {1, 2}, {0, 1}};
+
+    /**
+     * 64 SPC water molecules at 1 g/cm^3.  The intermolecular LJ and charge
+     * interactions are truncated at 6 A (atom-based) and force-shifted so
+     * that the energy is conserved.
+     */
+    private static class WaterSystem {
+        final Simulation sim;
+        final SpeciesWater3P species;
+        final Box box;
+        final PotentialMaster pmAll, pmLJ, pmCharge;
+
+        WaterSystem() {
+            Space space = Space3D.getInstance();
+            sim = new Simulation(space);
+            species = new SpeciesWater3P(space, true);
+            sim.addSpecies(species);
+            box = sim.makeBox();
+            box.setNMolecules(species, 64);
+            double l = Math.cbrt(64 / 0.0334);
+            box.getBoundary().setBoxSize(Vector.of(l, l, l));
+            new ConfigurationLattice(new LatticeCubicSimple(space), space).initializeCoordinates(box);
+            // orient the molecules randomly, so that hydrogens of neighbors
+            // are not lined up next to each other
+            RandomMersenneTwister random = new RandomMersenneTwister(7);
+            RotationTensor3D rotation = new RotationTensor3D();
+            Vector axis = space.makeVector();
+            Vector dr = space.makeVector();
+            for (int i = 0; i < box.getMoleculeList().size(); i++) {
+                IAtomList atoms = box.getMoleculeList().get(i).getChildList();
+                axis.setRandomSphere(random);
+                rotation.setRotationAxis(axis, 2 * Math.PI * random.nextDouble());
+                Vector o = atoms.get(SpeciesWater3P.indexO).getPosition();
+                for (int j : new int[]{SpeciesWater3P.indexH1, SpeciesWater3P.indexH2}) {
+                    Vector h = atoms.get(j).getPosition();
+                    dr.Ev1Mv2(h, o);
+                    rotation.transform(dr);
+                    h.Ev1Pv2(o, dr);
+                }
+            }
+
+            pmAll = new PotentialMaster();
+            pmLJ = new PotentialMaster();
+            pmCharge = new PotentialMaster();
+            AtomType oType = species.getOxygenType();
+            AtomType hType = species.getHydrogenType();
+            P2WaterSPC p2SPC = new P2WaterSPC(space);
+            P2LennardJones p2LJ = new P2LennardJones(space, p2SPC.getSigma(), p2SPC.getEpsilon());
+            double qO = Electron.UNIT.toSim(-0.82);
+            double qH = Electron.UNIT.toSim(0.41);
+            for (PotentialMaster pm : new PotentialMaster[]{pmAll, pmLJ}) {
+                PotentialGroup pGroup = pm.makePotentialGroup(2);
+                pGroup.addPotential(new P2SoftSphericalTruncatedForceShifted(space, p2LJ, 6), ApiBuilder.makeIntergroupTypeIterator(new AtomType[]{oType, oType}));
+                pm.addPotential(pGroup, new ISpecies[]{species, species});
+            }
+            for (PotentialMaster pm : new PotentialMaster[]{pmAll, pmCharge}) {
+                PotentialGroup pGroup = pm.makePotentialGroup(2);
+                AtomType[][] pairs = {{oType, oType}, {oType, hType}, {hType, oType}, {hType, hType}};
+                for (AtomType[] pair : pairs) {
+                    P2Electrostatic p2Q = new P2Electrostatic(space);
+                    p2Q.setCharge1(pair[0] == oType ? qO : qH);
+                    p2Q.setCharge2(pair[1] == oType ? qO : qH);
+                    pGroup.addPotential(new P2SoftSphericalTruncatedForceShifted(space, p2Q, 6), ApiBuilder.makeIntergroupTypeIterator(pair));
+                }
+                pm.addPotential(pGroup, new ISpecies[]{species, species});
+            }
+        }
+
+        /**
+         * Checks that each bond has its constrained length and that the atoms
+         * of each bond do not move apart or together.
+         */
+        void checkConstraints() {
+            Vector dr = box.getSpace().makeVector();
+            Vector dv = box.getSpace().makeVector();
+            double[] lengths = {lOH, lOH, lHH};
+            for (int i = 0; i < box.getMoleculeList().size(); i++) {
+                IMolecule molecule = box.getMoleculeList().get(i);
+                IAtomList atoms = molecule.getChildList();
+                for (int j = 0; j < waterBonds.length; j++) {
+                    IAtomKinetic a0 = (IAtomKinetic) atoms.get(waterBonds[j][0]);
+                    IAtomKinetic a1 = (IAtomKinetic) atoms.get(waterBonds[j][1]);
+                    dr.Ev1Mv2(a1.getPosition(), a0.getPosition());
+                    box.getBoundary().nearestImage(dr);
+                    dv.Ev1Mv2(a1.getVelocity(), a0.getVelocity());
+                    assertEquals(lengths[j], Math.sqrt(dr.squared()), 1e-10);
+                    assertEquals(0, dr.dot(dv) / Math.sqrt(dr.squared() * dv.squared()), 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testConstrainedMatchesRattle() {
+        WaterSystem system = new WaterSystem();
+        Box box = system.box;
+        double dt = 0.001;
+        double temperature = Kelvin.UNIT.toSim(300);
+        IntegratorVelocityVerletRESPA respa = new IntegratorVelocityVerletRESPA(system.pmAll, new RandomMersenneTwister(3), dt, temperature, box);
+        respa.addLevel(system.pmAll, 1);
+        respa.setBondConstraints(system.species, waterBonds, new double[]{lOH, lOH, lHH});
+        respa.setIsothermal(false);
+        // randomizes the velocities and then removes the parts along the bonds
+        respa.reset();
+        system.checkConstraints();
+
+        IAtomList atoms = box.getLeafList();
+        Vector[] r0 = new Vector[atoms.size()], v0 = new Vector[atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            r0[i] = box.getSpace().makeVector();
+            r0[i].E(atoms.get(i).getPosition());
+            v0[i] = box.getSpace().makeVector();
+            v0[i].E(((IAtomKinetic) atoms.get(i)).getVelocity());
+        }
+        for (int i = 0; i < 20; i++) {
+            respa.doStep();
+        }
+        system.checkConstraints();
+        Vector[] r1 = new Vector[atoms.size()], v1 = new Vector[atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            r1[i] = box.getSpace().makeVector();
+            r1[i].E(atoms.get(i).getPosition());
+            v1[i] = box.getSpace().makeVector();
+            v1[i].E(((IAtomKinetic) atoms.get(i)).getVelocity());
+            atoms.get(i).getPosition().E(r0[i]);
+        }
+
+        IntegratorVelocityVerletRattle rattle = new IntegratorVelocityVerletRattle(system.sim, system.pmAll, new RandomMersenneTwister(3), dt, temperature, box);
+        rattle.setBondConstraints(system.species, waterBonds, new double[]{lOH, lOH, lHH});
+        rattle.setShakeTolerance(1e-12);
+        rattle.setMaxIterations(200);
+        rattle.setIsothermal(false);
+        rattle.reset();
+        for (int i = 0; i < atoms.size(); i++) {
+            ((IAtomKinetic) atoms.get(i)).getVelocity().E(v0[i]);
+        }
+        for (int i = 0; i < 20; i++) {
+            rattle.doStep();
+        }
+        // velocities are only constrained to a relative precision of 1e-7
+        for (int i = 0; i < atoms.size(); i++) {
+            assertTrue(Math.sqrt(r1[i].Mv1Squared(atoms.get(i).getPosition())) < 1e-9);
+            assertTrue(Math.sqrt(v1[i].Mv1Squared(((IAtomKinetic) atoms.get(i)).getVelocity())) < 1e-4);
+        }
+    }
+
+    /**
+     * Runs NVE from an equilibrated configuration with the given inner steps
+     * for the charges, and returns the largest change in the total energy
+     * divided by the initial kinetic energy.
+     */
+    private static double energyDeviation(WaterSystem system, int nInner) {
+        IntegratorVelocityVerletRESPA respa = new IntegratorVelocityVerletRESPA(system.pmAll, new RandomMersenneTwister(5), 0.002, Kelvin.UNIT.toSim(300), system.box);
+        respa.addLevel(system.pmCharge, 1);
+        respa.addLevel(system.pmLJ, nInner);
+        respa.setBondConstraints(system.species, waterBonds, new double[]{lOH, lOH, lHH});
+        respa.setIsothermal(false);
+        respa.reset();
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(system.pmAll, system.box);
+        MeterKineticEnergy meterKE = new MeterKineticEnergy(system.box);
+        double ke0 = meterKE.getDataAsScalar();
+        double e0 = meterPE.getDataAsScalar() + ke0;
+        double maxDev = 0;
+        for (int i = 0; i < 250; i++) {
+            respa.doStep();
+            double e = meterPE.getDataAsScalar() + meterKE.getDataAsScalar();
+            maxDev = Math.max(maxDev, Math.abs(e - e0));
+        }
+        system.checkConstraints();
+        return maxDev / ke0;
+    }
+
+    @Test
+    void testConstrainedWaterEnergyConservation() {
+        WaterSystem system = new WaterSystem();
+        Box box = system.box;
+        // relax the lattice with a thermostat and short steps
+        IntegratorVelocityVerletRESPA equilibrate = new IntegratorVelocityVerletRESPA(system.pmAll, new RandomMersenneTwister(4), 0.001, Kelvin.UNIT.toSim(300), box);
+        equilibrate.addLevel(system.pmAll, 1);
+        equilibrate.setBondConstraints(system.species, waterBonds, new double[]{lOH, lOH, lHH});
+        equilibrate.setIsothermal(true);
+        equilibrate.setThermostatInterval(10);
+        equilibrate.reset();
+        for (int i = 0; i < 600; i++) {
+            equilibrate.doStep();
+        }
+        system.checkConstraints();
+
+        IAtomList atoms = box.getLeafList();
+        Vector[] r0 = new Vector[atoms.size()], v0 = new Vector[atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            r0[i] = box.getSpace().makeVector();
+            r0[i].E(atoms.get(i).getPosition());
+            v0[i] = box.getSpace().makeVector();
+            v0[i].E(((IAtomKinetic) atoms.get(i)).getVelocity());
+        }
+        // 2 fs steps for all forces
+        double devSingle = energyDeviation(system, 1);
+        for (int i = 0; i < atoms.size(); i++) {
+            atoms.get(i).getPosition().E(r0[i]);
+            ((IAtomKinetic) atoms.get(i)).getVelocity().E(v0[i]);
+        }
+        // 2 fs steps for LJ and 0.5 fs steps for the charges
+        double devRESPA = energyDeviation(system, 4);
+        assertTrue(devRESPA < 0.005, "energy deviation " + devRESPA);
+        assertTrue(devRESPA < devSingle, "energy deviation " + devRESPA + ", with a single time step " + devSingle);
+    }
+}
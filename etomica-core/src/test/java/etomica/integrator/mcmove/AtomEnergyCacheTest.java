@@ -0,0 +1,165 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator.mcmove;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.integrator.IntegratorMC;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.cell.PotentialMasterCell;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.space3d.Vector3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtomEnergyCacheTest {
+
+    private static final Space space = Space3D.getInstance();
+
+    private SpeciesSpheresMono species;
+    private Box box;
+    private PotentialMasterCell potentialMaster;
+
+    /**
+     * 256 LJ atoms on an fcc lattice in a cell-list potential master.
+     */
+    @BeforeEach
+    void setUp() {
+        Simulation sim = new Simulation(space);
+        species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = sim.makeBox();
+        box.getBoundary().setBoxSize(new Vector3D(9, 9, 9));
+        box.setNMolecules(species, 256);
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+
+        potentialMaster = new PotentialMasterCell(sim, space);
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 3.0);
+        potentialMaster.setCellRange(2);
+        potentialMaster.setRange(p2.getRange());
+        AtomType type = species.getLeafType();
+        potentialMaster.addPotential(p2, new AtomType[]{type, type});
+        potentialMaster.getNbrCellManager(box).assignCellAll();
+    }
+
+    @Test
+    void testMatchesMeter() {
+        RandomMersenneTwister random = new RandomMersenneTwister(5);
+        IntegratorMC integrator = new IntegratorMC(potentialMaster, random, 1.5, box);
+        integrator.getMoveEventManager().addListener(potentialMaster.getNbrCellManager(box).makeMCMoveListener());
+        AtomEnergyCache cache = new AtomEnergyCache(potentialMaster, box);
+        integrator.getMoveEventManager().addListener(cache);
+
+        MCMoveAtom moveAtom = new MCMoveAtom(random, potentialMaster, space);
+        moveAtom.setStepSize(0.3);
+        moveAtom.setEnergyCache(cache);
+        integrator.getMoveManager().addMCMove(moveAtom);
+        MCMoveInsertDelete moveInsertDelete = new MCMoveInsertDelete(potentialMaster, random, space);
+        moveInsertDelete.setSpecies(species);
+        moveInsertDelete.setMu(-2);
+        moveInsertDelete.setEnergyCache(cache);
+        integrator.getMoveManager().addMCMove(moveInsertDelete);
+        // this move does not use the cache, so the cache must start over
+        // whenever it is accepted
+        MCMoveAtom moveAtomNoCache = new MCMoveAtom(random, potentialMaster, space);
+        moveAtomNoCache.setStepSize(0.3);
+        integrator.getMoveManager().addMCMove(moveAtomNoCache);
+        integrator.getMoveManager().setFrequency(moveAtomNoCache, 0.01);
+        integrator.getMoveManager().setEquilibrating(false);
+        integrator.reset();
+
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(potentialMaster, box);
+        for (int i = 0; i < 20000; i++) {
+            integrator.doStep();
+        }
+        assertTrue(moveAtom.getTracker().acceptanceProbability() > 0.1);
+        assertTrue(moveInsertDelete.getTracker().nAccept > 0);
+        assertTrue(box.getMoleculeList().size() != 256);
+
+        assertEquals(meterPE.getDataAsScalar(), integrator.getPotentialEnergy(), 1e-8);
+        meterPE.setIncludeLrc(false);
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < atoms.size(); i++) {
+            meterPE.setTarget(atoms.get(i));
+            double u = meterPE.getDataAsScalar();
+            assertEquals(u, cache.getAtomEnergy(atoms.get(i)), 1e-9);
+            meterPE.setTarget(atoms.get(i).getParentGroup());
+            assertEquals(meterPE.getDataAsScalar(), cache.getMoleculeEnergy(atoms.get(i).getParentGroup()), 1e-9);
+        }
+    }
+
+    @Test
+    void testDeletionEnergyFollowsLrc() {
+        AtomEnergyCache cache = new AtomEnergyCache(potentialMaster, box);
+        MCMoveInsertDelete moveInsertDelete = new MCMoveInsertDelete(potentialMaster, new RandomMersenneTwister(6), space);
+        moveInsertDelete.setSpecies(species);
+        moveInsertDelete.setBox(box);
+        moveInsertDelete.setEnergyCache(cache);
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(potentialMaster, box);
+
+        for (boolean includeLrc : new boolean[]{true, false}) {
+            moveInsertDelete.energyMeter.setIncludeLrc(includeLrc);
+            meterPE.setIncludeLrc(includeLrc);
+            int nDelete = 0;
+            while (nDelete < 5) {
+                assertTrue(moveInsertDelete.doTrial());
+                if (!moveInsertDelete.lastMoveInsert()) {
+                    meterPE.setTarget(moveInsertDelete.testMolecule);
+                    assertEquals(meterPE.getDataAsScalar(), moveInsertDelete.uOld, 1e-9);
+                    nDelete++;
+                }
+                moveInsertDelete.getChi(1.5);
+                moveInsertDelete.rejectNotify();
+            }
+        }
+    }
+
+    @Test
+    void testMeterInsertionInvalidates() {
+        RandomMersenneTwister random = new RandomMersenneTwister(7);
+        IntegratorMC integrator = new IntegratorMC(potentialMaster, random, 1.5, box);
+        integrator.getMoveEventManager().addListener(potentialMaster.getNbrCellManager(box).makeMCMoveListener());
+        AtomEnergyCache cache = new AtomEnergyCache(potentialMaster, box);
+        integrator.getMoveEventManager().addListener(cache);
+
+        MCMoveAtom moveAtom = new MCMoveAtom(random, potentialMaster, space);
+        moveAtom.setStepSize(0.3);
+        moveAtom.setEnergyCache(cache);
+        integrator.getMoveManager().addMCMove(moveAtom);
+        // computes the energy of an inserted molecule with its meter
+        MCMoveInsertDeleteBiased moveBiased = new MCMoveInsertDeleteBiased(potentialMaster, random, space, 240, 272);
+        moveBiased.setSpecies(species);
+        moveBiased.setMu(0);
+        moveBiased.setEnergyCache(cache);
+        integrator.getMoveManager().addMCMove(moveBiased);
+        integrator.getMoveManager().setEquilibrating(false);
+        integrator.reset();
+
+        for (int i = 0; i < 5000; i++) {
+            integrator.doStep();
+        }
+        assertTrue(moveBiased.getTracker().nAccept > 0);
+
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(potentialMaster, box);
+        meterPE.setIncludeLrc(false);
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < atoms.size(); i++) {
+            meterPE.setTarget(atoms.get(i));
+            assertEquals(meterPE.getDataAsScalar(), cache.getAtomEnergy(atoms.get(i)), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.math;
+
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DoubleDoubleTest {
+
+    private static double relErr(DoubleDouble x, BigDecimal exact) {
+        return x.toBigDecimal().subtract(exact).abs().doubleValue() / exact.abs().doubleValue();
+    }
+
+    @Test
+    public void testSmallDifference() {
+        // (1 + 1e-20) - 1 is lost with double
+        DoubleDouble x = new DoubleDouble(1e-20);
+        x.PE(1);
+        DoubleDouble one = new DoubleDouble(-1);
+        x.PE(one);
+        assertEquals(1e-20, x.doubleValue());
+    }
+
+    @Test
+    public void testArithmetic() {
+        MathContext mc = new MathContext(60);
+        RandomMersenneTwister random = new RandomMersenneTwister(1);
+        DoubleDouble a = new DoubleDouble(), b = new DoubleDouble(), c = new DoubleDouble();
+        for (int i = 0; i < 1000; i++) {
+            a.E(random.nextDouble() - 0.5);
+            a.PE(1e-17 * random.nextDouble());
+            b.E(random.nextDouble() * 10);
+            b.PE(1e-16 * random.nextDouble());
+            c.E(random.nextDouble() - 0.5);
+            BigDecimal aBD = a.toBigDecimal(), bBD = b.toBigDecimal(), cBD = c.toBigDecimal();
+
+            DoubleDouble x = new DoubleDouble();
+            x.E(c);
+            x.PEv1Tv2(a, b);
+            assertEquals(0, relErr(x, cBD.add(aBD.multiply(bBD, mc), mc)), 1e-29);
+
+            x.E(c);
+            x.MEv1Tv2(a, b);
+            assertEquals(0, relErr(x, cBD.subtract(aBD.multiply(bBD, mc), mc)), 1e-29);
+
+            x.E(a);
+            x.TE(b);
+            assertEquals(0, relErr(x, aBD.multiply(bBD, mc)), 1e-30);
+
+            x.E(a);
+            x.ME(b);
+            assertEquals(0, relErr(x, aBD.subtract(bBD, mc)), 1e-31);
+        }
+    }
+}
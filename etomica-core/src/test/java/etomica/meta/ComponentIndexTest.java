@@ -0,0 +1,37 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.meta;
+
+import etomica.simulation.Simulation;
+import etomica.space3d.Space3D;
+import etomica.tests.TestLJMC3D;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentIndexTest {
+
+    public static abstract class AbstractIndexTestSimulation extends Simulation {
+        public AbstractIndexTestSimulation() {
+            super(Space3D.getInstance());
+        }
+    }
+
+    public static class IndexTestSimulation extends AbstractIndexTestSimulation {
+    }
+
+    @Test
+    void testIndexedAndUnindexedClasses() {
+        List<Class<?>> simulations = new ComponentIndex<>(Simulation.class).getComponentSet();
+        // main classes are compiled with the component index processor
+        assertTrue(simulations.contains(TestLJMC3D.class));
+        // test classes are not, so they must be found by scanning
+        assertTrue(simulations.contains(IndexTestSimulation.class));
+        assertTrue(simulations.contains(AbstractIndexTestSimulation.class));
+        assertFalse(simulations.contains(Simulation.class));
+    }
+}
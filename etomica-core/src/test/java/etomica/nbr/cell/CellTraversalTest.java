@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.cell;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.box.Box;
+import etomica.chem.elements.ElementSimple;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CellTraversalTest {
+
+    private static int[] latticeIndex(int c, int[] size) {
+        int[] idx = new int[size.length];
+        for (int k = size.length - 1; k >= 0; k--) {
+            idx[k] = c % size[k];
+            c /= size[k];
+        }
+        return idx;
+    }
+
+    private static void checkPermutation(int[] order, int nCells) {
+        assertEquals(nCells, order.length);
+        boolean[] seen = new boolean[nCells];
+        for (int c : order) {
+            assertFalse(seen[c]);
+            seen[c] = true;
+        }
+    }
+
+    @Test
+    void testHilbertOrderIsContinuous() {
+        for (int[] size : new int[][]{{16, 16}, {8, 8, 8}}) {
+            int nCells = 1;
+            for (int n : size) nCells *= n;
+            int[] order = CellTraversal.hilbertOrder(size);
+            checkPermutation(order, nCells);
+            for (int p = 1; p < nCells; p++) {
+                int[] a = latticeIndex(order[p - 1], size), b = latticeIndex(order[p], size);
+                int d = 0;
+                for (int k = 0; k < size.length; k++) {
+                    d += Math.abs(a[k] - b[k]);
+                }
+                assertEquals(1, d, "cells " + (p - 1) + " and " + p + " are not adjacent");
+            }
+        }
+    }
+
+    @Test
+    void testHilbertOrderOddSizes() {
+        checkPermutation(CellTraversal.hilbertOrder(new int[]{5, 7, 3}), 105);
+        checkPermutation(CellTraversal.hilbertOrder(new int[]{1, 1, 1}), 1);
+    }
+
+    @Test
+    void testOccupants() {
+        Simulation sim = new Simulation(Space3D.getInstance());
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim.getSpace(), new AtomType(new ElementSimple("A")));
+        sim.addSpecies(species);
+        Box box = sim.makeBox();
+        box.setNMolecules(species, 500);
+        box.setDensity(0.8);
+        new ConfigurationLattice(new LatticeCubicFcc(sim.getSpace()), sim.getSpace()).initializeCoordinates(box);
+        NeighborCellManager cellManager = new NeighborCellManager(box, 2.0);
+        cellManager.assignCellAll();
+        CellTraversal traversal = cellManager.getCellTraversal();
+
+        int[] cellStart = traversal.getCellStart();
+        int[] cellOrder = traversal.getCellOrder();
+        Object[] sites = cellManager.getLattice().sites();
+        assertEquals(sites.length, traversal.getNumCells());
+        assertEquals(500, cellStart[traversal.getNumCells()]);
+        for (int p = 0; p < traversal.getNumCells(); p++) {
+            Set<IAtom> atoms = new HashSet<>();
+            for (int s = cellStart[p]; s < cellStart[p + 1]; s++) {
+                IAtom atom = traversal.getAtoms()[s];
+                assertEquals(atom.getLeafIndex(), traversal.getCellAtoms()[s]);
+                assertEquals(s, traversal.getAtomSlots()[atom.getLeafIndex()]);
+                atoms.add(atom);
+            }
+            assertEquals(new HashSet<>(((Cell) sites[cellOrder[p]]).occupants()), atoms);
+        }
+
+        int[] blockStart = traversal.getBlockStart(64);
+        assertEquals(0, blockStart[0]);
+        assertEquals(traversal.getNumCells(), blockStart[blockStart.length - 1]);
+        for (int b = 0; b < blockStart.length - 1; b++) {
+            assertTrue(blockStart[b + 1] > blockStart[b]);
+        }
+
+        new BoxSortByCell(box, cellManager).actionPerformed();
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, traversal.getCellAtoms()[i]);
+        }
+    }
+}
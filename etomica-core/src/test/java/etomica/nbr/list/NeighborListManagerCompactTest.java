@@ -0,0 +1,87 @@
+package etomica.nbr.list;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.box.Box;
+import etomica.chem.elements.ElementSimple;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NeighborListManagerCompactTest {
+    private static final double NBR_RANGE = 4.8;
+    private static final double POTENTIAL_RANGE = 4;
+
+    private Box box;
+    private SpeciesSpheresMono speciesA;
+    private NeighborListManager nlm, nlmCompact;
+
+    @BeforeEach
+    void setup() {
+        Simulation sim = new Simulation(Space3D.getInstance());
+        speciesA = new SpeciesSpheresMono(sim.getSpace(), new AtomType(new ElementSimple("A")));
+        SpeciesSpheresMono speciesB = new SpeciesSpheresMono(sim.getSpace(), new AtomType(new ElementSimple("B")));
+        sim.addSpecies(speciesA);
+        sim.addSpecies(speciesB);
+        box = sim.makeBox();
+        box.setNMolecules(speciesA, 20);
+        box.setNMolecules(speciesB, 20);
+        new ConfigurationLattice(new LatticeCubicFcc(sim.getSpace()), sim.getSpace()).initializeCoordinates(box);
+
+        PotentialMasterList pm = new PotentialMasterList(sim, NBR_RANGE, sim.getSpace());
+        PotentialMasterList pmCompact = new PotentialMasterList(sim, NBR_RANGE,
+                new NeighborListManagerCompact.NeighborListCompactAgentSource(NBR_RANGE), sim.getSpace());
+        AtomType a = speciesA.getLeafType(), b = speciesB.getLeafType();
+        for (PotentialMasterList p : new PotentialMasterList[]{pm, pmCompact}) {
+            p.addPotential(new P2SoftSphericalTruncated(sim.getSpace(), new P2LennardJones(sim.getSpace()), POTENTIAL_RANGE), new AtomType[]{a, a});
+            p.addPotential(new P2SoftSphericalTruncated(sim.getSpace(), new P2LennardJones(sim.getSpace()), POTENTIAL_RANGE), new AtomType[]{a, b});
+            p.addPotential(new P2SoftSphericalTruncated(sim.getSpace(), new P2LennardJones(sim.getSpace()), POTENTIAL_RANGE), new AtomType[]{b, b});
+        }
+        nlm = pm.getNeighborManager(box);
+        nlm.reset();
+        nlm.ensureDownLists();
+        nlmCompact = pmCompact.getNeighborManager(box);
+        assertTrue(nlmCompact instanceof NeighborListManagerCompact);
+        nlmCompact.reset();
+        nlmCompact.ensureDownLists();
+    }
+
+    private void assertSameLists() {
+        for (IAtom atom : box.getLeafList()) {
+            for (int t = 0; t < 2; t++) {
+                assertEquals(new HashSet<>(nlm.getUpList(atom)[t]), new HashSet<>(nlmCompact.getUpList(atom)[t]), atom + " up-neighbors");
+                assertEquals(new HashSet<>(nlm.getDownList(atom)[t]), new HashSet<>(nlmCompact.getDownList(atom)[t]), atom + " down-neighbors");
+                for (IAtom nbr : nlmCompact.getUpList(atom)[t]) {
+                    assertEquals(t, nbr.getType().getIndex());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMatchesAtomLists() {
+        Set<IAtom> all = new HashSet<>();
+        for (IAtom atom : box.getLeafList()) {
+            all.addAll(nlmCompact.getUpList(atom)[0]);
+        }
+        assertFalse(all.isEmpty());
+        assertSameLists();
+    }
+
+    @Test
+    void testAfterRemoveMolecule() {
+        box.removeMolecule(box.getMoleculeList(speciesA).get(3));
+        assertSameLists();
+    }
+}
@@ -0,0 +1,188 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.*;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PotentialMasterListParallelTest {
+
+    private static final Space space = Space3D.getInstance();
+
+    /**
+     * 500 LJ atoms on a perturbed fcc lattice, with a PotentialMasterList
+     * using the given number of threads.
+     */
+    private static class LJSystem {
+        final PotentialMasterList pm;
+        final Box box;
+        final P2LennardJones p2;
+        final P2SoftSphericalTruncated p2Truncated;
+
+        LJSystem(int numThreads) {
+            Simulation sim = new Simulation(space);
+            sim.setRandom(new RandomMersenneTwister(1));
+            SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+            sim.addSpecies(species);
+            pm = new PotentialMasterList(sim, 3.5, space);
+            pm.setNumThreads(numThreads);
+            box = sim.makeBox();
+            box.setNMolecules(species, 500);
+            box.setDensity(0.8);
+            AtomType type = species.getLeafType();
+            p2 = new P2LennardJones(space);
+            p2Truncated = new P2SoftSphericalTruncated(space, p2, 3);
+            pm.addPotential(p2Truncated, new AtomType[]{type, type});
+            new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+            // perturb the lattice so that forces don't cancel
+            for (int i = 0; i < box.getLeafList().size(); i++) {
+                Vector dr = space.makeVector();
+                dr.setRandomInSphere(sim.getRandom());
+                dr.TE(0.1);
+                box.getLeafList().get(i).getPosition().PE(dr);
+            }
+            pm.getNeighborManager(box).reset();
+        }
+
+        double energy() {
+            PotentialCalculationEnergySum pcEnergy = new PotentialCalculationEnergySum();
+            pcEnergy.zeroSum();
+            pm.calculate(box, new IteratorDirective(), pcEnergy);
+            return pcEnergy.getSum();
+        }
+    }
+
+    private static double[][] computeForces(int numThreads, double[] energyVirial) {
+        LJSystem system = new LJSystem(numThreads);
+        Box box = system.box;
+
+        AtomLeafAgentManager<Vector> forces = new AtomLeafAgentManager<>(a -> space.makeVector(), box);
+        PotentialCalculationForcePressureSum pcForce = new PotentialCalculationForcePressureSum(space);
+        pcForce.setAgentManager(forces);
+        pcForce.reset();
+        system.pm.calculate(box, new IteratorDirective(), pcForce);
+        energyVirial[0] = system.energy();
+        energyVirial[1] = pcForce.getPressureTensor().trace();
+        system.pm.setNumThreads(1);
+
+        double[][] f = new double[box.getLeafList().size()][];
+        for (int i = 0; i < f.length; i++) {
+            f[i] = forces.getAgent(box.getLeafList().get(i)).toArray();
+        }
+        return f;
+    }
+
+    @Test
+    void testParallelMatchesSerial() {
+        double[] serial = new double[2];
+        double[][] fSerial = computeForces(1, serial);
+        double[] parallel = new double[2];
+        double[][] fParallel = computeForces(3, parallel);
+        assertEquals(serial[0], parallel[0], 1e-9 * Math.abs(serial[0]));
+        assertEquals(serial[1], parallel[1], 1e-9 * Math.abs(serial[1]));
+        for (int i = 0; i < fSerial.length; i++) {
+            assertArrayEquals(fSerial[i], fParallel[i], 1e-9);
+        }
+    }
+
+    @Test
+    void testParallelIsRepeatable() {
+        double[] first = new double[2];
+        double[][] f1 = computeForces(3, first);
+        double[] second = new double[2];
+        double[][] f2 = computeForces(3, second);
+        assertArrayEquals(first, second);
+        for (int i = 0; i < f1.length; i++) {
+            assertArrayEquals(f1[i], f2[i]);
+        }
+    }
+
+    @Test
+    void testParameterChangesSeenByThreads() {
+        LJSystem system = new LJSystem(3);
+        double u0 = system.energy();
+
+        system.p2.setEpsilon(2);
+        double uParallel = system.energy();
+        assertEquals(2 * u0, uParallel, 1e-9 * Math.abs(u0));
+        system.pm.setNumThreads(1);
+        double uSerial = system.energy();
+        assertEquals(uSerial, uParallel, 1e-9 * Math.abs(uSerial));
+
+        system.pm.setNumThreads(3);
+        system.p2Truncated.setTruncationRadius(2.5);
+        uParallel = system.energy();
+        system.pm.setNumThreads(1);
+        uSerial = system.energy();
+        assertEquals(uSerial, uParallel, 1e-9 * Math.abs(uSerial));
+    }
+
+    @Test
+    void testSubclassesRunSerially() {
+        LJSystem system = new LJSystem(3);
+        Box box = system.box;
+        // counts pairs rather than summing their energy
+        PotentialCalculationEnergySum pcCount = new PotentialCalculationEnergySum() {
+            public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+                sum++;
+            }
+        };
+        assertNull(pcCount.makeWorker());
+        system.pm.calculate(box, new IteratorDirective(), pcCount);
+        double nParallel = pcCount.getSum();
+        system.pm.setNumThreads(1);
+        pcCount.zeroSum();
+        system.pm.calculate(box, new IteratorDirective(), pcCount);
+        assertEquals(pcCount.getSum(), nParallel);
+
+        // adds each force twice
+        system.pm.setNumThreads(3);
+        AtomLeafAgentManager<Vector> forces = new AtomLeafAgentManager<>(a -> space.makeVector(), box);
+        PotentialCalculationForceSum pcDouble = new PotentialCalculationForceSum() {
+            public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+                super.doCalculation(atoms, potential);
+                super.doCalculation(atoms, potential);
+            }
+        };
+        assertNull(pcDouble.makeWorker());
+        pcDouble.setAgentManager(forces);
+        pcDouble.reset();
+        system.pm.calculate(box, new IteratorDirective(), pcDouble);
+        AtomLeafAgentManager<Vector> forces1 = new AtomLeafAgentManager<>(a -> space.makeVector(), box);
+        PotentialCalculationForceSum pcForce = new PotentialCalculationForceSum();
+        pcForce.setAgentManager(forces1);
+        pcForce.reset();
+        system.pm.calculate(box, new IteratorDirective(), pcForce);
+        for (int i = 0; i < box.getLeafList().size(); i++) {
+            Vector f = forces1.getAgent(box.getLeafList().get(i));
+            f.TE(2);
+            assertArrayEquals(f.toArray(), forces.getAgent(box.getLeafList().get(i)).toArray(), 1e-9);
+        }
+    }
+
+    @Test
+    void testUnauditedPotentialIsRejected() {
+        LJSystem system = new LJSystem(3);
+        AtomType type = system.box.getLeafList().get(0).getType();
+        P2Harmonic p2Harmonic = new P2Harmonic(space, 1, 1);
+        system.pm.removePotential(system.p2Truncated);
+        system.pm.addPotential(new P2SoftSphericalTruncated(space, p2Harmonic, 2), new AtomType[]{type, type});
+        assertThrows(IllegalStateException.class, system::energy);
+    }
+}
@@ -0,0 +1,75 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.AtomType;
+import etomica.box.Box;
+import etomica.config.ConfigurationResourceFile;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.mcmove.MCMoveMolecule;
+import etomica.integrator.mcmove.MCMoveRotateMolecule3D;
+import etomica.models.water.P2WaterSPCE;
+import etomica.models.water.SpeciesWater3P;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Vector3D;
+import etomica.units.Kelvin;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the incremental structure factors used for MC give the same
+ * energy as the full Ewald sum.
+ */
+class EwaldSummationMCTest {
+
+    @Test
+    void testIncrementalEnergy() {
+        Space space = Space.getInstance(3);
+        Simulation sim = new Simulation(space);
+        SpeciesWater3P species = new SpeciesWater3P(space, false);
+        sim.addSpecies(species);
+        Box box = sim.makeBox();
+        AtomLeafAgentManager<EwaldSummation.MyCharge> atomAgentManager = new AtomLeafAgentManager<>(a -> new EwaldSummation.MyCharge(
+                a.getType() == species.getOxygenType() ? P2WaterSPCE.QO : P2WaterSPCE.QH), box);
+        box.setNMolecules(species, 100);
+        box.getBoundary().setBoxSize(new Vector3D(20, 20, 20));
+        new ConfigurationResourceFile("spce1.pos", EwaldSummationTest.class).initializeCoordinates(box);
+
+        double kCut = Math.sqrt(26.999) * 2 * Math.PI / 20;
+        EwaldSummation ewald = new EwaldSummation(box, atomAgentManager, space, kCut, 10);
+        ewald.setAlpha(5.6 / 20);
+        PotentialMaster potentialMaster = new PotentialMaster();
+        potentialMaster.addPotential(ewald, new AtomType[0]);
+        EwaldSummation.P2EwaldReal p2Real = ewald.makeP2EwaldReal();
+        AtomType typeO = species.getOxygenType(), typeH = species.getHydrogenType();
+        potentialMaster.addPotential(p2Real, new AtomType[]{typeO, typeO});
+        potentialMaster.addPotential(p2Real, new AtomType[]{typeO, typeH});
+        potentialMaster.addPotential(p2Real, new AtomType[]{typeH, typeH});
+
+        IntegratorMC integrator = new IntegratorMC(sim, potentialMaster, box);
+        integrator.setTemperature(Kelvin.UNIT.toSim(298));
+        integrator.getMoveManager().addMCMove(new MCMoveMolecule(sim, potentialMaster, space));
+        integrator.getMoveManager().addMCMove(new MCMoveRotateMolecule3D(potentialMaster, sim.getRandom(), space));
+        integrator.getMoveEventManager().addListener(ewald.makeMCMoveListener());
+        integrator.reset();
+        double u0 = integrator.getPotentialEnergy();
+        for (int i = 0; i < 500; i++) {
+            integrator.doStep();
+        }
+        double u = integrator.getPotentialEnergy();
+
+        // recompute everything from scratch
+        ewald.resetStructureFactorCache();
+        integrator.reset();
+        assertEquals(integrator.getPotentialEnergy(), u, 1e-6);
+        assertEquals(ewald.uFourier(), ewald.sfCache.uFourier(), 1e-9);
+        assertEquals(ewald.uBondCorr(), ewald.sfCache.uBondCorr(), 1e-6);
+        // make sure some moves were accepted
+        assertEquals(false, u == u0);
+    }
+}
@@ -0,0 +1,157 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtom;
+import etomica.box.Box;
+import etomica.config.ConfigurationResourceFile;
+import etomica.models.water.P2WaterSPCE;
+import etomica.models.water.SpeciesWater3P;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Tensor;
+import etomica.space.Vector;
+import etomica.space3d.Vector3D;
+import etomica.units.Kelvin;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares smooth particle-mesh Ewald against the explicit Ewald sum for the
+ * first NIST SPC/E configuration (see EwaldSummationTest).
+ */
+class EwaldSummationSPMETest {
+
+    private static final double boxLength = 20;
+    private Space space;
+    private Box box;
+    private AtomLeafAgentManager<EwaldSummation.MyCharge> atomAgentManager;
+    private double kCut;
+
+    @BeforeEach
+    void setup() {
+        space = Space.getInstance(3);
+        Simulation sim = new Simulation(space);
+        SpeciesWater3P species = new SpeciesWater3P(space, false);
+        sim.addSpecies(species);
+        box = sim.makeBox();
+        atomAgentManager = new AtomLeafAgentManager<>(a -> new EwaldSummation.MyCharge(
+                a.getType() == species.getOxygenType() ? P2WaterSPCE.QO : P2WaterSPCE.QH), box);
+        box.setNMolecules(species, 100);
+        box.getBoundary().setBoxSize(new Vector3D(boxLength, boxLength, boxLength));
+        new ConfigurationResourceFile("spce1.pos", EwaldSummationTest.class).initializeCoordinates(box);
+        kCut = Math.sqrt(26.999) * 2 * Math.PI / boxLength;
+    }
+
+    private EwaldSummationSPME makeSPME() {
+        return makeSPME(5.6 / boxLength);
+    }
+
+    private EwaldSummationSPME makeSPME(double alpha) {
+        EwaldSummationSPME spme = new EwaldSummationSPME(box, atomAgentManager, space, kCut, 10);
+        spme.setAlpha(alpha);
+        return spme;
+    }
+
+    /**
+     * Checks SPME against the explicit sum with all of the k-vectors the
+     * grid holds, so that the only difference is from the interpolation.
+     */
+    private void checkEnergyAndGradient(EwaldSummationSPME spme, double tol) {
+        EwaldSummation es = new EwaldSummation(box, atomAgentManager, space, 2 * kCut, 10);
+        es.setAlpha(5.6 / boxLength);
+        assertEquals(es.uFourier(), spme.uFourier(), tol);
+        assertEquals(es.uReal(), spme.uReal(), 1e-9);
+
+        Vector[] g0 = es.gradient(box.getLeafList());
+        Vector[] expected = new Vector[g0.length];
+        for (int i = 0; i < g0.length; i++) {
+            expected[i] = space.makeVector();
+            expected[i].E(g0[i]);
+        }
+        Vector[] g1 = spme.gradient(box.getLeafList());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(0, Math.sqrt(expected[i].Mv1Squared(g1[i])), tol);
+        }
+    }
+
+    @Test
+    void testEnergyAndGradient() {
+        EwaldSummationSPME spme = makeSPME();
+        // SPME includes all k-vectors on the grid, so it differs slightly
+        // from the truncated sum
+        assertEquals(6.27009E+03, Kelvin.UNIT.fromSim(spme.uFourier()), 10);
+        checkEnergyAndGradient(spme, 1);
+
+        // a finer grid and a higher order converge to the explicit sum
+        spme.setGridSize(32, 32, 32);
+        spme.setOrder(8);
+        checkEnergyAndGradient(spme, 1e-3);
+    }
+
+    @Test
+    void testVirial() {
+        EwaldSummationSPME spme = makeSPME();
+        Tensor virial = space.makeTensor();
+        spme.computeReciprocal(virial);
+
+        // Fourier-space virial should match the change in energy as the box
+        // and the atoms are stretched along x
+        double eps = 1e-5;
+        double[] u = new double[2];
+        for (int s = 0; s < 2; s++) {
+            double lambda = s == 0 ? 1 + eps : 1 - eps;
+            for (IAtom a : box.getLeafList()) {
+                a.getPosition().setX(0, a.getPosition().getX(0) * lambda);
+            }
+            box.getBoundary().setBoxSize(new Vector3D(boxLength * lambda, boxLength, boxLength));
+            EwaldSummationSPME scaled = makeSPME();
+            scaled.setGridSize(16, 16, 16);
+            u[s] = scaled.uFourier();
+            for (IAtom a : box.getLeafList()) {
+                a.getPosition().setX(0, a.getPosition().getX(0) / lambda);
+            }
+            box.getBoundary().setBoxSize(new Vector3D(boxLength, boxLength, boxLength));
+        }
+        assertEquals(-(u[0] - u[1]) / (2 * eps), virial.component(0, 0), 1e-6);
+    }
+
+    @Test
+    void testVirialTotal() {
+        // the real-space sum is truncated, so alpha must be large enough
+        // that no pair crossing the cutoff changes the energy noticeably
+        double alpha = 10 / boxLength;
+        EwaldSummationSPME spme = makeSPME(alpha);
+        Tensor virial = space.makeTensor();
+        spme.gradient(box.getLeafList(), virial);
+
+        // the real-space, intramolecular and Fourier-space virial should
+        // match the change in energy as the box and the atoms are stretched
+        double eps = 1e-5;
+        for (int d = 0; d < 3; d++) {
+            double[] u = new double[2];
+            for (int s = 0; s < 2; s++) {
+                double lambda = s == 0 ? 1 + eps : 1 - eps;
+                for (IAtom a : box.getLeafList()) {
+                    a.getPosition().setX(d, a.getPosition().getX(d) * lambda);
+                }
+                Vector size = new Vector3D(boxLength, boxLength, boxLength);
+                size.setX(d, boxLength * lambda);
+                box.getBoundary().setBoxSize(size);
+                EwaldSummationSPME scaled = makeSPME(alpha);
+                scaled.setGridSize(16, 16, 16);
+                u[s] = scaled.uReal() + scaled.uFourier() + scaled.uBondCorr();
+                for (IAtom a : box.getLeafList()) {
+                    a.getPosition().setX(d, a.getPosition().getX(d) / lambda);
+                }
+                box.getBoundary().setBoxSize(new Vector3D(boxLength, boxLength, boxLength));
+            }
+            assertEquals(-(u[0] - u[1]) / (2 * eps), virial.component(d, d), 1e-5 * Math.abs(virial.component(d, d)));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class P2SoftSphericalTabulatedTest {
+
+    private static final Space space = Space3D.getInstance();
+
+    private static void check(Potential2SoftSpherical p, P2SoftSphericalTabulated pTab, double rMin, double rCutoff,
+                              double tol, boolean checkDerivatives) {
+        RandomMersenneTwister random = new RandomMersenneTwister(1);
+        for (int i = 0; i < 10000; i++) {
+            double r = rMin + (rCutoff - rMin) * random.nextDouble();
+            double r2 = r * r;
+            double u = p.u(r2);
+            assertEquals(u, pTab.u(r2), tol * Math.max(1, Math.abs(u)));
+            if (!checkDerivatives) continue;
+            double du = p.du(r2);
+            assertEquals(du, pTab.du(r2), 2 * tol * Math.max(1, Math.abs(du)));
+            double d2u = p.d2u(r2);
+            assertEquals(d2u, pTab.d2u(r2), 1e3 * tol * Math.max(1, Math.abs(d2u)));
+        }
+    }
+
+    @Test
+    void testLJ() {
+        P2LennardJones p = new P2LennardJones(space);
+        for (int order : new int[]{3, 5}) {
+            P2SoftSphericalTabulated pTab = new P2SoftSphericalTabulated(space, p, 0.8, 3, 1e-9, order, false);
+            check(p, pTab, 0.8, 3, 1e-9, order == 5);
+            // outside the table
+            assertEquals(p.u(0.5), pTab.u(0.5));
+            assertEquals(0, pTab.u(9));
+            assertEquals(0, pTab.du(9.1));
+        }
+    }
+
+    @Test
+    void testNumericalDerivatives() {
+        // P2ArgonAziz1993 does not implement du or d2u
+        P2ArgonAziz1993 p = new P2ArgonAziz1993(space);
+        P2SoftSphericalTabulated pTab = new P2SoftSphericalTabulated(space, p, 3, 12, 1e-8, 5, true);
+        check(p, pTab, 3, 12, 1e-8, false);
+        // compare du with a finite difference of the energy
+        for (double r = 3.2; r < 11.5; r += 0.37) {
+            double d = 1e-5;
+            double du = r * (p.u((r + d) * (r + d)) - p.u((r - d) * (r - d))) / (2 * d);
+            assertEquals(du, pTab.du(r * r), 1e-5 * Math.max(1, Math.abs(du)));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.space3d;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorStorage3DTest {
+
+    private static final double DELTA = 0.000000001;
+
+    @Test
+    public void testViewsSurviveGrowth() {
+        VectorStorage3D storage = new VectorStorage3D(1);
+        ViewVector3D v0 = storage.add();
+        v0.E(1, 2, 3);
+        for (int i = 1; i < 20; i++) {
+            storage.add().E(i);
+        }
+        assertEquals(20, storage.size());
+        assertSame(v0, storage.get(0));
+        assertEquals(2, v0.getX(1), DELTA);
+        v0.setX(2, 7);
+        assertEquals(7, storage.getData()[2], DELTA);
+        assertEquals(19, storage.getData()[3 * 19 + 1], DELTA);
+    }
+
+    @Test
+    public void testRemoveAndReplace() {
+        VectorStorage3D storage = new VectorStorage3D();
+        for (int i = 0; i < 4; i++) {
+            storage.add().E(i);
+        }
+        ViewVector3D last = storage.get(3);
+        storage.removeAndReplace(1);
+        assertEquals(3, storage.size());
+        assertSame(last, storage.get(1));
+        assertEquals(3, last.getX(0), DELTA);
+        last.E(5);
+        assertEquals(5, storage.getData()[3], DELTA);
+    }
+
+    @Test
+    public void testMixedArithmetic() {
+        VectorStorage3D storage = new VectorStorage3D();
+        ViewVector3D view = storage.add();
+        view.E(1, 2, 3);
+        Vector3D v = new Vector3D(0.5, 0.5, 0.5);
+        v.PE(view);
+        assertEquals(3.5, v.z, DELTA);
+        view.PEa1Tv1(2, v);
+        assertArrayEquals(new double[]{4, 7, 10}, view.toArray(), DELTA);
+        Vector3D dr = new Vector3D();
+        dr.Ev1Mv2(view, v);
+        assertArrayEquals(new double[]{2.5, 4.5, 6.5}, dr.toArray(), DELTA);
+        assertEquals(dr.squared(), view.Mv1Squared(v), DELTA);
+
+        Tensor3D t = new Tensor3D(new double[][]{{0, -1, 0}, {1, 0, 0}, {0, 0, 1}});
+        t.transform(view);
+        assertArrayEquals(new double[]{-7, 4, 10}, view.toArray(), DELTA);
+    }
+}
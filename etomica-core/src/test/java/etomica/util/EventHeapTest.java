@@ -0,0 +1,59 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventHeapTest {
+
+    @Test
+    public void testOrder() {
+        EventHeap heap = new EventHeap();
+        assertNull(heap.firstElement());
+        Random random = new Random(12345);
+        List<TreeLinker> linkers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            TreeLinker linker = new TreeLinker(i);
+            linker.sortKey = random.nextDouble();
+            linkers.add(linker);
+            heap.add(linker);
+        }
+        heap.check();
+
+        // remove linkers from the middle of the heap
+        for (int i = 0; i < 300; i++) {
+            linkers.remove(random.nextInt(linkers.size())).remove();
+        }
+        heap.check();
+        assertEquals(700, heap.size());
+
+        linkers.sort((a, b) -> Double.compare(a.sortKey, b.sortKey));
+        for (TreeLinker linker : linkers) {
+            assertSame(linker.obj, heap.firstElement());
+            linker.remove();
+        }
+        assertEquals(0, heap.size());
+        assertNull(heap.firstElement());
+    }
+
+    @Test
+    public void testReset() {
+        EventHeap heap = new EventHeap();
+        TreeLinker linker = new TreeLinker("a");
+        heap.add(linker);
+        assertThrows(IllegalArgumentException.class, () -> heap.add(linker));
+        heap.reset();
+        assertNull(heap.firstElement());
+        // linker can be added again once the heap is reset
+        heap.add(linker);
+        assertSame("a", heap.firstElement());
+    }
+}
@@ -0,0 +1,54 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelUtilsTest {
+
+    @Test
+    public void testRunsAllTasks() {
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        AtomicInteger count = new AtomicInteger();
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(Executors.callable(() -> {
+                count.incrementAndGet();
+            }));
+        }
+        ParallelUtils.invokeAll(pool, tasks);
+        assertEquals(10, count.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testExceptions() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<Callable<Object>> tasks = new ArrayList<>();
+        tasks.add(() -> null);
+        tasks.add(() -> {
+            throw new IllegalStateException("oops");
+        });
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> ParallelUtils.invokeAll(pool, tasks));
+        assertEquals("oops", e.getMessage());
+
+        tasks.set(1, () -> {
+            throw new IOException("checked");
+        });
+        RuntimeException e2 = assertThrows(RuntimeException.class, () -> ParallelUtils.invokeAll(pool, tasks));
+        assertTrue(e2.getCause() instanceof IOException);
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,517 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.isomorphism;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.impl.GraphImpl;
+import etomica.graph.model.impl.MetadataImpl;
+
+/**
+ * Canonical labeling of graphs, so that isomorphism tests become string
+ * comparisons (and isomorph elimination a hash lookup).  Two graphs have the
+ * same canonical key exactly when Match.match finds them isomorphic: node and
+ * edge colors must agree (and types too, if MetadataImpl.rootPointsSpecial),
+ * and reverse edges are compared when GraphImpl.useReverseEdges.  Coefficients
+ * and factors are not part of the key.
+ *
+ * The canonical order is found by individualization and refinement: nodes are
+ * partitioned by color and the partition is refined until each cell's nodes
+ * have the same number of edges of each color to each other cell.  Ties are
+ * broken by trying each node of the first non-trivial cell in turn, and the
+ * order giving the smallest encoding is kept.  Automorphisms found along the
+ * way are used to skip equivalent branches, so even very symmetric graphs
+ * need only a handful of leaves.
+ *
+ * The key is compact: the settings of the two flags above, the node labels,
+ * the adjacency bitmap packed 16 bits to a char, and the labels of the edges
+ * present.  Keys are cached by the exact (uncanonicalized) encoding of the
+ * graph, which is its edge bitmap plus its colors and the flags, so a graph
+ * that has been seen before (in any operation) costs only the encoding, and
+ * changing either flag does not return keys computed under the old setting.
+ */
+public class CanonicalForm {
+
+  public static int MAX_CACHE_SIZE = 100000;
+  private static final Map<String, String> cache = new ConcurrentHashMap<String, String>();
+
+  /**
+   * Returns the canonical key for the graph, from the cache if possible.
+   */
+  public static String key(Graph g) {
+
+    Labels labels = new Labels(g);
+    int n = labels.node.length;
+    int[] identity = new int[n];
+    for (int i = 0; i < n; i++) {
+      identity[i] = i;
+    }
+    String exact = labels.encode(identity);
+    String key = cache.get(exact);
+    if (key == null) {
+      key = labels.encode(new Search(labels).run());
+      if (cache.size() >= MAX_CACHE_SIZE) {
+        cache.clear();
+      }
+      cache.put(exact, key);
+    }
+    return key;
+  }
+
+  public static void clearCache() {
+
+    cache.clear();
+  }
+
+  /**
+   * Returns the nodes of the graph in canonical order; the node at position
+   * p of the canonical form is order[p].
+   */
+  public static byte[] canonicalOrder(Graph g) {
+
+    int[] order = new Search(new Labels(g)).run();
+    byte[] result = new byte[order.length];
+    for (int p = 0; p < order.length; p++) {
+      result[p] = (byte) order[p];
+    }
+    return result;
+  }
+
+  /**
+   * The labels of a graph's nodes and edges that isomorphisms must preserve.
+   * Node labels are the color (and type); edge[i][j] is 0 if there is no
+   * edge, and otherwise 2 + the color (and type) of the edge from i to j.
+   */
+  private static class Labels {
+
+    final boolean special = MetadataImpl.rootPointsSpecial;
+    final boolean reverse = GraphImpl.useReverseEdges;
+    final long[] node;
+    final long[][] edge;
+
+    Labels(Graph g) {
+
+      int n = g.nodeCount();
+      node = new long[n];
+      for (byte i = 0; i < n; i++) {
+        node[i] = label(g.getNode(i).getColor(), g.getNode(i).getType());
+      }
+      edge = new long[n][n];
+      for (Edge e : g.edges()) {
+        byte from = g.getFromNode(e.getId());
+        byte to = g.getToNode(e.getId());
+        edge[from][to] = label(g.getEdge(from, to));
+        edge[to][from] = label(g.getEdge(to, from));
+      }
+    }
+
+    long label(char color, char type) {
+
+      return special ? ((long) color << 16) | type : color;
+    }
+
+    long label(Edge e) {
+
+      return e == null ? 1 : 2 + label(e.getColor(), e.getType());
+    }
+
+    /**
+     * Encodes the graph with its nodes taken in the given order: the flags,
+     * the number of nodes, the node labels, the adjacency bitmap (16 bits per
+     * char) and then the labels of the edges that are present.
+     */
+    String encode(int[] order) {
+
+      int n = order.length;
+      StringBuilder sb = new StringBuilder();
+      sb.append((char) ((special ? 1 : 0) | (reverse ? 2 : 0)));
+      sb.append((char) n);
+      for (int p = 0; p < n; p++) {
+        appendLabel(sb, node[order[p]]);
+      }
+      int bits = 0, numBits = 0;
+      for (int p = 0; p < n; p++) {
+        for (int q = p + 1; q < n; q++) {
+          bits = (bits << 1) | (edge[order[p]][order[q]] != 0 ? 1 : 0);
+          if (++numBits == 16) {
+            sb.append((char) bits);
+            bits = numBits = 0;
+          }
+        }
+      }
+      if (numBits > 0) {
+        sb.append((char) bits);
+      }
+      for (int p = 0; p < n; p++) {
+        for (int q = p + 1; q < n; q++) {
+          long label = edge[order[p]][order[q]];
+          if (label == 0) {
+            continue;
+          }
+          appendLabel(sb, label - 2);
+          if (reverse) {
+            appendLabel(sb, edge[order[q]][order[p]] - 2);
+          }
+        }
+      }
+      return sb.toString();
+    }
+
+    void appendLabel(StringBuilder sb, long label) {
+
+      if (label < 0) {
+        // edge without metadata
+        sb.append('?');
+      }
+      else if (special) {
+        sb.append((char) (label >> 16)).append((char) label);
+      }
+      else {
+        sb.append((char) label);
+      }
+    }
+  }
+
+  /**
+   * Ranks of the distinct values in the array, in increasing order of value,
+   * starting from 0.
+   */
+  private static int[] rank(long[] values) {
+
+    // there are usually only a few distinct values
+    long[] distinct = new long[values.length];
+    int numDistinct = 0;
+    for (long v : values) {
+      int k = Arrays.binarySearch(distinct, 0, numDistinct, v);
+      if (k < 0) {
+        k = -k - 1;
+        System.arraycopy(distinct, k, distinct, k + 1, numDistinct - k);
+        distinct[k] = v;
+        numDistinct++;
+      }
+    }
+    int[] ranks = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      ranks[i] = Arrays.binarySearch(distinct, 0, numDistinct, values[i]);
+    }
+    return ranks;
+  }
+
+  private static int[] rank(int[] values) {
+
+    int max = 0;
+    for (int v : values) {
+      max = Math.max(max, v);
+    }
+    int[] ranks = new int[max + 1];
+    for (int v : values) {
+      ranks[v] = 1;
+    }
+    for (int v = 0, r = 0; v <= max; v++) {
+      int present = ranks[v];
+      ranks[v] = r;
+      r += present;
+    }
+    int[] result = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = ranks[values[i]];
+    }
+    return result;
+  }
+
+  private static int compare(int[] a, int[] b) {
+
+    for (int i = 0; i < a.length && i < b.length; i++) {
+      if (a[i] != b[i]) {
+        return a[i] < b[i] ? -1 : 1;
+      }
+    }
+    return a.length - b.length;
+  }
+
+  /**
+   * State of the individualization-refinement search for one graph.  Colors
+   * of a partition are ranks 0..k-1, with cells in increasing order of color.
+   */
+  private static class Search {
+
+    final int n;
+    final int[] nodeRank;
+    // rank of (edge from i to j, edge from j to i); 0 for no edge
+    final int[][] edgeRank;
+    final int numEdgeRanks;
+    final int[] path;
+    // work space for refine
+    final int[][] signature;
+    final int[] signatureLength, sorted;
+    final List<int[]> automorphisms = new ArrayList<int[]>();
+    int[] firstCode, firstOrder, firstPath;
+    int[] bestCode, bestOrder, bestPath;
+
+    Search(Labels labels) {
+
+      n = labels.node.length;
+      nodeRank = rank(labels.node);
+      long[] edgeLabels = new long[n * n];
+      for (int i = 0; i < n; i++) {
+        System.arraycopy(labels.edge[i], 0, edgeLabels, i * n, n);
+      }
+      int[] labelRanks = rank(edgeLabels);
+      long[] pairLabels = new long[n * n];
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          pairLabels[i * n + j] = (long) labelRanks[i * n + j] * (n * n) + labelRanks[j * n + i];
+        }
+      }
+      int[] pairRanks = rank(pairLabels);
+      edgeRank = new int[n][n];
+      int maxRank = 0;
+      for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+          edgeRank[i][j] = pairRanks[i * n + j];
+          maxRank = Math.max(maxRank, edgeRank[i][j]);
+        }
+      }
+      numEdgeRanks = maxRank + 1;
+      path = new int[n];
+      signature = new int[n][n];
+      signatureLength = new int[n];
+      sorted = new int[n];
+    }
+
+    /**
+     * Returns the canonical order of the nodes.
+     */
+    int[] run() {
+
+      search(0, nodeRank.clone());
+      return bestOrder;
+    }
+
+    /**
+     * Refines the partition until it is equitable.  Each cell is split by the
+     * sorted (neighbor color, edge rank) pairs of its nodes; the new cells
+     * keep the order of the old ones.
+     */
+    int[] refine(int[] colors) {
+
+      colors = rank(colors);
+      int numColors = countColors(colors);
+      while (numColors < n) {
+        for (int i = 0; i < n; i++) {
+          int[] s = signature[i];
+          s[0] = colors[i];
+          int len = 1;
+          for (int j = 0; j < n; j++) {
+            if (j != i && edgeRank[i][j] != 0) {
+              // insertion sort; there are few neighbors
+              int x = colors[j] * numEdgeRanks + edgeRank[i][j];
+              int k = len++;
+              while (k > 1 && s[k - 1] > x) {
+                s[k] = s[k - 1];
+                k--;
+              }
+              s[k] = x;
+            }
+          }
+          signatureLength[i] = len;
+        }
+        for (int p = 0; p < n; p++) {
+          int i = p;
+          while (i > 0 && compareSignatures(sorted[i - 1], p) > 0) {
+            sorted[i] = sorted[i - 1];
+            i--;
+          }
+          sorted[i] = p;
+        }
+        int[] newColors = new int[n];
+        int c = 0;
+        for (int p = 1; p < n; p++) {
+          if (compareSignatures(sorted[p], sorted[p - 1]) != 0) {
+            c++;
+          }
+          newColors[sorted[p]] = c;
+        }
+        colors = newColors;
+        if (c + 1 == numColors) {
+          break;
+        }
+        numColors = c + 1;
+      }
+      return colors;
+    }
+
+    int compareSignatures(int a, int b) {
+
+      int[] sa = signature[a], sb = signature[b];
+      int la = signatureLength[a], lb = signatureLength[b];
+      for (int k = 0; k < la && k < lb; k++) {
+        if (sa[k] != sb[k]) {
+          return sa[k] < sb[k] ? -1 : 1;
+        }
+      }
+      return la - lb;
+    }
+
+    int countColors(int[] colors) {
+
+      int max = -1;
+      for (int c : colors) {
+        max = Math.max(max, c);
+      }
+      return max + 1;
+    }
+
+    /**
+     * Searches the subtree below the given partition.  Returns the level to
+     * return to, when the subtree turns out to be equivalent to one already
+     * searched, or Integer.MAX_VALUE.
+     */
+    int search(int level, int[] colors) {
+
+      colors = refine(colors);
+      int numColors = countColors(colors);
+      if (numColors == n) {
+        return leaf(level, colors);
+      }
+      // first cell with more than one node
+      int[] count = new int[numColors];
+      for (int c : colors) {
+        count[c]++;
+      }
+      int target = 0;
+      while (count[target] == 1) {
+        target++;
+      }
+      List<Integer> explored = new ArrayList<Integer>();
+      for (int v = 0; v < n; v++) {
+        if (colors[v] != target || isEquivalent(level, v, explored)) {
+          continue;
+        }
+        int[] child = new int[n];
+        for (int u = 0; u < n; u++) {
+          child[u] = 2 * colors[u] + (colors[u] == target && u != v ? 1 : 0);
+        }
+        path[level] = v;
+        int r = search(level + 1, child);
+        explored.add(v);
+        if (r < level) {
+          return r;
+        }
+      }
+      return Integer.MAX_VALUE;
+    }
+
+    int leaf(int level, int[] colors) {
+
+      int[] order = new int[n];
+      for (int v = 0; v < n; v++) {
+        order[colors[v]] = v;
+      }
+      int[] code = new int[n + n * (n - 1) / 2];
+      int k = 0;
+      for (int p = 0; p < n; p++) {
+        code[k++] = nodeRank[order[p]];
+      }
+      for (int p = 0; p < n; p++) {
+        for (int q = p + 1; q < n; q++) {
+          code[k++] = edgeRank[order[p]][order[q]];
+        }
+      }
+      int[] thisPath = Arrays.copyOf(path, level);
+      if (firstCode == null) {
+        firstCode = bestCode = code;
+        firstOrder = bestOrder = order;
+        firstPath = bestPath = thisPath;
+        return Integer.MAX_VALUE;
+      }
+      if (compare(code, firstCode) == 0) {
+        addAutomorphism(firstOrder, order);
+        return divergence(thisPath, firstPath);
+      }
+      int cmp = compare(code, bestCode);
+      if (cmp < 0) {
+        bestCode = code;
+        bestOrder = order;
+        bestPath = thisPath;
+      }
+      else if (cmp == 0) {
+        addAutomorphism(bestOrder, order);
+        return divergence(thisPath, bestPath);
+      }
+      return Integer.MAX_VALUE;
+    }
+
+    void addAutomorphism(int[] from, int[] to) {
+
+      int[] gamma = new int[n];
+      for (int p = 0; p < n; p++) {
+        gamma[from[p]] = to[p];
+      }
+      automorphisms.add(gamma);
+    }
+
+    int divergence(int[] a, int[] b) {
+
+      int d = 0;
+      while (d < a.length && d < b.length && a[d] == b[d]) {
+        d++;
+      }
+      return d;
+    }
+
+    /**
+     * Returns true if v is in the same orbit as a node already explored at
+     * this level, under the automorphisms found so far that fix the nodes
+     * individualized above this level.
+     */
+    boolean isEquivalent(int level, int v, List<Integer> explored) {
+
+      if (explored.isEmpty() || automorphisms.isEmpty()) {
+        return false;
+      }
+      int[] parent = new int[n];
+      for (int i = 0; i < n; i++) {
+        parent[i] = i;
+      }
+      for (int[] gamma : automorphisms) {
+        boolean fixes = true;
+        for (int l = 0; l < level && fixes; l++) {
+          fixes = gamma[path[l]] == path[l];
+        }
+        if (!fixes) {
+          continue;
+        }
+        for (int i = 0; i < n; i++) {
+          int a = find(parent, i), b = find(parent, gamma[i]);
+          if (a != b) {
+            parent[a] = b;
+          }
+        }
+      }
+      int root = find(parent, v);
+      for (int u : explored) {
+        if (find(parent, u) == root) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    int find(int[] parent, int i) {
+
+      while (parent[i] != i) {
+        i = parent[i] = parent[parent[i]];
+      }
+      return i;
+    }
+  }
+}
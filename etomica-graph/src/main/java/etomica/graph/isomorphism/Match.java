@@ -9,6 +9,9 @@ import etomica.graph.model.Graph;
 public class Match {
 
   public static String DEF_ISOMORPHISM_ALGO = SearchState.ULLMAN_ALGORITHM; // SearchState.VF2_ALGORITHM;
+  // isomorph elimination (IsomorphismFilter, Delete) compares canonical forms
+  // (see CanonicalForm) instead of matching graphs pairwise
+  public static boolean USE_CANONICAL_FORM = true;
   // known isomorphism counts for N in {1,...,11}
   // for N > 11, the count falls beyond the range of 32 bit integers
   public static final int[] ISMORPHS_COUNT = { 1, 2, 4, 11, 34, 156, 1044, 12346, 274668, 12005168 /**
@@ -0,0 +1,72 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.iterators;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphIterator;
+
+/**
+ * Iterates over the products of each graph from a left iterator with its
+ * partners, forming each product only when it is requested.  Feeding this
+ * to a filter (such as an IsomorphismFilter) avoids holding all of the
+ * products in memory at once.
+ */
+public abstract class ProductIterator implements GraphIterator {
+
+  private final Iterator<Graph> leftIterator;
+  private Graph left = null;
+  private Iterator<Graph> rightIterator = Collections.<Graph>emptyList().iterator();
+  private Graph next = null;
+
+  public ProductIterator(Iterator<Graph> leftIterator) {
+
+    this.leftIterator = leftIterator;
+  }
+
+  /**
+   * Returns the graphs that the given left graph should be multiplied by.
+   */
+  protected abstract Iterator<Graph> partners(Graph left);
+
+  /**
+   * Returns the product of the two graphs, or null if there is none.
+   */
+  protected abstract Graph product(Graph left, Graph right);
+
+  public boolean hasNext() {
+
+    while (next == null) {
+      if (rightIterator.hasNext()) {
+        next = product(left, rightIterator.next());
+      }
+      else if (leftIterator.hasNext()) {
+        left = leftIterator.next();
+        rightIterator = partners(left);
+      }
+      else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public Graph next() {
+
+    if (!hasNext()) {
+      return null;
+    }
+    Graph g = next;
+    next = null;
+    return g;
+  }
+
+  public void remove() {
+
+    // no-op
+  }
+}
@@ -35,7 +35,7 @@ public abstract class GlobalFilter implements GraphIterator {
 
   protected Set<Graph> getBlockingSet(Graph g) {
 
-    String key = signatureMaker.getSignature(g);
+    String key = getBlockingKey(g);
     Set<Graph> set = blockingMap.get(key);
     if (set == null) {
       set = new HashSet<Graph>();
@@ -44,6 +44,14 @@ public abstract class GlobalFilter implements GraphIterator {
     return set;
   }
 
+  /**
+   * Returns the key of the set of graphs that g will be compared with.
+   */
+  protected String getBlockingKey(Graph g) {
+
+    return signatureMaker.getSignature(g);
+  }
+
   protected abstract boolean accept(Graph g, Set<Graph> set);
 
   // hasNext is blocking: it only returns after processing the input iterator completely
@@ -6,6 +6,7 @@ package etomica.graph.iterators.filters;
 
 import java.util.Set;
 
+import etomica.graph.isomorphism.CanonicalForm;
 import etomica.graph.isomorphism.Match;
 import etomica.graph.model.Graph;
 import etomica.graph.model.GraphIterator;
@@ -18,6 +19,7 @@ public class IsomorphismFilter extends GlobalFilter {
   private int countSeen = 0;
   private int countDiscarded = 0;
   private long debugStart = System.nanoTime();
+  private final boolean useCanonicalForm = Match.USE_CANONICAL_FORM;
 
   public IsomorphismFilter(GraphIterator iterator) {
     this(iterator, null);
@@ -27,6 +29,14 @@ public class IsomorphismFilter extends GlobalFilter {
     super(iterator, signatureMaker);
   }
 
+  // with canonical forms in the key, each set holds only isomorphs
+  @Override
+  protected String getBlockingKey(Graph g) {
+
+    String key = super.getBlockingKey(g);
+    return useCanonicalForm ? key + "/" + CanonicalForm.key(g) : key;
+  }
+
   protected boolean accept(Graph g1, Set<Graph> set) {
 
     boolean result = true;
@@ -34,7 +44,7 @@ public class IsomorphismFilter extends GlobalFilter {
       for (Graph isoGraph : set) {
         // test for isomorphism and, if they don't match, keep the graph lower in the
         // graph order; update the graph coefficients;
-        if (Match.match(isoGraph, g1, false)) {
+        if (useCanonicalForm || Match.match(isoGraph, g1, false)) {
           countDiscarded++;
           if (isoGraph.compareTo(g1) >= 0) {
             isoGraph.coefficient().add(g1.coefficient());
@@ -40,7 +40,7 @@ public class GraphImpl implements Graph {
   private final Bitmap store;
   private final Node[] nodes;
   private List<Node> nodeList;
-  private List<Edge> edgeList;
+  private volatile List<Edge> edgeList;
   private final Coefficient coefficient;
   private final Edge[] edges, reverseEdges;
   private int[] factors = new int[0];
@@ -244,13 +244,17 @@ public class GraphImpl implements Graph {
   }
 
   public List<Edge> edges() {
-    if (edgeList != null) return edgeList;
+    List<Edge> list = edgeList;
+    if (list != null) return list;
     
-    edgeList = new ArrayList<Edge>(edgeCount());
+    // the list is only published once complete, since graphs being
+    // multiplied may be read on several threads at once
+    list = new ArrayList<Edge>(edgeCount());
     for (byte edgeId=0; edgeId<edges.length; edgeId++) {
-      if (edges[edgeId] != null) edgeList.add(edges[edgeId]);
+      if (edges[edgeId] != null) list.add(edges[edgeId]);
     }
-    return edgeList;
+    edgeList = list;
+    return list;
   }
 
   public String edgesToString() {
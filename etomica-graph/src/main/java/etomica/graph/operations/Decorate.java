@@ -55,12 +55,14 @@ public class Decorate implements Binary {
     MulFlexible mulFlex = new MulFlexible();
     IsoFree isoFree = new IsoFree();
     for (int i=1; i<allSet1.size(); i++) {
-      result.addAll(mulFlex.apply(allSet1.get(i), set2Pow, mfp));
+      // products are made isomorph-free as they are formed, so that only the
+      // distinct products are ever held
+      result.addAll(mulFlex.applyIsoFree(allSet1.get(i), set2Pow, mfp));
       result = isoFree.apply(result, null);
 
       if (i+1<allSet1.size()) {
         // we're going to make another pass.  calculate (set2)^(i+1)
-        set2Pow = isoFree.apply(mulFlex.apply(set2Pow, argument2, mfp), null);
+        set2Pow = mulFlex.applyIsoFree(set2Pow, argument2, mfp);
       }
     }
     if (factor != -1) {
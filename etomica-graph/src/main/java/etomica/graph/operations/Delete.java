@@ -7,6 +7,7 @@ package etomica.graph.operations;
 import java.util.HashSet;
 import java.util.Set;
 
+import etomica.graph.isomorphism.CanonicalForm;
 import etomica.graph.isomorphism.Match;
 import etomica.graph.model.Graph;
 
@@ -18,6 +19,18 @@ public class Delete implements Binary {
   public Set<Graph> apply(Set<Graph> left, Set<Graph> right, Parameters params) {
 
     Set<Graph> result = new HashSet<Graph>();
+    if (Match.USE_CANONICAL_FORM) {
+      Set<String> rightKeys = new HashSet<String>();
+      for (Graph rg : right) {
+        rightKeys.add(rg.getSignature() + "/" + CanonicalForm.key(rg));
+      }
+      for (Graph lg : left) {
+        if (!rightKeys.contains(lg.getSignature() + "/" + CanonicalForm.key(lg))) {
+          result.add(lg.copy());
+        }
+      }
+      return result;
+    }
     for (Graph lg : left) {
       boolean deleteLeft = false;
       for (Graph rg : right) {
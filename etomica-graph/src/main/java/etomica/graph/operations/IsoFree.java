@@ -4,6 +4,7 @@
 
 package etomica.graph.operations;
 
+import etomica.graph.iterators.ChainedIterator;
 import etomica.graph.iterators.IteratorWrapper;
 import etomica.graph.iterators.filters.GlobalFilter;
 import etomica.graph.iterators.filters.IsomorphismFilter;
@@ -11,14 +12,34 @@ import etomica.graph.model.Graph;
 import etomica.graph.model.GraphIterator;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class IsoFree implements Unary {
 
   public Set<Graph> apply(Set<Graph> argument, Parameters params) {
 
-    IteratorWrapper wrapper = new IteratorWrapper(argument.iterator(), true);
-    GraphIterator isomorphs = new IsomorphismFilter(wrapper, null);
+    if (ParallelOperations.isParallel(argument.size())) {
+      // isomorphs within each chunk are combined on the pool's threads
+      List<Set<Graph>> chunks = ParallelOperations.map(argument, new ParallelOperations.ChunkOperation<Set<Graph>>() {
+        public Set<Graph> apply(List<Graph> graphs) {
+          return IsoFree.this.apply(new IteratorWrapper(graphs.iterator(), true));
+        }
+      });
+      return merge(chunks);
+    }
+    // the same order as merge gives, whatever the number of threads
+    return ParallelOperations.ordered(apply(new IteratorWrapper(argument.iterator(), true)));
+  }
+
+  /**
+   * Returns the isomorph-free set of graphs from the iterator, combining the
+   * coefficients of isomorphs.  The graphs are not copied, so the iterator
+   * should return graphs that can be modified (such as new products).
+   */
+  public Set<Graph> apply(GraphIterator argument) {
+
+    GraphIterator isomorphs = new IsomorphismFilter(argument, null);
     Set<Graph> result = new HashSet<Graph>();
     while (isomorphs.hasNext()) {
       result.add(isomorphs.next());
@@ -26,6 +47,20 @@ public class IsoFree implements Unary {
     return result;
   }
 
+  /**
+   * Combines isomorph-free sets from separate chunks of work into one
+   * isomorph-free set, in a deterministic order.
+   */
+  public Set<Graph> merge(List<Set<Graph>> chunks) {
+
+    ChainedIterator chain = new ChainedIterator();
+    for (Set<Graph> chunk : chunks) {
+      chain.chainIterator(chunk.iterator());
+    }
+    chain.start();
+    return ParallelOperations.ordered(apply(chain));
+  }
+
   public static class IsoFreeParams extends GlobalFilter.SignatureMaker implements Parameters {
   }
-}
\ No newline at end of file
+}
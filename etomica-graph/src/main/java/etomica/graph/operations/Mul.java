@@ -5,31 +5,50 @@
 package etomica.graph.operations;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import etomica.graph.iterators.ProductIterator;
 import etomica.graph.model.Edge;
 import etomica.graph.model.Graph;
 import etomica.graph.model.GraphFactory;
+import etomica.graph.model.GraphIterator;
 import etomica.graph.model.Node;
 import static etomica.graph.model.Metadata.*;
 
 public class Mul implements Binary {
 
-  public Set<Graph> apply(Set<Graph> left, Set<Graph> right, Parameters params) {
+  public Set<Graph> apply(Set<Graph> left, final Set<Graph> right, final Parameters params) {
     assert(params instanceof MulParameters);
-    Unary isoFree = new IsoFree();
-    Set<Graph> result = new HashSet<Graph>();
-    for (Graph lg : left) {
-      for (Graph rg : right) {
-        Graph graph = apply(lg, rg, (MulParameters)params);
-        if (graph != null) {
-          result.add(graph);
+    final IsoFree isoFree = new IsoFree();
+    if (ParallelOperations.isParallel(left.size())) {
+      // each chunk of left is multiplied and made isomorph-free on its own thread
+      List<Set<Graph>> chunks = ParallelOperations.map(left, new ParallelOperations.ChunkOperation<Set<Graph>>() {
+        public Set<Graph> apply(List<Graph> graphs) {
+          return isoFree.apply(iterator(graphs, right, (MulParameters)params));
         }
-      }
+      });
+      return isoFree.merge(chunks);
     }
-    return isoFree.apply(result, null);
+    return ParallelOperations.ordered(isoFree.apply(iterator(left, right, (MulParameters)params)));
+  }
+
+  /**
+   * Returns an iterator over the products of the graphs in left and right,
+   * formed as they are requested.
+   */
+  public GraphIterator iterator(Collection<Graph> left, final Collection<Graph> right, final MulParameters params) {
+
+    return new ProductIterator(left.iterator()) {
+      protected Iterator<Graph> partners(Graph lg) {
+        return right.iterator();
+      }
+      protected Graph product(Graph lg, Graph rg) {
+        return apply(lg, rg, params);
+      }
+    };
   }
 
   public Graph apply(Graph left, Graph right, MulParameters params) {
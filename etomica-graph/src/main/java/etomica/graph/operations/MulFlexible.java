@@ -4,15 +4,21 @@
 
 package etomica.graph.operations;
 
+import etomica.graph.iterators.ChainedIterator;
+import etomica.graph.iterators.ProductIterator;
 import etomica.graph.model.Graph;
 import etomica.graph.model.GraphFactory;
+import etomica.graph.model.GraphIterator;
 import etomica.graph.model.Metadata;
 import etomica.graph.model.Node;
 import etomica.graph.model.impl.MetadataImpl;
 import etomica.graph.operations.Mul.MulParameters;
 import etomica.graph.property.NumFieldNodes;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -37,7 +43,6 @@ import static etomica.graph.model.Metadata.TYPE_NODE_ROOT;
  */
 public class MulFlexible implements Binary {
 
-    @SuppressWarnings("unchecked")
     public Set<Graph> apply(Set<Graph> argument, Set<Graph> argument2, Parameters params) {
 
         assert (params instanceof MulFlexibleParameters);
@@ -46,12 +51,44 @@ public class MulFlexible implements Binary {
             argument = argument2;
             argument2 = foo;
         }
-        // argument is now smaller than argument2
+        return apply(argument, splitByFieldNodes(argument2, params), params);
+    }
+
+    /**
+     * Returns the isomorph-free set of products of the graphs in argument and
+     * argument2.  This is equivalent to applying IsoFree to the result of
+     * apply, but the products are filtered as they are formed (on separate
+     * threads for separate chunks of the smaller set, if the pool has more
+     * than one thread) so that the full set of products is never held.
+     */
+    public Set<Graph> applyIsoFree(Set<Graph> argument, Set<Graph> argument2, final Parameters params) {
+
+        assert (params instanceof MulFlexibleParameters);
+        if (argument.size() > argument2.size()) {
+            Set<Graph> foo = argument;
+            argument = argument2;
+            argument2 = foo;
+        }
+        final Set<Graph>[] sets2 = splitByFieldNodes(argument2, params);
+        final IsoFree isoFree = new IsoFree();
+        if (ParallelOperations.isParallel(argument.size())) {
+            List<Set<Graph>> chunks = ParallelOperations.map(argument, new ParallelOperations.ChunkOperation<Set<Graph>>() {
+                public Set<Graph> apply(List<Graph> graphs) {
+                    return isoFree.apply(iterator(graphs, sets2, params));
+                }
+            });
+            return isoFree.merge(chunks);
+        }
+        return ParallelOperations.ordered(isoFree.apply(iterator(argument, sets2, params)));
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Set<Graph>[] splitByFieldNodes(Set<Graph> argument2, Parameters params) {
         // split argument2 into sets of graphs with different # of field points
         int maxNField = ((MulFlexibleParameters) params).nFieldPoints;
         Set<Graph>[] sets2 = new Set[maxNField + 1];
         for (int i = 0; i < sets2.length; i++) {
-            sets2[i] = new HashSet<Graph>();
+            sets2[i] = new LinkedHashSet<Graph>();
         }
         for (Graph g : argument2) {
             int numField2 = NumFieldNodes.value(g);
@@ -59,27 +96,65 @@ public class MulFlexible implements Binary {
                 sets2[numField2].add(g);
             }
         }
-        return apply(argument, sets2, params);
+        return sets2;
     }
 
-    public Set<Graph> apply(Set<Graph> argument, Set<Graph>[] sets2, Parameters params) {
+    public Set<Graph> apply(Set<Graph> argument, final Set<Graph>[] sets2, final Parameters params) {
         assert (params instanceof MulFlexibleParameters);
-        Set<Graph> result = new HashSet<Graph>();
-        int maxNField = ((MulFlexibleParameters) params).nFieldPoints;
-        for (Graph g : argument) {
-            int numField1 = NumFieldNodes.value(g);
-            // look only at graphs from g2 that will result in a product with less
-            // than the max # of field nodes
-            for (int i = 0; i <= maxNField - numField1; i++) {
-                for (Graph g2 : sets2[i]) {
-                    Graph newGraph = apply(g, g2, (MulFlexibleParameters) params);
-                    result.add(newGraph);
+        if (ParallelOperations.isParallel(argument.size())) {
+            // products for each chunk of argument are formed on separate threads
+            // and combined in chunk order
+            List<List<Graph>> chunks = ParallelOperations.map(argument, new ParallelOperations.ChunkOperation<List<Graph>>() {
+                public List<Graph> apply(List<Graph> graphs) {
+                    List<Graph> chunkResult = new ArrayList<Graph>();
+                    GraphIterator products = iterator(graphs, sets2, params);
+                    while (products.hasNext()) {
+                        chunkResult.add(products.next());
+                    }
+                    return chunkResult;
                 }
+            });
+            Set<Graph> result = new LinkedHashSet<Graph>();
+            for (List<Graph> chunk : chunks) {
+                result.addAll(chunk);
             }
+            return result;
+        }
+        // in the order of argument, as the chunks are combined above
+        Set<Graph> result = new LinkedHashSet<Graph>();
+        GraphIterator products = iterator(argument, sets2, params);
+        while (products.hasNext()) {
+            result.add(products.next());
         }
         return result;
     }
 
+    /**
+     * Returns an iterator over the products of the graphs in argument with
+     * those in sets2 (split by number of field nodes) that do not exceed the
+     * maximum number of field nodes.  Products are formed as they are
+     * requested.
+     */
+    public GraphIterator iterator(Collection<Graph> argument, final Set<Graph>[] sets2, final Parameters params) {
+        final int maxNField = ((MulFlexibleParameters) params).nFieldPoints;
+        return new ProductIterator(argument.iterator()) {
+            protected Iterator<Graph> partners(Graph g) {
+                int numField1 = NumFieldNodes.value(g);
+                // look only at graphs from g2 that will result in a product with less
+                // than the max # of field nodes
+                ChainedIterator chain = new ChainedIterator();
+                for (int i = 0; i <= maxNField - numField1; i++) {
+                    chain.chainIterator(sets2[i].iterator());
+                }
+                chain.start();
+                return chain;
+            }
+            protected Graph product(Graph g, Graph g2) {
+                return apply(g, g2, (MulFlexibleParameters) params);
+            }
+        };
+    }
+
     public Graph apply(Graph g1, Graph g2, MulFlexibleParameters params) {
 
         Graph result;
@@ -0,0 +1,157 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.operations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import etomica.graph.isomorphism.CanonicalForm;
+import etomica.graph.model.Graph;
+
+/**
+ * Pool of threads shared by the binary graph operations (Mul, MulFlexible,
+ * Decorate and, through Mul, Pow and Exp).  These split the graphs of their
+ * first argument into contiguous chunks, and the products of each chunk with
+ * the second argument are formed on a separate thread.  With one thread (the
+ * default) the operations run serially.  The isomorph-free results of IsoFree,
+ * Mul and MulFlexible.applyIsoFree are always in the order given by ordered,
+ * and those of MulFlexible.apply follow the order of the first argument, so
+ * results do not depend on the number of threads.
+ */
+public class ParallelOperations {
+
+  // chunks smaller than this are not worth handing to another thread
+  public static int MIN_CHUNK_SIZE = 8;
+
+  private static int numThreads = 1;
+  private static ForkJoinPool pool = null;
+
+  public static synchronized void setNumThreads(int newNumThreads) {
+
+    if (newNumThreads < 1) {
+      throw new IllegalArgumentException("number of threads must be positive");
+    }
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+    numThreads = newNumThreads;
+    if (numThreads > 1) {
+      pool = new ForkJoinPool(numThreads);
+    }
+  }
+
+  public static int getNumThreads() {
+
+    return numThreads;
+  }
+
+  /**
+   * Returns true if an operation on a set of the given size should be split
+   * across threads.
+   */
+  public static boolean isParallel(int size) {
+
+    return numThreads > 1 && size >= 2 * MIN_CHUNK_SIZE;
+  }
+
+  /**
+   * Applies the given operation to contiguous chunks of the graphs on the
+   * pool's threads and returns the results in chunk order.  Any exception
+   * thrown by the operation is rethrown here.
+   */
+  public static <T> List<T> map(Collection<Graph> graphs, final ChunkOperation<T> op) {
+
+    final List<Graph> list = new ArrayList<Graph>(graphs);
+    // several chunks per thread so that the threads finish together
+    int nChunks = Math.max(1, Math.min(4 * numThreads, list.size() / MIN_CHUNK_SIZE));
+    List<Callable<T>> tasks = new ArrayList<Callable<T>>(nChunks);
+    for (int i = 0; i < nChunks; i++) {
+      final int start = (int) ((long) list.size() * i / nChunks);
+      final int end = (int) ((long) list.size() * (i + 1) / nChunks);
+      tasks.add(new Callable<T>() {
+        public T call() {
+          return op.apply(list.subList(start, end));
+        }
+      });
+    }
+    ForkJoinPool myPool;
+    synchronized (ParallelOperations.class) {
+      myPool = pool;
+    }
+    List<T> results = new ArrayList<T>(nChunks);
+    if (myPool == null) {
+      for (Callable<T> task : tasks) {
+        try {
+          results.add(task.call());
+        }
+        catch (RuntimeException e) {
+          throw e;
+        }
+        catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return results;
+    }
+    for (Future<T> future : myPool.invokeAll(tasks)) {
+      try {
+        results.add(future.get());
+      }
+      catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Returns the graphs in a set ordered by signature and canonical form, so
+   * that the order does not depend on how the work was split or on hashing.
+   * Isomorphs (which should not be present) keep their relative order.
+   */
+  public static Set<Graph> ordered(Collection<Graph> graphs) {
+
+    final List<String> keys = new ArrayList<String>(graphs.size());
+    List<Integer> indices = new ArrayList<Integer>(graphs.size());
+    final List<Graph> list = new ArrayList<Graph>(graphs);
+    for (Graph g : list) {
+      indices.add(keys.size());
+      keys.add(g.getSignature() + "/" + CanonicalForm.key(g));
+    }
+    Collections.sort(indices, new Comparator<Integer>() {
+      public int compare(Integer i1, Integer i2) {
+        return keys.get(i1).compareTo(keys.get(i2));
+      }
+    });
+    Set<Graph> result = new LinkedHashSet<Graph>();
+    for (Integer i : indices) {
+      result.add(list.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Operation applied to one chunk of graphs.
+   */
+  public interface ChunkOperation<T> {
+    public T apply(List<Graph> graphs);
+  }
+}
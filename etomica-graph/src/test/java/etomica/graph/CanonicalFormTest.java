@@ -0,0 +1,184 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import etomica.graph.isomorphism.CanonicalForm;
+import etomica.graph.isomorphism.Match;
+import etomica.graph.iterators.DefaultIterator;
+import etomica.graph.iterators.filters.IsomorphismFilter;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphFactory;
+import etomica.graph.model.GraphIterator;
+import etomica.graph.model.Metadata;
+import etomica.graph.model.impl.GraphImpl;
+import etomica.graph.model.impl.MetadataImpl;
+import etomica.graph.operations.Relabel;
+import etomica.graph.operations.RelabelParameters;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class CanonicalFormTest {
+
+  @Test
+  public void testIsoFreeCounts() {
+
+    boolean debug = IsomorphismFilter.DEBUG_MODE;
+    IsomorphismFilter.DEBUG_MODE = false;
+    for (byte n = 2; n <= 6; n++) {
+      GraphIterator iterator = new IsomorphismFilter(new DefaultIterator(n));
+      int count = 0;
+      while (iterator.hasNext()) {
+        iterator.next();
+        count++;
+      }
+      assertEquals(Match.ISMORPHS_COUNT[n - 1], count);
+    }
+    IsomorphismFilter.DEBUG_MODE = debug;
+  }
+
+  @Test
+  public void testColoredGraphs() {
+
+    Random random = new Random(1);
+    Relabel relabel = new Relabel();
+    for (byte n = 3; n <= 8; n++) {
+      List<Graph> graphs = new ArrayList<Graph>();
+      for (int i = 0; i < 40; i++) {
+        Graph g = randomGraph(n, random);
+        graphs.add(g);
+        // a relabeled copy must have the same key
+        byte[] permutation = new byte[n];
+        for (byte j = 0; j < n; j++) {
+          permutation[j] = j;
+        }
+        for (int j = n - 1; j > 0; j--) {
+          int k = random.nextInt(j + 1);
+          byte t = permutation[j];
+          permutation[j] = permutation[k];
+          permutation[k] = t;
+        }
+        Graph h = relabel.apply(g, new RelabelParameters(permutation));
+        assertEquals(CanonicalForm.key(g), CanonicalForm.key(h));
+        graphs.add(h);
+      }
+      for (Graph g1 : graphs) {
+        for (Graph g2 : graphs) {
+          assertEquals(Match.match(g1, g2, false), CanonicalForm.key(g1).equals(CanonicalForm.key(g2)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRootPointsSpecial() {
+
+    // paths 0-1-2, rooted at an end and in the middle
+    Graph g1 = path(new char[]{'A', 'A'});
+    g1.getNode((byte) 0).setType(Metadata.TYPE_NODE_ROOT);
+    Graph g2 = path(new char[]{'A', 'A'});
+    g2.getNode((byte) 1).setType(Metadata.TYPE_NODE_ROOT);
+
+    boolean special = MetadataImpl.rootPointsSpecial;
+    try {
+      MetadataImpl.rootPointsSpecial = false;
+      assertEquals(CanonicalForm.key(g1), CanonicalForm.key(g2));
+      // the keys cached above must not be used once root points are special
+      MetadataImpl.rootPointsSpecial = true;
+      assertNotEquals(CanonicalForm.key(g1), CanonicalForm.key(g2));
+      assertEquals(Match.match(g1, g2, false), CanonicalForm.key(g1).equals(CanonicalForm.key(g2)));
+      MetadataImpl.rootPointsSpecial = false;
+      assertEquals(CanonicalForm.key(g1), CanonicalForm.key(g2));
+    }
+    finally {
+      MetadataImpl.rootPointsSpecial = special;
+    }
+  }
+
+  @Test
+  public void testReverseEdges() {
+
+    boolean reverse = GraphImpl.useReverseEdges;
+    ArrayList<Character> pair = new ArrayList<Character>();
+    pair.add('a');
+    pair.add('b');
+    try {
+      // without reverse edges, the chain and the star are both paths of 'a'
+      GraphImpl.useReverseEdges = false;
+      Graph chain = path(new char[]{'a', 'a'});
+      Graph star = star(new char[]{'a', 'a'});
+      assertEquals(CanonicalForm.key(chain), CanonicalForm.key(star));
+
+      // with 'b' the reverse of 'a', the chain is 0->1->2 and the star has
+      // both bonds leaving 0
+      GraphImpl.useReverseEdges = true;
+      MetadataImpl.edgeColorPairs.add(pair);
+      chain = path(new char[]{'a', 'a'});
+      star = star(new char[]{'a', 'a'});
+      // 2->1->0, which is the same chain
+      Graph reversed = path(new char[]{'b', 'b'});
+      assertNotEquals(CanonicalForm.key(chain), CanonicalForm.key(star));
+      assertEquals(CanonicalForm.key(chain), CanonicalForm.key(reversed));
+    }
+    finally {
+      MetadataImpl.edgeColorPairs.remove(pair);
+      GraphImpl.useReverseEdges = reverse;
+    }
+  }
+
+  /**
+   * Returns the path 0-1-2-..., with edge i-(i+1) colored colors[i].
+   */
+  protected Graph path(char[] colors) {
+
+    Graph g = GraphFactory.createGraph((byte) (colors.length + 1));
+    for (byte i = 0; i < colors.length; i++) {
+      g.putEdge(i, (byte) (i + 1));
+      g.getEdge(i, (byte) (i + 1)).setColor(colors[i]);
+    }
+    g.createReverseEdges();
+    return g;
+  }
+
+  /**
+   * Returns the star centered on 0, with edge 0-(i+1) colored colors[i].
+   */
+  protected Graph star(char[] colors) {
+
+    Graph g = GraphFactory.createGraph((byte) (colors.length + 1));
+    for (byte i = 0; i < colors.length; i++) {
+      g.putEdge((byte) 0, (byte) (i + 1));
+      g.getEdge((byte) 0, (byte) (i + 1)).setColor(colors[i]);
+    }
+    g.createReverseEdges();
+    return g;
+  }
+
+  /**
+   * Returns a graph with random edges, where nodes and edges are colored A or
+   * B.  Edges are dense, so that the graphs are often symmetric.
+   */
+  protected Graph randomGraph(byte n, Random random) {
+
+    Graph g = GraphFactory.createGraph(n);
+    for (byte i = 0; i < n; i++) {
+      if (random.nextInt(4) == 0) {
+        g.getNode(i).setColor('B');
+      }
+      for (byte j = (byte) (i + 1); j < n; j++) {
+        if (random.nextInt(4) > 0) {
+          g.putEdge(i, j);
+          g.getEdge(i, j).setColor(random.nextInt(5) == 0 ? 'B' : 'A');
+        }
+      }
+    }
+    return g;
+  }
+}
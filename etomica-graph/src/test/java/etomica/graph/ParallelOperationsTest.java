@@ -0,0 +1,160 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import etomica.graph.isomorphism.CanonicalForm;
+import etomica.graph.iterators.filters.IsomorphismFilter;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphFactory;
+import etomica.graph.model.Metadata;
+import etomica.graph.operations.IsoFree;
+import etomica.graph.operations.MulFlexible;
+import etomica.graph.operations.MulFlexible.MulFlexibleParameters;
+import etomica.graph.operations.ParallelOperations;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParallelOperationsTest {
+
+  private boolean debug;
+  private int minChunkSize;
+
+  @BeforeEach
+  public void setUp() {
+
+    debug = IsomorphismFilter.DEBUG_MODE;
+    IsomorphismFilter.DEBUG_MODE = false;
+    minChunkSize = ParallelOperations.MIN_CHUNK_SIZE;
+    ParallelOperations.MIN_CHUNK_SIZE = 2;
+  }
+
+  @AfterEach
+  public void tearDown() {
+
+    ParallelOperations.setNumThreads(1);
+    ParallelOperations.MIN_CHUNK_SIZE = minChunkSize;
+    IsomorphismFilter.DEBUG_MODE = debug;
+  }
+
+  @Test
+  public void testMulFlexible() {
+
+    Random random = new Random(2);
+    Set<Graph> set1 = randomGraphs(40, random);
+    Set<Graph> set2 = randomGraphs(30, random);
+    MulFlexibleParameters mfp = MulFlexibleParameters.makeParameters(new char[0], (byte) 4);
+    MulFlexible mulFlex = new MulFlexible();
+    IsoFree isoFree = new IsoFree();
+
+    Map<String, Double> expected = summarize(isoFree.apply(mulFlex.apply(set1, set2, mfp), null));
+    Set<Graph> serial = mulFlex.applyIsoFree(set1, set2, mfp);
+    assertEquals(expected, summarize(serial));
+    List<String> serialProducts = keys(mulFlex.apply(set1, set2, mfp));
+
+    ParallelOperations.setNumThreads(3);
+    assertEquals(expected, summarize(isoFree.apply(mulFlex.apply(set1, set2, mfp), null)));
+    Set<Graph> parallel = mulFlex.applyIsoFree(set1, set2, mfp);
+    assertEquals(expected, summarize(parallel));
+    // the order of the result does not depend on the number of threads
+    assertEquals(keys(serial), keys(parallel));
+    assertEquals(serialProducts, keys(mulFlex.apply(set1, set2, mfp)));
+    // or on the order of the input
+    assertEquals(keys(parallel), keys(mulFlex.applyIsoFree(reversed(set1), reversed(set2), mfp)));
+    ParallelOperations.setNumThreads(1);
+    assertEquals(keys(serial), keys(mulFlex.applyIsoFree(reversed(set1), reversed(set2), mfp)));
+  }
+
+  @Test
+  public void testIsoFree() {
+
+    Random random = new Random(3);
+    Set<Graph> graphs = randomGraphs(200, random);
+    IsoFree isoFree = new IsoFree();
+    Set<Graph> serial = isoFree.apply(graphs, null);
+    Map<String, Double> expected = summarize(serial);
+    ParallelOperations.setNumThreads(2);
+    Set<Graph> parallel = isoFree.apply(graphs, null);
+    assertEquals(expected, summarize(parallel));
+    assertEquals(keys(serial), keys(parallel));
+    assertEquals(keys(serial), keys(isoFree.apply(reversed(graphs), null)));
+
+    // sets too small to split are ordered the same way
+    Set<Graph> small = new LinkedHashSet<Graph>(new ArrayList<Graph>(graphs).subList(0, 2 * ParallelOperations.MIN_CHUNK_SIZE - 1));
+    assertEquals(keys(isoFree.apply(small, null)), keys(isoFree.apply(reversed(small), null)));
+  }
+
+  /**
+   * Returns copies of the graphs, in the reverse of their iteration order.
+   */
+  protected Set<Graph> reversed(Set<Graph> graphs) {
+
+    List<Graph> list = new ArrayList<Graph>();
+    for (Graph g : graphs) {
+      list.add(g.copy());
+    }
+    Collections.reverse(list);
+    return new LinkedHashSet<Graph>(list);
+  }
+
+  /**
+   * Returns the total coefficient of the graphs in each isomorphism class.
+   */
+  protected Map<String, Double> summarize(Set<Graph> graphs) {
+
+    Map<String, Double> result = new TreeMap<String, Double>();
+    for (Graph g : graphs) {
+      String key = g.getSignature() + "/" + CanonicalForm.key(g);
+      Double c = result.get(key);
+      result.put(key, (c == null ? 0 : c) + g.coefficient().getValue());
+    }
+    return result;
+  }
+
+  protected List<String> keys(Set<Graph> graphs) {
+
+    List<String> result = new ArrayList<String>();
+    for (Graph g : graphs) {
+      result.add(g.getSignature() + "/" + CanonicalForm.key(g));
+    }
+    return result;
+  }
+
+  /**
+   * Returns graphs of 1 to 3 nodes (the first of which is a root node) with
+   * random edges and coefficients.
+   */
+  protected Set<Graph> randomGraphs(int count, Random random) {
+
+    Set<Graph> result = new HashSet<Graph>();
+    for (int i = 0; i < count; i++) {
+      byte n = (byte) (1 + random.nextInt(3));
+      Graph g = GraphFactory.createGraph(n);
+      g.getNode((byte) 0).setType(Metadata.TYPE_NODE_ROOT);
+      for (byte j = 0; j < n; j++) {
+        for (byte k = (byte) (j + 1); k < n; k++) {
+          if (random.nextBoolean()) {
+            g.putEdge(j, k);
+          }
+        }
+      }
+      g.coefficient().setNumerator(1 + random.nextInt(3));
+      result.add(g);
+    }
+    return result;
+  }
+}
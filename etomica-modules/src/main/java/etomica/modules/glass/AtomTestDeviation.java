@@ -6,17 +6,35 @@ package etomica.modules.glass;
 import etomica.atom.AtomTest;
 import etomica.atom.IAtom;
 import etomica.box.Box;
+import etomica.data.TrajectoryStorage;
 import etomica.space.Space;
 import etomica.space.Vector;
 
-public class AtomTestDeviation implements AtomTest {
+/**
+ * Tests whether an atom has moved more (or less, see setDoMobileOnly) than a
+ * minimum distance.  The displacement is taken between the current
+ * configuration and one held by a ConfigurationStorage, or, with a
+ * TrajectoryStorage, from the displacements last passed to
+ * newDisplacements.  Those are kept only until the storage computes the next
+ * displacements, so the test must be used from within the listener
+ * callback, as DataSourcePercolation and DataSourceStrings do.
+ */
+public class AtomTestDeviation implements AtomTest, TrajectoryStorage.TrajectoryListener {
     protected ConfigurationStorage configStorage;
+    protected double[] displacements;
     protected int configIndex;
     protected final Box box;
     protected final Vector dr;
     protected double minDistance;
     protected boolean doMobileOnly = true;
 
+    /**
+     * Creates a test for displacements from a TrajectoryStorage.
+     */
+    public AtomTestDeviation(Box box) {
+        this(box, null);
+    }
+
     public AtomTestDeviation(Box box, ConfigurationStorage configStorage) {
         this.box = box;
         this.configStorage = configStorage;
@@ -47,11 +65,25 @@ public class AtomTestDeviation implements AtomTest {
 
     public void setConfigStorage(ConfigurationStorage configStorage){
         this.configStorage = configStorage;
+        displacements = null;
     }
 
     public ConfigurationStorage getConfigStorage(){ return configStorage; }
 
+    @Override
+    public void newDisplacements(int log2Lag, long sample, double[] dr) {
+        displacements = dr;
+    }
+
     public double getDisplacementSq(IAtom a) {
+        if (displacements != null) {
+            int D = dr.getD();
+            double sum = 0;
+            for (int k = 0, o = a.getLeafIndex() * D; k < D; k++) {
+                sum += displacements[o + k] * displacements[o + k];
+            }
+            return sum;
+        }
         int idx = configIndex;
         int lastIndex = configStorage.getLastConfigIndex();
         if (idx > lastIndex) idx = lastIndex;
@@ -4,7 +4,6 @@
 package etomica.modules.glass;
 
 import etomica.data.*;
-import etomica.data.types.DataDoubleArray;
 import etomica.data.types.DataFunction;
 import etomica.space.Space;
 import etomica.space.Vector;
@@ -12,18 +11,22 @@ import etomica.units.dimensions.*;
 
 import java.util.Arrays;
 
-public class DataSourcePercolation implements IDataSource, ConfigurationStorage.ConfigurationStorageListener, DataSourceIndependent {
-
-    protected final ConfigurationStorage configStorage;
-    protected DataDoubleArray tData;
-    protected DataDoubleArray.DataInfoDoubleArray tDataInfo;
-    protected DataFunction data, immFracData;
-    protected DataFunction.DataInfoFunction dataInfo, immFracDataInfo;
-    protected double[] percP;
-    protected long[] immFraction;
-    protected final DataTag tTag, tag, immFracTag;
-
-    protected long[] nSamples;
+/**
+ * Probability that the immobile atoms (those that moved less than the
+ * minimum distance of the AtomTestDeviation) form a percolating cluster,
+ * over 2^i samples of a TrajectoryStorage for i from log2StepStart to
+ * log2StepEnd.  The fraction of immobile atoms is available from
+ * makeImmFractionSource.
+ */
+public class DataSourcePercolation extends DataSourceTrajectory {
+
+    protected DataFunction immFracData;
+    protected DataFunction.DataInfoFunction immFracDataInfo;
+    protected final double[] percP;
+    protected final long[] immFraction;
+    protected final DataTag immFracTag;
+
+    protected final long[] nSamples;
     protected final AtomNbrClusterer clusterer;
     protected AtomTestDeviation atomTest;
     protected final int[][] clusterSize;
@@ -35,26 +38,27 @@ public class DataSourcePercolation implements IDataSource, ConfigurationStorage.
     protected int log2StepS, log2StepE;
 
 
-    public DataSourcePercolation(ConfigurationStorage configStorage, AtomTestDeviation atomTest, int log2StepS, int log2StepE) {
-        this.configStorage = configStorage;
+    public DataSourcePercolation(TrajectoryStorage storage, AtomTestDeviation atomTest, int log2StepS, int log2StepE) {
+        super(storage, storage.getMaxLags(), "percProb", new CompoundDimension(new Dimension[]{Length.DIMENSION}, new double[]{2}));
 
-        clusterer = new AtomNbrClusterer(configStorage.getBox(), atomTest, true);
+        clusterer = new AtomNbrClusterer(storage.getBox(), atomTest, true);
         this.atomTest = atomTest;
         this.log2StepS = log2StepS;
         this.log2StepE = log2StepE;
-        numAtoms = configStorage.getBox().getLeafList().size();
+        numAtoms = storage.getBox().getLeafList().size();
         clusterSize = new int[numAtoms][2];
         clusterStack = new int[numAtoms];
         isVisited= new boolean[numAtoms];
-        space = configStorage.box.getSpace();
-        percP = new double[0];
-        immFraction = new long[0];
-        nSamples = new long[0];
-        tag = new DataTag();
+        space = storage.getBox().getSpace();
+        int n = storage.getMaxLags();
+        percP = new double[n];
+        immFraction = new long[n];
+        nSamples = new long[n];
         immFracTag = new DataTag();
-        tTag = new DataTag();
+        immFracData = new DataFunction(new int[]{n});
+        immFracDataInfo = new DataFunction.DataInfoFunction("immFraction", Null.DIMENSION, this);
+        immFracDataInfo.addTag(immFracTag);
         r = space.makeVectorArray(numAtoms);
-        reset();
     }
 
     public void setLog2StepStart(int newStart) {
@@ -80,163 +84,109 @@ public class DataSourcePercolation implements IDataSource, ConfigurationStorage.
     }
 
 
+    @Override
     public void reset() {
-        int n = configStorage.getLastConfigIndex();
-        if (n == percP.length && data != null) return;
-        if (n < 1) n = 0;
-        percP = Arrays.copyOf(percP, n);
-        immFraction = Arrays.copyOf(immFraction, n);
-        nSamples = Arrays.copyOf(nSamples, n);
-        data = new DataFunction(new int[]{n});
-        immFracData = new DataFunction(new int[]{n});
-        tData = new DataDoubleArray(new int[]{n});
-        tDataInfo = new DataDoubleArray.DataInfoDoubleArray("t", Time.DIMENSION, new int[]{n});
-        tDataInfo.addTag(tTag);
-        dataInfo = new DataFunction.DataInfoFunction("percProb", new CompoundDimension(new Dimension[]{Length.DIMENSION}, new double[]{2}), this);
-        dataInfo.addTag(tag);
-        immFracDataInfo = new DataFunction.DataInfoFunction("immFraction", Null.DIMENSION, this);
-        immFracDataInfo.addTag(immFracTag);
-
+        Arrays.fill(percP, 0);
+        Arrays.fill(immFraction, 0);
+        Arrays.fill(nSamples, 0);
+    }
 
-        double[] t = tData.getData();
-        if (t.length > 0) {
-            double[] savedTimes = configStorage.getSavedTimes();
-            double dt = savedTimes[0] - savedTimes[1];
-            for (int i = 0; i < t.length; i++) {
-                t[i] = dt * (1L << i);
-            }
-        }
+    @Override
+    protected long getLag(int i) {
+        return 1L << i;
     }
 
     @Override
-    public void newConfigruation() {
-        reset(); // reallocates if needed
-        long step = configStorage.getSavedSteps()[0];
-        Vector[] positions = configStorage.getSavedConfig(0);
-        for (int i = log2StepS; i < percP.length && i <= log2StepE; i++) {
-            if (step % (1L << i) == 0) {
-                for(int j=0; j<numAtoms; j++){
-                    isVisited[j] = false;
-                }
+    public void newDisplacements(int i, long sample, double[] dr) {
+        if (i < log2StepS || i > log2StepE) return;
+        // unwrapped coordinates of the current sample
+        double[] positions = storage.getCoordinates();
+        int D = space.D();
+        for(int j=0; j<numAtoms; j++){
+            isVisited[j] = false;
+        }
 
-                atomTest.setConfigIndex(i);
-                clusterer.findClusters();
-                int[] firstAtom = clusterer.getFirstAtom();
-                int[] nextAtom = clusterer.getNextAtom();
-                int nClusters = 0;
-                for (int j = 0; j < firstAtom.length; j++) {
-                    if (firstAtom[j] == -1) break;
-                    nClusters++;
-                    clusterSize[j][0] = j;
-                    clusterSize[j][1] = 0;
-                    for (int ii = firstAtom[j]; ii != -1; ii = nextAtom[ii]) {
-                        clusterSize[j][1]++;
-                        immFraction[i]++;
+        atomTest.newDisplacements(i, sample, dr);
+        clusterer.findClusters();
+        int[] firstAtom = clusterer.getFirstAtom();
+        int[] nextAtom = clusterer.getNextAtom();
+        int nClusters = 0;
+        for (int j = 0; j < firstAtom.length; j++) {
+            if (firstAtom[j] == -1) break;
+            nClusters++;
+            clusterSize[j][0] = j;
+            clusterSize[j][1] = 0;
+            for (int ii = firstAtom[j]; ii != -1; ii = nextAtom[ii]) {
+                clusterSize[j][1]++;
+                immFraction[i]++;
 
-                    }
-                }
-                java.util.Arrays.sort(clusterSize, 0, nClusters, new java.util.Comparator<int[]>() {
-                    public int compare(int[] a, int[] b) {
-                        return Integer.compare(b[1], a[1]);
-                    }
-                });
+            }
+        }
+        java.util.Arrays.sort(clusterSize, 0, nClusters, new java.util.Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(b[1], a[1]);
+            }
+        });
 
 
 
-                outer:
-                for (int j = 0; j < nClusters; j++) {
-                    if(clusterSize[j][1] > 2*numAtoms/3) {
+        Vector tmp = space.makeVector();
+        outer:
+        for (int j = 0; j < nClusters; j++) {
+            if(clusterSize[j][1] > 2*numAtoms/3) {
+                percP[i]++;
+                break outer; //do not look for further clusters; go to next i.
+            }
+            int c = clusterSize[j][0]; //cluster No.
+            if(clusterSize[j][1] == 1) break;
+            int a = firstAtom[c]; // a is 1st atom in cluster
+            clusterStack[0] = a; //push a
+            isVisited[a] = true; // a is visited
+            for (int k = 0; k < D; k++) {
+                r[a].setX(k, positions[a * D + k]);
+            }
+            int k_top = 0;
+            while (k_top > -1) {//BFS
+                a = clusterStack[k_top];
+                k_top--;
+                int[] nbrs = clusterer.nbrList[a];
+                for (int m = 0; m < nbrs.length && nbrs[m] != -1; m++) {
+                    int b = nbrs[m];
+                    for (int k = 0; k < D; k++) {
+                        tmp.setX(k, positions[b * D + k] - positions[a * D + k]);
+                    }
+                    storage.getBox().getBoundary().nearestImage(tmp);
+                    tmp.PE(r[a]);
+                    if(isVisited[b] && r[b].Mv1Squared(tmp) > 1e-8){//percolation
                         percP[i]++;
-                        break outer; //do not look for further clusters; go to next i.
+                        break outer;//
                     }
-                    int c = clusterSize[j][0]; //cluster No.
-                    if(clusterSize[j][1] == 1) break;
-                    int a = firstAtom[c]; // a is 1st atom in cluster
-                    clusterStack[0] = a; //push a
-                    isVisited[a] = true; // a is visited
-                    r[a].E(positions[a]);
-                    Vector tmp = space.makeVector();
-                    int k_top = 0;
-                    while (k_top > -1) {//BFS
-                        a = clusterStack[k_top];
-                        k_top--;
-                        int[] nbrs = clusterer.nbrList[a];
-                        for (int m = 0; m < nbrs.length && nbrs[m] != -1; m++) {
-                            int b = nbrs[m];
-                            tmp.Ev1Mv2(positions[b], positions[a]);
-                            configStorage.getBox().getBoundary().nearestImage(tmp);
-                            tmp.PE(r[a]);
-                            if(isVisited[b] && r[b].Mv1Squared(tmp) > 1e-8){//percolation
-                                percP[i]++;
-                                break outer;//
-                            }
-                            if(!isVisited[b]){//New nbrs
-                                k_top++;
-                                clusterStack[k_top] = b; //push b
-                                isVisited[b] = true; // b is visited
-                            }
-                            r[b].E(tmp);
-                        }
+                    if(!isVisited[b]){//New nbrs
+                        k_top++;
+                        clusterStack[k_top] = b; //push b
+                        isVisited[b] = true; // b is visited
                     }
-                }//loop over clusters
-                nSamples[i]++;
-            }//2^i check
-        }// loop over i
+                    r[b].E(tmp);
+                }
+            }
+        }//loop over clusters
+        nSamples[i]++;
     }
 
 
     @Override
-    public IData getData() {
-        if (configStorage.getLastConfigIndex() < 1) return data;
-        double[] y = data.getData();
+    protected void computeData(double[] y) {
         for (int i = 0; i < percP.length; i++) {
             y[i] = percP[i]/nSamples[i];
         }
-        return data;
     }
 
 
-
-    @Override
-    public DataTag getTag() {
-        return tag;
-    }
-
-    @Override
-    public IDataInfo getDataInfo() {
-        return dataInfo;
-    }
-
-    @Override
-    public DataDoubleArray getIndependentData(int i) {
-        return tData;
-    }
-
-    @Override
-    public DataDoubleArray.DataInfoDoubleArray getIndependentDataInfo(int i) {
-        return tDataInfo;
-    }
-
-    @Override
-    public int getIndependentArrayDimension() {
-        return 1;
-    }
-
-    @Override
-    public DataTag getIndependentTag() {
-        return tTag;
-    }
-
-
-
-
-
     public ImmFractionSource makeImmFractionSource () {return new ImmFractionSource();}
 
     public class ImmFractionSource implements IDataSource {
         @Override
         public IData getData() {
-            if (configStorage.getLastConfigIndex() < 1) return immFracData;
             double[] yImmFrac = immFracData.getData();
             for (int i = 0; i < immFraction.length; i++) {
                 yImmFrac[i] = (double)immFraction[i]/nSamples[i]/numAtoms;
@@ -257,10 +207,3 @@ public class DataSourcePercolation implements IDataSource, ConfigurationStorage.
     }
 
 }
-
-
-
-
-
-
-
@@ -3,36 +3,33 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package etomica.modules.glass;
 
-import etomica.atom.AtomType;
 import etomica.atom.IAtomList;
 import etomica.box.Box;
-import etomica.data.*;
-import etomica.data.types.DataDoubleArray;
-import etomica.data.types.DataFunction;
+import etomica.data.DataSourceTrajectory;
+import etomica.data.TrajectoryStorage;
 import etomica.space.Vector;
 import etomica.units.dimensions.CompoundDimension;
 import etomica.units.dimensions.Dimension;
 import etomica.units.dimensions.Length;
-import etomica.units.dimensions.Time;
 
 import java.util.Arrays;
 
-public class DataSourceStrings implements IDataSource, ConfigurationStorage.ConfigurationStorageListener, DataSourceIndependent {
+/**
+ * Average number of atoms in the strings formed by the most mobile atoms,
+ * where an atom joins a string when it has moved into the place of another,
+ * over 2^i samples of a TrajectoryStorage for i from log2StepStart to
+ * log2StepEnd.
+ */
+public class DataSourceStrings extends DataSourceTrajectory {
 
-    protected final ConfigurationStorage configStorage;
-    protected DataDoubleArray tData;
-    protected DataDoubleArray.DataInfoDoubleArray tDataInfo;
-    protected DataFunction data;
-    protected DataFunction.DataInfoFunction dataInfo;
-    protected final DataTag tTag, tag;
     protected final AtomTestDeviation atomTestDeviation;
     protected final double[][] dr2;
     protected final int numAtoms;
     protected final double mobFrac, strTol2;
     protected final Box box;
-    protected long[] nStrings;
-    protected long[] numAtomInString;
-    protected final Vector dr;
+    protected final long[] nStrings;
+    protected final long[] numAtomInString;
+    protected final Vector dr, ri, riOld, rj;
     protected double nbrMax2 = 1.5 * 1.5;
     protected final int[] strings;
     protected final int[] nextAtom, firstAtoms;
@@ -40,110 +37,92 @@ public class DataSourceStrings implements IDataSource, ConfigurationStorage.Conf
 
 
 
-    public DataSourceStrings(ConfigurationStorage configStorage, int log2StepS, int log2StepE) {
-        this.configStorage = configStorage;
+    public DataSourceStrings(TrajectoryStorage storage, int log2StepS, int log2StepE) {
+        super(storage, storage.getMaxLags(), "String", new CompoundDimension(new Dimension[]{Length.DIMENSION}, new double[]{2}));
         this.log2StepS = log2StepS;
         this.log2StepE = log2StepE;
-        box = configStorage.getBox();
+        box = storage.getBox();
         numAtoms = box.getLeafList().size();
-        nStrings = new long[0];
-        numAtomInString = new long[0];
+        nStrings = new long[storage.getMaxLags()];
+        numAtomInString = new long[storage.getMaxLags()];
         dr2 = new double[numAtoms][2];
-        tag = new DataTag();
-        tTag = new DataTag();
-        atomTestDeviation = new AtomTestDeviation(box, configStorage);
+        atomTestDeviation = new AtomTestDeviation(box);
         mobFrac = 0.065;
         strTol2 = 0.3*0.3;
         dr = box.getSpace().makeVector();
+        ri = box.getSpace().makeVector();
+        riOld = box.getSpace().makeVector();
+        rj = box.getSpace().makeVector();
         int n = box.getLeafList().size();
         strings = new int[n];
         firstAtoms = new int[n];
         nextAtom = new int[n];
-        reset();
     }
 
+    @Override
     public void reset() {
-        int n = configStorage.getLastConfigIndex();
-        if (n == numAtomInString.length && data != null) return;
-        if (n < 1) n = 0;
-        numAtomInString = Arrays.copyOf(numAtomInString, n);
-        nStrings = Arrays.copyOf(nStrings, n);
-        data = new DataFunction(new int[]{n});
-        tData = new DataDoubleArray(new int[]{n});
-        tDataInfo = new DataDoubleArray.DataInfoDoubleArray("t", Time.DIMENSION, new int[]{n});
-        tDataInfo.addTag(tTag);
-        dataInfo = new DataFunction.DataInfoFunction("String", new CompoundDimension(new Dimension[]{Length.DIMENSION}, new double[]{2}), this);
-        dataInfo.addTag(tag);
-        double[] t = tData.getData();
-        if (t.length > 0) {
-            double[] savedTimes = configStorage.getSavedTimes();
-            double dt = savedTimes[0] - savedTimes[1];
-            for (int i = 0; i < t.length; i++) {
-                t[i] = dt * (1L << i);
-            }
-        }
+        Arrays.fill(numAtomInString, 0);
+        Arrays.fill(nStrings, 0);
     }
 
+    @Override
+    protected long getLag(int i) {
+        return 1L << i;
+    }
 
     @Override
-    public IData getData() {
-        if (configStorage.getLastConfigIndex() < 1) return data;
-        double[] y = data.getData();
+    protected void computeData(double[] y) {
         for (int i = 0; i < numAtomInString.length; i++) {
             y[i] = ((double)numAtomInString[i]) / nStrings[i];
         }
-        return data;
-    }
-
-    @Override
-    public DataTag getTag() {
-        return tag;
     }
 
     @Override
-    public IDataInfo getDataInfo() {
-        return dataInfo;
-    }
-
-    @Override
-    public void newConfigruation() {
-        reset(); // reallocates if needed
-        long step = configStorage.getSavedSteps()[0];
+    public void newDisplacements(int i, long sample, double[] displacements) {
+        if (i < log2StepS || i > log2StepE) return;
         IAtomList atoms = box.getLeafList();
 
-//Change the 3
-        for (int i = log2StepS; i < numAtomInString.length && i <= log2StepE; i++) {
-                if (step % (1L << (i - 1)) == 0) {
-                atomTestDeviation.setConfigIndex(i);
-                for(int j=0; j<numAtoms; j++){
-                    dr2[j][0] = j;
-                    dr2[j][1] = atomTestDeviation.getDisplacementSq(atoms.get(j));
-                }
+        atomTestDeviation.newDisplacements(i, sample, displacements);
+        for(int j=0; j<numAtoms; j++){
+            dr2[j][0] = j;
+            dr2[j][1] = atomTestDeviation.getDisplacementSq(atoms.get(j));
+        }
 
-                java.util.Arrays.sort(dr2, 0, numAtoms, new java.util.Comparator<double[]>() {
-                    public int compare(double[] a, double[] b) {
-                        return Double.compare(b[1], a[1]);
-                    }
-                });
+        java.util.Arrays.sort(dr2, 0, numAtoms, new java.util.Comparator<double[]>() {
+            public int compare(double[] a, double[] b) {
+                return Double.compare(b[1], a[1]);
+            }
+        });
 
-                findStrings(i);
+        findStrings(storage.getCoordinates(), displacements);
 
-                for (int j = 0; j < firstAtoms.length; j++) {
-                    if (firstAtoms[j] == -1) break;
-                    nStrings[i-1]++;
-                    for (int ii = firstAtoms[j]; ii != -1; ii = nextAtom[ii]) {
-                        numAtomInString[i-1]++;
-                    }
-                }
+        for (int j = 0; j < firstAtoms.length; j++) {
+            if (firstAtoms[j] == -1) break;
+            nStrings[i]++;
+            for (int ii = firstAtoms[j]; ii != -1; ii = nextAtom[ii]) {
+                numAtomInString[i]++;
             }
         }
     }
 
+    /**
+     * Sets v to the position of atom i at the start of the lag (if old) or
+     * now, from the current coordinates and the displacements.
+     */
+    protected void position(Vector v, int i, double[] positions, double[] displacements, boolean old) {
+        int D = v.getD();
+        for (int k = 0; k < D; k++) {
+            v.setX(k, positions[i * D + k] - (old ? displacements[i * D + k] : 0));
+        }
+    }
 
-
-    public void findStrings(int interval) {
-        Vector[] positions = configStorage.getSavedConfig(0);
-        Vector[] oldPositions = configStorage.getSavedConfig(interval);
+    /**
+     * Finds the strings for the current displacements.
+     *
+     * @param positions     unwrapped coordinates now
+     * @param displacements displacements of each atom over the lag
+     */
+    public void findStrings(double[] positions, double[] displacements) {
         int[] replacedAtom = new int[numAtoms];
 
         for (int i = 0; i < numAtoms*mobFrac; i++) {
@@ -154,12 +133,12 @@ public class DataSourceStrings implements IDataSource, ConfigurationStorage.Conf
         firstAtoms[0] = -1;
         for (int ii = 0; ii < numAtoms*mobFrac; ii++) {
             int i = (int)dr2[ii][0];
-            Vector ri = positions[i];
-            Vector riOld = oldPositions[i];
+            position(ri, i, positions, displacements, false);
+            position(riOld, i, positions, displacements, true);
             for (int jj = 0; jj < numAtoms*mobFrac; jj++) {
                 if(ii == jj) continue;
                 int j = (int)dr2[jj][0];
-                Vector rj = oldPositions[j];
+                position(rj, j, positions, displacements, true);
                 dr.Ev1Mv2(rj, riOld);
                 box.getBoundary().nearestImage(dr);
                 if (dr.squared() > nbrMax2) continue;
@@ -169,10 +148,8 @@ public class DataSourceStrings implements IDataSource, ConfigurationStorage.Conf
                 if(dr.squared() > strTol2) continue;
 
                 replacedAtom[j] = i;
-//                System.out.println(interval + " " + i +" replaced " + j);
                 if (strings[j] != -1) {
                     nextAtom[i] = j;
-//                    System.out.println("nextAtom["+i+"]" + " is now" + j);
                     int iCluster = strings[j];
                     strings[i] = iCluster;
                     firstAtoms[iCluster] = i;
@@ -181,7 +158,6 @@ public class DataSourceStrings implements IDataSource, ConfigurationStorage.Conf
                         //we have detected a ring
                         if(iCluster == jCluster) continue;
                         nextAtom[replacedAtom[i]] = i;
-//                        System.out.println("nextAtom["+replacedAtom[i]+"]" + " is now" + i);
                         for (int m = firstAtoms[iCluster]; m != -1; m = nextAtom[m]) {
                             strings[m] = jCluster;
                         }
@@ -202,7 +178,6 @@ public class DataSourceStrings implements IDataSource, ConfigurationStorage.Conf
                     int iCluster = strings[replacedAtom[i]];
                     strings[i] = iCluster;
                     nextAtom[replacedAtom[i]] = i;
-//                    System.out.println("nextAtom["+replacedAtom[i]+"]" + " is now" + i);
                 }else{
                     strings[i] = nClusters;
                     firstAtoms[nClusters] = i;
@@ -212,24 +187,4 @@ public class DataSourceStrings implements IDataSource, ConfigurationStorage.Conf
             }
         }
     }
-    @Override
-    public DataDoubleArray getIndependentData(int i) {
-        return tData;
-    }
-
-    @Override
-    public DataDoubleArray.DataInfoDoubleArray getIndependentDataInfo(int i) {
-        return tDataInfo;
-    }
-
-    @Override
-    public int getIndependentArrayDimension() {
-        return 1;
-    }
-
-    @Override
-    public DataTag getIndependentTag() {
-        return tTag;
-    }
-
 }
@@ -80,9 +80,13 @@ public class GlassGraphic extends SimulationGraphic {
         configStorageMSD.setEnabled(false); // start isothermal
         sim.integrator.getEventManager().addListener(configStorageMSD);
 
-        ConfigurationStorage configStorageMSDPerc = new ConfigurationStorage(sim.box, ConfigurationStorage.StorageType.MSD);
-        configStorageMSDPerc.setEnabled(false); // start isothermal
-        sim.integrator.getEventManager().addListener(configStorageMSDPerc);
+        TrajectoryStorage trajectory = new TrajectoryStorage(sim.box);
+        trajectory.setEnabled(false); // start isothermal
+        sim.integrator.getEventManager().addListener(trajectory);
+
+        TrajectoryStorage trajectoryPerc = new TrajectoryStorage(sim.box);
+        trajectoryPerc.setEnabled(false); // start isothermal
+        sim.integrator.getEventManager().addListener(trajectoryPerc);
 
         ConfigurationStorage configStorage = new ConfigurationStorage(sim.box, ConfigurationStorage.StorageType.LOG2);
         configStorage.setEnabled(false); // start isothermal
@@ -110,7 +114,7 @@ public class GlassGraphic extends SimulationGraphic {
         dbox.setDiameterHash(diameterHash);
 
         AtomTestDeviation atomFilterDeviation = new AtomTestDeviation(sim.box, configStorage);
-        AtomTestDeviation atomFilterDeviationPerc = new AtomTestDeviation(sim.box, configStorageMSDPerc);
+        AtomTestDeviation atomFilterDeviationPerc = new AtomTestDeviation(sim.box);
 
         ColorSchemeDeviation colorSchemeDeviation = new ColorSchemeDeviation(sim.box, configStorage);
         ColorSchemeDirection colorSchemeDirection = new ColorSchemeDirection(sim.box, configStorage);
@@ -680,8 +684,7 @@ public class GlassGraphic extends SimulationGraphic {
 
 
         //Strings
-        DataSourceStrings meterStrings = new DataSourceStrings(configStorageMSD, 3, 30);
-        configStorageMSD.addListener(meterStrings);
+        DataSourceStrings meterStrings = new DataSourceStrings(trajectory, 2, 29);
         DisplayPlot plotStrings = new DisplayPlot();
         DataPumpListener pumpStrings = new DataPumpListener(meterStrings, plotStrings.getDataSet().makeDataSink(), 1000);
         sim.integrator.getEventManager().addListener(pumpStrings);
@@ -691,8 +694,7 @@ public class GlassGraphic extends SimulationGraphic {
 
         //Percolation
         atomFilterDeviationPerc.setDoMobileOnly(false);
-        DataSourcePercolation meterPerc = new DataSourcePercolation(configStorageMSDPerc, atomFilterDeviationPerc, 5, 30);
-        configStorageMSDPerc.addListener(meterPerc);
+        DataSourcePercolation meterPerc = new DataSourcePercolation(trajectoryPerc, atomFilterDeviationPerc, 4, 29);
         DisplayPlot plotPerc = new DisplayPlot();
         DataPumpListener pumpPerc = new DataPumpListener(meterPerc, plotPerc.getDataSet().makeDataSink(), 1000);
         sim.integrator.getEventManager().addListener(pumpPerc);
@@ -712,9 +714,9 @@ public class GlassGraphic extends SimulationGraphic {
             @Override
             public void setValue(double newValue) {
                 if (newValue == getValue()) return;
-                configStorageMSDPerc.reset();
+                trajectoryPerc.reset();
                 atomFilterDeviationPerc.setMinDistance(newValue);
-                meterPerc.reset(); // Needed ???
+                meterPerc.reset();
             }
 
             @Override
@@ -747,7 +749,7 @@ public class GlassGraphic extends SimulationGraphic {
             public void setValue(double newValue) {
                 if (newValue == getValue()) return;
                 meterPerc.setLog2StepStart((int) newValue);
-                configStorageMSDPerc.reset();
+                trajectoryPerc.reset();
             }
 
             @Override
@@ -768,9 +770,9 @@ public class GlassGraphic extends SimulationGraphic {
         percMinLog2StepSlider.setShowBorder(true);
         percMinLog2StepSlider.setShowValues(true);
         percMinLog2StepSlider.setNMajor(6);
-        percMinLog2StepSlider.setMaximum(30);
+        percMinLog2StepSlider.setMaximum(29);
         percMinLog2StepSlider.setMinimum(0);
-        percMinLog2StepSlider.setValue(5);
+        percMinLog2StepSlider.setValue(4);
         percMinLog2StepSlider.setLabel("log2(min time (steps))");
 
 
@@ -780,7 +782,7 @@ public class GlassGraphic extends SimulationGraphic {
             public void setValue(double newValue) {
                 if (newValue == getValue()) return;
                 meterPerc.setLog2StepEnd((int) newValue);
-                configStorageMSDPerc.reset();
+                trajectoryPerc.reset();
             }
 
             @Override
@@ -801,9 +803,9 @@ public class GlassGraphic extends SimulationGraphic {
         percMaxLog2StepSlider.setShowBorder(true);
         percMaxLog2StepSlider.setShowValues(true);
         percMaxLog2StepSlider.setNMajor(6);
-        percMaxLog2StepSlider.setMaximum(30);
+        percMaxLog2StepSlider.setMaximum(29);
         percMaxLog2StepSlider.setMinimum(0);
-        percMaxLog2StepSlider.setValue(30);
+        percMaxLog2StepSlider.setValue(29);
         percMaxLog2StepSlider.setLabel("log2(max time (steps))");
 
 
@@ -1242,7 +1244,7 @@ public class GlassGraphic extends SimulationGraphic {
             accSFac.addDataSink(plotSFac.getDataSet().makeDataSink(), new AccumulatorAverage.StatType[]{accSFac.AVERAGE});
             plotSFac.setLabel("SFac");
             plotSFac.setDoDrawLines(new DataTag[]{meterSFac.getTag()}, false);
-            meterSFac.setAtomTypeFactor(sim.speciesB.getAtomType(0), -1);
+            meterSFac.setAtomTypeAmplitude(sim.speciesB.getAtomType(0), -1);
 
             double L = sim.box.getBoundary().getBoxSize().getX(0);
             double cut = 2.0 * Math.PI / L;
@@ -1286,8 +1288,10 @@ public class GlassGraphic extends SimulationGraphic {
                     configStorage.setEnabled(false);
                     configStorageMSD.reset();
                     configStorageMSD.setEnabled(false);
-                    configStorageMSDPerc.reset();
-                    configStorageMSDPerc.setEnabled(false);
+                    trajectory.reset();
+                    trajectory.setEnabled(false);
+                    trajectoryPerc.reset();
+                    trajectoryPerc.setEnabled(false);
                     dsMSDcorP.setEnabled(false);
                     dsHistogramP.setEnabled(false);
                     dsPMSDhistory.setEnabled(false);
@@ -1315,8 +1319,10 @@ public class GlassGraphic extends SimulationGraphic {
                     configStorage.setEnabled(true);
                     configStorageMSD.reset();
                     configStorageMSD.setEnabled(true);
-                    configStorageMSDPerc.reset();
-                    configStorageMSDPerc.setEnabled(true);
+                    trajectory.reset();
+                    trajectory.setEnabled(true);
+                    trajectoryPerc.reset();
+                    trajectoryPerc.setEnabled(true);
                     dsMSDcorP.setEnabled(true);
                     dsHistogramP.setEnabled(true);
                     dsPMSDhistory.setEnabled(true);
@@ -1375,7 +1381,8 @@ public class GlassGraphic extends SimulationGraphic {
         configStorage.reset();
         configStorageLinear.reset();
         configStorageMSD.reset();
-        configStorageMSDPerc.reset();
+        trajectory.reset();
+        trajectoryPerc.reset();
         dbox.repaint();
 
         IAction resetAction = new IAction() {
@@ -1571,7 +1578,7 @@ public class GlassGraphic extends SimulationGraphic {
 
         public void actionPerformed() {
             for (MeterStructureFactor m : meters) {
-                m.setAtomTypeFactor(type, value);
+                m.setAtomTypeAmplitude(type, value);
             }
             acc.reset();
             sfacClusterer.reset();
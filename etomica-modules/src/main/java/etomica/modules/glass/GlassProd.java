@@ -13,6 +13,7 @@ import etomica.data.types.DataGroup;
 import etomica.graphics.DisplayPlot;
 import etomica.integrator.IntegratorHard;
 import etomica.integrator.IntegratorVelocityVerlet;
+import etomica.space.Vector;
 import etomica.util.ParseArgs;
 
 import java.io.FileWriter;
@@ -99,36 +100,30 @@ public class GlassProd {
 
 
         //MSD
-        ConfigurationStorage configStorageMSD = new ConfigurationStorage(sim.box, ConfigurationStorage.StorageType.MSD);
-        configStorageMSD.setEnabled(true);
-        DataSourceMSD meterMSD = new DataSourceMSD(configStorageMSD);
-        configStorageMSD.addListener(meterMSD);
+        TrajectoryStorage trajectory = new TrajectoryStorage(sim.box);
+        DataSourceTrajectoryMSD meterMSD = new DataSourceTrajectoryMSD(trajectory);
 
         //Fs
-        DataSourceFs meterFs = new DataSourceFs(configStorageMSD);
-        configStorageMSD.addListener(meterFs);
+        Vector q = sim.getSpace().makeVector();
+        q.setX(0, 7.0);
+        DataSourceTrajectoryFs meterFs = new DataSourceTrajectoryFs(trajectory, q);
 
         //F
-        DataSourceF meterF = new DataSourceF(configStorageMSD);
-        configStorageMSD.addListener(meterF);
+        DataSourceTrajectoryF meterF = new DataSourceTrajectoryF(trajectory, q, 30);
 
         //Percolation
-        AtomTestDeviation atomFilterDeviation = new AtomTestDeviation(sim.box, configStorageMSD);
+        AtomTestDeviation atomFilterDeviation = new AtomTestDeviation(sim.box);
         atomFilterDeviation.setMinDistance(params.minDrFilter);
         atomFilterDeviation.setDoMobileOnly(false);
-        DataSourcePercolation meterPerc = new DataSourcePercolation(configStorageMSD, atomFilterDeviation, 5, 30);
+        DataSourcePercolation meterPerc = new DataSourcePercolation(trajectory, atomFilterDeviation, 4, 29);
 
         //Immobile fraction
         DataSourcePercolation.ImmFractionSource meterImmFraction = meterPerc.makeImmFractionSource();
 
-        configStorageMSD.addListener(meterPerc);
-
         //Strings
-        DataSourceStrings meterL = new DataSourceStrings(configStorageMSD, 3, 30);
-        configStorageMSD.addListener(meterL);
-
+        DataSourceStrings meterL = new DataSourceStrings(trajectory, 2, 29);
 
-        sim.integrator.getEventManager().addListener(configStorageMSD);
+        sim.integrator.getEventManager().addListener(trajectory);
 
         //Run
         double time0 = System.currentTimeMillis();
@@ -229,22 +224,22 @@ public class GlassProd {
             fileWriterPerc   = new FileWriter(filenamePerc,  false);
             fileWriterImmFrac   = new FileWriter(filenameImmFrac ,  false);
             fileWriterL   = new FileWriter(filenameL ,  false);
+            IData dataMSD = meterMSD.getData();
+            IData dataFs = meterFs.getData();
+            IData dataF = meterF.getData();
             DataDoubleArray x = meterMSD.getIndependentData(0);
-            DataDoubleArray x2 = meterMSD.getIndependentData(0);
-            for (int i=0; i<meterMSD.getData().getLength(); i++){
+            for (int i=0; i<dataMSD.getLength(); i++){
                 double xi = x.getValue(i);
-                double yi = meterMSD.getData().getValue(i);
-                double yiErr = meterMSD.errData.getValue(i);
-                double yiFs = meterFs.getData().getValue(i);
-                double yiF  = meterF.getData().getValue(i);
-                double yiL  = meterL.getData().getValue(i);
+                double yi = dataMSD.getValue(i);
+                double yiErr = meterMSD.getErrorData().getValue(i);
+                double yiFs = dataFs.getValue(i);
+                double yiL  = i < meterL.getData().getLength() ? meterL.getData().getValue(i) : Double.NaN;
                 if( !Double.isNaN(yi) && !Double.isNaN(yiErr) && !Double.isNaN(yiFs)){
                     fileWriterMSD.write(xi + " " + yi + " " + yiErr+"\n");
                     fileWriterD.write(xi + " " + yi/6/xi + " " + yiErr/6/xi + "\n");
                     fileWriterFs.write(xi + " " + yiFs + "\n");
-                    fileWriterF.write(xi + " " + yiF + "\n");
-                    double yiPerc  = meterPerc.getData().getValue(i);
-                    double yiImmFrac  = meterImmFraction.getData().getValue(i);
+                    double yiPerc  = i < meterPerc.getData().getLength() ? meterPerc.getData().getValue(i) : Double.NaN;
+                    double yiImmFrac  = i < meterImmFraction.getData().getLength() ? meterImmFraction.getData().getValue(i) : Double.NaN;
                     if(!Double.isNaN(yiPerc)){
                         fileWriterPerc.write(xi + " " + yiPerc + "\n");
                     }
@@ -256,6 +251,13 @@ public class GlassProd {
                     }
                 }
             }
+            DataDoubleArray xF = meterF.getIndependentData(0);
+            for (int i=0; i<dataF.getLength(); i++){
+                double yiF = dataF.getValue(i);
+                if(!Double.isNaN(yiF)){
+                    fileWriterF.write(xF.getValue(i) + " " + yiF + "\n");
+                }
+            }
             fileWriterMSD.close();
             fileWriterD.close();
             fileWriterFs.close();
@@ -0,0 +1,102 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.modules.glass;
+
+import etomica.data.types.DataFunction;
+import etomica.data.types.DataTensor;
+import etomica.space3d.Space3D;
+import etomica.units.dimensions.Pressure;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccumulatorAutocorrelationPTensorTest {
+
+    /**
+     * Autocorrelation averaged over the unique components, computed from all
+     * samples as the accumulator did before it used a multiple-tau
+     * correlator.  The averages subtracted for the diagonal components are
+     * those of the samples paired at each lag.
+     */
+    private static double allSamples(double[][] p, int dim, int lag) {
+        int n = (dim * dim - dim) / 2 + dim;
+        int nSamples = p.length - lag;
+        double allSum = 0;
+        for (int k = 0; k < dim; k++) {
+            for (int l = k; l < dim; l++) {
+                int c = k * dim + l;
+                double sumij = 0, sumi = 0, sumj = 0;
+                for (int i = 0; i < nSamples; i++) {
+                    sumi += p[i][c];
+                    sumj += p[i + lag][c];
+                    sumij += p[i][c] * p[i + lag][c];
+                }
+                sumij /= nSamples;
+                if (k == l) sumij -= (sumi / nSamples) * (sumj / nSamples);
+                allSum += sumij;
+            }
+        }
+        return allSum / n;
+    }
+
+    @Test
+    void testMatchesAllSamples() {
+        int dim = 3;
+        int nSamples = 12800;
+        // symmetric tensor, with AR(1) components and a nonzero diagonal average
+        RandomMersenneTwister random = new RandomMersenneTwister(6);
+        double[][] p = new double[nSamples][dim * dim];
+        for (int t = 0; t < nSamples; t++) {
+            for (int k = 0; k < dim; k++) {
+                for (int l = k; l < dim; l++) {
+                    double avg = k == l ? 3 : 0;
+                    double prev = t > 0 ? p[t - 1][k * dim + l] : avg;
+                    double x = avg + 0.9 * (prev - avg) + random.nextGaussian();
+                    p[t][k * dim + l] = p[t][l * dim + k] = x;
+                }
+            }
+        }
+
+        AccumulatorAutocorrelationPTensor acc = new AccumulatorAutocorrelationPTensor(256, 0.01);
+        DataTensor data = new DataTensor(Space3D.getInstance());
+        acc.putDataInfo(new DataTensor.DataInfoTensor("P", Pressure.DIMENSION, Space3D.getInstance()));
+        for (int t = 0; t < nSamples; t++) {
+            for (int k = 0; k < dim; k++) {
+                for (int l = 0; l < dim; l++) {
+                    data.x.setComponent(k, l, p[t][k * dim + l]);
+                }
+            }
+            acc.putData(data);
+
+            if (t == 999) {
+                // 1000 samples: lags up to 20 are included
+                double[] y = ((DataFunction) acc.getData()).getData();
+                for (int i = 0; i < y.length; i++) {
+                    long lag = Math.round(acc.getIndependentData(0).getValue(i) / 0.01);
+                    assertEquals(lag <= 20, !Double.isNaN(y[i]), "lag " + lag);
+                }
+            }
+        }
+
+        // 12800 samples: lags up to nMax=256 are included
+        double[] y = ((DataFunction) acc.getData()).getData();
+        double var = allSamples(p, dim, 0);
+        int nIncluded = 0;
+        for (int i = 0; i < y.length; i++) {
+            int lag = (int) Math.round(acc.getIndependentData(0).getValue(i) / 0.01);
+            if (lag > 256) {
+                assertTrue(Double.isNaN(y[i]), "lag " + lag);
+                continue;
+            }
+            nIncluded++;
+            double expected = allSamples(p, dim, lag);
+            // lags from 16 up are averaged over blocks of samples
+            double tol = lag < 16 ? 1e-3 : 0.02;
+            assertEquals(expected / var, y[i] / var, tol, "lag " + lag);
+        }
+        assertEquals(16 + 4 * 8 + 1, nIncluded);
+    }
+}
@@ -0,0 +1,118 @@
+package etomica.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor that writes, for each type annotated with
+ * etomica.meta.annotations.IndexSubclasses, the binary names of the classes
+ * compiled in this module that extend or implement it.  The list for type T
+ * is written to META-INF/etomica/index/T, where ComponentIndex reads it.
+ * Abstract classes are included, as they are by the classpath scan that the
+ * index replaces.  The processor also writes META-INF/etomica/indexed,
+ * listing the indexed types, even if nothing was indexed; ComponentIndex
+ * scans only the classpath elements that do not have this file.
+ * <p>
+ * The processor looks at every class compiled, not just annotated ones, and
+ * claims no annotations, so other processors still run.
+ */
+@SupportedAnnotationTypes("*")
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    public static final String INDEX_ANNOTATION = "etomica.meta.annotations.IndexSubclasses";
+    public static final String INDEX_PATH = "META-INF/etomica/index/";
+    public static final String INDEX_MARKER = "META-INF/etomica/indexed";
+
+    private final Map<String, Set<String>> index = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element e : roundEnv.getRootElements()) {
+            visit(e);
+        }
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private void visit(Element e) {
+        if (!(e instanceof TypeElement)) return;
+        TypeElement type = (TypeElement) e;
+        if (type.getKind() == ElementKind.CLASS || type.getKind() == ElementKind.ENUM) {
+            String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+            for (String base : indexedSupertypes(type)) {
+                index.computeIfAbsent(base, k -> new TreeSet<>()).add(name);
+            }
+        }
+        for (Element enclosed : type.getEnclosedElements()) {
+            visit(enclosed);
+        }
+    }
+
+    /**
+     * Returns the binary names of all supertypes of the given type (not
+     * including the type itself) that are annotated with IndexSubclasses.
+     */
+    private Set<String> indexedSupertypes(TypeElement type) {
+        Set<String> indexed = new TreeSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<TypeMirror> queue = new ArrayDeque<>(processingEnv.getTypeUtils().directSupertypes(type.asType()));
+        while (!queue.isEmpty()) {
+            TypeMirror t = queue.pop();
+            if (t.getKind() != TypeKind.DECLARED) continue;
+            TypeElement s = (TypeElement) ((DeclaredType) t).asElement();
+            String name = processingEnv.getElementUtils().getBinaryName(s).toString();
+            if (!visited.add(name)) continue;
+            for (AnnotationMirror a : s.getAnnotationMirrors()) {
+                if (((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(INDEX_ANNOTATION)) {
+                    indexed.add(name);
+                }
+            }
+            queue.addAll(processingEnv.getTypeUtils().directSupertypes(t));
+        }
+        return indexed;
+    }
+
+    private void writeIndex() {
+        for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+            write(INDEX_PATH + entry.getKey(), entry.getValue());
+        }
+        write(INDEX_MARKER, index.keySet());
+        index.clear();
+    }
+
+    private void write(String path, Set<String> lines) {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", path);
+            try (Writer writer = file.openWriter()) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write component index " + path + ": " + e);
+        }
+    }
+}
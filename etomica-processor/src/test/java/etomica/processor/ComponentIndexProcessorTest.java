@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.processor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentIndexProcessorTest {
+
+    private Path outDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        outDir = Files.createTempDirectory("component-index");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(outDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static JavaFileObject source(String className, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * Runs the processor on the sources, writing its output to outDir.
+     */
+    private void compile(JavaFileObject... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(outDir.toFile()));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-proc:only"), null, Arrays.asList(sources));
+            task.setProcessors(Collections.singletonList(new ComponentIndexProcessor()));
+            assertTrue(task.call(), diagnostics.getDiagnostics().toString());
+        }
+    }
+
+    private List<String> read(String path) throws IOException {
+        Path file = outDir.resolve(path);
+        assertTrue(Files.exists(file), path + " not written");
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .filter(s -> !s.isEmpty()).collect(Collectors.toList());
+    }
+
+    private static final JavaFileObject ANNOTATION = source("etomica.meta.annotations.IndexSubclasses",
+            "package etomica.meta.annotations;\n" +
+                    "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n" +
+                    "public @interface IndexSubclasses {}\n");
+
+    @Test
+    void testIndex() throws IOException {
+        compile(ANNOTATION,
+                source("a.Base", "package a;\n@etomica.meta.annotations.IndexSubclasses\npublic class Base {}\n"),
+                source("a.Source", "package a;\n@etomica.meta.annotations.IndexSubclasses\npublic interface Source {}\n"),
+                source("a.SubSource", "package a;\npublic interface SubSource extends Source {}\n"),
+                source("a.AbstractSub", "package a;\npublic abstract class AbstractSub extends Base implements Runnable {}\n"),
+                source("b.Concrete", "package b;\n" +
+                        "public class Concrete extends a.AbstractSub implements a.SubSource {\n" +
+                        "    public void run() {}\n" +
+                        "    public static class Nested extends a.Base {}\n" +
+                        "    Object anonymous = new a.Base() {};\n" +
+                        "}\n"),
+                source("b.SourceEnum", "package b;\npublic enum SourceEnum implements a.Source { X }\n"),
+                source("b.Unrelated", "package b;\npublic class Unrelated {}\n"));
+
+        // abstract classes are included, interfaces and anonymous classes are not
+        assertEquals(Arrays.asList("a.AbstractSub", "b.Concrete", "b.Concrete$Nested"),
+                read(ComponentIndexProcessor.INDEX_PATH + "a.Base"));
+        assertEquals(Arrays.asList("b.Concrete", "b.SourceEnum"),
+                read(ComponentIndexProcessor.INDEX_PATH + "a.Source"));
+        assertEquals(Arrays.asList("a.Base", "a.Source"), read(ComponentIndexProcessor.INDEX_MARKER));
+        try (Stream<Path> files = Files.list(outDir.resolve(ComponentIndexProcessor.INDEX_PATH))) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void testMarkerWithoutIndexedTypes() throws IOException {
+        compile(source("b.Unrelated", "package b;\npublic class Unrelated {}\n"));
+        assertEquals(Collections.emptyList(), read(ComponentIndexProcessor.INDEX_MARKER));
+        assertFalse(Files.exists(outDir.resolve(ComponentIndexProcessor.INDEX_PATH)));
+    }
+}
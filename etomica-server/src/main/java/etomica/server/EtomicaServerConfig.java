@@ -4,12 +4,22 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 import org.hibernate.validator.constraints.NotEmpty;
 
+import javax.validation.constraints.Min;
+
 public class EtomicaServerConfig extends Configuration {
 
     @JsonProperty
     @NotEmpty
     private String hello;
 
+    @JsonProperty
+    @Min(1)
+    private int schedulerThreads = Runtime.getRuntime().availableProcessors();
+
+    @JsonProperty
+    @Min(1)
+    private long schedulerSliceMillis = 20;
+
     public String getHello() {
         return hello;
     }
@@ -17,4 +27,27 @@ public class EtomicaServerConfig extends Configuration {
     public void setHello(String hello) {
         this.hello = hello;
     }
+
+    /**
+     * Returns the number of threads used to run simulations.
+     */
+    public int getSchedulerThreads() {
+        return schedulerThreads;
+    }
+
+    public void setSchedulerThreads(int schedulerThreads) {
+        this.schedulerThreads = schedulerThreads;
+    }
+
+    /**
+     * Returns the time a simulation runs before its thread moves on to
+     * another simulation, in milliseconds.
+     */
+    public long getSchedulerSliceMillis() {
+        return schedulerSliceMillis;
+    }
+
+    public void setSchedulerSliceMillis(long schedulerSliceMillis) {
+        this.schedulerSliceMillis = schedulerSliceMillis;
+    }
 }
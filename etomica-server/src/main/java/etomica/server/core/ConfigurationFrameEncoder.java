@@ -0,0 +1,267 @@
+package etomica.server.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes atom coordinates as compact binary frames for streaming to
+ * clients.  A keyframe holds every coordinate; a delta frame holds only the
+ * atoms whose encoded coordinates differ from those in the last keyframe, so
+ * any delta can be applied to the keyframe it refers to without the deltas
+ * before it.  A new keyframe is written every keyframeInterval frames, when
+ * the number of boxes or atoms or the box size changes, or when the delta
+ * would be larger than a keyframe.
+ * <p>
+ * All values are little-endian.  Each frame is
+ * <pre>
+ * byte    frame type (0 = keyframe, 1 = delta)
+ * byte    encoding (0 = float32, 1 = int16)
+ * byte    dimension D
+ * byte    number of boxes
+ * int32   frame number
+ * int32   frame number of the keyframe (equal to the frame number for a keyframe)
+ * for each box
+ *   float64[D]  box edge lengths
+ *   int32       number of atoms N
+ *   keyframe:   N*D coordinates
+ *   delta:      int32 number of changed atoms M, then M times
+ *               (int32 atom index, D coordinates)
+ * </pre>
+ * With int16 encoding, a coordinate x in a box of length L is stored as
+ * round(x/L*65534), clamped to +/-32767, and decoded as q*L/65534.
+ */
+public class ConfigurationFrameEncoder {
+
+    public enum Encoding {
+        FLOAT32(4), INT16(2);
+
+        private final int bytes;
+
+        Encoding(int bytes) {
+            this.bytes = bytes;
+        }
+
+        public int getBytes() {
+            return bytes;
+        }
+    }
+
+    public static final byte KEYFRAME = 0, DELTA = 1;
+    private static final double INT16_SCALE = 65534;
+
+    private final Encoding encoding;
+    private int keyframeInterval;
+    private int frameNumber, keyframeNumber;
+    private int framesSinceKeyframe;
+    private boolean keyframeRequested;
+    private int dim;
+    // encoded coordinates and box sizes from the last keyframe
+    private int[][] keyValues;
+    private double[][] keyBoxSizes;
+    private ByteBuffer keyframe;
+    // encoded coordinates for the current frame, reused between frames
+    private int[][] values;
+    private int[] changed;
+
+    public ConfigurationFrameEncoder(Encoding encoding) {
+        this.encoding = encoding;
+        keyframeInterval = 30;
+        frameNumber = -1;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Sets the maximum number of frames between keyframes.  1 makes every
+     * frame a keyframe.
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframe interval must be positive");
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Makes the next frame a keyframe.
+     */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Returns the most recent keyframe, or null if no frame has been encoded.
+     * The buffer should not be modified; use duplicate() to read it.
+     */
+    public ByteBuffer getKeyframe() {
+        return keyframe;
+    }
+
+    public int getKeyframeNumber() {
+        return keyframeNumber;
+    }
+
+    /**
+     * Encodes the next frame.
+     *
+     * @param coordinates coordinates for each box, as x0, y0, z0, x1, ...
+     * @param boxSizes    edge lengths of each box
+     * @param D           dimension of the space
+     * @return the encoded frame, ready to be read
+     */
+    public ByteBuffer encode(double[][] coordinates, double[][] boxSizes, int D) {
+        frameNumber++;
+        if (needKeyframe(coordinates, boxSizes, D)) {
+            return writeKeyframe(coordinates, boxSizes, D);
+        }
+        int nBoxes = coordinates.length;
+        int atomBytes = 4 + D * encoding.bytes;
+        int totalChanged = 0;
+        if (values == null || values.length != nBoxes) {
+            values = new int[nBoxes][];
+        }
+        int size = 12;
+        for (int b = 0; b < nBoxes; b++) {
+            if (values[b] == null || values[b].length != coordinates[b].length) {
+                values[b] = new int[coordinates[b].length];
+            }
+            encodeValues(coordinates[b], boxSizes[b], D, values[b]);
+            int nChanged = 0;
+            int[] old = keyValues[b];
+            for (int i = 0; i < old.length; i += D) {
+                for (int k = 0; k < D; k++) {
+                    if (values[b][i + k] != old[i + k]) {
+                        nChanged++;
+                        break;
+                    }
+                }
+            }
+            totalChanged += nChanged;
+            size += 8 * D + 8 + nChanged * atomBytes;
+        }
+        if (size >= keyframe.limit()) {
+            return writeKeyframe(coordinates, boxSizes, D);
+        }
+        framesSinceKeyframe++;
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(buffer, DELTA, D, nBoxes);
+        if (changed == null || changed.length < totalChanged) {
+            changed = new int[totalChanged];
+        }
+        for (int b = 0; b < nBoxes; b++) {
+            for (int k = 0; k < D; k++) {
+                buffer.putDouble(boxSizes[b][k]);
+            }
+            int[] old = keyValues[b];
+            int[] v = values[b];
+            int nAtoms = old.length / D;
+            buffer.putInt(nAtoms);
+            int nChanged = 0;
+            for (int i = 0; i < nAtoms; i++) {
+                for (int k = 0; k < D; k++) {
+                    if (v[i * D + k] != old[i * D + k]) {
+                        changed[nChanged++] = i;
+                        break;
+                    }
+                }
+            }
+            buffer.putInt(nChanged);
+            for (int j = 0; j < nChanged; j++) {
+                int i = changed[j];
+                buffer.putInt(i);
+                putValues(buffer, v, i * D, D);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private boolean needKeyframe(double[][] coordinates, double[][] boxSizes, int D) {
+        if (keyframe == null || keyframeRequested || D != dim || framesSinceKeyframe + 1 >= keyframeInterval
+                || coordinates.length != keyValues.length) {
+            return true;
+        }
+        for (int b = 0; b < coordinates.length; b++) {
+            if (coordinates[b].length != keyValues[b].length) return true;
+            for (int k = 0; k < D; k++) {
+                if (boxSizes[b][k] != keyBoxSizes[b][k]) return true;
+            }
+        }
+        return false;
+    }
+
+    private ByteBuffer writeKeyframe(double[][] coordinates, double[][] boxSizes, int D) {
+        int nBoxes = coordinates.length;
+        int size = 12;
+        for (int b = 0; b < nBoxes; b++) {
+            size += 8 * D + 4 + coordinates[b].length * encoding.bytes;
+        }
+        dim = D;
+        keyValues = new int[nBoxes][];
+        keyBoxSizes = new double[nBoxes][];
+        keyframeNumber = frameNumber;
+        framesSinceKeyframe = 0;
+        keyframeRequested = false;
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(buffer, KEYFRAME, D, nBoxes);
+        for (int b = 0; b < nBoxes; b++) {
+            keyBoxSizes[b] = boxSizes[b].clone();
+            for (int k = 0; k < D; k++) {
+                buffer.putDouble(boxSizes[b][k]);
+            }
+            keyValues[b] = new int[coordinates[b].length];
+            encodeValues(coordinates[b], boxSizes[b], D, keyValues[b]);
+            buffer.putInt(coordinates[b].length / D);
+            putValues(buffer, keyValues[b], 0, keyValues[b].length);
+        }
+        buffer.flip();
+        keyframe = buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private void writeHeader(ByteBuffer buffer, byte type, int D, int nBoxes) {
+        buffer.put(type);
+        buffer.put((byte) encoding.ordinal());
+        buffer.put((byte) D);
+        buffer.put((byte) nBoxes);
+        buffer.putInt(frameNumber);
+        buffer.putInt(keyframeNumber);
+    }
+
+    /**
+     * Fills values with the coordinates as they will be written: float bits
+     * for float32, quantized values for int16.
+     */
+    private void encodeValues(double[] x, double[] boxSize, int D, int[] values) {
+        if (encoding == Encoding.FLOAT32) {
+            for (int i = 0; i < x.length; i++) {
+                values[i] = Float.floatToRawIntBits((float) x[i]);
+            }
+        }
+        else {
+            for (int i = 0; i < x.length; i++) {
+                long q = Math.round(x[i] / boxSize[i % D] * INT16_SCALE);
+                values[i] = (int) Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, q));
+            }
+        }
+    }
+
+    private void putValues(ByteBuffer buffer, int[] values, int start, int n) {
+        if (encoding == Encoding.FLOAT32) {
+            for (int i = start; i < start + n; i++) {
+                buffer.putInt(values[i]);
+            }
+        }
+        else {
+            for (int i = start; i < start + n; i++) {
+                buffer.putShort((short) values[i]);
+            }
+        }
+    }
+}
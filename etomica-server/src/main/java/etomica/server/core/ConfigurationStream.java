@@ -0,0 +1,179 @@
+package etomica.server.core;
+
+import etomica.server.core.ConfigurationFrameEncoder.Encoding;
+import etomica.server.core.SimulationSnapshots.ConfigurationSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams the configuration of one simulation to all of its subscribers.
+ * Each tick, the latest published snapshot (see SimulationSnapshots) is
+ * encoded once for each encoding in use, without pausing the simulation, and
+ * the same frame is sent to every subscriber of that encoding.  Nothing is
+ * sent to existing subscribers if no new snapshot has been published.  A
+ * subscriber whose previous frame has not finished sending skips the frame,
+ * so slow clients drop frames instead of queuing them.  A subscriber that has
+ * not received the keyframe a delta refers to is sent the keyframe instead.
+ */
+public class ConfigurationStream {
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationStream.class);
+
+    private final TripleBuffer<ConfigurationSnapshot> configuration;
+    private final ScheduledThreadPoolExecutor executor;
+    private final long periodMillis;
+    private final Map<Session, Subscriber> subscribers;
+    private final Map<Encoding, ConfigurationFrameEncoder> encoders;
+    private ScheduledFuture<?> task;
+    private long lastVersion;
+    // only written by tick, which is synchronized, but read from other threads
+    private volatile long nSent, nDropped;
+
+    /**
+     * @param configuration buffer with the simulation's published configurations
+     * @param executor      executor that runs the ticks
+     * @param periodMillis  time between ticks
+     */
+    public ConfigurationStream(TripleBuffer<ConfigurationSnapshot> configuration, ScheduledThreadPoolExecutor executor, long periodMillis) {
+        this.configuration = configuration;
+        this.executor = executor;
+        this.periodMillis = periodMillis;
+        subscribers = new ConcurrentHashMap<>();
+        encoders = new EnumMap<>(Encoding.class);
+    }
+
+    public synchronized void subscribe(Session session, Encoding encoding) {
+        subscribers.put(session, new Subscriber(session, encoding));
+        if (task == null) {
+            task = executor.scheduleWithFixedDelay(this::tick, 0, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void unsubscribe(Session session) {
+        subscribers.remove(session);
+        if (subscribers.isEmpty() && task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Stops streaming, closes the sessions of all subscribers and drops the
+     * encoder state.  Called when the simulation is deleted.
+     */
+    public synchronized void close() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        for (Session session : subscribers.keySet()) {
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "Simulation deleted"));
+            } catch (IOException e) {
+                log.warn("Error closing configuration session", e);
+            }
+        }
+        subscribers.clear();
+        encoders.clear();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Returns the number of frames sent to all subscribers.
+     */
+    public long getSentCount() {
+        return nSent;
+    }
+
+    /**
+     * Returns the number of frames skipped because the subscriber was still
+     * receiving the previous one.
+     */
+    public long getDroppedCount() {
+        return nDropped;
+    }
+
+    private synchronized void tick() {
+        try {
+            configuration.read(this::sendSnapshot);
+        } catch (RuntimeException e) {
+            // an exception would cancel the scheduled task
+            log.warn("Error streaming configuration", e);
+        }
+    }
+
+    private Void sendSnapshot(ConfigurationSnapshot snapshot) {
+        boolean changed = snapshot.getVersion() != lastVersion;
+        if (snapshot.getVersion() == 0) {
+            // nothing has been published yet
+            return null;
+        }
+        lastVersion = snapshot.getVersion();
+        EnumMap<Encoding, ByteBuffer> frames = new EnumMap<>(Encoding.class);
+        for (Subscriber s : subscribers.values()) {
+            // when nothing has moved, only new subscribers need a frame
+            if (!changed && s.keyframeNumber >= 0) continue;
+            ByteBuffer frame = frames.get(s.encoding);
+            if (frame == null) {
+                ConfigurationFrameEncoder encoder = encoders.computeIfAbsent(s.encoding, ConfigurationFrameEncoder::new);
+                if (!changed) {
+                    // the last keyframe may be older than the current configuration
+                    encoder.requestKeyframe();
+                }
+                frame = encoder.encode(snapshot.getCoordinates(), snapshot.getBoxSizes(), snapshot.getD());
+                frames.put(s.encoding, frame);
+            }
+            send(s, frame);
+        }
+        return null;
+    }
+
+    private void send(Subscriber s, ByteBuffer frame) {
+        if (!s.sending.compareAndSet(false, true)) {
+            nDropped++;
+            return;
+        }
+        ConfigurationFrameEncoder encoder = encoders.get(s.encoding);
+        int keyframeNumber = encoder.getKeyframeNumber();
+        if (frame.get(0) == ConfigurationFrameEncoder.DELTA && s.keyframeNumber != keyframeNumber) {
+            frame = encoder.getKeyframe();
+        }
+        s.keyframeNumber = keyframeNumber;
+        nSent++;
+        s.session.getAsyncRemote().sendBinary(frame.duplicate(), result -> {
+            s.sending.set(false);
+            if (!result.isOK()) {
+                log.warn("Error sending configuration", result.getException());
+            }
+        });
+    }
+
+    private static class Subscriber {
+        final Session session;
+        final Encoding encoding;
+        final AtomicBoolean sending;
+        // the keyframe this subscriber has received, or -1 if none
+        int keyframeNumber;
+
+        Subscriber(Session session, Encoding encoding) {
+            this.session = session;
+            this.encoding = encoding;
+            sending = new AtomicBoolean();
+            keyframeNumber = -1;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package etomica.server.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import etomica.action.IAction;
+import etomica.action.activity.ActivityIntegrate;
+import etomica.exception.ConfigurationOverlapException;
+import etomica.integrator.Integrator;
+import etomica.server.EtomicaServerConfig;
+import etomica.simulation.Simulation;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.setup.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs the simulations hosted by the server on a fixed pool of worker
+ * threads.  Instead of giving each simulation's Controller its own threads,
+ * the scheduler performs the actions held by the controller itself, running
+ * an ActivityIntegrate as a series of time slices of integrator steps.  After
+ * each slice the simulation goes back into the queue, so N simulations share
+ * the workers however many of them are running.
+ * <p>
+ * Workers pick the runnable simulation that has received the least CPU time
+ * weighted by its priority, so a HIGH priority simulation gets 4 times the
+ * share of a NORMAL one when both are competing.  A simulation can also be
+ * limited to a fraction of one worker (its CPU quota); once it has used up
+ * its quota it is held out of the queue until it has earned enough time back,
+ * even if workers are idle.
+ * <p>
+ * Within a slice, steps are taken in batches sized to take about a
+ * millisecond.  The simulation's lock is held only during a batch, so
+ * doActionNow can change the simulation between batches without pausing it.
+ * Steps taken by each simulation are reported to the metrics registry as a
+ * meter named etomica.server.core.SimulationScheduler.&lt;id&gt;.steps.
+ * <p>
+ * The sleep period of an ActivityIntegrate is ignored, as are the
+ * controller's repeat and pause-after-each-action settings.  Actions that are
+ * not an ActivityIntegrate are performed in a single batch.
+ */
+@Singleton
+public class SimulationScheduler implements Managed {
+    private static final Logger log = LoggerFactory.getLogger(SimulationScheduler.class);
+    private static final long BATCH_NANOS = 1000000;
+
+    public enum Priority {
+        @JsonProperty("low")
+        LOW(1),
+        @JsonProperty("normal")
+        NORMAL(4),
+        @JsonProperty("high")
+        HIGH(16);
+
+        private final int weight;
+
+        Priority(int weight) {
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    public enum State {
+        /**
+         * Added, but not yet started.
+         */
+        @JsonProperty("new")
+        NEW,
+        @JsonProperty("running")
+        RUNNING,
+        @JsonProperty("paused")
+        PAUSED,
+        /**
+         * All of the controller's actions have been performed.
+         */
+        @JsonProperty("finished")
+        FINISHED,
+        /**
+         * An action threw an exception.
+         */
+        @JsonProperty("failed")
+        FAILED
+    }
+
+    private final int nThreads;
+    private final long sliceNanos;
+    private final MetricRegistry metrics;
+    private final LongSupplier clock;
+    private final Map<Simulation, ScheduledSimulation> simulations;
+    // runnable simulations not currently being run, guarded by this
+    private final PriorityQueue<ScheduledSimulation> ready;
+    private ScheduledExecutorService throttleTimer;
+    private Thread[] workers;
+    // weighted CPU time of the last simulation taken from the queue
+    private long virtualTime;
+    private boolean stopped;
+
+    @Inject
+    public SimulationScheduler(EtomicaServerConfig config, Environment environment) {
+        this(config.getSchedulerThreads(), config.getSchedulerSliceMillis(), environment.metrics());
+    }
+
+    /**
+     * @param nThreads    number of worker threads
+     * @param sliceMillis time each simulation runs before the worker moves on
+     *                    to the next one, in milliseconds
+     * @param metrics     registry that receives the step rate of each simulation
+     */
+    public SimulationScheduler(int nThreads, long sliceMillis, MetricRegistry metrics) {
+        this(nThreads, sliceMillis, metrics, System::nanoTime);
+    }
+
+    /**
+     * Creates a scheduler that reads the time, in nanoseconds, from the given
+     * clock.  Used by tests.
+     */
+    SimulationScheduler(int nThreads, long sliceMillis, MetricRegistry metrics, LongSupplier clock) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("number of threads must be positive");
+        }
+        if (sliceMillis < 1) {
+            throw new IllegalArgumentException("slice must be positive");
+        }
+        this.nThreads = nThreads;
+        this.sliceNanos = sliceMillis * 1000000;
+        this.metrics = metrics;
+        this.clock = clock;
+        simulations = new ConcurrentHashMap<>();
+        ready = new PriorityQueue<>(Comparator.comparingLong(s -> s.virtualRuntime));
+        metrics.register(MetricRegistry.name(SimulationScheduler.class, "ready"), (Gauge<Integer>) this::getReadyCount);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (workers != null) {
+            throw new IllegalStateException("scheduler already started");
+        }
+        throttleTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simulation-throttle");
+            t.setDaemon(true);
+            return t;
+        });
+        workers = new Thread[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            workers[i] = new Thread(this::work, "simulation-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Stops the workers once they finish their current batch.  Running
+     * simulations are left in the RUNNING state.
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        Thread[] w;
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+            w = workers;
+        }
+        if (w == null) return;
+        throttleTimer.shutdownNow();
+        for (Thread t : w) {
+            t.join();
+        }
+    }
+
+    /**
+     * Adds a simulation to the scheduler, in the NEW state.  Its controller's
+     * actions are performed once it is started.
+     *
+     * @param id  id of the simulation, used to name its metrics
+     * @param sim the simulation
+     * @return the scheduler's handle for the simulation
+     */
+    public ScheduledSimulation add(UUID id, Simulation sim) {
+        ScheduledSimulation s = new ScheduledSimulation(id, sim);
+        if (simulations.putIfAbsent(sim, s) != null) {
+            throw new IllegalArgumentException("simulation already added");
+        }
+        return s;
+    }
+
+    /**
+     * Returns the handle for the simulation, or null if it was not added.
+     */
+    public ScheduledSimulation get(Simulation sim) {
+        return simulations.get(sim);
+    }
+
+    /**
+     * Starts a NEW simulation or resumes a PAUSED one.
+     *
+     * @throws IllegalStateException if the simulation is running or done
+     */
+    public void start(Simulation sim) {
+        ScheduledSimulation s = getOrThrow(sim);
+        synchronized (this) {
+            if (s.state != State.NEW && s.state != State.PAUSED) {
+                throw new IllegalStateException("simulation is " + s.state);
+            }
+            if (s.state == State.NEW) {
+                s.actions = sim.getController().getPendingActions();
+            }
+            s.state = State.RUNNING;
+            if (!s.scheduled) {
+                s.scheduled = true;
+                enqueue(s);
+            }
+        }
+    }
+
+    /**
+     * Pauses a running simulation, returning once any batch of steps in
+     * progress has finished.
+     *
+     * @throws IllegalStateException if the simulation is not running
+     */
+    public void pause(Simulation sim) {
+        ScheduledSimulation s = getOrThrow(sim);
+        synchronized (this) {
+            if (s.state != State.RUNNING) {
+                throw new IllegalStateException("simulation is " + s.state);
+            }
+            s.state = State.PAUSED;
+        }
+        synchronized (s) {
+            // wait for the current batch
+        }
+    }
+
+    /**
+     * Removes the simulation from the scheduler, stopping it after any batch
+     * in progress.
+     */
+    public void remove(Simulation sim) {
+        ScheduledSimulation s = simulations.remove(sim);
+        if (s == null) return;
+        synchronized (this) {
+            if (s.state == State.RUNNING || s.state == State.NEW) {
+                s.state = State.PAUSED;
+            }
+            ready.remove(s);
+        }
+        synchronized (s) {
+            // wait for the current batch
+        }
+        metrics.remove(s.stepsName);
+    }
+
+    /**
+     * Performs the action while the simulation is between batches of steps.
+     * The simulation continues running afterwards.  Simulations that were not
+     * added to the scheduler are handled by their controller.
+     */
+    public void doActionNow(Simulation sim, IAction action) {
+        ScheduledSimulation s = simulations.get(sim);
+        if (s == null) {
+            sim.getController().doActionNow(action);
+            return;
+        }
+        synchronized (s) {
+            action.actionPerformed();
+        }
+    }
+
+    public int getNumThreads() {
+        return nThreads;
+    }
+
+    public long getSliceMillis() {
+        return sliceNanos / 1000000;
+    }
+
+    /**
+     * Returns the number of running simulations waiting for a worker.
+     */
+    public synchronized int getReadyCount() {
+        return ready.size();
+    }
+
+    private ScheduledSimulation getOrThrow(Simulation sim) {
+        ScheduledSimulation s = simulations.get(sim);
+        if (s == null) {
+            throw new IllegalArgumentException("simulation was not added to the scheduler");
+        }
+        return s;
+    }
+
+    synchronized void enqueue(ScheduledSimulation s) {
+        if (s.state != State.RUNNING || !simulations.containsKey(s.sim)) {
+            s.scheduled = false;
+            return;
+        }
+        // a simulation that has been waiting (paused or throttled) gets no
+        // more than one slice of credit over those that have been running
+        s.virtualRuntime = Math.max(s.virtualRuntime, virtualTime - sliceNanos);
+        ready.add(s);
+        notify();
+    }
+
+    /**
+     * Puts a simulation that has used up its quota back in the queue after
+     * the given delay, in nanoseconds.
+     */
+    void enqueueLater(ScheduledSimulation s, long delay) {
+        throttleTimer.schedule(() -> enqueue(s), delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void work() {
+        while (true) {
+            ScheduledSimulation s;
+            synchronized (this) {
+                while (ready.isEmpty() && !stopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (stopped) return;
+                s = take();
+            }
+            run(s);
+        }
+    }
+
+    /**
+     * Runs one slice of the next ready simulation on the calling thread, as a
+     * worker would.  Used by tests, with the scheduler not started.
+     *
+     * @return the simulation that was run, or null if none was ready
+     */
+    ScheduledSimulation runNext() {
+        ScheduledSimulation s;
+        synchronized (this) {
+            if (ready.isEmpty()) return null;
+            s = take();
+        }
+        run(s);
+        return s;
+    }
+
+    // called with the lock held
+    private ScheduledSimulation take() {
+        ScheduledSimulation s = ready.poll();
+        virtualTime = Math.max(virtualTime, s.virtualRuntime);
+        return s;
+    }
+
+    private void run(ScheduledSimulation s) {
+        long t0 = clock.getAsLong();
+        s.runSlice(t0 + sliceNanos);
+        long t1 = clock.getAsLong();
+        synchronized (this) {
+            s.virtualRuntime += (t1 - t0) * Priority.HIGH.weight / s.priority.weight;
+            long delay = s.charge(t1 - t0, t1);
+            if (delay > 0 && s.state == State.RUNNING && !stopped) {
+                enqueueLater(s, delay);
+            }
+            else {
+                enqueue(s);
+            }
+        }
+    }
+
+    /**
+     * A simulation run by the scheduler, with its scheduling settings.
+     */
+    public class ScheduledSimulation {
+        private final UUID id;
+        private final Simulation sim;
+        private final String stepsName;
+        private final Meter steps;
+        private volatile State state;
+        private volatile Throwable exception;
+        private Priority priority;
+        private double cpuQuota;
+        // guarded by the scheduler
+        private boolean scheduled;
+        private long virtualRuntime;
+        private double quotaCredit;
+        private long lastCharge;
+        // guarded by this
+        private IAction[] actions;
+        private int nextAction;
+        private ActivityIntegrate current;
+        private long currentSteps;
+        private long batchSteps;
+
+        private ScheduledSimulation(UUID id, Simulation sim) {
+            this.id = id;
+            this.sim = sim;
+            stepsName = MetricRegistry.name(SimulationScheduler.class, id.toString(), "steps");
+            steps = metrics.meter(stepsName);
+            state = State.NEW;
+            priority = Priority.NORMAL;
+            cpuQuota = 1;
+            batchSteps = 1;
+            lastCharge = clock.getAsLong();
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public Simulation getSimulation() {
+            return sim;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * Returns the exception that made the simulation fail, or null.
+         */
+        public Throwable getException() {
+            return exception;
+        }
+
+        public Priority getPriority() {
+            synchronized (SimulationScheduler.this) {
+                return priority;
+            }
+        }
+
+        public void setPriority(Priority priority) {
+            if (priority == null) {
+                throw new IllegalArgumentException("priority must not be null");
+            }
+            synchronized (SimulationScheduler.this) {
+                this.priority = priority;
+            }
+        }
+
+        public double getCpuQuota() {
+            synchronized (SimulationScheduler.this) {
+                return cpuQuota;
+            }
+        }
+
+        /**
+         * Sets the fraction of one worker's time the simulation may use,
+         * from 0 (exclusive) to 1.  1 (the default) means no limit.
+         */
+        public void setCpuQuota(double cpuQuota) {
+            if (!(cpuQuota > 0 && cpuQuota <= 1)) {
+                throw new IllegalArgumentException("quota must be greater than 0 and at most 1");
+            }
+            synchronized (SimulationScheduler.this) {
+                this.cpuQuota = cpuQuota;
+                quotaCredit = Math.min(quotaCredit, cpuQuota * sliceNanos);
+            }
+        }
+
+        /**
+         * Returns the number of integrator steps taken by the scheduler.
+         */
+        public long getStepCount() {
+            return steps.getCount();
+        }
+
+        /**
+         * Returns the number of steps per second, averaged over the last minute.
+         */
+        public double getStepRate() {
+            return steps.getOneMinuteRate();
+        }
+
+        /**
+         * Updates the quota credit after a slice that took the given time,
+         * and returns the time the simulation must wait before its next
+         * slice.
+         */
+        private long charge(long used, long now) {
+            if (cpuQuota >= 1) return 0;
+            quotaCredit = Math.min(quotaCredit + cpuQuota * (now - lastCharge), cpuQuota * sliceNanos) - used;
+            lastCharge = now;
+            return quotaCredit < 0 ? (long) (-quotaCredit / cpuQuota) : 0;
+        }
+
+        private void runSlice(long deadline) {
+            do {
+                synchronized (this) {
+                    if (state != State.RUNNING || stopped) return;
+                    try {
+                        if (!runBatch()) {
+                            state = State.FINISHED;
+                            return;
+                        }
+                    } catch (RuntimeException | Error e) {
+                        log.error("Simulation {} failed", id, e);
+                        exception = e;
+                        state = State.FAILED;
+                        return;
+                    }
+                }
+            } while (clock.getAsLong() < deadline);
+        }
+
+        /**
+         * Performs the next batch of steps, or the next action if it is not
+         * an ActivityIntegrate.  Returns false if all actions are done.
+         */
+        private boolean runBatch() {
+            if (current == null) {
+                if (nextAction == actions.length) return false;
+                IAction action = actions[nextAction++];
+                if (!(action instanceof ActivityIntegrate)) {
+                    action.actionPerformed();
+                    return true;
+                }
+                current = (ActivityIntegrate) action;
+                currentSteps = 0;
+                try {
+                    current.getIntegrator().reset();
+                } catch (ConfigurationOverlapException e) {
+                    if (!current.isIgnoreOverlap()) {
+                        throw e;
+                    }
+                }
+                current.getIntegrator().resetStepCount();
+            }
+            Integrator integrator = current.getIntegrator();
+            long n = Math.min(batchSteps, current.getMaxSteps() - currentSteps);
+            long t0 = clock.getAsLong();
+            for (long i = 0; i < n; i++) {
+                integrator.doStep();
+            }
+            long t = clock.getAsLong() - t0;
+            currentSteps += n;
+            steps.mark(n);
+            if (n == batchSteps) {
+                if (t < BATCH_NANOS / 2) {
+                    batchSteps *= 2;
+                }
+                else if (t > 2 * BATCH_NANOS && batchSteps > 1) {
+                    batchSteps /= 2;
+                }
+            }
+            if (currentSteps >= current.getMaxSteps()) {
+                current = null;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package etomica.server.core;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.data.DataDump;
+import etomica.data.IData;
+import etomica.data.IDataInfo;
+import etomica.integrator.IntegratorEvent;
+import etomica.integrator.IntegratorListener;
+import etomica.simulation.Simulation;
+import etomica.space.Vector;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Publishes snapshots of a simulation's coordinates and of DataDump contents
+ * from the integrator thread into triple buffers.  A snapshot is taken every
+ * interval integrator steps, but no more often than minPeriod, so fast steps
+ * (single-atom MC moves) pay only for a countdown and a clock read.  Server
+ * threads read the latest snapshot from the buffers without pausing the
+ * simulation.
+ */
+public class SimulationSnapshots implements IntegratorListener {
+
+    private final Simulation sim;
+    private final TripleBuffer<ConfigurationSnapshot> configuration;
+    private final Map<DataDump, DataEntry> dataSnapshots;
+    private int interval, countdown;
+    private long minPeriodNanos, lastPublishNanos;
+    private long version;
+
+    /**
+     * @param sim       the simulation
+     * @param interval  number of integrator steps between snapshots
+     * @param minPeriod minimum time between snapshots, in milliseconds
+     */
+    public SimulationSnapshots(Simulation sim, int interval, long minPeriod) {
+        this.sim = sim;
+        setInterval(interval);
+        setMinPeriod(minPeriod);
+        configuration = new TripleBuffer<>(ConfigurationSnapshot::new);
+        dataSnapshots = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds this as a listener to the simulation's integrator and publishes
+     * the current state.  If the simulation is running, the first snapshot
+     * is taken with the controller paused.
+     */
+    public void attach() {
+        if (sim.getController().isActive()) {
+            sim.getController().doActionNow(this::publish);
+        }
+        else {
+            publish();
+        }
+        sim.getIntegrator().getEventManager().addListener(this);
+    }
+
+    public void detach() {
+        sim.getIntegrator().getEventManager().removeListener(this);
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the number of integrator steps (or integrator event intervals)
+     * between snapshots.
+     */
+    public void setInterval(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.interval = interval;
+        countdown = interval;
+    }
+
+    public long getMinPeriod() {
+        return minPeriodNanos / 1000000;
+    }
+
+    /**
+     * Sets the minimum time between snapshots, in milliseconds.
+     */
+    public void setMinPeriod(long minPeriod) {
+        if (minPeriod < 0) {
+            throw new IllegalArgumentException("minimum period must not be negative");
+        }
+        minPeriodNanos = minPeriod * 1000000;
+    }
+
+    public TripleBuffer<ConfigurationSnapshot> getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Returns the buffer with snapshots of the given dump's data, adding the
+     * dump if needed.  The buffer holds no data until the next snapshot.
+     * Each call must be matched by a call to releaseData once the caller no
+     * longer reads the buffer.
+     */
+    public TripleBuffer<DataSnapshot> getData(DataDump dump) {
+        return dataSnapshots.compute(dump, (d, entry) -> {
+            if (entry == null) entry = new DataEntry();
+            entry.references++;
+            return entry;
+        }).buffer;
+    }
+
+    /**
+     * Releases a buffer obtained from getData.  Once every caller has
+     * released it, the dump's data is no longer copied.
+     */
+    public void releaseData(DataDump dump) {
+        dataSnapshots.computeIfPresent(dump, (d, entry) -> --entry.references == 0 ? null : entry);
+    }
+
+    /**
+     * Returns the number of dumps whose data is copied with each snapshot.
+     */
+    public int getDataCount() {
+        return dataSnapshots.size();
+    }
+
+    public void integratorInitialized(IntegratorEvent e) {
+        publish();
+    }
+
+    public void integratorStepStarted(IntegratorEvent e) {}
+
+    public void integratorStepFinished(IntegratorEvent e) {
+        if (--countdown > 0) return;
+        countdown = interval;
+        if (minPeriodNanos > 0 && System.nanoTime() - lastPublishNanos < minPeriodNanos) return;
+        publish();
+    }
+
+    protected void publish() {
+        lastPublishNanos = System.nanoTime();
+        version++;
+        configuration.publish(this::copyConfiguration);
+        for (Map.Entry<DataDump, DataEntry> entry : dataSnapshots.entrySet()) {
+            DataDump dump = entry.getKey();
+            entry.getValue().buffer.publish(s -> s.copy(dump, version));
+        }
+    }
+
+    private void copyConfiguration(ConfigurationSnapshot s) {
+        int D = sim.getSpace().D();
+        int nBoxes = sim.getBoxCount();
+        s.version = version;
+        s.D = D;
+        if (s.coordinates.length != nBoxes) {
+            s.coordinates = new double[nBoxes][];
+            s.boxSizes = new double[nBoxes][D];
+        }
+        for (int b = 0; b < nBoxes; b++) {
+            Box box = sim.getBox(b);
+            IAtomList leafList = box.getLeafList();
+            int nLeaf = leafList.size();
+            if (s.coordinates[b] == null || s.coordinates[b].length != nLeaf * D) {
+                s.coordinates[b] = new double[nLeaf * D];
+            }
+            double[] x = s.coordinates[b];
+            for (int i = 0; i < nLeaf; i++) {
+                Vector r = leafList.get(i).getPosition();
+                for (int k = 0; k < D; k++) {
+                    x[i * D + k] = r.getX(k);
+                }
+            }
+            box.getBoundary().getBoxSize().assignTo(s.boxSizes[b]);
+        }
+    }
+
+    private static class DataEntry {
+        private final TripleBuffer<DataSnapshot> buffer = new TripleBuffer<>(DataSnapshot::new);
+        // guarded by the map's compute methods
+        private int references;
+    }
+
+    /**
+     * Coordinates of all leaf atoms in each box, as x0, y0, z0, x1, ...,
+     * and the box edge lengths.
+     */
+    public static class ConfigurationSnapshot {
+        private long version;
+        private int D;
+        private double[][] coordinates = new double[0][];
+        private double[][] boxSizes = new double[0][];
+
+        /**
+         * Returns a number that increases with each snapshot; 0 if no
+         * snapshot has been taken.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public int getD() {
+            return D;
+        }
+
+        public double[][] getCoordinates() {
+            return coordinates;
+        }
+
+        public double[][] getBoxSizes() {
+            return boxSizes;
+        }
+    }
+
+    /**
+     * Copy of the data and data info held by a DataDump.
+     */
+    public static class DataSnapshot {
+        private long version;
+        private IData data;
+        private IDataInfo dataInfo;
+
+        private void copy(DataDump dump, long newVersion) {
+            IData dumpData = dump.getData();
+            IDataInfo dumpInfo = dump.getDataInfo();
+            if (dumpData == null || dumpInfo == null) {
+                data = null;
+                dataInfo = null;
+                return;
+            }
+            if (data == null || dataInfo != dumpInfo || data.getLength() != dumpData.getLength()) {
+                data = dumpInfo.makeData();
+            }
+            data.E(dumpData);
+            dataInfo = dumpInfo;
+            version = newVersion;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns the data, or null if the dump had no data.
+         */
+        public IData getData() {
+            return data;
+        }
+
+        public IDataInfo getDataInfo() {
+            return dataInfo;
+        }
+    }
+}
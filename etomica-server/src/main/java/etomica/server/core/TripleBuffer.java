@@ -0,0 +1,53 @@
+package etomica.server.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Triple buffer that lets one writer publish values to readers without
+ * either waiting for the other.  The writer fills the back buffer and
+ * publishes it, swapping it with the middle buffer; a reader swaps the front
+ * buffer with the middle one if a newer value has been published since the
+ * last read.  The writer never blocks.  Readers are serialized among
+ * themselves, so the front buffer may only be used within read().
+ */
+public class TripleBuffer<T> {
+
+    private static final int FRESH = 4, INDEX = 3;
+
+    private final Object[] buffers;
+    // index of the middle buffer, with FRESH set if it was published after the last read
+    private final AtomicInteger middle;
+    private int back, front;
+
+    public TripleBuffer(Supplier<T> factory) {
+        buffers = new Object[]{factory.get(), factory.get(), factory.get()};
+        front = 0;
+        middle = new AtomicInteger(1);
+        back = 2;
+    }
+
+    /**
+     * Fills the back buffer with the given writer and publishes it.  This
+     * should be called only from one thread at a time.
+     */
+    @SuppressWarnings("unchecked")
+    public void publish(Consumer<T> writer) {
+        writer.accept((T) buffers[back]);
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Applies the reader to the most recently published value and returns the
+     * result.  The value must not be used after the reader returns.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <R> R read(Function<T, R> reader) {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return reader.apply((T) buffers[front]);
+    }
+}
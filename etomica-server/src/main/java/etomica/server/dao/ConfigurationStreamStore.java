@@ -0,0 +1,15 @@
+package etomica.server.dao;
+
+import etomica.server.core.ConfigurationStream;
+
+import javax.inject.Singleton;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the configuration stream of each simulation, keyed by simulation id,
+ * so that all clients watching a simulation share one stream.
+ */
+@Singleton
+public class ConfigurationStreamStore extends ConcurrentHashMap<UUID, ConfigurationStream> {
+}
@@ -0,0 +1,43 @@
+package etomica.server.dao;
+
+import etomica.server.core.SimulationScheduler;
+import etomica.server.core.SimulationSnapshots;
+import etomica.simulation.Simulation;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the snapshot publisher of each simulation, keyed by simulation id.
+ */
+@Singleton
+public class SimulationSnapshotStore extends ConcurrentHashMap<UUID, SimulationSnapshots> {
+    private final SimulationScheduler scheduler;
+
+    @Inject
+    public SimulationSnapshotStore(SimulationScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the snapshots for the simulation, creating them and attaching
+     * them to the simulation's integrator between steps if needed.
+     */
+    public SimulationSnapshots getOrAttach(UUID simId, Simulation sim) {
+        SimulationSnapshots snapshots = get(simId);
+        if (snapshots != null) {
+            return snapshots;
+        }
+        synchronized (this) {
+            snapshots = get(simId);
+            if (snapshots == null) {
+                snapshots = new SimulationSnapshots(sim, 1, 20);
+                scheduler.doActionNow(sim, snapshots::attach);
+                put(simId, snapshots);
+            }
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,30 @@
+package etomica.server.representations;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import etomica.server.core.SimulationScheduler.Priority;
+
+/**
+ * Scheduling settings for a simulation.  Settings that are null are left
+ * unchanged.
+ */
+public class ScheduleSettings {
+    public @JsonProperty Priority priority;
+    public @JsonProperty Double cpuQuota;
+
+    public ScheduleSettings() {
+        super();
+    }
+
+    public ScheduleSettings(Priority priority, Double cpuQuota) {
+        this.priority = priority;
+        this.cpuQuota = cpuQuota;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public Double getCpuQuota() {
+        return cpuQuota;
+    }
+}
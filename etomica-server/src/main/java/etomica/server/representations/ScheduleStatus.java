@@ -0,0 +1,30 @@
+package etomica.server.representations;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import etomica.server.core.SimulationScheduler.Priority;
+import etomica.server.core.SimulationScheduler.ScheduledSimulation;
+import etomica.server.core.SimulationScheduler.State;
+
+/**
+ * State, scheduling settings and progress of a simulation run by the
+ * scheduler.
+ */
+public class ScheduleStatus {
+    public @JsonProperty State state;
+    public @JsonProperty Priority priority;
+    public @JsonProperty double cpuQuota;
+    public @JsonProperty long stepCount;
+    public @JsonProperty double stepsPerSecond;
+
+    public ScheduleStatus() {
+        super();
+    }
+
+    public ScheduleStatus(ScheduledSimulation s) {
+        state = s.getState();
+        priority = s.getPriority();
+        cpuQuota = s.getCpuQuota();
+        stepCount = s.getStepCount();
+        stepsPerSecond = s.getStepRate();
+    }
+}
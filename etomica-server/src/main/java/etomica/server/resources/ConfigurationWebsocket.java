@@ -2,14 +2,14 @@ package etomica.server.resources;
 
 import com.codahale.metrics.annotation.Metered;
 import com.codahale.metrics.annotation.Timed;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import etomica.meta.SimulationModel;
-import etomica.meta.wrappers.SimulationWrapper;
+import etomica.server.core.ConfigurationFrameEncoder;
+import etomica.server.core.ConfigurationStream;
+import etomica.server.core.SimulationSnapshots;
+import etomica.server.dao.ConfigurationStreamStore;
+import etomica.server.dao.SimulationSnapshotStore;
 import etomica.server.dao.SimulationStore;
-import etomica.server.representations.ConfigurationUpdate;
 import etomica.simulation.Simulation;
-import etomica.space.Boundary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,34 +17,36 @@ import javax.inject.Inject;
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.io.IOException;
-import java.io.Writer;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
-import static etomica.server.EtomicaServer.objectWriter;
 
+/**
+ * Streams the simulation's configuration as binary frames (see
+ * ConfigurationFrameEncoder).  The encoding is chosen with the query
+ * parameter "encoding", either "float32" (the default) or "int16".
+ */
 @ServerEndpoint(
-        value="/simulations/{id}/configuration",
-        encoders = {ConfigurationWebsocket.ConfigurationUpdateEncoder.class}
+        value="/simulations/{id}/configuration"
 )
 @Metered
 @Timed
 public class ConfigurationWebsocket {
+    private static final long PERIOD_MILLIS = 33;
+
     private final SimulationStore simStore;
-    private final ObjectMapper mapper;
+    private final ConfigurationStreamStore streamStore;
+    private final SimulationSnapshotStore snapshotStore;
     private final ScheduledThreadPoolExecutor executor;
 
     private final Logger log = LoggerFactory.getLogger(ConfigurationWebsocket.class);
 
     @Inject
-    public ConfigurationWebsocket(SimulationStore store, ObjectMapper mapper, ScheduledThreadPoolExecutor executor) {
+    public ConfigurationWebsocket(SimulationStore store, ConfigurationStreamStore streamStore,
+                                  SimulationSnapshotStore snapshotStore, ScheduledThreadPoolExecutor executor) {
         this.simStore = store;
-        this.mapper = mapper;
+        this.streamStore = streamStore;
+        this.snapshotStore = snapshotStore;
         this.executor = executor;
     }
 
@@ -52,65 +54,43 @@ public class ConfigurationWebsocket {
     public void onOpen(final Session session, @PathParam("id") String id) {
         session.setMaxIdleTimeout(0);
 
-        SimulationModel model = simStore.get(UUID.fromString(id));
+        UUID simId = UUID.fromString(id);
+        SimulationModel model = simStore.get(simId);
         Simulation sim = model.getSimulation();
-        SimulationWrapper wrapper = (SimulationWrapper) model.getWrapper(sim);
 
-        Runnable sendConfigurationUpdate = () -> {
-            if(sim.getController().isPaused() || !sim.getController().isActive()) {
-                return;
+        ConfigurationFrameEncoder.Encoding encoding = ConfigurationFrameEncoder.Encoding.FLOAT32;
+        List<String> encodingParam = session.getRequestParameterMap().get("encoding");
+        if (encodingParam != null && !encodingParam.isEmpty()) {
+            try {
+                encoding = ConfigurationFrameEncoder.Encoding.valueOf(encodingParam.get(0).toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn("Unknown configuration encoding " + encodingParam.get(0) + "; using float32");
             }
+        }
 
-
-            sim.getController().doActionNow(() -> {
-                Boundary[] boundaries = new Boundary[sim.getBoxCount()];
-                for (int i = 0; i < sim.getBoxCount(); i++) {
-                    boundaries[i] = sim.getBox(i).getBoundary();
-                }
-
-                ConfigurationUpdate update = new ConfigurationUpdate(
-                        wrapper.getAllCoordinates(),
-                        boundaries
-                );
-                session.getAsyncRemote().sendObject(update);
-            });
-
-        };
-
-        ScheduledFuture<?> task = executor.scheduleWithFixedDelay(sendConfigurationUpdate, 0, 33, TimeUnit.MILLISECONDS);
-        session.getUserProperties().put("task", task);
+        SimulationSnapshots snapshots = snapshotStore.getOrAttach(simId, sim);
+        ConfigurationStream stream = streamStore.computeIfAbsent(simId,
+                k -> new ConfigurationStream(snapshots.getConfiguration(), executor, PERIOD_MILLIS));
+        stream.subscribe(session, encoding);
+        session.getUserProperties().put("stream", stream);
     }
 
     @OnClose
     public void onClose(Session session) {
         log.warn("Closing websocket");
-        ((ScheduledFuture<?>) session.getUserProperties().get("task")).cancel(false);
+        unsubscribe(session);
     }
 
     @OnError
     public void onError(Session session, Throwable reason) {
         log.warn("Error in websocket", reason);
-        ((ScheduledFuture<?>) session.getUserProperties().get("task")).cancel(false);
+        unsubscribe(session);
     }
 
-
-    public static class ConfigurationUpdateEncoder implements Encoder.TextStream<ConfigurationUpdate> {
-        private static ObjectWriter objectWriter = objectWriter();
-
-        @Override
-        public void encode(ConfigurationUpdate object, Writer writer) throws EncodeException, IOException {
-            objectWriter.writeValue(writer, object);
-
-        }
-
-        @Override
-        public void init(EndpointConfig config) {
-
-        }
-
-        @Override
-        public void destroy() {
-
+    private static void unsubscribe(Session session) {
+        ConfigurationStream stream = (ConfigurationStream) session.getUserProperties().get("stream");
+        if (stream != null) {
+            stream.unsubscribe(session);
         }
     }
 }
@@ -1,15 +1,18 @@
 package etomica.server.resources;
 
-import etomica.action.activity.Controller;
 import etomica.meta.SimulationModel;
+import etomica.server.core.SimulationScheduler;
+import etomica.server.core.SimulationScheduler.ScheduledSimulation;
 import etomica.server.dao.SimulationStore;
+import etomica.server.representations.ScheduleSettings;
+import etomica.server.representations.ScheduleStatus;
 import etomica.server.representations.StatusAction;
+import etomica.simulation.Simulation;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.util.Map;
 import java.util.UUID;
 
 @Path("/simulations/{id}/control")
@@ -18,38 +21,63 @@ import java.util.UUID;
 public class ControlResource {
 
     private final SimulationStore simStore;
+    private final SimulationScheduler scheduler;
 
     @Inject
-    public ControlResource(SimulationStore simStore) {
+    public ControlResource(SimulationStore simStore, SimulationScheduler scheduler) {
         this.simStore = simStore;
+        this.scheduler = scheduler;
+    }
+
+    @GET
+    public ScheduleStatus status(@PathParam("id") String id) {
+        return new ScheduleStatus(getScheduled(id));
     }
 
     @PUT
     public void doCommand(@PathParam("id") String id, StatusAction action) {
-        Controller controller = simStore.get(UUID.fromString(id)).getSimulation().getController();
-        switch (action.getStatus()) {
-            case START:
-                if(!controller.isActive()) {
-                    new Thread(controller::actionPerformed).start();
-                } else if(controller.isPaused()) {
-                    controller.unPause();
-                } else {
-                    throw new WebApplicationException(Response.Status.CONFLICT);
-                }
-                break;
-            case PAUSE:
-                if(controller.isActive() && !controller.isPaused()) {
-                    controller.pause();
-                } else {
-                    throw new WebApplicationException(Response.Status.CONFLICT);
-                }
-                break;
-            case RESET:
-                break;
+        Simulation sim = getScheduled(id).getSimulation();
+        try {
+            switch (action.getStatus()) {
+                case START:
+                    scheduler.start(sim);
+                    break;
+                case PAUSE:
+                    scheduler.pause(sim);
+                    break;
+                case RESET:
+                    break;
 
+            }
+        } catch (IllegalStateException e) {
+            throw new WebApplicationException(e.getMessage(), Response.Status.CONFLICT);
         }
 
     }
 
+    @PUT
+    @Path("schedule")
+    public void updateSchedule(@PathParam("id") String id, ScheduleSettings settings) {
+        ScheduledSimulation s = getScheduled(id);
+        try {
+            if (settings.getPriority() != null) {
+                s.setPriority(settings.getPriority());
+            }
+            if (settings.getCpuQuota() != null) {
+                s.setCpuQuota(settings.getCpuQuota());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(e.getMessage(), Response.Status.BAD_REQUEST);
+        }
+    }
+
+    private ScheduledSimulation getScheduled(String id) {
+        SimulationModel model = simStore.isEmpty() ? null : simStore.get(UUID.fromString(id));
+        ScheduledSimulation s = model == null ? null : scheduler.get(model.getSimulation());
+        if (s == null) {
+            throw new WebApplicationException("Simulation instance not found", Response.Status.NOT_FOUND);
+        }
+        return s;
+    }
 
 }
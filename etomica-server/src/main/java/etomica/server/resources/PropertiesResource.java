@@ -3,6 +3,7 @@ package etomica.server.resources;
 import etomica.meta.SimulationModel;
 import etomica.meta.properties.Property;
 import etomica.meta.wrappers.Wrapper;
+import etomica.server.core.SimulationScheduler;
 import etomica.server.dao.SimulationStore;
 import etomica.server.representations.PropertyUpdate;
 import io.dropwizard.jersey.PATCH;
@@ -21,10 +22,12 @@ import java.util.UUID;
 @Produces(MediaType.APPLICATION_JSON)
 public class PropertiesResource {
     private final SimulationStore simStore;
+    private final SimulationScheduler scheduler;
 
     @Inject
-    public PropertiesResource(SimulationStore simStore) {
+    public PropertiesResource(SimulationStore simStore, SimulationScheduler scheduler) {
         this.simStore = simStore;
+        this.scheduler = scheduler;
     }
 
     @PUT
@@ -34,7 +37,7 @@ public class PropertiesResource {
         Property wrapperProp = wrapper.getValueProperties().stream()
                 .filter(p -> p.getName().equalsIgnoreCase(propUpdate.getProperty()))
                 .findFirst().orElseThrow(() -> new WebApplicationException(Response.Status.BAD_REQUEST));
-        model.getSimulation().getController().doActionNow(() -> {
+        scheduler.doActionNow(model.getSimulation(), () -> {
             wrapperProp.invokeWriter(propUpdate.getNewValue());
         });
     }
@@ -3,7 +3,12 @@ package etomica.server.resources;
 import etomica.data.DataDump;
 import etomica.data.DataPipeForked;
 import etomica.meta.SimulationModel;
+import etomica.server.core.ConfigurationStream;
+import etomica.server.core.SimulationScheduler;
+import etomica.server.core.SimulationSnapshots;
+import etomica.server.dao.ConfigurationStreamStore;
 import etomica.server.dao.DataStreamStore;
+import etomica.server.dao.SimulationSnapshotStore;
 import etomica.server.dao.SimulationStore;
 import etomica.server.representations.SimClassInfo;
 import etomica.server.representations.SimulationConstructor;
@@ -26,11 +31,18 @@ import java.util.UUID;
 public class SimulationResource {
     private final SimulationStore simStore;
     private final DataStreamStore dataStore;
+    private final SimulationSnapshotStore snapshotStore;
+    private final ConfigurationStreamStore streamStore;
+    private final SimulationScheduler scheduler;
 
     @Inject
-    public SimulationResource(SimulationStore simStore, DataStreamStore dataStore) {
+    public SimulationResource(SimulationStore simStore, DataStreamStore dataStore, SimulationSnapshotStore snapshotStore,
+                              ConfigurationStreamStore streamStore, SimulationScheduler scheduler) {
         this.simStore = simStore;
         this.dataStore = dataStore;
+        this.snapshotStore = snapshotStore;
+        this.streamStore = streamStore;
+        this.scheduler = scheduler;
     }
 
     @GET
@@ -55,6 +67,7 @@ public class SimulationResource {
             Simulation sim = (Simulation) Class.forName(constructionParams.className).newInstance();
             SimulationModel model = new SimulationModel(sim);
             simStore.put(id, model);
+            scheduler.add(id, sim);
 
             model.getAllIdsOfType(DataPipeForked.class).stream()
                     .map(model::getWrapperById)
@@ -76,8 +89,16 @@ public class SimulationResource {
     public void deleteInstance(@PathParam("simId") String simId) {
         UUID id = UUID.fromString(simId);
         SimulationModel model = simStore.get(id);
-        model.getSimulation().getController().halt();
+        scheduler.remove(model.getSimulation());
         simStore.remove(id);
+        ConfigurationStream stream = streamStore.remove(id);
+        if (stream != null) {
+            stream.close();
+        }
+        SimulationSnapshots snapshots = snapshotStore.remove(id);
+        if (snapshots != null) {
+            snapshots.detach();
+        }
     }
 
 
@@ -6,7 +6,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import etomica.data.*;
 import etomica.meta.SimulationModel;
+import etomica.server.core.SimulationSnapshots;
+import etomica.server.core.TripleBuffer;
 import etomica.server.dao.DataStreamStore;
+import etomica.server.dao.SimulationSnapshotStore;
 import etomica.server.dao.SimulationStore;
 import etomica.server.representations.DataAndInfo;
 import etomica.simulation.Simulation;
@@ -25,23 +28,25 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 @ServerEndpoint(
-        value="/simulations/{simId}/data/{dataId}",
-        encoders = {DataStreamWebsocket.DataAndInfoEncoder.class}
+        value="/simulations/{simId}/data/{dataId}"
 )
 @Metered
 @Timed
 public class DataStreamWebsocket {
     private final SimulationStore simStore;
     private final DataStreamStore dataStore;
+    private final SimulationSnapshotStore snapshotStore;
     private final ObjectMapper mapper;
     private final ScheduledThreadPoolExecutor executor;
 
     private final Logger log = LoggerFactory.getLogger(DataStreamWebsocket.class);
 
     @Inject
-    public DataStreamWebsocket(SimulationStore simStore, DataStreamStore dataStore, ObjectMapper mapper, ScheduledThreadPoolExecutor executor) {
+    public DataStreamWebsocket(SimulationStore simStore, DataStreamStore dataStore, SimulationSnapshotStore snapshotStore,
+                               ObjectMapper mapper, ScheduledThreadPoolExecutor executor) {
         this.simStore = simStore;
         this.dataStore = dataStore;
+        this.snapshotStore = snapshotStore;
         this.mapper = mapper;
         this.executor = executor;
     }
@@ -50,29 +55,39 @@ public class DataStreamWebsocket {
     public void onOpen(final Session session, @PathParam("simId") String simId, @PathParam("dataId") String dataId) {
         session.setMaxIdleTimeout(0);
 
-        session.getUserProperties().put("mapper", mapper);
-        SimulationModel model = simStore.get(UUID.fromString(simId));
+        UUID simUUID = UUID.fromString(simId);
+        SimulationModel model = simStore.get(simUUID);
         Simulation sim = model.getSimulation();
         DataStreamStore.DataPlumbing dataPlumbing = dataStore.get(UUID.fromString(dataId));
         DataDump dump = dataPlumbing.getDump();
+        SimulationSnapshots simSnapshots = snapshotStore.getOrAttach(simUUID, sim);
+        TripleBuffer<SimulationSnapshots.DataSnapshot> snapshots = simSnapshots.getData(dump);
         final DataAndInfo dataAndInfo = new DataAndInfo();
+        final long[] lastVersion = new long[1];
 
         Runnable sendData = () -> {
-            if(sim.getController().isPaused() || !sim.getController().isActive()) {
-                return;
-            }
-
-            sim.getController().doActionNow(() -> {
-                IData data = dump.getData();
-                dataAndInfo.setData(dump.getData());
-                dataAndInfo.setDataInfo(dump.getDataInfo());
-                if(data != null) {
-                    session.getAsyncRemote().sendObject(dataAndInfo);
+            // serialize while reading; the snapshot may be reused afterwards
+            String json = snapshots.read(snapshot -> {
+                if (snapshot.getData() == null || snapshot.getVersion() == lastVersion[0]) {
+                    return null;
+                }
+                lastVersion[0] = snapshot.getVersion();
+                dataAndInfo.setData(snapshot.getData());
+                dataAndInfo.setDataInfo(snapshot.getDataInfo());
+                try {
+                    return mapper.writeValueAsString(dataAndInfo);
+                } catch (JsonProcessingException e) {
+                    log.warn("Error serializing data", e);
+                    return null;
                 }
             });
+            if (json != null) {
+                session.getAsyncRemote().sendText(json);
+            }
         };
 
         ScheduledFuture<?> task = executor.scheduleWithFixedDelay(sendData, 0, 333, TimeUnit.MILLISECONDS);
+        session.getUserProperties().put("release", (Runnable) () -> simSnapshots.releaseData(dump));
         session.getUserProperties().put("task", task);
         // add on construction
 //        model.getSimulation().getIntegrator().getEventManager().addListener(dataPlumbing.getPump());
@@ -81,37 +96,25 @@ public class DataStreamWebsocket {
     @OnClose
     public void onClose(Session session) {
         log.warn("Closing websocket");
-        ((ScheduledFuture<?>) session.getUserProperties().get("task")).cancel(false);
+        stop(session);
     }
 
     @OnError
     public void onError(Session session, Throwable reason) {
         log.warn("Error in websocket", reason);
-        ((ScheduledFuture<?>) session.getUserProperties().get("task")).cancel(false);
+        stop(session);
     }
 
-    public static class DataAndInfoEncoder implements Encoder.Text<DataAndInfo> {
-        private EndpointConfig config;
-
-        @Override
-        public String encode(DataAndInfo object) throws EncodeException {
-            ObjectMapper mapper = (ObjectMapper) config.getUserProperties().get("mapper");
-            try {
-                return mapper.writeValueAsString(object);
-            } catch (JsonProcessingException e) {
-                throw new EncodeException(object, "JSON error", e);
-            }
-        }
-
-        @Override
-        public void init(EndpointConfig config) {
-            this.config = config;
-        }
-
-        @Override
-        public void destroy() {
-
-        }
+    /**
+     * Cancels the session's task and releases its data snapshots.  Both
+     * onError and onClose may be called for a session; only the first call
+     * does anything.
+     */
+    private static void stop(Session session) {
+        ScheduledFuture<?> task = (ScheduledFuture<?>) session.getUserProperties().remove("task");
+        if (task == null) return;
+        task.cancel(false);
+        ((Runnable) session.getUserProperties().remove("release")).run();
     }
 
 }
@@ -0,0 +1,185 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.server.core;
+
+import etomica.server.core.ConfigurationFrameEncoder.Encoding;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigurationFrameEncoderTest {
+
+    private static final int D = 3;
+    private static final double[][] BOX_SIZES = {{10, 12, 14}};
+
+    /**
+     * Decodes frames the way a client would: keyframes replace the stored
+     * coordinates, deltas are applied to a copy of the keyframe they refer to.
+     */
+    private static class Decoder {
+        int keyframeNumber = -1;
+        double[] keyCoordinates;
+        int lastType, lastFrame;
+
+        double[] decode(ByteBuffer frame) {
+            ByteBuffer buffer = frame.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            lastType = buffer.get();
+            Encoding encoding = Encoding.values()[buffer.get()];
+            assertEquals(D, buffer.get());
+            assertEquals(1, buffer.get());
+            lastFrame = buffer.getInt();
+            int keyNumber = buffer.getInt();
+            double[] boxSize = new double[D];
+            for (int k = 0; k < D; k++) {
+                boxSize[k] = buffer.getDouble();
+            }
+            int nAtoms = buffer.getInt();
+            double[] x;
+            if (lastType == ConfigurationFrameEncoder.KEYFRAME) {
+                assertEquals(lastFrame, keyNumber);
+                x = new double[nAtoms * D];
+                for (int i = 0; i < x.length; i++) {
+                    x[i] = get(buffer, encoding, boxSize[i % D]);
+                }
+                keyframeNumber = keyNumber;
+                keyCoordinates = x.clone();
+            }
+            else {
+                assertEquals(ConfigurationFrameEncoder.DELTA, lastType);
+                assertEquals(keyframeNumber, keyNumber);
+                x = keyCoordinates.clone();
+                int nChanged = buffer.getInt();
+                for (int j = 0; j < nChanged; j++) {
+                    int i = buffer.getInt();
+                    for (int k = 0; k < D; k++) {
+                        x[i * D + k] = get(buffer, encoding, boxSize[k]);
+                    }
+                }
+            }
+            assertFalse(buffer.hasRemaining());
+            return x;
+        }
+
+        private static double get(ByteBuffer buffer, Encoding encoding, double L) {
+            if (encoding == Encoding.FLOAT32) return buffer.getFloat();
+            return buffer.getShort() * L / 65534;
+        }
+    }
+
+    private static double[] randomCoordinates(Random random, int nAtoms) {
+        double[] x = new double[nAtoms * D];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = (random.nextDouble() - 0.5) * BOX_SIZES[0][i % D];
+        }
+        return x;
+    }
+
+    private static void assertDecoded(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            // half of the quantization step
+            double tol = 0.5 * BOX_SIZES[0][i % D] / 65534 + 1e-12;
+            assertEquals(expected[i], actual[i], tol);
+        }
+    }
+
+    @Test
+    void testKeyframeAndDeltas() {
+        Random random = new Random(3);
+        ConfigurationFrameEncoder encoder = new ConfigurationFrameEncoder(Encoding.INT16);
+        encoder.setKeyframeInterval(5);
+        Decoder decoder = new Decoder();
+        double[] x = randomCoordinates(random, 100);
+
+        for (int frame = 0; frame < 12; frame++) {
+            if (frame > 0) {
+                // move a few atoms by small amounts
+                for (int j = 0; j < 5; j++) {
+                    int i = random.nextInt(100);
+                    for (int k = 0; k < D; k++) {
+                        x[i * D + k] += 0.01 * (random.nextDouble() - 0.5);
+                    }
+                }
+            }
+            ByteBuffer encoded = encoder.encode(new double[][]{x}, BOX_SIZES, D);
+            double[] decoded = decoder.decode(encoded);
+            assertEquals(frame, decoder.lastFrame);
+            int expectedType = frame % 5 == 0 ? ConfigurationFrameEncoder.KEYFRAME : ConfigurationFrameEncoder.DELTA;
+            assertEquals(expectedType, decoder.lastType, "frame " + frame);
+            assertDecoded(x, decoded);
+            if (expectedType == ConfigurationFrameEncoder.DELTA) {
+                assertTrue(encoded.limit() < encoder.getKeyframe().limit());
+            }
+        }
+    }
+
+    @Test
+    void testDeltaAppliesToKeyframeOnly() {
+        // a client that joins late needs only the keyframe and the latest delta
+        Random random = new Random(4);
+        ConfigurationFrameEncoder encoder = new ConfigurationFrameEncoder(Encoding.INT16);
+        double[] x = randomCoordinates(random, 50);
+        encoder.encode(new double[][]{x}, BOX_SIZES, D);
+        ByteBuffer latest = null;
+        for (int frame = 1; frame < 6; frame++) {
+            x[frame * D] += 0.1;
+            latest = encoder.encode(new double[][]{x}, BOX_SIZES, D);
+        }
+        Decoder decoder = new Decoder();
+        decoder.decode(encoder.getKeyframe());
+        assertDecoded(x, decoder.decode(latest));
+        assertEquals(ConfigurationFrameEncoder.DELTA, decoder.lastType);
+    }
+
+    @Test
+    void testLargeDisplacementForcesKeyframe() {
+        Random random = new Random(5);
+        ConfigurationFrameEncoder encoder = new ConfigurationFrameEncoder(Encoding.INT16);
+        Decoder decoder = new Decoder();
+        double[] x = randomCoordinates(random, 100);
+        decoder.decode(encoder.encode(new double[][]{x}, BOX_SIZES, D));
+        assertEquals(ConfigurationFrameEncoder.KEYFRAME, decoder.lastType);
+
+        // every atom moves, so a delta would be larger than a keyframe
+        x = randomCoordinates(random, 100);
+        ByteBuffer encoded = encoder.encode(new double[][]{x}, BOX_SIZES, D);
+        assertDecoded(x, decoder.decode(encoded));
+        assertEquals(ConfigurationFrameEncoder.KEYFRAME, decoder.lastType);
+        assertEquals(1, encoder.getKeyframeNumber());
+        assertEquals(encoder.getKeyframe().limit(), encoded.limit());
+
+        // small moves go back to deltas against the new keyframe
+        x[0] += 0.1;
+        assertDecoded(x, decoder.decode(encoder.encode(new double[][]{x}, BOX_SIZES, D)));
+        assertEquals(ConfigurationFrameEncoder.DELTA, decoder.lastType);
+    }
+
+    @Test
+    void testBoxChangeAndRequestForceKeyframe() {
+        Random random = new Random(6);
+        ConfigurationFrameEncoder encoder = new ConfigurationFrameEncoder(Encoding.FLOAT32);
+        Decoder decoder = new Decoder();
+        double[] x = randomCoordinates(random, 20);
+        decoder.decode(encoder.encode(new double[][]{x}, BOX_SIZES, D));
+        decoder.decode(encoder.encode(new double[][]{x}, BOX_SIZES, D));
+        assertEquals(ConfigurationFrameEncoder.DELTA, decoder.lastType);
+
+        encoder.requestKeyframe();
+        decoder.decode(encoder.encode(new double[][]{x}, BOX_SIZES, D));
+        assertEquals(ConfigurationFrameEncoder.KEYFRAME, decoder.lastType);
+
+        double[][] newBox = {{10, 12, 15}};
+        ByteBuffer encoded = encoder.encode(new double[][]{x}, newBox, D);
+        assertEquals(ConfigurationFrameEncoder.KEYFRAME, encoded.get(0));
+        double[] decoded = decoder.decode(encoded);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals((float) x[i], decoded[i]);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.server.core;
+
+import com.codahale.metrics.MetricRegistry;
+import etomica.action.activity.ActivityIntegrate;
+import etomica.integrator.Integrator;
+import etomica.server.core.SimulationScheduler.Priority;
+import etomica.server.core.SimulationScheduler.ScheduledSimulation;
+import etomica.server.core.SimulationScheduler.State;
+import etomica.simulation.Simulation;
+import etomica.space3d.Space3D;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the scheduler without starting its workers.  Slices are run on the
+ * test thread with runNext, time comes from a fake clock that each
+ * integrator step advances, and throttled simulations are captured instead
+ * of being handed to the timer.
+ */
+class SimulationSchedulerTest {
+
+    private static final long MS = 1000000;
+
+    private AtomicLong clock;
+    private MetricRegistry metrics;
+    private TestScheduler scheduler;
+    private Map<String, ScheduledSimulation> sims;
+
+    private class TestScheduler extends SimulationScheduler {
+        final List<Long> delays = new ArrayList<>();
+        final List<ScheduledSimulation> throttled = new ArrayList<>();
+
+        TestScheduler() {
+            // 10 ms slices
+            super(1, 10, metrics, clock::get);
+        }
+
+        @Override
+        void enqueueLater(ScheduledSimulation s, long delay) {
+            throttled.add(s);
+            delays.add(delay);
+        }
+    }
+
+    /**
+     * Integrator whose steps advance the fake clock by a fixed time.
+     */
+    private class ClockIntegrator extends Integrator {
+        final long stepNanos;
+        long steps;
+        CountDownLatch inStep, proceed;
+        long blockAtStep = -1;
+
+        ClockIntegrator(long stepNanos) {
+            this.stepNanos = stepNanos;
+        }
+
+        @Override
+        protected void doStepInternal() {
+            steps++;
+            clock.addAndGet(stepNanos);
+            if (steps == blockAtStep) {
+                inStep.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        metrics = new MetricRegistry();
+        scheduler = new TestScheduler();
+        sims = new HashMap<>();
+    }
+
+    private ClockIntegrator addSimulation(String name, long stepNanos) {
+        Simulation sim = new Simulation(Space3D.getInstance());
+        ClockIntegrator integrator = new ClockIntegrator(stepNanos);
+        sim.getController().addAction(new ActivityIntegrate(integrator));
+        sims.put(name, scheduler.add(UUID.randomUUID(), sim));
+        return integrator;
+    }
+
+    private String runSlices(int n) {
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            ScheduledSimulation s = scheduler.runNext();
+            sims.forEach((name, sim) -> {
+                if (sim == s) order.append(name);
+            });
+        }
+        return order.toString();
+    }
+
+    @Test
+    void testFairSharePickOrder() {
+        // N takes 7 steps of 1.5 ms per slice: 10.5 ms, weighted 42 ms
+        addSimulation("N", 3 * MS / 2);
+        // H takes 10 steps of 1 ms per slice: 10 ms, weighted 10 ms
+        addSimulation("H", MS);
+        sims.get("H").setPriority(Priority.HIGH);
+
+        scheduler.start(sims.get("N").getSimulation());
+        assertEquals("N", runSlices(1));
+        assertEquals(7, sims.get("N").getStepCount());
+        // H starts at virtual time 0, N is at 42
+        scheduler.start(sims.get("H").getSimulation());
+        assertEquals("HHHHHNHHHHNHHHHN", runSlices(16));
+        assertEquals(13 * 10, sims.get("H").getStepCount());
+
+        // a newly started simulation gets one slice of credit over the
+        // simulation last taken from the queue (N, at 126 ms), so it goes next
+        addSimulation("L", MS);
+        sims.get("L").setPriority(Priority.LOW);
+        scheduler.start(sims.get("L").getSimulation());
+        assertEquals("L", runSlices(1));
+        // L then waits 160 ms of weighted time for its next slice
+        assertEquals("HHHHNHHHH", runSlices(9));
+        assertTrue(scheduler.throttled.isEmpty());
+        assertEquals(3, scheduler.getReadyCount());
+    }
+
+    @Test
+    void testQuotaRefill() {
+        addSimulation("Q", MS);
+        ScheduledSimulation s = sims.get("Q");
+        s.setCpuQuota(0.25);
+        scheduler.start(s.getSimulation());
+
+        // 10 ms used with 2.5 ms of credit, so Q must wait 30 ms to earn the rest
+        assertSame(s, scheduler.runNext());
+        assertEquals(1, scheduler.throttled.size());
+        assertEquals(30 * MS, (long) scheduler.delays.get(0));
+        assertNull(scheduler.runNext());
+        assertEquals(0, scheduler.getReadyCount());
+
+        // the timer fires on time, and Q runs 10 ms out of every 40
+        clock.addAndGet(30 * MS);
+        scheduler.enqueue(s);
+        assertSame(s, scheduler.runNext());
+        assertEquals(30 * MS, (long) scheduler.delays.get(1));
+
+        // credit refills at the quota rate but is capped at one slice's
+        // worth, so a long wait does not allow a burst
+        clock.addAndGet(1000 * MS);
+        scheduler.enqueue(s);
+        assertSame(s, scheduler.runNext());
+        assertEquals(30 * MS, (long) scheduler.delays.get(2));
+        assertEquals(30, s.getStepCount());
+
+        // a larger quota takes effect on the next slice
+        s.setCpuQuota(0.5);
+        clock.addAndGet(30 * MS);
+        scheduler.enqueue(s);
+        assertSame(s, scheduler.runNext());
+        assertEquals(10 * MS, (long) scheduler.delays.get(3));
+
+        // without a quota the simulation goes straight back in the queue
+        s.setCpuQuota(1);
+        clock.addAndGet(10 * MS);
+        scheduler.enqueue(s);
+        assertSame(s, scheduler.runNext());
+        assertEquals(4, scheduler.throttled.size());
+        assertEquals(1, scheduler.getReadyCount());
+    }
+
+    /**
+     * Starts a slice on another thread that blocks in the integrator's third
+     * step, and returns once that step is in progress.
+     */
+    private Thread runBlockedSlice(ClockIntegrator integrator) throws InterruptedException {
+        integrator.blockAtStep = 3;
+        integrator.inStep = new CountDownLatch(1);
+        integrator.proceed = new CountDownLatch(1);
+        Thread worker = new Thread(scheduler::runNext);
+        worker.start();
+        integrator.inStep.await();
+        return worker;
+    }
+
+    private static void awaitBlocked(Thread t) {
+        long deadline = System.nanoTime() + 10000 * MS;
+        while (t.getState() != Thread.State.BLOCKED) {
+            assertTrue(t.isAlive());
+            assertTrue(System.nanoTime() < deadline, "thread did not block");
+            Thread.yield();
+        }
+    }
+
+    @Test
+    void testPauseDuringSlice() throws InterruptedException {
+        ClockIntegrator integrator = addSimulation("P", MS);
+        ScheduledSimulation s = sims.get("P");
+        scheduler.start(s.getSimulation());
+        Thread worker = runBlockedSlice(integrator);
+
+        Thread pauser = new Thread(() -> scheduler.pause(s.getSimulation()));
+        pauser.start();
+        // pause waits for the batch in progress
+        awaitBlocked(pauser);
+        assertEquals(State.PAUSED, s.getState());
+
+        integrator.proceed.countDown();
+        pauser.join();
+        long steps = integrator.steps;
+        worker.join();
+        // no steps after pause returns, and the simulation is not requeued
+        assertEquals(3, steps);
+        assertEquals(steps, integrator.steps);
+        assertEquals(steps, s.getStepCount());
+        assertEquals(0, scheduler.getReadyCount());
+        assertNull(scheduler.runNext());
+
+        scheduler.start(s.getSimulation());
+        assertSame(s, scheduler.runNext());
+        assertTrue(integrator.steps > steps);
+        assertEquals(State.RUNNING, s.getState());
+    }
+
+    @Test
+    void testRemoveDuringSlice() throws InterruptedException {
+        ClockIntegrator integrator = addSimulation("R", MS);
+        ScheduledSimulation s = sims.get("R");
+        String stepsName = MetricRegistry.name(SimulationScheduler.class, s.getId().toString(), "steps");
+        assertTrue(metrics.getNames().contains(stepsName));
+        scheduler.start(s.getSimulation());
+        Thread worker = runBlockedSlice(integrator);
+
+        Thread remover = new Thread(() -> scheduler.remove(s.getSimulation()));
+        remover.start();
+        awaitBlocked(remover);
+        assertNull(scheduler.get(s.getSimulation()));
+
+        integrator.proceed.countDown();
+        remover.join();
+        long steps = integrator.steps;
+        worker.join();
+        assertEquals(3, steps);
+        assertEquals(steps, integrator.steps);
+        assertFalse(metrics.getNames().contains(stepsName));
+        assertEquals(0, scheduler.getReadyCount());
+        assertNull(scheduler.runNext());
+        assertThrows(IllegalArgumentException.class, () -> scheduler.start(s.getSimulation()));
+    }
+}
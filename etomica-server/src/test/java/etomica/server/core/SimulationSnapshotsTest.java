@@ -0,0 +1,35 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.server.core;
+
+import etomica.data.DataDump;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationSnapshotsTest {
+
+    @Test
+    void testReleaseData() {
+        SimulationSnapshots snapshots = new SimulationSnapshots(null, 1, 0);
+        DataDump dump = new DataDump();
+        TripleBuffer<SimulationSnapshots.DataSnapshot> buffer = snapshots.getData(dump);
+        assertSame(buffer, snapshots.getData(dump));
+        snapshots.getData(new DataDump());
+        assertEquals(2, snapshots.getDataCount());
+
+        snapshots.releaseData(dump);
+        assertEquals(2, snapshots.getDataCount());
+        snapshots.releaseData(dump);
+        assertEquals(1, snapshots.getDataCount());
+        // extra releases are ignored
+        snapshots.releaseData(dump);
+        assertEquals(1, snapshots.getDataCount());
+
+        // a dump watched again gets a new buffer
+        assertNotSame(buffer, snapshots.getData(dump));
+        assertEquals(2, snapshots.getDataCount());
+    }
+}
@@ -0,0 +1,87 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.server.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TripleBufferTest {
+
+    private static final int N_VALUES = 256;
+
+    /**
+     * Returns the frame number held by the buffer, or -1 if the elements
+     * differ (a torn frame).
+     */
+    private static long frameNumber(long[] frame) {
+        for (long x : frame) {
+            if (x != frame[0]) return -1;
+        }
+        return frame[0];
+    }
+
+    private static void fill(long[] frame, long n) {
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = n;
+        }
+    }
+
+    @Test
+    void testSequential() {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(() -> new long[N_VALUES]);
+        assertEquals(0, (long) buffer.read(TripleBufferTest::frameNumber));
+        buffer.publish(f -> fill(f, 1));
+        assertEquals(1, (long) buffer.read(TripleBufferTest::frameNumber));
+        // no new value, so the reader sees the same one again
+        assertEquals(1, (long) buffer.read(TripleBufferTest::frameNumber));
+        buffer.publish(f -> fill(f, 2));
+        buffer.publish(f -> fill(f, 3));
+        buffer.publish(f -> fill(f, 4));
+        assertEquals(4, (long) buffer.read(TripleBufferTest::frameNumber));
+    }
+
+    @Test
+    void testOneWriterOneReader() throws InterruptedException {
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(() -> new long[N_VALUES]);
+        final long nFrames = 200000;
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (long n = 1; n <= nFrames; n++) {
+                long frame = n;
+                buffer.publish(f -> fill(f, frame));
+            }
+        });
+        long[] reads = new long[2];
+        Thread reader = new Thread(() -> {
+            long last = 0;
+            while (last < nFrames) {
+                long n = buffer.read(TripleBufferTest::frameNumber);
+                if (n < 0) {
+                    failure.set("torn frame after frame " + last);
+                    return;
+                }
+                if (n < last) {
+                    failure.set("frame " + n + " read after frame " + last);
+                    return;
+                }
+                if (n > last) reads[0]++;
+                else reads[1]++;
+                last = n;
+            }
+        });
+        reader.start();
+        writer.start();
+        writer.join(60000);
+        reader.join(60000);
+        assertFalse(writer.isAlive());
+        assertFalse(reader.isAlive());
+        assertNull(failure.get(), failure.get());
+        assertTrue(reads[0] > 0);
+        assertEquals(nFrames, (long) buffer.read(TripleBufferTest::frameNumber));
+    }
+}